@@ -0,0 +1,117 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.eyxpoliba.emotion_recognition.payload.ImageDescriptionAndReactionPayload;
+import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cost of writing and parsing a {@code /api/register-result} body per wire format, optionally gzip-encoded as
+ * {@link GzipRequestFilter} accepts it. The mappers are the ones {@link WireFormatConfig} registers. Bytes on the
+ * wire for each combination are printed once per trial ("# wire bytes"):
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="WireFormatBenchmark -p items=200"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "RABBIA", "DISGUSTO", "STUPORE"};
+    private static final String[] WORDS = ("la persona nella foto sembra sorridere mentre guarda verso il mare "
+            + "con uno sguardo sereno ma anche un po malinconico la luce del tramonto rende la scena calda "
+            + "e tranquilla mi ricorda una vacanza passata con la famiglia quando ero bambino").split(" ");
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean gzip;
+
+    // Images described in one submission
+    @Param({"20", "200"})
+    public int items;
+
+    private ObjectMapper mapper;
+    private ResultPayload payload;
+    private byte[] wire;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mapper = switch (format) {
+            case "json" -> new Jackson2ObjectMapperBuilder().build();
+            case "smile" -> WireFormatConfig.smileMapper(new Jackson2ObjectMapperBuilder());
+            case "cbor" -> WireFormatConfig.cborMapper(new Jackson2ObjectMapperBuilder());
+            default -> throw new IllegalArgumentException(format);
+        };
+        payload = payload(items);
+        wire = write();
+        System.out.printf("%n# wire bytes: format=%s gzip=%s items=%d -> %d%n", format, gzip, items, wire.length);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        try (OutputStream outputStream = gzip ? new GZIPOutputStream(buffer) : buffer) {
+            mapper.writeValue(outputStream, payload);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public ResultPayload read() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(wire);
+        try (InputStream body = gzip ? new GZIPInputStream(inputStream, 8192) : inputStream) {
+            return mapper.readValue(body, ResultPayload.class);
+        }
+    }
+
+    private static ResultPayload payload(int items) {
+        Random random = new Random(7);
+        List<ImageDescriptionAndReactionPayload> list = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            list.add(new ImageDescriptionAndReactionPayload(String.format("synthetic-%05d.png", random.nextInt(500)),
+                    sentence(random, 40 + random.nextInt(40)), REACTIONS[random.nextInt(REACTIONS.length)],
+                    sentence(random, 60 + random.nextInt(60))));
+        }
+        return new ResultPayload(list);
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of the instrumentation added to the request path: a pre-registered timer
+ * (JWT parse, blacklist lookup, storage calls) and the per-request statement summary lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class MetricsOverheadBenchmark {
+    @Param({"none", "prometheus"})
+    public String metrics;
+
+    private MeterRegistry meterRegistry;
+    private Timer histogramTimer;
+
+    @Setup
+    public void setUp() {
+        meterRegistry = "prometheus".equals(metrics)
+                ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)
+                : new CompositeMeterRegistry();
+        histogramTimer = Timer.builder("storage.operation").tag("operation", "download")
+                .publishPercentileHistogram().register(meterRegistry);
+    }
+
+    @Benchmark
+    public long timerRecord() {
+        long start = System.nanoTime();
+        histogramTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return start;
+    }
+
+    @Benchmark
+    public DistributionSummary statementSummaryLookupAndRecord() {
+        DistributionSummary summary = DistributionSummary.builder("hibernate.statements.per.request")
+                .tag("uri", "/api/login")
+                .register(meterRegistry);
+        summary.record(3);
+        return summary;
+    }
+}
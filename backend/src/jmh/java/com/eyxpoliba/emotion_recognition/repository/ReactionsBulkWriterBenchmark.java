@@ -0,0 +1,109 @@
+package com.eyxpoliba.emotion_recognition.repository;
+
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows per second of {@link ReactionsBulkWriter}: the database's native bulk API against plain JDBC batches.
+ * Runs on embedded H2 by default (where both are JDBC batches); point it at a real database with credentials
+ * in the URL to get per-dialect numbers, e.g.
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ReactionsBulkWriterBenchmark -p url=jdbc:postgresql://localhost/emotion?user=bench&amp;password=bench"
+ * mvn -Pbenchmark verify -Djmh.args="ReactionsBulkWriterBenchmark -p url=jdbc:sqlserver://localhost;databaseName=emotion;user=sa;password=...;encrypt=false"
+ * </pre>
+ * The schema is migrated with Flyway if needed; rows written by the run are deleted afterwards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ReactionsBulkWriterBenchmark {
+    @Param({"jdbc:h2:mem:bulk;MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE;USER=sa"})
+    public String url;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"native", "batch"})
+    public String method;
+
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private ReactionsBulkWriter bulkWriter;
+    private ReactionsBulkWriter.Method forcedMethod;
+    private List<ReactionsBulkWriter.Row> batch;
+    private long userId;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rowsWritten;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rowsWritten = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        String vendor = url.startsWith("jdbc:postgresql:") ? "postgresql" : "sqlserver";
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/" + vendor)
+                .baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        String email = "bulk-benchmark-" + System.nanoTime() + "@benchmark.local";
+        jdbcTemplate.update("INSERT INTO users (nickname, email, age, gender, nationality) VALUES ('bulk', ?, 30, 'F', 'IT')", email);
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = ?", Long.class, email);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        bulkWriter = new ReactionsBulkWriter(new ReactionShards(List.of(dataSource), meterRegistry, 60_000, 1000),
+                1000, meterRegistry);
+        forcedMethod = "batch".equals(method) ? ReactionsBulkWriter.Method.BATCH : null;
+        batch = new ArrayList<>(rows);
+        String description = "d".repeat(256);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new ReactionsBulkWriter.Row(userId, String.format("synthetic-%05d.png", i % 1000), description,
+                    "STUPORE", "neutral"));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM user_reactions WHERE user_id = ?", userId);
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", userId);
+        dataSource.close();
+    }
+
+    @Benchmark
+    public int write(Rows counter) {
+        int written = bulkWriter.write(batch, forcedMethod);
+        counter.rowsWritten += written;
+        return written;
+    }
+}
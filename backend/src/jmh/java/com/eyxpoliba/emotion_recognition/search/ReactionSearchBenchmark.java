@@ -0,0 +1,158 @@
+package com.eyxpoliba.emotion_recognition.search;
+
+import com.eyxpoliba.emotion_recognition.outbox.ReactionChangeFeed;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Latency of a two-word search over reaction texts: the Lucene index against the {@code LIKE '%word%'} scan over
+ * user_reactions that the same search needs without it. Both count the matches, as the endpoint reports a total.
+ * The texts are drawn from a Zipf-distributed vocabulary, so the query mixes a common and a rarer word, as real
+ * answers do.
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ReactionSearchBenchmark"
+ * </pre>
+ * The scan is skipped above 100k reactions, where a single query takes seconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ReactionSearchBenchmark {
+    private static final int VOCABULARY = 5000;
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "RABBIA", "STUPORE", "DISGUSTO"};
+    private static final int USERS = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int reactions;
+
+    private Path indexDir;
+    private ReactionShards reactionShards;
+    private ReactionChangeFeed changeFeed;
+    private ReactionSearchIndex searchIndex;
+    private JdbcTemplate jdbc;
+    private String[] words;
+    private double[] cumulative;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JdbcDataSource database = new JdbcDataSource();
+        database.setURL("jdbc:h2:mem:search-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        database.setUser("sa");
+        Flyway.configure().dataSource(database).locations("classpath:db/migration/sqlserver").load().migrate();
+        jdbc = new JdbcTemplate(database);
+
+        words = new String[VOCABULARY];
+        cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int i = 0; i < VOCABULARY; i++) {
+            words[i] = "w" + Integer.toString(i * 7919 + 1000, 36);
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < VOCABULARY; i++) {
+            cumulative[i] /= total;
+        }
+
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"search-" + i + "@benchmark.local"});
+        }
+        jdbc.batchUpdate("INSERT INTO users (email) VALUES (?)", users);
+        random = new SplittableRandom(42);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < reactions; i++) {
+            rows.add(new Object[]{random.nextInt(1, USERS + 1), "image-" + random.nextInt(200) + ".png",
+                    sentence(12), REACTIONS[random.nextInt(REACTIONS.length)], sentence(20)});
+            if (rows.size() == 10_000 || i == reactions - 1) {
+                jdbc.batchUpdate("INSERT INTO user_reactions (user_id, image, image_description, image_reaction, ai_comment) "
+                        + "VALUES (?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        reactionShards = new ReactionShards(List.of(database), meterRegistry, 60_000, 1000);
+        reactionShards.start();
+        changeFeed = new ReactionChangeFeed(reactionShards, meterRegistry, 1000, 5000, 500, 5000, 168, 60_000);
+        indexDir = Files.createTempDirectory("search-benchmark");
+        searchIndex = new ReactionSearchIndex(reactionShards, changeFeed, meterRegistry, true, indexDir, "standard",
+                0, 50_000, 1000, 30_000, "search-benchmark");
+        searchIndex.start();
+        while (searchIndex.search(null, null, null, 1) == null) {
+            Thread.sleep(100);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        searchIndex.stop();
+        changeFeed.stop();
+        reactionShards.stop();
+        jdbc.execute("SHUTDOWN");
+        try (Stream<Path> files = Files.walk(indexDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public SearchResults luceneIndex() {
+        return searchIndex.search(query(), null, null, 20);
+    }
+
+    @Benchmark
+    public Long likeScan() {
+        if (reactions > 100_000) {
+            return 0L;
+        }
+        String[] terms = query().split(" ");
+        return jdbc.queryForObject("SELECT COUNT(*) FROM user_reactions "
+                        + "WHERE (image_description LIKE ? OR ai_comment LIKE ?) AND (image_description LIKE ? OR ai_comment LIKE ?)",
+                Long.class, "%" + terms[0] + "%", "%" + terms[0] + "%", "%" + terms[1] + "%", "%" + terms[1] + "%");
+    }
+
+    // One of the 20 most common words and one from the long tail
+    private String query() {
+        return words[random.nextInt(20)] + " " + words[20 + random.nextInt(VOCABULARY / 5)];
+    }
+
+    private String sentence(int length) {
+        StringBuilder sentence = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            sentence.append(i == 0 ? "" : " ").append(words[Math.min(index < 0 ? -index - 1 : index, VOCABULARY - 1)]);
+        }
+        return sentence.toString();
+    }
+}
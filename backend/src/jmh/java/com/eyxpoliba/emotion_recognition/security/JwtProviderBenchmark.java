@@ -0,0 +1,74 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of signing and parsing the tokens handled on every login and every authenticated request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtProviderBenchmark {
+    static final String SECRET = "benchmarkSecretKey1234567890123456789012345678901234567890";
+    static final String ISSUER = "benchmarkIssuer";
+
+    private JwtProvider jwtProvider;
+    private String accessToken;
+
+    static JwtProvider newProvider() {
+        JwtProvider provider = new JwtProvider();
+        ReflectionTestUtils.setField(provider, "secretKey", SECRET);
+        ReflectionTestUtils.setField(provider, "issuer", ISSUER);
+        return provider;
+    }
+
+    @Setup
+    public void setUp() {
+        jwtProvider = newProvider();
+        accessToken = jwtProvider.generateToken("benchmark-user", 42L, true);
+    }
+
+    @Benchmark
+    public String generateAccessToken() {
+        return jwtProvider.generateToken("benchmark-user", 42L, true);
+    }
+
+    @Benchmark
+    public String generateRefreshToken() {
+        return jwtProvider.generateToken("benchmark-user", 42L, false);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtProvider.getUsernameFromToken(accessToken);
+    }
+
+    @Benchmark
+    public Object extractUserId() {
+        return jwtProvider.getClaimFromToken(accessToken, (Claims claims) -> claims.get("userId"));
+    }
+
+    // Mirrors what JwtAuthFilter does today: validate + subject + userId, i.e. three full parses
+    @Benchmark
+    public Long validateAndExtractAll() {
+        jwtProvider.validateToken(accessToken);
+        jwtProvider.getUsernameFromToken(accessToken);
+        return Long.valueOf(jwtProvider.getClaimFromToken(accessToken, claims -> claims.get("userId").toString()));
+    }
+}
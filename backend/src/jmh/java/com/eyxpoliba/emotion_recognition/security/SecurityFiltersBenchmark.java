@@ -0,0 +1,105 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import com.eyxpoliba.emotion_recognition.repository.BlacklistTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.lang.reflect.Proxy;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
+
+/**
+ * Per-request overhead of the security chain: BlacklistJwtFilter followed by JwtAuthFilter,
+ * as wired in {@link SecurityConfigurer}, for requests carrying a growing number of cookies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecurityFiltersBenchmark {
+    @Param({"1", "16", "64"})
+    public int cookieCount;
+
+    // "none" measures the filters with no-op meters, "prometheus" with the registry used in production
+    @Param({"none", "prometheus"})
+    public String metrics;
+
+    private BlacklistJwtFilter blacklistJwtFilter;
+    private JwtAuthFilter jwtAuthFilter;
+    private Cookie[] cookies;
+
+    private final FilterChain terminalChain = (request, response) -> { };
+
+    @Setup
+    public void setUp() {
+        JwtProvider jwtProvider = JwtProviderBenchmark.newProvider();
+        String token = jwtProvider.generateToken("benchmark-user", 42L, true);
+
+        MeterRegistry meterRegistry = "prometheus".equals(metrics)
+                ? new PrometheusMeterRegistry(PrometheusConfig.DEFAULT)
+                : new CompositeMeterRegistry();
+        blacklistJwtFilter = new BlacklistJwtFilter(inMemoryBlacklist(Set.of("revoked-token")), meterRegistry);
+        jwtAuthFilter = new JwtAuthFilter(jwtProvider, meterRegistry);
+
+        // The access token is always the last cookie, the worst case for the linear cookie scan
+        cookies = new Cookie[cookieCount];
+        for (int i = 0; i < cookieCount - 1; i++) {
+            cookies[i] = new Cookie("tracking_" + i, "value-" + i);
+        }
+        cookies[cookieCount - 1] = new Cookie(ACCESS_TOKEN, token);
+    }
+
+    @Benchmark
+    public int fullChain() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/download-image");
+        request.setCookies(cookies);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        blacklistJwtFilter.doFilterInternal(request, response,
+                (req, res) -> jwtAuthFilter.doFilterInternal(request, response, terminalChain));
+        SecurityContextHolder.clearContext();
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public int build401Error() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        JwtAuthFilter.build401Error(response, "JWT token not found in cookies");
+        return response.getContentLength();
+    }
+
+    // Only existsById is reached by the filter; any other call is a benchmark bug
+    private static BlacklistTokenRepository inMemoryBlacklist(Set<String> revoked) {
+        return (BlacklistTokenRepository) Proxy.newProxyInstance(
+                BlacklistTokenRepository.class.getClassLoader(),
+                new Class<?>[]{BlacklistTokenRepository.class},
+                (proxy, method, args) -> {
+                    if ("existsById".equals(method.getName())) {
+                        return revoked.contains((String) args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
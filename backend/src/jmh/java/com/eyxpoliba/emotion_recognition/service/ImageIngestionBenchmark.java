@@ -0,0 +1,168 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.repository.ImageRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.storage.BlobStore;
+import com.eyxpoliba.emotion_recognition.storage.InMemoryBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ingest throughput of {@link ImageIngestionService} into the in-memory store, swept over image size, block size
+ * and blocks staged in parallel. {@code stageLatencyMicros} adds a fixed delay per staged block, standing in for
+ * the round trip of a remote store, which is where parallel staging pays off. The catalog is a stub, so this
+ * measures the pipeline (read, hash, header probe, staging, commit) rather than the database.
+ * The "bytes" secondary metric is bytes ingested per second:
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ImageIngestionBenchmark -p stageLatencyMicros=2000"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ImageIngestionBenchmark {
+    // Approximate encoded size of the test image
+    @Param({"262144", "4194304"})
+    public int imageBytes;
+
+    @Param({"262144", "1048576"})
+    public int blockSize;
+
+    @Param({"1", "4"})
+    public int parallelBlocks;
+
+    @Param({"0", "2000"})
+    public long stageLatencyMicros;
+
+    private InMemoryBlobStore store;
+    private ImageIngestionService service;
+    private byte[] image;
+    private final AtomicLong names = new AtomicLong();
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        store = new InMemoryBlobStore(0, 16);
+        ImageRepository imageRepository = mock(ImageRepository.class);
+        when(imageRepository.findBySha256(anyString())).thenReturn(Optional.empty());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new ImageIngestionService(new SlowStagingStore(store, stageLatencyMicros), imageRepository,
+                new Bulkhead("storage", 64, 64, 1000, meterRegistry), mock(ApplicationEventPublisher.class),
+                meterRegistry, blockSize, parallelBlocks, Long.MAX_VALUE);
+        image = noisePng(imageBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.stop();
+    }
+
+    @Benchmark
+    public Object ingest(Bytes counter) throws IOException {
+        String name = "bench-" + names.incrementAndGet() + ".png";
+        Object body = service.ingest(name, new ByteArrayInputStream(image)).getBody();
+        store.delete(name);
+        counter.bytes += image.length;
+        return body;
+    }
+
+    // Random pixels barely compress, so the PNG is close to 3 bytes per pixel
+    private static byte[] noisePng(int targetBytes) throws IOException {
+        int side = (int) Math.sqrt(targetBytes / 3.0);
+        BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(targetBytes);
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private record SlowStagingStore(BlobStore delegate, long stageLatencyMicros) implements BlobStore {
+        @Override
+        public List<String> listBlobNames() {
+            return delegate.listBlobNames();
+        }
+
+        @Override
+        public boolean exists(String blobName) {
+            return delegate.exists(blobName);
+        }
+
+        @Override
+        public void download(String blobName, OutputStream outputStream) throws IOException {
+            delegate.download(blobName, outputStream);
+        }
+
+        @Override
+        public BlockUpload beginUpload(String blobName) {
+            BlockUpload upload = delegate.beginUpload(blobName);
+            return new BlockUpload() {
+                @Override
+                public void stageBlock(int index, byte[] data, int length) throws IOException {
+                    if (stageLatencyMicros > 0) {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(stageLatencyMicros));
+                    }
+                    upload.stageBlock(index, data, length);
+                }
+
+                @Override
+                public void commit(int blockCount, String contentType) throws IOException {
+                    upload.commit(blockCount, contentType);
+                }
+
+                @Override
+                public void abort() {
+                    upload.abort();
+                }
+            };
+        }
+    }
+}
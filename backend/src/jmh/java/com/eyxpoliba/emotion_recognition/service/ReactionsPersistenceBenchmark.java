@@ -0,0 +1,175 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.EmotionRecognitionApplication;
+import com.eyxpoliba.emotion_recognition.model.UserEntity;
+import com.eyxpoliba.emotion_recognition.payload.ImageDescriptionAndReactionPayload;
+import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
+import com.eyxpoliba.emotion_recognition.repository.UserRepository;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of {@link ReactionsService#registerResult} against an embedded H2 database (SQL Server mode,
+ * same migrations as production), swept over payload size, concurrent submitters, Hibernate JDBC batch size,
+ * id generation strategy and presence of idx_user_reactions_user_id.
+ * <p>
+ * Each invocation submits one result per submitter in parallel; the "inserts" secondary metric is rows per second.
+ * Add the GC profiler for the allocation rate:
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ReactionsPersistenceBenchmark -prof gc -p idStrategy=identity,sequence"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ReactionsPersistenceBenchmark {
+    // Reactions per submitted result (the frontend sends one per shown image)
+    @Param({"1", "10", "50"})
+    public int reactions;
+
+    @Param({"1", "8", "32"})
+    public int submitters;
+
+    // hibernate.jdbc.batch_size; ignored by Hibernate for IDENTITY ids
+    @Param({"1", "50"})
+    public int batchSize;
+
+    @Param({"identity", "sequence", "table"})
+    public String idStrategy;
+
+    // false drops idx_user_reactions_user_id together with fk_user (see setUp)
+    @Param({"true", "false"})
+    public boolean userIndex;
+
+    @Param({"256"})
+    public int descriptionChars;
+
+    private ConfigurableApplicationContext context;
+    private ReactionsService reactionsService;
+    private ExecutorService executor;
+    private Long[] userIds;
+    private ResultPayload payload;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Inserts {
+        public long inserts;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            inserts = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.main.web-application-type=none",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--spring.datasource.url=jdbc:h2:mem:reactions-benchmark;MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.hikari.maximumPoolSize=" + Math.max(10, submitters),
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.show-sql=false",
+                "--spring.jpa.properties.hibernate.jdbc.batch_size=" + batchSize,
+                "--spring.jpa.properties.hibernate.order_inserts=true",
+                "--azure.storage.mode=memory",
+                "--azure.storage.memory.seed-images=0",
+                "--azure.storage.connection-string=",
+                "--azure.storage.container-name=",
+                "--azure.storage.sas-token=",
+                "--security.issuer=benchmark",
+                "--security.secret=benchmark-secret-0123456789abcdef0123456789abcdef0123456789"));
+        if (!"identity".equals(idStrategy)) {
+            args.add("--spring.jpa.mapping-resources=benchmark/reactions-id-" + idStrategy + ".xml");
+        }
+        context = SpringApplication.run(EmotionRecognitionApplication.class, args.toArray(String[]::new));
+        reactionsService = context.getBean(ReactionsService.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.execute("CREATE SEQUENCE user_reactions_seq START WITH 1 INCREMENT BY 50");
+        jdbcTemplate.execute("CREATE TABLE id_generators (gen_name VARCHAR(255) PRIMARY KEY, gen_value BIGINT)");
+        if (!userIndex) {
+            // H2 backs fk_user with this index and recreates one for any foreign key, so both go together
+            jdbcTemplate.execute("ALTER TABLE user_reactions DROP CONSTRAINT fk_user");
+            jdbcTemplate.execute("DROP INDEX IF EXISTS idx_user_reactions_user_id");
+        }
+
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        userIds = new Long[submitters];
+        for (int i = 0; i < submitters; i++) {
+            UserEntity user = new UserEntity();
+            user.setNickname("bench" + i);
+            user.setEmail("bench" + i + "@benchmark.local");
+            user.setAge(30);
+            user.setGender("F");
+            user.setNationality("IT");
+            userIds[i] = userRepository.save(user).getId();
+        }
+
+        String description = "d".repeat(descriptionChars);
+        List<ImageDescriptionAndReactionPayload> items = new ArrayList<>(reactions);
+        for (int i = 0; i < reactions; i++) {
+            items.add(new ImageDescriptionAndReactionPayload(String.format("synthetic-%05d.png", i), description,
+                    "STUPORE", "neutral"));
+        }
+        payload = new ResultPayload(items);
+        executor = Executors.newFixedThreadPool(submitters);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public void registerResult(Inserts inserts) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(submitters);
+        for (Long userId : userIds) {
+            futures.add(executor.submit(() -> {
+                SecurityContextHolder.getContext().setAuthentication(
+                        new UsernamePasswordAuthenticationToken("bench", userId, null));
+                try {
+                    reactionsService.registerResult(payload);
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        inserts.inserts += (long) submitters * reactions;
+    }
+}
@@ -0,0 +1,161 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Result submissions per second as user_reactions is spread over more shards. Each shard is an embedded H2
+ * database behind a small pool whose commits take {@code commitLatencyMicros}, standing in for a database server
+ * that can only make so many commits durable per second; the numbers then show how much commit capacity sharding
+ * adds, independently of how many cores the machine running the benchmark has.
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ShardedWriteBenchmark"
+ * </pre>
+ * Writes to shard 0 run in a transaction of their own, as they do inside {@code ReactionsService}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(16)
+@Fork(1)
+public class ShardedWriteBenchmark {
+    private static final int USERS = 4096;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    @Param({"2000"})
+    public long commitLatencyMicros;
+
+    @Param({"2"})
+    public int connectionsPerShard;
+
+    @Param({"10"})
+    public int reactionsPerResult;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private ReactionShards reactionShards;
+    private ReactionsBulkWriter bulkWriter;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Rows {
+        public long rowsWritten;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rowsWritten = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            JdbcDataSource database = new JdbcDataSource();
+            database.setURL("jdbc:h2:mem:shard" + i + "-" + System.nanoTime() + ";MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE");
+            database.setUser("sa");
+            HikariDataSource pool = new HikariDataSource();
+            pool.setDataSource(slowCommits(database, TimeUnit.MICROSECONDS.toNanos(commitLatencyMicros)));
+            pool.setMaximumPoolSize(connectionsPerShard);
+            pool.setPoolName("bench-shard-" + i);
+            Flyway.configure().dataSource(pool)
+                    .locations(i == 0 ? "classpath:db/migration/sqlserver" : "classpath:db/shard/sqlserver")
+                    .load().migrate();
+            pools.add(pool);
+            dataSources.add(pool);
+        }
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USERS; i++) {
+            users.add(new Object[]{"sharded-" + i + "@benchmark.local"});
+        }
+        new JdbcTemplate(pools.getFirst()).batchUpdate("INSERT INTO users (email) VALUES (?)", users);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        reactionShards = new ReactionShards(dataSources, meterRegistry, 60_000, 1000);
+        reactionShards.start();
+        new ReactionResharder(reactionShards, meterRegistry, 0, 1000).rebalance();
+        bulkWriter = new ReactionsBulkWriter(reactionShards, 1000, meterRegistry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reactionShards.stop();
+        pools.getFirst().close();
+    }
+
+    @Benchmark
+    public int registerResult(Rows counter) {
+        long userId = ThreadLocalRandom.current().nextLong(1, USERS + 1);
+        List<ReactionsBulkWriter.Row> rows = new ArrayList<>(reactionsPerResult);
+        for (int i = 0; i < reactionsPerResult; i++) {
+            rows.add(new ReactionsBulkWriter.Row(userId, "image-" + i + ".png", "description", "GIOIA", null));
+        }
+        ReactionShards.Shard shard = reactionShards.shardFor(userId);
+        int written = shard.isPrimary()
+                ? shard.transactions().execute(status -> bulkWriter.write(rows, ReactionsBulkWriter.Method.BATCH))
+                : bulkWriter.write(rows, ReactionsBulkWriter.Method.BATCH);
+        counter.rowsWritten += written;
+        return written;
+    }
+
+    private static DataSource slowCommits(JdbcDataSource database, long commitNanos) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(database, method, args);
+                    if (result instanceof Connection connection) {
+                        return slowCommits(connection, commitNanos);
+                    }
+                    return result;
+                });
+    }
+
+    private static Connection slowCommits(Connection connection, long commitNanos) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("commit")) {
+                        LockSupport.parkNanos(commitNanos);
+                    }
+                    return invoke(connection, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
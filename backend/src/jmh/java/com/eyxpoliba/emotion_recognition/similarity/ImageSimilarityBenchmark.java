@@ -0,0 +1,123 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a top-10 nearest-image query through the LSH index and through the exact parallel scan. Profiles are
+ * sampled around 200 reaction distributions with 20–200 reactions per image, so images near each other differ
+ * by sampling noise, as they do in the study. The recall of the approximate query against the exact one is printed
+ * once per trial.
+ * <pre>
+ * mvn -Pbenchmark verify -Djmh.args="ImageSimilarityBenchmark"
+ * </pre>
+ * The exact scan uses one thread per core ({@code app.similarity.parallelism=0}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ImageSimilarityBenchmark {
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "RABBIA", "STUPORE", "DISGUSTO"};
+    private static final int PROFILES = 200;
+    private static final int K = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    public int images;
+
+    @Param({"COSINE", "JENSEN_SHANNON"})
+    public ProfileDistance metric;
+
+    @Param({"8"})
+    public int lshTables;
+
+    @Param({"20"})
+    public int lshBits;
+
+    private ImageSimilarityIndex index;
+    private SplittableRandom random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        random = new SplittableRandom(42);
+        double[][] centres = new double[PROFILES][REACTIONS.length];
+        for (double[] centre : centres) {
+            double sum = 0;
+            for (int d = 0; d < centre.length; d++) {
+                centre[d] = Math.pow(random.nextDouble(), 2);
+                sum += centre[d];
+            }
+            for (int d = 0; d < centre.length; d++) {
+                centre[d] /= sum;
+            }
+        }
+        ReactionProfiles profiles = new ReactionProfiles(8, lshTables, lshBits, 0x5eed);
+        int[] counts = new int[REACTIONS.length];
+        for (int image = 0; image < images; image++) {
+            double[] centre = centres[random.nextInt(PROFILES)];
+            int reactions = random.nextInt(20, 201);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < reactions; i++) {
+                double draw = random.nextDouble();
+                int d = 0;
+                while (d < REACTIONS.length - 1 && (draw -= centre[d]) > 0) {
+                    d++;
+                }
+                counts[d]++;
+            }
+            for (int d = 0; d < REACTIONS.length; d++) {
+                profiles.add("img" + image + ".png", REACTIONS[d], counts[d]);
+            }
+        }
+        profiles.buildIndex();
+        index = new ImageSimilarityIndex(null, new SimpleMeterRegistry(), false, 600_000, 8, lshTables, lshBits, 0);
+        index.install(profiles, null);
+
+        int found = 0;
+        int queries = 200;
+        for (int query = 0; query < queries; query++) {
+            String image = randomImage();
+            double kth = index.similarTo(image, K, metric, true, 1).neighbours().getLast().distance();
+            found += (int) index.similarTo(image, K, metric, false, 1).neighbours().stream()
+                    .filter(neighbour -> neighbour.distance() <= kth).count();
+        }
+        System.out.printf("%nrecall@%d (%s, %d images): %.3f%n", K, metric, images, found / (double) (queries * K));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.stop();
+    }
+
+    @Benchmark
+    public SimilarImages lshIndex() {
+        return index.similarTo(randomImage(), K, metric, false, 1);
+    }
+
+    @Benchmark
+    public SimilarImages parallelScan() {
+        return index.similarTo(randomImage(), K, metric, true, 1);
+    }
+
+    private String randomImage() {
+        return "img" + random.nextInt(images) + ".png";
+    }
+}
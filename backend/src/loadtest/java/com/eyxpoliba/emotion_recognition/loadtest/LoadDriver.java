@@ -0,0 +1,182 @@
+package com.eyxpoliba.emotion_recognition.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives complete participant sessions against a running backend:
+ * login -> download every assigned image -> register-result -> logout.
+ * Each virtual user is a virtual thread looping over sessions until the level's duration elapses.
+ */
+public class LoadDriver {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long MAX_TRACKED_NANOS = TimeUnit.SECONDS.toNanos(120);
+
+    private final URI baseUri;
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+    private final AtomicLong sessionSequence = new AtomicLong();
+    // Leave aiComment out so the backend's inference gateway classifies the descriptions
+    private final boolean serverSideAiComments = Boolean.getBoolean("loadtest.serverSideAiComments");
+
+    public LoadDriver(URI baseUri, Duration requestTimeout) {
+        this.baseUri = baseUri;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(requestTimeout)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public record EndpointStats(long requests, long errors, double p50Ms, double p95Ms, double p99Ms, double maxMs) {
+    }
+
+    public record LevelReport(int concurrency, double durationSeconds, long sessions, long requests, long errors,
+                              double errorRate, double throughputRps, double sessionsPerSecond,
+                              double p50Ms, double p95Ms, double p99Ms, double maxMs,
+                              Map<String, EndpointStats> endpoints) {
+    }
+
+    private static final class Stats {
+        final Histogram latency = new ConcurrentHistogram(MAX_TRACKED_NANOS, 3);
+        final AtomicLong errors = new AtomicLong();
+
+        void record(long nanos, boolean ok) {
+            latency.recordValue(Math.min(nanos, MAX_TRACKED_NANOS));
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+
+    public LevelReport run(int concurrency, Duration duration) throws InterruptedException {
+        Map<String, Stats> stats = new ConcurrentHashMap<>();
+        AtomicLong sessions = new AtomicLong();
+        long start = System.nanoTime();
+        long deadline = start + duration.toNanos();
+
+        try (ExecutorService users = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                users.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        runSession(stats);
+                        sessions.incrementAndGet();
+                    }
+                });
+            }
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Histogram all = new Histogram(MAX_TRACKED_NANOS, 3);
+        long errors = 0;
+        Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Histogram h = entry.getValue().latency;
+            all.add(h);
+            errors += entry.getValue().errors.get();
+            endpoints.put(entry.getKey(), new EndpointStats(h.getTotalCount(), entry.getValue().errors.get(),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(95)),
+                    ms(h.getValueAtPercentile(99)), ms(h.getMaxValue())));
+        }
+        long requests = all.getTotalCount();
+        return new LevelReport(concurrency, elapsedSeconds, sessions.get(), requests, errors,
+                requests == 0 ? 0 : (double) errors / requests, requests / elapsedSeconds, sessions.get() / elapsedSeconds,
+                ms(all.getValueAtPercentile(50)), ms(all.getValueAtPercentile(95)),
+                ms(all.getValueAtPercentile(99)), ms(all.getMaxValue()), endpoints);
+    }
+
+    private void runSession(Map<String, Stats> stats) {
+        long id = sessionSequence.incrementAndGet();
+        String loginBody = "{\"nickname\":\"load" + id + "\",\"email\":\"load" + id + "@loadtest.local\","
+                + "\"age\":" + (18 + id % 60) + ",\"gender\":\"" + (id % 2 == 0 ? "F" : "M") + "\",\"nationality\":\"IT\"}";
+
+        HttpResponse<String> login = send(stats, "login", post("/api/login", null, loginBody), HttpResponse.BodyHandlers.ofString());
+        if (login == null || login.statusCode() != 201) {
+            return;
+        }
+        String cookie = login.headers().allValues("Set-Cookie").stream()
+                .map(value -> value.split(";", 2)[0])
+                .reduce((a, b) -> a + "; " + b)
+                .orElse("");
+
+        List<String> images = new ArrayList<>();
+        try {
+            JsonNode names = MAPPER.readTree(login.body()).path("imagesName");
+            names.forEach(node -> images.add(node.asText()));
+        } catch (Exception e) {
+            stats.computeIfAbsent("login", k -> new Stats()).errors.incrementAndGet();
+            return;
+        }
+
+        StringBuilder result = new StringBuilder("{\"imagesDescriptionsAndReactions\":[");
+        for (int i = 0; i < images.size(); i++) {
+            String image = images.get(i);
+            HttpRequest download = HttpRequest.newBuilder(baseUri.resolve("/api/download-image?imageName="
+                            + URLEncoder.encode(image, StandardCharsets.UTF_8)))
+                    .timeout(requestTimeout).header("Cookie", cookie).GET().build();
+            send(stats, "download-image", download, HttpResponse.BodyHandlers.discarding());
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append("{\"image\":\"").append(image).append("\",\"description\":\"load test description ")
+                    .append(i).append("\",\"reaction\":\"STUPORE\"")
+                    .append(serverSideAiComments ? "}" : ",\"aiComment\":\"neutral\"}");
+        }
+        result.append("]}");
+
+        send(stats, "register-result", post("/api/register-result", cookie, result.toString()), HttpResponse.BodyHandlers.discarding());
+        send(stats, "logout", post("/api/logout", cookie, ""), HttpResponse.BodyHandlers.discarding());
+    }
+
+    private HttpRequest post(String path, String cookie, String json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(baseUri.resolve(path))
+                .timeout(requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (cookie != null) {
+            builder.header("Cookie", cookie);
+        }
+        return builder.build();
+    }
+
+    private <T> HttpResponse<T> send(Map<String, Stats> stats, String endpoint, HttpRequest request,
+                                     HttpResponse.BodyHandler<T> handler) {
+        Stats endpointStats = stats.computeIfAbsent(endpoint, k -> new Stats());
+        long start = System.nanoTime();
+        try {
+            HttpResponse<T> response = httpClient.send(request, handler);
+            endpointStats.record(System.nanoTime() - start, response.statusCode() < 400);
+            return response;
+        } catch (Exception e) {
+            endpointStats.record(System.nanoTime() - start, false);
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,74 @@
+package com.eyxpoliba.emotion_recognition.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test against an already running backend. Run it once per server mode and compare the reports:
+ * <pre>
+ * SPRING_PROFILES_ACTIVE=virtual java -jar target/emotion_recognition-0.0.1-SNAPSHOT.jar
+ * mvn -Ploadtest verify -Dloadtest.label=virtual
+ * </pre>
+ * System properties: loadtest.baseUrl, loadtest.concurrency (comma separated), loadtest.durationSeconds,
+ * loadtest.timeoutSeconds, loadtest.label, loadtest.report, loadtest.serverSideAiComments.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        if (Boolean.getBoolean("loadtest.offline")) {
+            OfflineLoadTest.main(args);
+            return;
+        }
+        URI baseUri = URI.create(System.getProperty("loadtest.baseUrl", "http://localhost:8080"));
+        String label = System.getProperty("loadtest.label", "default");
+        File report = new File(System.getProperty("loadtest.report", "target/loadtest-report-" + label + ".json"));
+
+        Map<String, Object> result = run(new LoadDriver(baseUri, timeout()), label);
+        write(report, result);
+    }
+
+    static Map<String, Object> run(LoadDriver driver, String label) throws InterruptedException {
+        int[] levels = Arrays.stream(System.getProperty("loadtest.concurrency", "100,1000,5000").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        Duration duration = Duration.ofSeconds(Long.getLong("loadtest.durationSeconds", 30));
+
+        List<LoadDriver.LevelReport> reports = new ArrayList<>();
+        for (int concurrency : levels) {
+            LoadDriver.LevelReport level = driver.run(concurrency, duration);
+            System.out.printf("[%s] concurrency=%d sessions=%d throughput=%.1f req/s p50=%.1fms p99=%.1fms errors=%.2f%%%n",
+                    label, concurrency, level.sessions(), level.throughputRps(), level.p50Ms(), level.p99Ms(),
+                    level.errorRate() * 100);
+            reports.add(level);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("label", label);
+        result.put("timestamp", Instant.now().toString());
+        result.put("javaVersion", System.getProperty("java.version"));
+        result.put("levels", reports);
+        return result;
+    }
+
+    static Duration timeout() {
+        return Duration.ofSeconds(Long.getLong("loadtest.timeoutSeconds", 30));
+    }
+
+    static void write(File report, Map<String, Object> result) throws Exception {
+        File parent = report.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report, result);
+        System.out.println("Load test report written to " + report.getAbsolutePath());
+    }
+}
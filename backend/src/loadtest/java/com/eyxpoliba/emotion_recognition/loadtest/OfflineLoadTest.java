@@ -0,0 +1,73 @@
+package com.eyxpoliba.emotion_recognition.loadtest;
+
+import com.eyxpoliba.emotion_recognition.EmotionRecognitionApplication;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots the backend in-process with an H2 database and an in-memory blob store seeded with synthetic images
+ * (profile "offline"), then runs the session scenarios of {@link LoadDriver} against it.
+ * <pre>
+ * mvn -Ploadtest verify -Dloadtest.offline=true -Dloadtest.concurrency=50,200 -Dloadtest.seedImages=1000
+ * </pre>
+ * Add -Dloadtest.profiles=virtual to boot the server in virtual-thread mode.
+ */
+public class OfflineLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        String extraProfiles = System.getProperty("loadtest.profiles", "");
+        String profiles = extraProfiles.isBlank() ? "offline" : "offline," + extraProfiles;
+        String label = System.getProperty("loadtest.label", "offline-" + profiles.replace(',', '-'));
+        File report = new File(System.getProperty("loadtest.report", "target/loadtest-report-" + label + ".json"));
+
+        SpringApplication application = new SpringApplication(EmotionRecognitionApplication.class);
+        application.setAdditionalProfiles(profiles.split(","));
+        try (ConfigurableApplicationContext context = application.run(args)) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            LoadDriver driver = new LoadDriver(URI.create("http://localhost:" + port), LoadTest.timeout());
+
+            Map<String, Object> result = LoadTest.run(driver, label);
+            result.put("profiles", profiles);
+            result.put("seedImages", context.getEnvironment().getProperty("azure.storage.memory.seed-images"));
+            result.put("serverTimers", serverTimers(context.getBean(MeterRegistry.class)));
+            result.put("serverCounters", serverCounters(context.getBean(MeterRegistry.class)));
+            LoadTest.write(report, result);
+        }
+    }
+
+    // Server-side view of the same run, to tell client-observed latency apart from time spent in each dependency
+    private static Map<String, Object> serverTimers(MeterRegistry registry) {
+        Map<String, Object> timers = new LinkedHashMap<>();
+        for (String name : new String[]{"login.stage", "storage.operation", "security.jwt.parse", "security.blacklist.lookup"}) {
+            for (Timer timer : registry.find(name).timers()) {
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("count", timer.count());
+                stats.put("meanMs", timer.mean(TimeUnit.MILLISECONDS));
+                stats.put("maxMs", timer.max(TimeUnit.MILLISECONDS));
+                timers.put(timer.getId().getName() + timer.getId().getTags(), stats);
+            }
+        }
+        return timers;
+    }
+
+    // Requests shed by admission control or served from the fallback image list count as client errors or skew the mix
+    private static Map<String, Object> serverCounters(MeterRegistry registry) {
+        Map<String, Object> counters = new LinkedHashMap<>();
+        for (String name : new String[]{"admission.rejected", "login.images.fallback"}) {
+            for (Counter counter : registry.find(name).counters()) {
+                counters.put(counter.getId().getName() + counter.getId().getTags(), counter.count());
+            }
+        }
+        return counters;
+    }
+}
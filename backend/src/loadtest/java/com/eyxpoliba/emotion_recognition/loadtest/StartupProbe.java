@@ -0,0 +1,185 @@
+package com.eyxpoliba.emotion_recognition.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures time-to-first-request of the packaged application: JVM launch until the first HTTP response on the
+ * public port. Compares the plain startup ("baseline") with AOT bean definitions plus an AppCDS archive and the
+ * "faststart" Spring profile ("faststart"), the same way the Dockerfile builds and starts the image.
+ * <p>
+ * Runs the extracted jar with H2 on the classpath and an unreachable storage endpoint, so no external service
+ * is needed. Invoked by {@code mvn -Pfaststart verify}; writes target/startup-report.json.
+ */
+public class StartupProbe {
+    private static final String MAIN_CLASS = "com.eyxpoliba.emotion_recognition.EmotionRecognitionApplication";
+    private static final Duration START_TIMEOUT = Duration.ofSeconds(120);
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path workDir;
+    private final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(200)).build();
+    private String classpath;
+
+    private StartupProbe(Path workDir) {
+        this.workDir = workDir;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path jar = Path.of(System.getProperty("startup.jar"));
+        int runs = Integer.getInteger("startup.runs", 3);
+        StartupProbe probe = new StartupProbe(jar.toAbsolutePath().getParent().resolve("startup"));
+
+        probe.extract(jar);
+        Path archive = probe.workDir.resolve("application.jsa");
+        probe.train(archive);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("timestamp", Instant.now().toString());
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("baseline", probe.measure("baseline", runs, List.of(), List.of()));
+        report.put("faststart", probe.measure("faststart", runs,
+                List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true"),
+                List.of("--spring.profiles.active=faststart")));
+
+        File reportFile = jar.toAbsolutePath().getParent().resolve("startup-report.json").toFile();
+        MAPPER.writeValue(reportFile, report);
+        System.out.println(MAPPER.writeValueAsString(report));
+        System.out.println("Report written to " + reportFile);
+    }
+
+    private void extract(Path jar) throws IOException, InterruptedException {
+        Path extracted = workDir.resolve("extracted");
+        run("extract", List.of(java, "-Djarmode=tools", "-jar", jar.toString(), "extract",
+                "--destination", extracted.toString(), "--force"));
+        try (Stream<Path> files = Files.list(extracted)) {
+            Path applicationJar = files.filter(path -> path.toString().endsWith(".jar")).findFirst().orElseThrow();
+            // The embedded database is test-scoped, so it is appended after the application classpath
+            String h2 = Path.of(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+            classpath = applicationJar + File.pathSeparator + h2;
+        } catch (java.net.URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Training run: refreshes the context and exits, dumping every loaded class into the CDS archive
+    private void train(Path archive) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(java, "-XX:ArchiveClassesAtExit=" + archive,
+                "-Dspring.aot.enabled=true", "-Dspring.context.exit=onRefresh", "-cp", classpath, MAIN_CLASS,
+                "--spring.profiles.active=faststart"));
+        command.addAll(applicationArgs(freePort(), freePort()));
+        run("training", command);
+    }
+
+    private Map<String, Object> measure(String mode, int runs, List<String> jvmArgs, List<String> appArgs)
+            throws IOException, InterruptedException {
+        List<Long> millis = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            int port = freePort();
+            List<String> command = new ArrayList<>();
+            command.add(java);
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath, MAIN_CLASS));
+            command.addAll(appArgs);
+            command.addAll(applicationArgs(port, freePort()));
+
+            long start = System.nanoTime();
+            Process process = start(mode + "-" + i, command);
+            try {
+                awaitFirstResponse(process, port);
+                millis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            } finally {
+                process.destroy();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+        }
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("runsMs", millis);
+        result.put("medianMs", sorted.get(sorted.size() / 2));
+        result.put("minMs", sorted.get(0));
+        return result;
+    }
+
+    private void awaitFirstResponse(Process process, int port) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/login"))
+                .timeout(Duration.ofSeconds(5)).GET().build();
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with code " + process.exitValue());
+            }
+            try {
+                httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                return; // any status: the server answered
+            } catch (IOException e) {
+                Thread.sleep(10);
+            }
+        }
+        throw new IllegalStateException("No response within " + START_TIMEOUT);
+    }
+
+    private static List<String> applicationArgs(int port, int managementPort) {
+        return List.of(
+                "--server.port=" + port,
+                "--management.server.port=" + managementPort,
+                "--spring.datasource.url=jdbc:h2:mem:startup;MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+                "--spring.jpa.show-sql=false",
+                "--azure.storage.connection-string=http://localhost:9/startupprobe",
+                "--azure.storage.container-name=images",
+                "--azure.storage.sas-token=sv=probe",
+                "--security.issuer=startup-probe",
+                "--security.secret=startup-probe-secret-0123456789abcdef0123456789abcdef0123456789");
+    }
+
+    private Process start(String name, List<String> command) throws IOException {
+        Files.createDirectories(workDir);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(workDir.resolve(name + ".log").toFile())
+                .start();
+    }
+
+    private void run(String name, List<String> command) throws IOException, InterruptedException {
+        Process process = start(name, command);
+        if (!process.waitFor(START_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new IllegalStateException(name + " did not finish, see " + workDir.resolve(name + ".log"));
+        }
+        if (process.exitValue() != 0) {
+            throw new IllegalStateException(name + " failed, see " + workDir.resolve(name + ".log"));
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.eyxpoliba.emotion_recognition.cohort;
+
+import java.util.Map;
+
+/**
+ * @param users      participants matching the demographic filters
+ * @param reactions  stored reactions matching all filters
+ * @param byReaction the matching reactions broken down by reaction label
+ */
+public record CohortCounts(long users, long reactions, Map<String, Long> byReaction) {
+}
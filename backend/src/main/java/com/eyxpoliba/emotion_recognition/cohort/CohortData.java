@@ -0,0 +1,204 @@
+package com.eyxpoliba.emotion_recognition.cohort;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Compressed bitmaps over dense ordinals: every participant gets a user ordinal and every stored reaction a
+ * reaction ordinal, in arrival order. For each age band, gender and nationality there is a bitmap of user
+ * ordinals (cohort sizes) and one of reaction ordinals (what that cohort reacted); images and reaction labels
+ * have reaction-ordinal bitmaps. A slice is then an OR within each dimension and an AND across dimensions.
+ * <p>
+ * Not thread-safe; {@link CohortIndex} guards it with a read/write lock.
+ */
+class CohortData {
+
+    record Demographics(String ageBand, String gender, String nationality) {
+        static final Demographics UNKNOWN = new Demographics(null, null, null);
+    }
+
+    enum Dimension { AGE_BAND, GENDER, NATIONALITY }
+
+    private final Map<Long, Integer> userOrdinals = new HashMap<>();
+    private final List<Demographics> demographics = new ArrayList<>();
+    private final List<RoaringBitmap> reactionsByUser = new ArrayList<>();
+    private int reactionCount;
+
+    private final Map<Dimension, Map<String, RoaringBitmap>> usersByValue = new HashMap<>();
+    private final Map<Dimension, Map<String, RoaringBitmap>> reactionsByValue = new HashMap<>();
+    private final Map<String, RoaringBitmap> reactionsByLabel = new TreeMap<>();
+    private final Map<String, RoaringBitmap> reactionsByImage = new HashMap<>();
+
+    CohortData() {
+        for (Dimension dimension : Dimension.values()) {
+            usersByValue.put(dimension, new TreeMap<>());
+            reactionsByValue.put(dimension, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Bands used for {@code UserEntity.age}; 0 or negative means the age was not given.
+     */
+    static String ageBand(int age) {
+        if (age <= 0) return null;
+        if (age < 18) return "0-17";
+        if (age < 25) return "18-24";
+        if (age < 35) return "25-34";
+        if (age < 45) return "35-44";
+        if (age < 55) return "45-54";
+        if (age < 65) return "55-64";
+        return "65+";
+    }
+
+    static Demographics demographics(int age, String gender, String nationality) {
+        return new Demographics(ageBand(age), normalise(gender), normalise(nationality));
+    }
+
+    private static String normalise(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    private int userOrdinal(long userId) {
+        Integer ordinal = userOrdinals.get(userId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        // Reactions may arrive for a participant whose login was handled by another instance
+        int assigned = demographics.size();
+        userOrdinals.put(userId, assigned);
+        demographics.add(Demographics.UNKNOWN);
+        reactionsByUser.add(new RoaringBitmap());
+        return assigned;
+    }
+
+    void upsertUser(long userId, Demographics profile) {
+        int user = userOrdinal(userId);
+        Demographics previous = demographics.get(user);
+        if (previous.equals(profile)) {
+            return;
+        }
+        RoaringBitmap reactions = reactionsByUser.get(user);
+        for (Dimension dimension : Dimension.values()) {
+            String before = value(previous, dimension);
+            String after = value(profile, dimension);
+            if (Objects.equals(before, after)) {
+                continue;
+            }
+            if (before != null) {
+                usersByValue.get(dimension).get(before).remove(user);
+                reactionsByValue.get(dimension).get(before).andNot(reactions);
+            }
+            if (after != null) {
+                usersByValue.get(dimension).computeIfAbsent(after, key -> new RoaringBitmap()).add(user);
+                reactionsByValue.get(dimension).computeIfAbsent(after, key -> new RoaringBitmap()).or(reactions);
+            }
+        }
+        demographics.set(user, profile);
+    }
+
+    void addReaction(long userId, String image, String label) {
+        int user = userOrdinal(userId);
+        int reaction = reactionCount++;
+        reactionsByUser.get(user).add(reaction);
+        if (label != null) {
+            reactionsByLabel.computeIfAbsent(label, key -> new RoaringBitmap()).add(reaction);
+        }
+        if (image != null) {
+            reactionsByImage.computeIfAbsent(image, key -> new RoaringBitmap()).add(reaction);
+        }
+        Demographics profile = demographics.get(user);
+        for (Dimension dimension : Dimension.values()) {
+            String value = value(profile, dimension);
+            if (value != null) {
+                reactionsByValue.get(dimension).computeIfAbsent(value, key -> new RoaringBitmap()).add(reaction);
+            }
+        }
+    }
+
+    private static String value(Demographics profile, Dimension dimension) {
+        return switch (dimension) {
+            case AGE_BAND -> profile.ageBand();
+            case GENDER -> profile.gender();
+            case NATIONALITY -> profile.nationality();
+        };
+    }
+
+    CohortCounts count(CohortQuery query) {
+        RoaringBitmap users = RoaringBitmap.bitmapOfRange(0, demographics.size());
+        RoaringBitmap reactions = RoaringBitmap.bitmapOfRange(0, reactionCount);
+        for (Dimension dimension : Dimension.values()) {
+            Collection<String> values = query.values(dimension);
+            if (!values.isEmpty()) {
+                users.and(union(usersByValue.get(dimension), values));
+                reactions.and(union(reactionsByValue.get(dimension), values));
+            }
+        }
+        if (!query.images().isEmpty()) {
+            reactions.and(union(reactionsByImage, query.images()));
+        }
+        if (!query.reactions().isEmpty()) {
+            reactions.and(union(reactionsByLabel, query.reactions()));
+        }
+
+        Map<String, Long> byReaction = new TreeMap<>();
+        reactionsByLabel.forEach((label, bitmap) -> {
+            long count = RoaringBitmap.andCardinality(reactions, bitmap);
+            if (count > 0) {
+                byReaction.put(label, count);
+            }
+        });
+        return new CohortCounts(users.getLongCardinality(), reactions.getLongCardinality(), byReaction);
+    }
+
+    private static RoaringBitmap union(Map<String, RoaringBitmap> bitmaps, Collection<String> values) {
+        RoaringBitmap[] selected = values.stream()
+                .map(bitmaps::get)
+                .filter(Objects::nonNull)
+                .toArray(RoaringBitmap[]::new);
+        return selected.length == 0 ? new RoaringBitmap() : FastAggregation.or(selected);
+    }
+
+    int userCount() {
+        return demographics.size();
+    }
+
+    int reactionCount() {
+        return reactionCount;
+    }
+
+    long sizeInBytes() {
+        long bytes = 0;
+        for (Map<String, RoaringBitmap> bitmaps : usersByValue.values()) {
+            bytes += sizeInBytes(bitmaps.values());
+        }
+        for (Map<String, RoaringBitmap> bitmaps : reactionsByValue.values()) {
+            bytes += sizeInBytes(bitmaps.values());
+        }
+        return bytes + sizeInBytes(reactionsByLabel.values()) + sizeInBytes(reactionsByImage.values())
+                + sizeInBytes(reactionsByUser);
+    }
+
+    private static long sizeInBytes(Collection<RoaringBitmap> bitmaps) {
+        long bytes = 0;
+        for (RoaringBitmap bitmap : bitmaps) {
+            bytes += bitmap.getLongSizeInBytes();
+        }
+        return bytes;
+    }
+
+    void runOptimize() {
+        usersByValue.values().forEach(bitmaps -> bitmaps.values().forEach(RoaringBitmap::runOptimize));
+        reactionsByValue.values().forEach(bitmaps -> bitmaps.values().forEach(RoaringBitmap::runOptimize));
+        reactionsByLabel.values().forEach(RoaringBitmap::runOptimize);
+        reactionsByImage.values().forEach(RoaringBitmap::runOptimize);
+        reactionsByUser.forEach(RoaringBitmap::runOptimize);
+    }
+}
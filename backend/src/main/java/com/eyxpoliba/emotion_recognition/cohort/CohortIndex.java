@@ -0,0 +1,195 @@
+package com.eyxpoliba.emotion_recognition.cohort;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.service.UserProfileEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory cohort engine over {@link CohortData}. It is built from {@code users} and {@code user_reactions} once
+ * the application is ready, then kept current from login and register-result events, so a slice is answered
+ * from bitmaps instead of a join with string predicates.
+ * <p>
+ * Every {@code rebuild-ms} the bitmaps are rebuilt from the database (picking up writes handled by other
+ * instances) and swapped in. The events that arrive once the rebuild has started are replayed on the new bitmaps,
+ * except register-result events whose last row the scan already read.
+ */
+@Slf4j
+@Component
+public class CohortIndex {
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardedReactionsRepository shardedReactionsRepository;
+    private final boolean enabled;
+    private final long rebuildMs;
+    private final Timer queryTimer;
+    private final Timer rebuildTimer;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("cohort-rebuild").factory());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private CohortData data;
+    private List<Object> eventsDuringRebuild;
+    private volatile long sizeInBytes;
+
+    public CohortIndex(JdbcTemplate jdbcTemplate,
+                       ShardedReactionsRepository shardedReactionsRepository,
+                       MeterRegistry meterRegistry,
+                       @Value("${app.cohort.enabled:true}") boolean enabled,
+                       @Value("${app.cohort.rebuild-ms:600000}") long rebuildMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardedReactionsRepository = shardedReactionsRepository;
+        this.enabled = enabled;
+        this.rebuildMs = rebuildMs;
+        this.queryTimer = Timer.builder("cohort.query")
+                .description("Cohort count answered from the bitmap index")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("cohort.rebuild")
+                .description("Full rebuild of the cohort index from the database")
+                .register(meterRegistry);
+        Gauge.builder("cohort.index.bytes", this, index -> index.sizeInBytes)
+                .description("Serialized size of the cohort bitmaps")
+                .register(meterRegistry);
+    }
+
+    // After Flyway has run and before the instance reports ready for traffic
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::rebuildSafely, 0, rebuildMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return data != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the counts, or null while the index has not been built yet
+     */
+    public CohortCounts count(CohortQuery query) {
+        long start = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return data == null ? null : data.count(query);
+        } finally {
+            lock.readLock().unlock();
+            queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @EventListener
+    public void onUserProfile(UserProfileEvent event) {
+        apply(event);
+    }
+
+    @EventListener
+    public void onReactionsRegistered(ReactionsRegisteredEvent event) {
+        apply(event);
+    }
+
+    private void apply(Object event) {
+        lock.writeLock().lock();
+        try {
+            if (eventsDuringRebuild != null) {
+                eventsDuringRebuild.add(event);
+            }
+            if (data != null) {
+                apply(data, event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void apply(CohortData target, Object event) {
+        if (event instanceof UserProfileEvent profile) {
+            target.upsertUser(profile.userId(), CohortData.demographics(profile.age(), profile.gender(), profile.nationality()));
+        } else if (event instanceof ReactionsRegisteredEvent registered) {
+            for (ReactionsRegisteredEvent.Reaction reaction : registered.reactions()) {
+                target.addReaction(registered.userId(), reaction.image(), reaction.reaction());
+            }
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Cohort index rebuild failed: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                eventsDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    void rebuild() {
+        lock.writeLock().lock();
+        try {
+            eventsDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.nanoTime();
+        CohortData fresh = new CohortData();
+        jdbcTemplate.query("SELECT id, age, gender, nationality FROM users", resultSet -> {
+            fresh.upsertUser(resultSet.getLong("id"), CohortData.demographics(
+                    resultSet.getInt("age"), resultSet.getString("gender"), resultSet.getString("nationality")));
+        });
+        // Reaction ordinals follow insertion order within each shard, like the ones assigned to live events
+        ShardedReactionsRepository.Scanned scanned = shardedReactionsRepository.forEachReaction(resultSet -> {
+            fresh.addReaction(resultSet.getLong("user_id"), resultSet.getString("image"), resultSet.getString("image_reaction"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            for (Object event : eventsDuringRebuild) {
+                if (!(event instanceof ReactionsRegisteredEvent registered)
+                        || !scanned.contains(registered.shard(), registered.lastRowId())) {
+                    apply(fresh, event);
+                }
+            }
+            eventsDuringRebuild = null;
+            fresh.runOptimize();
+            data = fresh;
+            sizeInBytes = fresh.sizeInBytes();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Cohort index built: {} users, {} reactions, {} bytes in {} ms",
+                fresh.userCount(), fresh.reactionCount(), sizeInBytes, TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+}
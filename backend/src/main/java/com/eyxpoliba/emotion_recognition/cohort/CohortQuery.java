@@ -0,0 +1,34 @@
+package com.eyxpoliba.emotion_recognition.cohort;
+
+import java.util.List;
+
+/**
+ * A demographic x reaction slice. Values within one field are alternatives (OR), fields are combined with AND;
+ * an empty field does not filter. Age bands are the labels returned by the index, e.g. {@code 25-34} or {@code 65+}.
+ */
+public record CohortQuery(List<String> ageBands,
+                          List<String> genders,
+                          List<String> nationalities,
+                          List<String> reactions,
+                          List<String> images) {
+
+    public CohortQuery {
+        ageBands = orEmpty(ageBands);
+        genders = orEmpty(genders);
+        nationalities = orEmpty(nationalities);
+        reactions = orEmpty(reactions);
+        images = orEmpty(images);
+    }
+
+    private static List<String> orEmpty(List<String> values) {
+        return values == null ? List.of() : List.copyOf(values);
+    }
+
+    List<String> values(CohortData.Dimension dimension) {
+        return switch (dimension) {
+            case AGE_BAND -> ageBands;
+            case GENDER -> genders;
+            case NATIONALITY -> nationalities;
+        };
+    }
+}
@@ -0,0 +1,41 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * One {@link Bulkhead} per dependency of the request path, so a slow dependency only degrades the endpoints
+ * that call it: storage (blob listing and downloads), the database (login upsert, logout, result submission)
+ * and token signing (CPU-bound, sized to the cores). Inject them with {@code @Qualifier} by bean name.
+ */
+@Configuration
+public class BulkheadConfig {
+
+    @Bean
+    public Bulkhead storageBulkhead(MeterRegistry meterRegistry,
+                                    @Value("${app.bulkhead.storage.max-concurrent:100}") int maxConcurrent,
+                                    @Value("${app.bulkhead.storage.max-queue:100}") int maxQueue,
+                                    @Value("${app.bulkhead.storage.max-wait-ms:500}") long maxWaitMs) {
+        return new Bulkhead("storage", maxConcurrent, maxQueue, maxWaitMs, meterRegistry);
+    }
+
+    @Bean
+    public Bulkhead databaseBulkhead(MeterRegistry meterRegistry,
+                                     @Value("${app.bulkhead.database.max-concurrent:${spring.datasource.hikari.maximumPoolSize:10}}") int maxConcurrent,
+                                     @Value("${app.bulkhead.database.max-queue:200}") int maxQueue,
+                                     @Value("${app.bulkhead.database.max-wait-ms:2000}") long maxWaitMs) {
+        return new Bulkhead("database", maxConcurrent, maxQueue, maxWaitMs, meterRegistry);
+    }
+
+    @Bean
+    public Bulkhead cryptoBulkhead(MeterRegistry meterRegistry,
+                                   @Value("${app.bulkhead.crypto.max-concurrent:0}") int maxConcurrent,
+                                   @Value("${app.bulkhead.crypto.max-queue:500}") int maxQueue,
+                                   @Value("${app.bulkhead.crypto.max-wait-ms:1000}") long maxWaitMs) {
+        int permits = maxConcurrent > 0 ? maxConcurrent : Runtime.getRuntime().availableProcessors();
+        return new Bulkhead("crypto", permits, maxQueue, maxWaitMs, meterRegistry);
+    }
+}
@@ -0,0 +1,42 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * Wraps the Hikari pool in a {@link BoundedDataSource} sized to {@code maximumPoolSize}.
+ * Enabled with {@code app.datasource.guard.enabled=true} (on by default in the "virtual" profile).
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.datasource.guard.enabled", havingValue = "true")
+public class DataSourceGuardConfig {
+
+    @Bean
+    public static BeanPostProcessor dataSourceGuardPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikari) {
+                    BoundedDataSource guarded = new BoundedDataSource(hikari, hikari.getMaximumPoolSize(),
+                            hikari.getConnectionTimeout());
+                    meterRegistry.ifAvailable(registry -> {
+                        Gauge.builder("datasource.guard.available", guarded, BoundedDataSource::availablePermits)
+                                .register(registry);
+                        Gauge.builder("datasource.guard.waiting", guarded, BoundedDataSource::queueLength)
+                                .register(registry);
+                    });
+                    return guarded;
+                }
+                return bean;
+            }
+        };
+    }
+}
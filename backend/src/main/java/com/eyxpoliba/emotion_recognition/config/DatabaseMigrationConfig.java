@@ -0,0 +1,31 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+public class DatabaseMigrationConfig {
+
+    /**
+     * Applies pending migrations at startup unless app.db.migrate-on-start=false. The switch is read at runtime,
+     * unlike spring.flyway.enabled, which is fixed when the image is AOT-processed.
+     */
+    @Bean
+    public FlywayMigrationStrategy flywayMigrationStrategy(@Value("${app.db.migrate-on-start:true}") boolean migrateOnStart) {
+        return flyway -> {
+            if (!migrateOnStart) {
+                log.info("Skipping database migrations (app.db.migrate-on-start=false)");
+                return;
+            }
+            MigrateResult result = flyway.migrate();
+            log.info("Database schema at version {} ({} migrations applied)",
+                    result.targetSchemaVersion != null ? result.targetSchemaVersion : result.initialSchemaVersion,
+                    result.migrationsExecuted);
+        };
+    }
+}
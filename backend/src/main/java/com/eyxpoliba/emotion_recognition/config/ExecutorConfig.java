@@ -0,0 +1,20 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+public class ExecutorConfig {
+
+    /**
+     * Runs the independent login stages (user upsert, token signing, image sampling).
+     * Each stage is blocking I/O or short CPU work, so one virtual thread per task is enough.
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService loginExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("login-", 0).factory());
+    }
+}
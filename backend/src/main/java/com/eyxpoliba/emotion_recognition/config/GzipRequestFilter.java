@@ -0,0 +1,197 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Accepts request bodies sent with {@code Content-Encoding: gzip}. The body is inflated while it is read, so
+ * nothing is buffered, and reading stops with an error once more than {@code max-inflated-bytes} come out
+ * (a small compressed body can expand enormously). Any other encoding is answered with 415.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class GzipRequestFilter extends OncePerRequestFilter {
+    private final long maxInflatedBytes;
+
+    public GzipRequestFilter(@Value("${app.wire.gzip.max-inflated-bytes:10485760}") long maxInflatedBytes) {
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        return encoding == null || encoding.isBlank() || encoding.trim().equalsIgnoreCase("identity");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING).trim();
+        if (!encoding.equalsIgnoreCase("gzip") && !encoding.equalsIgnoreCase("x-gzip")) {
+            response.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            response.sendError(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "Unsupported Content-Encoding: " + encoding);
+            return;
+        }
+        filterChain.doFilter(new InflatingRequest(request, maxInflatedBytes), response);
+    }
+
+    static final class InflatedBodyTooLargeException extends IOException {
+        InflatedBodyTooLargeException(long maxInflatedBytes) {
+            super("Request body inflates to more than " + maxInflatedBytes + " bytes");
+        }
+    }
+
+    private static final class InflatingRequest extends HttpServletRequestWrapper {
+        private final long maxInflatedBytes;
+        private ServletInputStream inputStream;
+        private BufferedReader reader;
+
+        InflatingRequest(HttpServletRequest request, long maxInflatedBytes) {
+            super(request);
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (reader != null) {
+                throw new IllegalStateException("getReader() has already been called");
+            }
+            if (inputStream == null) {
+                inputStream = new InflatingInputStream(super.getInputStream(), maxInflatedBytes);
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                String encoding = getCharacterEncoding();
+                Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+                reader = new BufferedReader(new InputStreamReader(getInputStream(), charset));
+            }
+            return reader;
+        }
+
+        // The wrapped body no longer matches the length and encoding the client declared
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                    .filter(name -> !isHidden(name))
+                    .toList());
+        }
+
+        @Override
+        public int getIntHeader(String name) {
+            return isHidden(name) ? -1 : super.getIntHeader(name);
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    private static final class InflatingInputStream extends ServletInputStream {
+        private final ServletInputStream compressed;
+        private final long maxInflatedBytes;
+        private InputStream inflated;
+        private long inflatedBytes;
+        private boolean finished;
+
+        InflatingInputStream(ServletInputStream compressed, long maxInflatedBytes) {
+            this.compressed = compressed;
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (inflated == null) {
+                // Opened lazily: the gzip header is only read once the handler reads the body
+                inflated = new GZIPInputStream(compressed, 8192);
+            }
+            int read = inflated.read(buffer, offset, length);
+            if (read == -1) {
+                finished = true;
+                return -1;
+            }
+            inflatedBytes += read;
+            if (inflatedBytes > maxInflatedBytes) {
+                throw new InflatedBodyTooLargeException(maxInflatedBytes);
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException("Inflated request bodies are read blocking");
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inflated != null) {
+                inflated.close();
+            } else {
+                compressed.close();
+            }
+        }
+    }
+}
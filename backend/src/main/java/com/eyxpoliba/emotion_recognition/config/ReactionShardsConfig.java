@@ -0,0 +1,76 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.eyxpoliba.emotion_recognition.sharding.ReactionResharder;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shards for {@code user_reactions}: the primary database plus one pool per URL in {@code app.reactions.shards.urls}.
+ * Extra shards get their schema from {@code db/shard/{vendor}} on startup, under the same switch as the primary's
+ * migrations.
+ */
+@Slf4j
+@Configuration
+public class ReactionShardsConfig {
+
+    @Bean(destroyMethod = "stop")
+    public ReactionShards reactionShards(DataSource dataSource,
+                                         @Value("${app.reactions.shards.urls:}") List<String> urls,
+                                         @Value("${app.reactions.shards.username:}") String username,
+                                         @Value("${app.reactions.shards.password:}") String password,
+                                         @Value("${app.reactions.shards.maximum-pool-size:10}") int maximumPoolSize,
+                                         @Value("${app.reactions.shards.layout-refresh-ms:5000}") long layoutRefreshMs,
+                                         @Value("${app.reactions.shards.freeze-wait-ms:10000}") long freezeWaitMs,
+                                         @Value("${DB_VENDOR:sqlserver}") String vendor,
+                                         @Value("${app.db.migrate-on-start:true}") boolean migrateOnStart,
+                                         MeterRegistry meterRegistry) {
+        List<DataSource> dataSources = new ArrayList<>();
+        dataSources.add(dataSource);
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource shard = DataSourceBuilder.create().type(HikariDataSource.class)
+                    .url(url.trim()).username(username).password(password).build();
+            shard.setPoolName("shard-" + dataSources.size());
+            shard.setMaximumPoolSize(maximumPoolSize);
+            shard.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            if (migrateOnStart) {
+                Flyway.configure().dataSource(shard).locations("classpath:db/shard/" + vendor).load().migrate();
+            }
+            dataSources.add(shard);
+        }
+        if (dataSources.size() > 1) {
+            log.info("user_reactions spread over {} shards", dataSources.size());
+        }
+        return new ReactionShards(dataSources, meterRegistry, layoutRefreshMs, freezeWaitMs);
+    }
+
+    @Bean
+    public ReactionResharder reactionResharder(ReactionShards reactionShards,
+                                               MeterRegistry meterRegistry,
+                                               @Value("${app.reactions.shards.grace-ms:7000}") long graceMs,
+                                               @Value("${app.reactions.shards.copy-batch-size:1000}") int copyBatchSize) {
+        return new ReactionResharder(reactionShards, meterRegistry, graceMs, copyBatchSize);
+    }
+
+    // The layout table is created by the primary's migrations, which have run by now
+    @EventListener(ApplicationReadyEvent.class)
+    public void startShardLayout(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBean(ReactionShards.class).start();
+    }
+}
@@ -0,0 +1,98 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayDataSource;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+/**
+ * Read/write split: {@code @Transactional(readOnly = true)} work (statistics, exports, dashboards) is served by a
+ * separate replica pool when {@code app.datasource.replica.url} is set, so analytic scans cannot take connections
+ * from login and register-result. Everything else, and all reads while the replica lags more than
+ * {@code max-staleness-ms} or is down, uses the primary pool.
+ * <p>
+ * The replica switch is read at runtime rather than through a bean condition, so it also works in the AOT image.
+ */
+@Slf4j
+@Configuration
+public class ReadWriteDataSourceConfig {
+
+    @Bean
+    @FlywayDataSource
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Defers borrowing a pooled connection until the first statement, when the transaction manager has already
+     * marked it read-only; that flag is what selects the read-only target.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 ObjectProvider<ReplicaFallbackDataSource> readOnlyDataSource) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primaryDataSource);
+        // Explicit defaults, otherwise the proxy borrows a connection at startup to read them
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        readOnlyDataSource.ifAvailable(proxy::setReadOnlyDataSource);
+        return proxy;
+    }
+
+    /**
+     * @return the replica with primary fallback, or no bean when no replica is configured.
+     */
+    @Bean(destroyMethod = "close")
+    public ReplicaFallbackDataSource readOnlyDataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                                        @Value("${app.datasource.replica.url:}") String url,
+                                                        @Value("${app.datasource.replica.username:}") String username,
+                                                        @Value("${app.datasource.replica.password:}") String password,
+                                                        @Value("${app.datasource.replica.maximum-pool-size:10}") int maximumPoolSize,
+                                                        @Value("${app.datasource.replica.max-staleness-ms:5000}") long maxStalenessMs,
+                                                        @Value("${app.datasource.replica.heartbeat-interval-ms:1000}") long heartbeatIntervalMs,
+                                                        MeterRegistry meterRegistry) {
+        if (url.isBlank()) {
+            return null;
+        }
+        HikariDataSource replica = DataSourceBuilder.create().type(HikariDataSource.class)
+                .url(url).username(username).password(password).build();
+        replica.setPoolName("replica");
+        replica.setMaximumPoolSize(maximumPoolSize);
+        replica.setReadOnly(true);
+        replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(primaryDataSource, replica, maxStalenessMs,
+                heartbeatIntervalMs, System::currentTimeMillis);
+        Gauge.builder("datasource.replica.lag", monitor, ReplicaLagMonitor::getLagMillis)
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("datasource.replica.usable", monitor, m -> m.isReplicaUsable() ? 1 : 0).register(meterRegistry);
+        log.info("Read-only transactions go to the replica pool (max staleness {} ms)", maxStalenessMs);
+        return new ReplicaFallbackDataSource(primaryDataSource, replica, monitor, meterRegistry);
+    }
+
+    // After the migrations, which create the heartbeat table; until then reads stay on the primary
+    @EventListener(ApplicationReadyEvent.class)
+    public void startReplicaLagMonitor(ApplicationReadyEvent event) {
+        event.getApplicationContext().getBeanProvider(ReplicaFallbackDataSource.class)
+                .ifAvailable(ReplicaFallbackDataSource::startMonitor);
+    }
+}
@@ -0,0 +1,64 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Target for read-only connections: the replica while {@link ReplicaLagMonitor} reports it usable,
+ * the primary otherwise or when the replica refuses a connection.
+ */
+public class ReplicaFallbackDataSource extends AbstractDataSource implements AutoCloseable {
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaLagMonitor monitor;
+    private final Counter replicaRoutes;
+    private final Counter primaryRoutes;
+
+    public ReplicaFallbackDataSource(DataSource primary, DataSource replica, ReplicaLagMonitor monitor, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replica = replica;
+        this.monitor = monitor;
+        this.replicaRoutes = meterRegistry.counter("datasource.readonly.route", "target", "replica");
+        this.primaryRoutes = meterRegistry.counter("datasource.readonly.route", "target", "primary");
+    }
+
+    public void startMonitor() {
+        monitor.start();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (monitor.isReplicaUsable()) {
+            try {
+                Connection connection = replica.getConnection();
+                replicaRoutes.increment();
+                return connection;
+            } catch (SQLException e) {
+                monitor.markUnavailable(e);
+            }
+        }
+        primaryRoutes.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("Credentials are configured per pool");
+    }
+
+    /**
+     * Stops the lag monitor and closes the replica pool; the primary belongs to the application context.
+     */
+    @Override
+    public void close() throws Exception {
+        monitor.close();
+        if (replica instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
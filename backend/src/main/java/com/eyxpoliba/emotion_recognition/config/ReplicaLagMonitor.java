@@ -0,0 +1,94 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures replication lag with a heartbeat: every interval the primary's replication_heartbeat row is set to the
+ * current time and read back from the replica. The replica is usable while now - replica heartbeat stays within
+ * {@code maxStalenessMs} (so that bound should exceed the interval); it is not usable before the first successful
+ * read, or after a failure to read it or to connect to it.
+ */
+@Slf4j
+public class ReplicaLagMonitor implements AutoCloseable {
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxStalenessMs;
+    private final long intervalMs;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("replica-lag-monitor").factory());
+
+    private volatile long lagMillis = -1;
+    private volatile boolean usable;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, long maxStalenessMs, long intervalMs, LongSupplier clock) {
+        this.primary = primary;
+        this.replica = replica;
+        this.maxStalenessMs = maxStalenessMs;
+        this.intervalMs = intervalMs;
+        this.clock = clock;
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::beat, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void beat() {
+        try (Connection connection = primary.getConnection();
+             PreparedStatement statement = connection.prepareStatement("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1")) {
+            statement.setLong(1, clock.getAsLong());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            log.warn("Could not write replication heartbeat on the primary: {}", e.getMessage());
+        }
+        try (Connection connection = replica.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT beat_at FROM replication_heartbeat WHERE id = 1");
+             ResultSet resultSet = statement.executeQuery()) {
+            long lag = resultSet.next() ? Math.max(0, clock.getAsLong() - resultSet.getLong(1)) : Long.MAX_VALUE;
+            boolean withinBound = lag <= maxStalenessMs;
+            if (withinBound != usable) {
+                log.info("Read replica {} (lag {} ms, bound {} ms)", withinBound ? "in use" : "bypassed", lag, maxStalenessMs);
+            }
+            lagMillis = lag;
+            usable = withinBound;
+        } catch (SQLException e) {
+            markUnavailable(e);
+        }
+    }
+
+    /**
+     * Stops routing to the replica until the next successful heartbeat read.
+     */
+    public void markUnavailable(SQLException cause) {
+        if (usable) {
+            log.warn("Read replica bypassed: {}", cause.getMessage());
+        }
+        usable = false;
+    }
+
+    public boolean isReplicaUsable() {
+        return usable;
+    }
+
+    /**
+     * @return the last measured lag in milliseconds, or -1 before the first measurement.
+     */
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
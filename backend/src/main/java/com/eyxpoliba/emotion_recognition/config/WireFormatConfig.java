@@ -0,0 +1,50 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Binary alternatives to JSON for the API payloads, picked through the {@code Accept} and {@code Content-Type}
+ * headers: {@code application/x-jackson-smile} and {@code application/cbor}. Both converters replace the defaults
+ * Spring registers when the formats are on the classpath, so they keep their place after JSON and a client
+ * that accepts anything still gets JSON.
+ * <p>
+ * Repeated names and short values (reaction labels, image names) are written once and then referenced:
+ * shared string values for Smile, string references for CBOR.
+ */
+@Configuration
+public class WireFormatConfig {
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(smileMapper(builder));
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(builder));
+    }
+
+    static ObjectMapper smileMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(SmileFactory.builder()
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_NAMES)
+                        .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                        .build())
+                .build();
+    }
+
+    static ObjectMapper cborMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(CBORFactory.builder()
+                        .enable(CBORGenerator.Feature.STRINGREF)
+                        .build())
+                .build();
+    }
+}
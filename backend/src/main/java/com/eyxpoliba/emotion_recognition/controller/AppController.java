@@ -1,16 +1,38 @@
 package com.eyxpoliba.emotion_recognition.controller;
 
+import com.eyxpoliba.emotion_recognition.cohort.CohortCounts;
+import com.eyxpoliba.emotion_recognition.cohort.CohortIndex;
+import com.eyxpoliba.emotion_recognition.cohort.CohortQuery;
+import com.eyxpoliba.emotion_recognition.dashboard.DashboardStream;
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
+import com.eyxpoliba.emotion_recognition.outbox.ChangeBatch;
+import com.eyxpoliba.emotion_recognition.outbox.ReactionChangeFeed;
+import com.eyxpoliba.emotion_recognition.payload.AdminLoginPayload;
 import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
 import com.eyxpoliba.emotion_recognition.responses.LoginResponse;
+import com.eyxpoliba.emotion_recognition.search.ReactionSearchIndex;
+import com.eyxpoliba.emotion_recognition.search.SearchResults;
+import com.eyxpoliba.emotion_recognition.security.AdminAuthenticator;
 import com.eyxpoliba.emotion_recognition.service.AzureStorageService;
+import com.eyxpoliba.emotion_recognition.service.ImageIngestionService;
 import com.eyxpoliba.emotion_recognition.service.ReactionsService;
 import com.eyxpoliba.emotion_recognition.service.UserService;
+import com.eyxpoliba.emotion_recognition.similarity.ImageSimilarityIndex;
+import com.eyxpoliba.emotion_recognition.similarity.ProfileDistance;
+import com.eyxpoliba.emotion_recognition.similarity.SimilarImages;
+import com.eyxpoliba.emotion_recognition.storage.StorageUnavailableException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequiredArgsConstructor
@@ -19,6 +41,13 @@ public class AppController {
     private final UserService userService;
     private final AzureStorageService azureStorageService;
     private final ReactionsService reactionsService;
+    private final DashboardStream dashboardStream;
+    private final CohortIndex cohortIndex;
+    private final ImageIngestionService imageIngestionService;
+    private final ReactionChangeFeed reactionChangeFeed;
+    private final ReactionSearchIndex reactionSearchIndex;
+    private final ImageSimilarityIndex imageSimilarityIndex;
+    private final AdminAuthenticator adminAuthenticator;
 
     @GetMapping("/public/home")
     public ResponseEntity<String> home() {
@@ -30,6 +59,12 @@ public class AppController {
         return userService.login(user, response);
     }
 
+    @PostMapping("/login/admin")
+    public ResponseEntity<Object> adminLogin(@RequestBody AdminLoginPayload credentials, jakarta.servlet.http.HttpServletResponse response) {
+        adminAuthenticator.login(credentials, response);
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/logout")
     public ResponseEntity<Object> logout(jakarta.servlet.http.HttpServletRequest request, jakarta.servlet.http.HttpServletResponse response) {
         return userService.logout(request, response);
@@ -37,11 +72,75 @@ public class AppController {
 
     @GetMapping("/download-image")
     public ResponseEntity<byte[]> downloadImage(@RequestParam String imageName) throws IOException {
-        return ResponseEntity.ok(azureStorageService.downloadImage(imageName));
+        try {
+            return ResponseEntity.ok(azureStorageService.downloadImage(imageName));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (StorageUnavailableException e) {
+            return ResponseEntity.status(503).header(HttpHeaders.RETRY_AFTER, "5").build();
+        }
+    }
+
+    // Raw image bytes as the body (not multipart), so the upload is streamed block by block
+    @PostMapping("/admin/images")
+    public ResponseEntity<Object> ingestImage(@RequestParam String name, jakarta.servlet.http.HttpServletRequest request) throws IOException {
+        return imageIngestionService.ingest(name, request.getInputStream());
     }
 
     @PostMapping("/register-result")
     public ResponseEntity<Object> registerResult(@RequestBody ResultPayload resultPayload) {
         return reactionsService.registerResult(resultPayload);
     }
+
+    // Long poll: with waitMs > 0 an empty batch is only returned once that time has passed
+    @GetMapping("/admin/reactions/changes")
+    public CompletableFuture<ChangeBatch> reactionChanges(@RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "500") int limit,
+                                                          @RequestParam(defaultValue = "0") long waitMs,
+                                                          @RequestParam(required = false) String consumer) {
+        return reactionChangeFeed.read(cursor, limit, waitMs, consumer);
+    }
+
+    @GetMapping(path = "/dashboard/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter dashboardStream() {
+        return dashboardStream.subscribe();
+    }
+
+    @GetMapping("/dashboard/cohorts")
+    public ResponseEntity<Object> cohortCounts(@RequestParam(required = false) List<String> ageBand,
+                                               @RequestParam(required = false) List<String> gender,
+                                               @RequestParam(required = false) List<String> nationality,
+                                               @RequestParam(required = false) List<String> reaction,
+                                               @RequestParam(required = false) List<String> image) {
+        CohortCounts counts = cohortIndex.count(new CohortQuery(ageBand, gender, nationality, reaction, image));
+        if (counts == null) {
+            return ResponseEntity.status(503).body(Map.of("message", "Cohort index is still being built"));
+        }
+        return ResponseEntity.ok(counts);
+    }
+
+    @GetMapping("/dashboard/search")
+    public ResponseEntity<Object> searchReactions(@RequestParam(required = false) String q,
+                                                  @RequestParam(required = false) List<String> image,
+                                                  @RequestParam(required = false) List<String> reaction,
+                                                  @RequestParam(defaultValue = "20") int limit) {
+        SearchResults results = reactionSearchIndex.search(q, image, reaction, limit);
+        if (results == null) {
+            return ResponseEntity.status(503).body(Map.of("message", "Search index is still being built"));
+        }
+        return ResponseEntity.ok(results);
+    }
+
+    @GetMapping("/dashboard/images/similar")
+    public ResponseEntity<Object> similarImages(@RequestParam String image,
+                                                @RequestParam(defaultValue = "10") int k,
+                                                @RequestParam(defaultValue = "COSINE") ProfileDistance distance,
+                                                @RequestParam(defaultValue = "false") boolean exact,
+                                                @RequestParam(defaultValue = "1") int minReactions) {
+        SimilarImages similar = imageSimilarityIndex.similarTo(image, k, distance, exact, minReactions);
+        if (similar == null) {
+            return ResponseEntity.status(503).body(Map.of("message", "Image similarity index is still being built"));
+        }
+        return ResponseEntity.ok(similar);
+    }
 }
@@ -0,0 +1,305 @@
+package com.eyxpoliba.emotion_recognition.dashboard;
+
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.service.StatisticsService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Live reaction aggregates for the admin dashboard over Server-Sent Events.
+ * <p>
+ * Submissions arrive as {@link ReactionsRegisteredEvent}s and are summed into a pending delta; once per tick
+ * the delta is applied to the running totals, serialised once and queued to every viewer. A viewer first gets a
+ * {@code snapshot} event and then {@code delta} events with increasing ids, so the table is queried once per
+ * instance rather than once per viewer. Every {@code resync-ms} the totals are re-read from the database and
+ * any difference (writes handled by other instances) goes out as an ordinary delta.
+ * <p>
+ * Each viewer has a bounded queue drained by its own sender thread. A viewer whose queue is full is
+ * disconnected instead of slowing the tick; the browser's EventSource reconnects and starts from a new snapshot.
+ */
+@Slf4j
+@Component
+public class DashboardStream {
+
+    /**
+     * Where one viewer's events are written; the SSE response in production.
+     */
+    interface EventSink {
+        // A null name sends data as an SSE comment (keep-alive)
+        void send(String name, long id, String data) throws IOException;
+
+        void close();
+    }
+
+    private record Event(String name, long id, String data) {
+    }
+
+    private final StatisticsService statisticsService;
+    private final ObjectMapper objectMapper;
+    private final long tickMs;
+    private final long resyncMs;
+    private final long heartbeatMs;
+    private final int bufferSize;
+    private final long emitterTimeoutMs;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("dashboard-tick").factory());
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Counter droppedCounter;
+    private final Counter publishedCounter;
+
+    private final Object pendingLock = new Object();
+    private Map<String, Long> pending = new HashMap<>();
+
+    // Guarded by this
+    private Map<String, Long> totals = new TreeMap<>();
+    private boolean loaded;
+    private long sequence;
+    private long lastSyncAt;
+    private long lastSentAt;
+
+    public DashboardStream(StatisticsService statisticsService,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.dashboard.tick-ms:1000}") long tickMs,
+                           @Value("${app.dashboard.resync-ms:60000}") long resyncMs,
+                           @Value("${app.dashboard.heartbeat-ms:15000}") long heartbeatMs,
+                           @Value("${app.dashboard.client-buffer:32}") int bufferSize,
+                           @Value("${app.dashboard.emitter-timeout-ms:1800000}") long emitterTimeoutMs) {
+        this.statisticsService = statisticsService;
+        this.objectMapper = objectMapper;
+        this.tickMs = tickMs;
+        this.resyncMs = resyncMs;
+        this.heartbeatMs = heartbeatMs;
+        this.bufferSize = bufferSize;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+
+        Gauge.builder("dashboard.subscribers", subscribers, Set::size)
+                .description("Connected dashboard viewers")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("dashboard.subscribers.dropped")
+                .description("Viewers disconnected because their event buffer was full")
+                .register(meterRegistry);
+        this.publishedCounter = Counter.builder("dashboard.deltas.published")
+                .description("Aggregate deltas computed and fanned out")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::tickSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+    }
+
+    @EventListener
+    public void onReactionsRegistered(ReactionsRegisteredEvent event) {
+        synchronized (pendingLock) {
+            event.countsByReaction().forEach((reaction, count) -> pending.merge(reaction, count, Long::sum));
+        }
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = subscribe(new EventSink() {
+            @Override
+            public void send(String name, long id, String data) throws IOException {
+                if (name == null) {
+                    emitter.send(SseEmitter.event().comment(data));
+                } else {
+                    emitter.send(SseEmitter.event().name(name).id(Long.toString(id)).data(data, MediaType.APPLICATION_JSON));
+                }
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        return emitter;
+    }
+
+    synchronized Subscriber subscribe(EventSink sink) {
+        if (!loaded) {
+            // Pending deltas are already part of what the database returns
+            drainPending();
+            resync();
+        }
+        Subscriber subscriber = new Subscriber(sink);
+        subscriber.offer(new Event("snapshot", sequence, toJson(Map.of("seq", sequence, "totals", totals, "total", sum(totals)))));
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    private void tickSafely() {
+        try {
+            tick();
+        } catch (RuntimeException e) {
+            log.warn("Dashboard tick failed: {}", e.getMessage());
+        }
+    }
+
+    synchronized void tick() {
+        Map<String, Long> delta = drainPending();
+        if (subscribers.isEmpty()) {
+            // Nobody is watching: stop maintaining totals and reload them for the next viewer
+            loaded = false;
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastSyncAt >= resyncMs) {
+            Map<String, Long> before = totals;
+            resync();
+            delta = difference(totals, before);
+        } else {
+            delta.forEach((reaction, count) -> totals.merge(reaction, count, Long::sum));
+        }
+
+        if (!delta.isEmpty()) {
+            sequence++;
+            publishedCounter.increment();
+            fanOut(new Event("delta", sequence, toJson(Map.of("seq", sequence, "reactions", delta, "total", sum(totals)))));
+            lastSentAt = now;
+        } else if (now - lastSentAt >= heartbeatMs) {
+            fanOut(new Event(null, sequence, "keep-alive"));
+            lastSentAt = now;
+        }
+    }
+
+    private void resync() {
+        Map<String, Long> fresh = new TreeMap<>();
+        statisticsService.reactionDistribution().forEach((reaction, count) -> {
+            if (reaction != null) {
+                fresh.put(reaction, count);
+            }
+        });
+        totals = fresh;
+        loaded = true;
+        lastSyncAt = System.currentTimeMillis();
+    }
+
+    private Map<String, Long> drainPending() {
+        synchronized (pendingLock) {
+            Map<String, Long> drained = pending;
+            pending = new HashMap<>();
+            return drained;
+        }
+    }
+
+    private void fanOut(Event event) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                droppedCounter.increment();
+                log.info("Dropping slow dashboard viewer ({} events buffered)", bufferSize);
+                subscriber.close();
+            }
+        }
+    }
+
+    private static Map<String, Long> difference(Map<String, Long> after, Map<String, Long> before) {
+        Map<String, Long> delta = new LinkedHashMap<>();
+        after.forEach((reaction, count) -> {
+            long change = count - before.getOrDefault(reaction, 0L);
+            if (change != 0) {
+                delta.put(reaction, change);
+            }
+        });
+        before.forEach((reaction, count) -> {
+            if (!after.containsKey(reaction)) {
+                delta.put(reaction, -count);
+            }
+        });
+        return delta;
+    }
+
+    private static long sum(Map<String, Long> counts) {
+        return counts.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * One viewer: a bounded event queue and a virtual thread that writes it to the sink.
+     */
+    final class Subscriber {
+        private final EventSink sink;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final Thread sender;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Subscriber(EventSink sink) {
+            this.sink = sink;
+            this.sender = Thread.ofVirtual().name("dashboard-sender").start(this::drain);
+        }
+
+        boolean offer(Event event) {
+            return queue.offer(event);
+        }
+
+        private void drain() {
+            try {
+                while (!closed.get()) {
+                    Event event = queue.take();
+                    sink.send(event.name(), event.id(), event.data());
+                }
+            } catch (InterruptedException ignored) {
+                // closed
+            } catch (IOException | RuntimeException e) {
+                log.debug("Dashboard viewer disconnected: {}", e.getMessage());
+                close();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            subscribers.remove(this);
+            sender.interrupt();
+            sink.close();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+/**
+ * One result of the text emotion classifier, e.g. {@code joy} with score 0.98.
+ */
+public record Classification(String label, double score) {
+}
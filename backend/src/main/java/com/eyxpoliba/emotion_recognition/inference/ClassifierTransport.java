@@ -0,0 +1,11 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Sends one batch of texts to the classifier. Results are returned in input order, one per text.
+ */
+public interface ClassifierTransport {
+    List<Classification> classify(List<String> texts) throws IOException, InterruptedException;
+}
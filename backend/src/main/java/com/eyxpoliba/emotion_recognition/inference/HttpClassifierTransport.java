@@ -0,0 +1,106 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+import com.eyxpoliba.emotion_recognition.security.JwtProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON_VALUE;
+
+/**
+ * Calls {@code POST /api/classify/batch} on the video_classifier service. One {@link HttpClient} is shared by
+ * every batch, so HTTP/1.1 connections stay open and are reused from its pool. The service validates the same
+ * HS512 secret as the backend; requests carry a service token signed with it, re-signed before it expires.
+ */
+@Component
+@ConditionalOnProperty(name = "app.inference.mode", havingValue = "http", matchIfMissing = true)
+public class HttpClassifierTransport implements ClassifierTransport {
+    static final String SERVICE_SUBJECT = "backend-inference-gateway";
+    // Access tokens live 60 minutes; re-sign well before the classifier would reject one
+    private static final long TOKEN_REFRESH_MS = 50 * 60_000L;
+
+    private final JwtProvider jwtProvider;
+    private final ObjectMapper objectMapper;
+    private final URI batchUri;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+
+    private volatile String serviceToken;
+    private volatile long serviceTokenSignedAt;
+
+    public HttpClassifierTransport(JwtProvider jwtProvider,
+                                   ObjectMapper objectMapper,
+                                   @Value("${app.inference.url:http://localhost:8000}") String baseUrl,
+                                   @Value("${app.inference.connect-timeout-ms:1000}") long connectTimeoutMs,
+                                   @Value("${app.inference.request-timeout-ms:5000}") long requestTimeoutMs) {
+        this.jwtProvider = jwtProvider;
+        this.objectMapper = objectMapper;
+        this.batchUri = URI.create(baseUrl.replaceAll("/+$", "") + "/api/classify/batch");
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("inference-http-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public List<Classification> classify(List<String> texts) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(batchUri)
+                .timeout(requestTimeout)
+                .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                .header(AUTHORIZATION, "Bearer " + serviceToken())
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(Map.of("texts", texts))))
+                .build();
+
+        HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("Classifier answered " + response.statusCode() + " for a batch of " + texts.size());
+        }
+
+        JsonNode results = objectMapper.readTree(response.body()).path("results");
+        if (results.size() != texts.size()) {
+            throw new IOException("Classifier returned " + results.size() + " results for " + texts.size() + " texts");
+        }
+        List<Classification> classifications = new ArrayList<>(results.size());
+        for (JsonNode result : results) {
+            classifications.add(new Classification(result.path("label").asText(), result.path("score").asDouble()));
+        }
+        return classifications;
+    }
+
+    private String serviceToken() {
+        long now = System.currentTimeMillis();
+        if (serviceToken == null || now - serviceTokenSignedAt >= TOKEN_REFRESH_MS) {
+            // Concurrent refreshes are harmless: both tokens are valid
+            serviceToken = jwtProvider.generateToken(SERVICE_SUBJECT, 0, true);
+            serviceTokenSignedAt = now;
+        }
+        return serviceToken;
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClient.close();
+        executor.close();
+    }
+}
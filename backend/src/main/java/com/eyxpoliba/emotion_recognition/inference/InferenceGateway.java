@@ -0,0 +1,172 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+import com.eyxpoliba.emotion_recognition.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend-side client for the emotion classifier. Callers get a future per text; a single flusher thread
+ * collects texts for up to {@code batch-window-ms} (or until {@code max-batch-size}) and sends them as one
+ * request, so concurrent submissions share a round trip. Each future fails after {@code timeout-ms}, and
+ * a {@link CircuitBreaker} stops calling the classifier while it keeps failing.
+ */
+@Slf4j
+@Component
+public class InferenceGateway {
+    private final ClassifierTransport transport;
+    private final boolean enabled;
+    private final long batchWindowNanos;
+    private final int maxBatchSize;
+    private final long timeoutMs;
+    private final CircuitBreaker circuitBreaker;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSize;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+
+    private volatile boolean stopped;
+    private Thread flusher;
+
+    private record Pending(String text, CompletableFuture<Classification> result) {
+    }
+
+    public InferenceGateway(ClassifierTransport transport,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.inference.enabled:false}") boolean enabled,
+                            @Value("${app.inference.batch-window-ms:10}") long batchWindowMs,
+                            @Value("${app.inference.max-batch-size:32}") int maxBatchSize,
+                            @Value("${app.inference.timeout-ms:2000}") long timeoutMs,
+                            @Value("${app.inference.breaker.failure-threshold:5}") int failureThreshold,
+                            @Value("${app.inference.breaker.open-ms:10000}") long openMs) {
+        this.transport = transport;
+        this.enabled = enabled;
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+        this.maxBatchSize = maxBatchSize;
+        this.timeoutMs = timeoutMs;
+        this.circuitBreaker = new CircuitBreaker("inference", failureThreshold, openMs, System::currentTimeMillis);
+
+        this.batchSize = DistributionSummary.builder("inference.batch.size")
+                .description("Texts sent to the classifier per request")
+                .register(meterRegistry);
+        this.successTimer = Timer.builder("inference.batch")
+                .description("Round trip of one classifier batch")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.failureTimer = Timer.builder("inference.batch")
+                .description("Round trip of one classifier batch")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+        Gauge.builder("inference.breaker.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while the classifier circuit is open or probing")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            flusher = Thread.ofVirtual().name("inference-flusher").start(this::flushLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        if (flusher != null) {
+            flusher.interrupt();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues one text for the next batch. The future completes with the classifier's label, or exceptionally
+     * on timeout, transport error or while the circuit is open.
+     */
+    public CompletableFuture<Classification> classify(String text) {
+        CompletableFuture<Classification> result = new CompletableFuture<Classification>().orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        if (!enabled || stopped) {
+            result.completeExceptionally(new IllegalStateException("Inference gateway is not running"));
+            return result;
+        }
+        queue.add(new Pending(text, result));
+        return result;
+    }
+
+    private void flushLoop() {
+        while (!stopped) {
+            try {
+                List<Pending> batch = new ArrayList<>(maxBatchSize);
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // The round trip runs on its own thread so the next window starts filling immediately
+                Thread.ofVirtual().name("inference-batch").start(() -> dispatch(batch));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("Inference gateway stopped"));
+        }
+    }
+
+    void dispatch(List<Pending> batch) {
+        // Callers that already timed out are not worth a slot in the request
+        List<Pending> live = batch.stream().filter(pending -> !pending.result().isDone()).toList();
+        if (live.isEmpty()) {
+            return;
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            CircuitBreaker.OpenException open = new CircuitBreaker.OpenException(circuitBreaker.getName());
+            live.forEach(pending -> pending.result().completeExceptionally(open));
+            return;
+        }
+
+        batchSize.record(live.size());
+        long start = System.nanoTime();
+        try {
+            List<Classification> results = transport.classify(live.stream().map(Pending::text).toList());
+            successTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            circuitBreaker.onSuccess();
+            for (int i = 0; i < live.size(); i++) {
+                live.get(i).result().complete(results.get(i));
+            }
+        } catch (Exception e) {
+            failureTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            circuitBreaker.onFailure();
+            log.warn("Classifier batch of {} failed: {}", live.size(), e.toString());
+            live.forEach(pending -> pending.result().completeExceptionally(e));
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+}
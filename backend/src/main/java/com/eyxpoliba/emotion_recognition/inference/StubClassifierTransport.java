@@ -0,0 +1,41 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Local stand-in for the classifier ({@code app.inference.mode=stub}), used by tests and offline runs.
+ * Labels come from a fixed keyword table, so the same text always gets the same result.
+ */
+@Component
+@ConditionalOnProperty(name = "app.inference.mode", havingValue = "stub")
+public class StubClassifierTransport implements ClassifierTransport {
+    // Checked in order (Map.of would iterate differently on every JVM run)
+    private static final List<Map.Entry<String, String>> KEYWORDS = List.of(
+            Map.entry("happy", "joy"),
+            Map.entry("love", "joy"),
+            Map.entry("sad", "sadness"),
+            Map.entry("angry", "anger"),
+            Map.entry("afraid", "fear"),
+            Map.entry("scared", "fear"),
+            Map.entry("disgust", "disgust"),
+            Map.entry("wow", "surprise"));
+
+    @Override
+    public List<Classification> classify(List<String> texts) {
+        return texts.stream().map(StubClassifierTransport::classify).toList();
+    }
+
+    static Classification classify(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        return KEYWORDS.stream()
+                .filter(keyword -> lower.contains(keyword.getKey()))
+                .map(keyword -> new Classification(keyword.getValue(), 0.9))
+                .findFirst()
+                .orElse(new Classification("neutral", 0.5));
+    }
+}
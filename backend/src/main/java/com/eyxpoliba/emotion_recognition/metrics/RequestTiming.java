@@ -0,0 +1,136 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Request-scoped phase durations, collected while {@link ServerTimingFilter} is enabled.
+ * When it is disabled no recorder is bound and every call below is a single ThreadLocal read.
+ */
+public final class RequestTiming {
+
+    public enum Phase {
+        AUTH("auth"),
+        BLACKLIST("blacklist"),
+        DB("db"),
+        STORAGE_LIST("storage-list"),
+        STORAGE_DOWNLOAD("storage-download"),
+        INFERENCE("inference"),
+        SERIALIZATION("ser");
+
+        private final String metricName;
+
+        Phase(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String metricName() {
+            return metricName;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<RequestTiming> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    // Login stages record from several threads at once
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+    private volatile long serializationStartNanos;
+
+    static RequestTiming bind() {
+        RequestTiming timing = new RequestTiming();
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return a start mark for {@link #end(Phase, long)}, or 0 when nothing is being recorded.
+     */
+    public static long begin() {
+        return CURRENT.get() == null ? 0 : System.nanoTime();
+    }
+
+    public static void end(Phase phase, long beginNanos) {
+        if (beginNanos != 0) {
+            add(phase, System.nanoTime() - beginNanos);
+        }
+    }
+
+    public static void add(Phase phase, long nanos) {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.phaseNanos.addAndGet(phase.ordinal(), nanos);
+        }
+    }
+
+    static void markSerializationStart() {
+        RequestTiming timing = CURRENT.get();
+        if (timing != null && timing.serializationStartNanos == 0) {
+            timing.serializationStartNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Wraps work that will run on another thread so its phases are attributed to the calling request.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        RequestTiming timing = CURRENT.get();
+        if (timing == null) {
+            return work;
+        }
+        return () -> {
+            RequestTiming previous = CURRENT.get();
+            CURRENT.set(timing);
+            try {
+                return work.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    long totalNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Renders the non-empty phases in Server-Timing syntax, e.g. {@code auth;dur=0.42, db;dur=3.10, total;dur=4.80}.
+     * Serialization is counted up to now, which is the header commit point for bodies larger than the buffer.
+     */
+    String toHeaderValue() {
+        long now = System.nanoTime();
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos.get(phase.ordinal());
+            if (phase == Phase.SERIALIZATION && serializationStartNanos != 0) {
+                nanos += now - serializationStartNanos;
+            }
+            if (nanos > 0) {
+                appendMetric(header, phase.metricName(), nanos);
+            }
+        }
+        appendMetric(header, "total", now - startNanos);
+        return header.toString();
+    }
+
+    private static void appendMetric(StringBuilder header, String name, long nanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        long hundredths = nanos / 10_000;
+        header.append(name).append(";dur=").append(hundredths / 100).append('.');
+        long fraction = hundredths % 100;
+        if (fraction < 10) {
+            header.append('0');
+        }
+        header.append(fraction);
+    }
+}
@@ -0,0 +1,37 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/servertiming} shows the current settings,
+ * {@code POST /actuator/servertiming {"enabled": true, "slowRequestThresholdMs": 500}} changes them.
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "servertiming")
+public class ServerTimingEndpoint {
+    private final ServerTimingSettings settings;
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        return Map.of("enabled", settings.isEnabled(), "slowRequestThresholdMs", settings.getSlowRequestThresholdMs());
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Nullable Boolean enabled, @Nullable Long slowRequestThresholdMs) {
+        if (enabled != null) {
+            settings.setEnabled(enabled);
+        }
+        if (slowRequestThresholdMs != null) {
+            settings.setSlowRequestThresholdMs(slowRequestThresholdMs);
+        }
+        return settings();
+    }
+}
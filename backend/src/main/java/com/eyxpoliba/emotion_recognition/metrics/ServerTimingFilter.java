@@ -0,0 +1,76 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Adds a {@code Server-Timing} header with the phases recorded through {@link RequestTiming}
+ * and logs requests slower than the configured threshold with their full breakdown.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ServerTimingFilter extends OncePerRequestFilter {
+    static final String SERVER_TIMING = "Server-Timing";
+
+    private final ServerTimingSettings settings;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !settings.isEnabled() || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RequestTiming timing = RequestTiming.bind();
+        HeaderOnCommitResponse timedResponse = new HeaderOnCommitResponse(response, timing);
+        try {
+            filterChain.doFilter(request, timedResponse);
+        } finally {
+            RequestTiming.unbind();
+            timedResponse.addTimingHeader();
+
+            long thresholdMs = settings.getSlowRequestThresholdMs();
+            long totalMs = timing.totalNanos() / 1_000_000;
+            if (thresholdMs > 0 && totalMs >= thresholdMs) {
+                log.warn("Slow request: method={} uri={} status={} totalMs={} phases=[{}]",
+                        request.getMethod(), request.getRequestURI(), response.getStatus(), totalMs, timing.toHeaderValue());
+            }
+        }
+    }
+
+    private static final class HeaderOnCommitResponse extends OnCommittedResponseWrapper {
+        private final RequestTiming timing;
+        private boolean headerAdded;
+
+        HeaderOnCommitResponse(HttpServletResponse response, RequestTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            addTimingHeader();
+        }
+
+        void addTimingHeader() {
+            if (!headerAdded && !isCommitted()) {
+                headerAdded = true;
+                setHeader(SERVER_TIMING, timing.toHeaderValue());
+            }
+        }
+    }
+}
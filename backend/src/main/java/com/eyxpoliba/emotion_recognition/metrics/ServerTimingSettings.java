@@ -0,0 +1,23 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runtime switches for {@link ServerTimingFilter}; changed through the {@code servertiming} actuator endpoint.
+ */
+@Getter
+@Setter
+@Component
+public class ServerTimingSettings {
+    private volatile boolean enabled;
+    private volatile long slowRequestThresholdMs;
+
+    public ServerTimingSettings(@Value("${app.server-timing.enabled:false}") boolean enabled,
+                                @Value("${app.server-timing.slow-request-threshold-ms:1000}") long slowRequestThresholdMs) {
+        this.enabled = enabled;
+        this.slowRequestThresholdMs = slowRequestThresholdMs;
+    }
+}
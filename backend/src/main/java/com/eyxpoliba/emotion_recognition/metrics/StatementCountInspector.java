@@ -0,0 +1,57 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Counts the SQL statements Hibernate prepares on behalf of the current request.
+ * Registered through {@code hibernate.session_factory.statement_inspector}; the counter is opened and
+ * recorded by {@link RequestMetricsFilter} and carried over to helper threads with {@link #propagate}.
+ */
+public class StatementCountInspector implements StatementInspector {
+    private static final ThreadLocal<AtomicInteger> CURRENT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        AtomicInteger counter = CURRENT.get();
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+        return sql;
+    }
+
+    static AtomicInteger begin() {
+        AtomicInteger counter = new AtomicInteger();
+        CURRENT.set(counter);
+        return counter;
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Wraps work that will run on another thread so its statements are attributed to the calling request.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        AtomicInteger counter = CURRENT.get();
+        if (counter == null) {
+            return work;
+        }
+        return () -> {
+            AtomicInteger previous = CURRENT.get();
+            CURRENT.set(counter);
+            try {
+                return work.get();
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+}
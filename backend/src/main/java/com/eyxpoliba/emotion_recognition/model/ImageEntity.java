@@ -0,0 +1,41 @@
+package com.eyxpoliba.emotion_recognition.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Catalog entry of an image ingested through the admin API; content type and dimensions are read once at ingest.
+ */
+@Builder
+@Entity
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "images")
+public class ImageEntity {
+    @Id
+    private String blobName;
+
+    // Hex SHA-256 of the content, unique: the same image cannot be ingested twice under different names
+    private String sha256;
+
+    private String contentType;
+
+    private int width;
+
+    private int height;
+
+    private long sizeBytes;
+
+    // UTC
+    private LocalDateTime createdAt;
+}
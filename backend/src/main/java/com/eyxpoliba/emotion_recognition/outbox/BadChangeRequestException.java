@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A cursor that this feed did not issue, or an unusable consumer name.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class BadChangeRequestException extends RuntimeException {
+    public BadChangeRequestException(String message) {
+        super(message);
+    }
+}
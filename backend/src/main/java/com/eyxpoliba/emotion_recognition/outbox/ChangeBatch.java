@@ -0,0 +1,10 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import java.util.List;
+
+/**
+ * @param cursor  pass back to get the records after this batch (the same cursor when the batch is empty)
+ * @param hasMore more records are ready; ask again without waiting
+ */
+public record ChangeBatch(List<ReactionChange> changes, String cursor, boolean hasMore) {
+}
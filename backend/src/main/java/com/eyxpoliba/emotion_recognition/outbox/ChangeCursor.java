@@ -0,0 +1,46 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Position of a consumer in the change feed: the last outbox id it has received from each shard, in shard order.
+ * Consumers see it as an opaque URL-safe string.
+ */
+record ChangeCursor(List<Long> positions) {
+
+    static ChangeCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            List<Long> positions = new ArrayList<>();
+            for (String position : decoded.split(",")) {
+                long id = Long.parseLong(position);
+                if (id < 0) {
+                    throw new NumberFormatException(position);
+                }
+                positions.add(id);
+            }
+            return new ChangeCursor(List.copyOf(positions));
+        } catch (IllegalArgumentException e) {
+            throw new BadChangeRequestException("Not a change feed cursor: " + cursor);
+        }
+    }
+
+    String encode() {
+        StringBuilder joined = new StringBuilder();
+        for (Long position : positions) {
+            if (!joined.isEmpty()) {
+                joined.append(',');
+            }
+            joined.append(position);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    // Shards added after the cursor was issued start from the beginning
+    long position(int shard) {
+        return shard < positions.size() ? positions.get(shard) : 0;
+    }
+}
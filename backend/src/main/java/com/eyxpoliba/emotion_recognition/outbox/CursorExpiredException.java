@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Records after the cursor have been compacted away; the consumer has to start again without a cursor.
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class CursorExpiredException extends RuntimeException {
+    public CursorExpiredException(String message) {
+        super(message);
+    }
+}
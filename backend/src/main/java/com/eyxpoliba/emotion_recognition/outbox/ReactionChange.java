@@ -0,0 +1,11 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import java.time.LocalDateTime;
+
+/**
+ * One stored reaction as the change feed reports it. {@code shard} and {@code id} identify the record; ids only
+ * increase within a shard.
+ */
+public record ReactionChange(int shard, long id, long userId, String image, String description, String reaction,
+                             String aiComment, LocalDateTime createdAt) {
+}
@@ -0,0 +1,391 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Change feed of stored reactions, read from the {@code reaction_outbox} of every shard.
+ * <p>
+ * A consumer asks for the records after its cursor and gets them in batches, ordered by id within a shard and by
+ * creation time across shards, together with the cursor to send next. With {@code waitMs} an empty answer is held
+ * back (on a virtual thread) until records arrive: writes handled by this instance wake the waiters at once,
+ * other instances' writes are noticed within {@code poll-ms}.
+ * <p>
+ * Identity ids are handed out before commit, so a record can become visible after one with a higher id. The feed
+ * never steps over such a gap while it is younger than {@code settle-ms}. After that it waits for the write
+ * transactions in progress on the shard to end (each holds the bucket fences of its rows from before its first
+ * insert, see {@link ReactionShards#lockBuckets}) and reads again: an id still missing then was rolled back.
+ * <p>
+ * Compaction deletes records older than {@code retention-hours}, and records every registered consumer (one that
+ * passes {@code consumer}) has moved past. Consumers that have not been seen for the retention period are
+ * unregistered. A cursor pointing before compacted records is answered with 410 Gone.
+ */
+@Slf4j
+@Component
+public class ReactionChangeFeed {
+    private static final String SELECT = "SELECT id, user_id, image, image_description, image_reaction, ai_comment, "
+            + "created_at, CURRENT_TIMESTAMP AS read_at FROM reaction_outbox WHERE id > ? ORDER BY id";
+    private static final int MAX_CONSUMER_NAME = 100;
+
+    private final ReactionShards reactionShards;
+    private final int maxBatchSize;
+    private final long maxWaitMs;
+    private final long pollMs;
+    private final Duration settle;
+    private final Duration retention;
+    private final long compactionMs;
+
+    private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("outbox-compaction").factory());
+    private final ExecutorService waiters = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("change-feed-", 0).factory());
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter servedCounter;
+    private final Counter compactedCounter;
+
+    // Guarded by lock
+    private long appends;
+
+    public ReactionChangeFeed(ReactionShards reactionShards,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.outbox.max-batch-size:1000}") int maxBatchSize,
+                              @Value("${app.outbox.max-wait-ms:25000}") long maxWaitMs,
+                              @Value("${app.outbox.poll-ms:500}") long pollMs,
+                              @Value("${app.outbox.settle-ms:5000}") long settleMs,
+                              @Value("${app.outbox.retention-hours:168}") long retentionHours,
+                              @Value("${app.outbox.compaction-ms:60000}") long compactionMs) {
+        this.reactionShards = reactionShards;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMs = maxWaitMs;
+        this.pollMs = pollMs;
+        this.settle = Duration.ofMillis(settleMs);
+        this.retention = Duration.ofHours(retentionHours);
+        this.compactionMs = compactionMs;
+
+        Gauge.builder("reactions.changes.waiting", waiting, AtomicInteger::get)
+                .description("Change feed requests waiting for new records")
+                .register(meterRegistry);
+        this.servedCounter = Counter.builder("reactions.changes.served")
+                .description("Change feed records returned to consumers")
+                .register(meterRegistry);
+        this.compactedCounter = Counter.builder("reactions.outbox.compacted")
+                .description("Outbox records deleted by compaction")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        compactor.scheduleWithFixedDelay(this::compactSafely, compactionMs, compactionMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        compactor.shutdownNow();
+        waiters.shutdownNow();
+    }
+
+    // Published once the rows and their outbox records have been committed
+    @EventListener
+    public void onReactionsRegistered(ReactionsRegisteredEvent event) {
+        lock.lock();
+        try {
+            appends++;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The records after {@code cursor} (from the oldest retained one when null), at most {@code limit} of them.
+     * When there are none, waits up to {@code waitMs} for some. A {@code consumer} name registers the cursor as
+     * that consumer's acknowledged position, which holds back compaction.
+     *
+     * @throws CursorExpiredException     if records after the cursor have been compacted
+     * @throws BadChangeRequestException if the cursor or consumer name is not valid
+     */
+    public CompletableFuture<ChangeBatch> read(String cursor, int limit, long waitMs, String consumer) {
+        int batchSize = Math.clamp(limit, 1, maxBatchSize);
+        ChangeCursor start = resolve(cursor);
+        if (consumer != null) {
+            acknowledge(consumer, start);
+        }
+        long seen = appends();
+        ChangeBatch batch = fetch(start, batchSize);
+        long wait = Math.clamp(waitMs, 0, maxWaitMs);
+        if (!batch.changes().isEmpty() || wait == 0) {
+            return CompletableFuture.completedFuture(batch);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait);
+        return CompletableFuture.supplyAsync(() -> awaitChanges(start, batchSize, seen, deadline, batch), waiters);
+    }
+
+    /**
+     * The cursor from which {@link #read} returns every retained record; a {@code consumer} is registered there.
+     * For consumers that load the current state some other way and then follow the feed.
+     */
+    public String startCursor(String consumer) {
+        ChangeCursor start = resolve(null);
+        if (consumer != null) {
+            acknowledge(consumer, start);
+        }
+        return start.encode();
+    }
+
+    private ChangeBatch awaitChanges(ChangeCursor start, int batchSize, long seen, long deadline, ChangeBatch empty) {
+        waiting.incrementAndGet();
+        try {
+            while (true) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return empty;
+                }
+                lock.lock();
+                try {
+                    long nanos = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(pollMs));
+                    while (appends == seen && nanos > 0) {
+                        nanos = appended.awaitNanos(nanos);
+                    }
+                    seen = appends;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return empty;
+                } finally {
+                    lock.unlock();
+                }
+                ChangeBatch batch = fetch(start, batchSize);
+                if (!batch.changes().isEmpty()) {
+                    return batch;
+                }
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    private long appends() {
+        lock.lock();
+        try {
+            return appends;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ChangeCursor resolve(String cursor) {
+        Map<Integer, Long> watermarks = watermarks();
+        List<ReactionShards.Shard> shards = reactionShards.getShards();
+        ChangeCursor given = cursor == null || cursor.isBlank() ? null : ChangeCursor.decode(cursor);
+        if (given != null && given.positions().size() > shards.size()) {
+            throw new BadChangeRequestException("Cursor refers to " + given.positions().size() + " shards, "
+                    + shards.size() + " are configured");
+        }
+        List<Long> positions = new ArrayList<>(shards.size());
+        for (ReactionShards.Shard shard : shards) {
+            long purged = watermarks.getOrDefault(shard.id(), 0L);
+            if (given == null) {
+                positions.add(purged);
+            } else if (given.position(shard.id()) < purged) {
+                throw new CursorExpiredException("Records after this cursor have been compacted, start again without a cursor");
+            } else {
+                positions.add(given.position(shard.id()));
+            }
+        }
+        return new ChangeCursor(List.copyOf(positions));
+    }
+
+    /**
+     * Reads up to {@code batchSize} records from every shard and merges them by creation time, keeping each
+     * shard's records in id order so that its cursor position never skips one.
+     */
+    ChangeBatch fetch(ChangeCursor start, int batchSize) {
+        List<ArrayDeque<ReactionChange>> pending = new ArrayList<>();
+        boolean hasMore = false;
+        for (ReactionShards.Shard shard : reactionShards.getShards()) {
+            List<ReactionChange> changes = readShard(shard, start.position(shard.id()), batchSize);
+            hasMore |= changes.size() == batchSize;
+            pending.add(new ArrayDeque<>(changes));
+        }
+        long[] positions = new long[pending.size()];
+        Arrays.setAll(positions, start::position);
+        List<ReactionChange> merged = new ArrayList<>();
+        while (merged.size() < batchSize) {
+            ArrayDeque<ReactionChange> oldest = null;
+            for (ArrayDeque<ReactionChange> changes : pending) {
+                if (!changes.isEmpty() && (oldest == null
+                        || changes.peekFirst().createdAt().isBefore(oldest.peekFirst().createdAt()))) {
+                    oldest = changes;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            ReactionChange change = oldest.pollFirst();
+            merged.add(change);
+            positions[change.shard()] = change.id();
+        }
+        hasMore |= pending.stream().anyMatch(changes -> !changes.isEmpty());
+        servedCounter.increment(merged.size());
+        return new ChangeBatch(merged, new ChangeCursor(Arrays.stream(positions).boxed().toList()).encode(), hasMore);
+    }
+
+    // Not through the shard's read-only transactions: on shard 0 those may go to a lagging replica
+    private List<ReactionChange> readShard(ReactionShards.Shard shard, long afterId, int batchSize) {
+        Page page = readPage(shard, afterId, batchSize, 0);
+        if (page.settledGapBefore() > 0) {
+            awaitWriters(shard);
+            page = readPage(shard, afterId, batchSize, page.settledGapBefore());
+        }
+        return page.changes();
+    }
+
+    /**
+     * The records after {@code afterId} up to the first gap the feed cannot step over yet. Gaps below
+     * {@code settledThrough} are stepped over: the writers that could still fill them have ended.
+     */
+    private Page readPage(ReactionShards.Shard shard, long afterId, int batchSize, long settledThrough) {
+        JdbcTemplate pager = new JdbcTemplate(shard.jdbc().getDataSource());
+        pager.setMaxRows(batchSize);
+        List<ReactionChange> changes = new ArrayList<>();
+        long[] expected = {afterId + 1};
+        long[] settledGapBefore = {0};
+        boolean[] blocked = {false};
+        pager.query(SELECT, resultSet -> {
+            if (blocked[0]) {
+                return;
+            }
+            long id = resultSet.getLong("id");
+            LocalDateTime createdAt = resultSet.getTimestamp("created_at").toLocalDateTime();
+            if (id != expected[0] && id > settledThrough) {
+                // The ids in between may still be committing; once this record has settled, a writer still holding
+                // one of them has to be waited for
+                LocalDateTime readAt = resultSet.getTimestamp("read_at").toLocalDateTime();
+                if (!createdAt.isAfter(readAt.minus(settle)) && settledThrough == 0) {
+                    settledGapBefore[0] = id;
+                }
+                blocked[0] = true;
+                return;
+            }
+            changes.add(new ReactionChange(shard.id(), id, resultSet.getLong("user_id"), resultSet.getString("image"),
+                    resultSet.getString("image_description"), resultSet.getString("image_reaction"),
+                    resultSet.getString("ai_comment"), createdAt));
+            expected[0] = id + 1;
+        }, afterId);
+        return new Page(changes, settledGapBefore[0]);
+    }
+
+    private record Page(List<ReactionChange> changes, long settledGapBefore) {
+    }
+
+    // Every id handed out so far belongs to a transaction holding some bucket fence: touching them all waits for those
+    private static void awaitWriters(ReactionShards.Shard shard) {
+        shard.transactions().executeWithoutResult(status ->
+                shard.jdbc().update("UPDATE reaction_bucket_fences SET fenced = fenced"));
+    }
+
+    private void acknowledge(String consumer, ChangeCursor position) {
+        if (consumer.isBlank() || consumer.length() > MAX_CONSUMER_NAME) {
+            throw new BadChangeRequestException("Consumer names have 1 to " + MAX_CONSUMER_NAME + " characters");
+        }
+        JdbcTemplate primary = reactionShards.getShard(0).jdbc();
+        String cursor = position.encode();
+        Timestamp now = Timestamp.from(Instant.now());
+        String update = "UPDATE reaction_outbox_consumers SET last_cursor = ?, seen_at = ? WHERE consumer_name = ?";
+        if (primary.update(update, cursor, now, consumer) == 0) {
+            try {
+                primary.update("INSERT INTO reaction_outbox_consumers (consumer_name, last_cursor, seen_at) VALUES (?, ?, ?)",
+                        consumer, cursor, now);
+            } catch (DuplicateKeyException e) {
+                primary.update(update, cursor, now, consumer);
+            }
+        }
+    }
+
+    private Map<Integer, Long> watermarks() {
+        Map<Integer, Long> watermarks = new HashMap<>();
+        reactionShards.getShard(0).jdbc().query("SELECT shard_id, purged_through FROM reaction_outbox_watermarks",
+                resultSet -> {
+                    watermarks.put(resultSet.getInt("shard_id"), resultSet.getLong("purged_through"));
+                });
+        return watermarks;
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (DataAccessException e) {
+            log.warn("Outbox compaction failed: {}", e.getMessage());
+        }
+    }
+
+    void compact() {
+        JdbcTemplate primary = reactionShards.getShard(0).jdbc();
+        primary.update("DELETE FROM reaction_outbox_consumers WHERE seen_at < ?",
+                Timestamp.from(Instant.now().minus(retention)));
+        List<ChangeCursor> consumers = primary.query("SELECT last_cursor FROM reaction_outbox_consumers",
+                (resultSet, rowNum) -> ChangeCursor.decode(resultSet.getString("last_cursor")));
+        Map<Integer, Long> watermarks = watermarks();
+        for (ReactionShards.Shard shard : reactionShards.getShards()) {
+            // created_at comes from the shard's clock, so the cutoff does too
+            LocalDateTime now = shard.jdbc().queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class).toLocalDateTime();
+            Long expired = shard.jdbc().queryForObject("SELECT MAX(id) FROM reaction_outbox WHERE created_at < ?",
+                    Long.class, Timestamp.valueOf(now.minus(retention)));
+            long through = expired == null ? 0 : expired;
+            if (!consumers.isEmpty()) {
+                through = Math.max(through, consumers.stream().mapToLong(cursor -> cursor.position(shard.id())).min().getAsLong());
+            }
+            if (through <= watermarks.getOrDefault(shard.id(), 0L)) {
+                continue;
+            }
+            // Watermark first, so a reader still behind it is told its cursor expired rather than skipping records
+            raiseWatermark(primary, shard.id(), through);
+            int deleted = shard.jdbc().update("DELETE FROM reaction_outbox WHERE id <= ?", through);
+            compactedCounter.increment(deleted);
+            log.debug("Compacted {} outbox records on shard {} (through id {})", deleted, shard.id(), through);
+        }
+    }
+
+    private static void raiseWatermark(JdbcTemplate primary, int shard, long through) {
+        if (primary.update("UPDATE reaction_outbox_watermarks SET purged_through = ? WHERE shard_id = ? AND purged_through < ?",
+                through, shard, through) == 0) {
+            try {
+                primary.update("INSERT INTO reaction_outbox_watermarks (shard_id, purged_through) VALUES (?, ?)", shard, through);
+            } catch (DuplicateKeyException e) {
+                // Raised by another instance at the same time
+            }
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package com.eyxpoliba.emotion_recognition.payload;
+
+public record AdminLoginPayload(String username, String password) {
+}
@@ -0,0 +1,34 @@
+package com.eyxpoliba.emotion_recognition.repository;
+
+import com.eyxpoliba.emotion_recognition.model.ImageEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface ImageRepository extends JpaRepository<ImageEntity, String> {
+
+    Optional<ImageEntity> findBySha256(String sha256);
+
+    /**
+     * Plain INSERT: save() would merge (and SELECT first) because the id is assigned. A concurrent ingest of the
+     * same name or the same content fails on the primary key or on ux_images_sha256.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            INSERT INTO images (blob_name, sha256, content_type, width, height, size_bytes, created_at)
+            VALUES (:blobName, :sha256, :contentType, :width, :height, :sizeBytes, :createdAt)
+            """)
+    void insert(@Param("blobName") String blobName,
+                @Param("sha256") String sha256,
+                @Param("contentType") String contentType,
+                @Param("width") int width,
+                @Param("height") int height,
+                @Param("sizeBytes") long sizeBytes,
+                @Param("createdAt") LocalDateTime createdAt);
+}
@@ -0,0 +1,336 @@
+package com.eyxpoliba.emotion_recognition.repository;
+
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import com.eyxpoliba.emotion_recognition.sharding.ShardUnavailableException;
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Writes many user_reactions rows at once through the database's native bulk API:
+ * COPY ... FROM STDIN on PostgreSQL, SQLServerBulkCopy on SQL Server, JDBC batches anywhere else.
+ * Rows go to their user's shard. Each call is one transaction per shard (on shard 0 it joins the current one), which
+ * also appends the rows to that shard's {@code reaction_outbox} for the change feed and holds the rows' bucket
+ * locks (see {@link ReactionShards#lockBuckets}); rows turned away by a moved range are routed again.
+ * A call is therefore atomic per shard only: when it fails on one shard, the rows already written to the others
+ * stay. One user's rows always share a shard, so {@link #writeForUser} is all or nothing.
+ * Metrics: reactions.bulk.write / reactions.bulk.rows by method.
+ */
+@Component
+@Transactional
+public class ReactionsBulkWriter {
+    private static final String TABLE = "user_reactions";
+    private static final String OUTBOX = "reaction_outbox";
+    private static final String[] COLUMNS = {"user_id", "image", "image_description", "image_reaction", "ai_comment"};
+    private static final int COPY_CHUNK_BYTES = 64 * 1024;
+    // A write is turned away at most once per range move it runs into
+    private static final int ROUTING_ATTEMPTS = 3;
+
+    public record Row(long userId, String image, String description, String reaction, String aiComment) {
+    }
+
+    /**
+     * Where one user's rows were stored: their shard, and the id the last of them got there.
+     */
+    public record Stored(int shard, long lastId) {
+    }
+
+    public enum Method {
+        COPY, BULK_COPY, BATCH;
+
+        static Method forProduct(String databaseProductName) {
+            return switch (databaseProductName) {
+                case "PostgreSQL" -> COPY;
+                case "Microsoft SQL Server" -> BULK_COPY;
+                default -> BATCH;
+            };
+        }
+    }
+
+    private final ReactionShards reactionShards;
+    private final int batchSize;
+    private final Map<Method, Timer> timers = new EnumMap<>(Method.class);
+    private final Map<Method, Counter> rowCounters = new EnumMap<>(Method.class);
+
+    // Resolved per shard on its first write, so startup does not need a connection
+    private final Map<Integer, Method> nativeMethods = new ConcurrentHashMap<>();
+
+    public ReactionsBulkWriter(ReactionShards reactionShards,
+                               @Value("${app.reactions.bulk.batch-size:1000}") int batchSize,
+                               MeterRegistry meterRegistry) {
+        this.reactionShards = reactionShards;
+        this.batchSize = batchSize;
+        for (Method method : Method.values()) {
+            String tag = method.name().toLowerCase();
+            timers.put(method, Timer.builder("reactions.bulk.write").tag("method", tag).register(meterRegistry));
+            rowCounters.put(method, Counter.builder("reactions.bulk.rows").tag("method", tag).register(meterRegistry));
+        }
+    }
+
+    /**
+     * Inserts all rows with the fastest method the connected database supports.
+     *
+     * @return The number of rows written.
+     */
+    public int write(List<Row> rows) {
+        return write(rows, null);
+    }
+
+    /**
+     * Inserts all rows with the given method, or the native one when {@code method} is null.
+     * Forcing {@link Method#BATCH} is meant for comparisons; forcing a native method on another database fails.
+     * Rows of users on different shards are committed separately, see the class comment.
+     */
+    public int write(List<Row> rows, Method method) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int written = 0;
+        List<Row> pending = rows;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            if (attempt > ROUTING_ATTEMPTS) {
+                throw new ShardUnavailableException(pending.size() + " rows were turned away by moving ranges");
+            }
+            Map<ReactionShards.Shard, List<Row>> byShard = new LinkedHashMap<>();
+            for (Row row : pending) {
+                byShard.computeIfAbsent(reactionShards.shardFor(row.userId()), shard -> new ArrayList<>()).add(row);
+            }
+            List<Row> fenced = new ArrayList<>();
+            for (Map.Entry<ReactionShards.Shard, List<Row>> entry : byShard.entrySet()) {
+                ReactionShards.Shard shard = entry.getKey();
+                if (inTransaction(shard, () -> write(shard, entry.getValue(), method))) {
+                    written += entry.getValue().size();
+                } else {
+                    fenced.addAll(entry.getValue());
+                }
+            }
+            if (!fenced.isEmpty()) {
+                reactionShards.refresh();
+            }
+            pending = fenced;
+        }
+        return written;
+    }
+
+    /**
+     * Writes one user's rows like {@link #write(List, Method)} and tells where they are.
+     */
+    public Stored writeForUser(long userId, List<Row> rows, Method method) {
+        if (rows.isEmpty()) {
+            return new Stored(reactionShards.shardFor(userId).id(), 0);
+        }
+        for (int attempt = 1; attempt <= ROUTING_ATTEMPTS; attempt++) {
+            ReactionShards.Shard shard = reactionShards.shardFor(userId);
+            // The bucket lock keeps the user's other writes out until commit, so their newest row is the last of these
+            Long lastId = inTransaction(shard, () -> write(shard, rows, method)
+                    ? shard.jdbc().queryForObject("SELECT MAX(id) FROM user_reactions WHERE user_id = ?", Long.class, userId)
+                    : null);
+            if (lastId != null) {
+                return new Stored(shard.id(), lastId);
+            }
+            reactionShards.refresh();
+        }
+        throw new ShardUnavailableException("Rows of user " + userId + " were turned away by moving ranges");
+    }
+
+    /**
+     * Appends outbox records for rows the caller has just saved on shard 0 another way (JPA), in the caller's
+     * transaction.
+     */
+    public void appendToOutbox(List<Row> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        reactionShards.getShard(0).jdbc().execute((ConnectionCallback<Void>) connection -> {
+            batch(connection, OUTBOX, rows);
+            return null;
+        });
+    }
+
+    // On shard 0 inside the caller's transaction, else in one of the shard's own
+    private static <T> T inTransaction(ReactionShards.Shard shard, Supplier<T> work) {
+        return shard.isPrimary() && TransactionSynchronizationManager.isActualTransactionActive()
+                ? work.get()
+                : shard.transactions().execute(status -> work.get());
+    }
+
+    // False, having written nothing, when the shard no longer takes writes for some of the rows' buckets
+    private boolean write(ReactionShards.Shard shard, List<Row> rows, Method method) {
+        if (!reactionShards.lockBuckets(shard, rows.stream().map(Row::userId).distinct().toList())) {
+            return false;
+        }
+        return shard.jdbc().execute((ConnectionCallback<Boolean>) connection -> {
+            Method chosen = method != null ? method : nativeMethod(shard, connection);
+            long start = System.nanoTime();
+            for (String table : new String[]{TABLE, OUTBOX}) {
+                switch (chosen) {
+                    case COPY -> copy(connection, table, rows);
+                    case BULK_COPY -> bulkCopy(connection, table, rows);
+                    case BATCH -> batch(connection, table, rows);
+                }
+            }
+            timers.get(chosen).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            rowCounters.get(chosen).increment(rows.size());
+            return true;
+        });
+    }
+
+    private Method nativeMethod(ReactionShards.Shard shard, Connection connection) throws SQLException {
+        Method method = nativeMethods.get(shard.id());
+        if (method == null) {
+            method = Method.forProduct(connection.getMetaData().getDatabaseProductName());
+            nativeMethods.put(shard.id(), method);
+        }
+        return method;
+    }
+
+    private void copy(Connection connection, String table, List<Row> rows) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + table + " (" + String.join(", ", COLUMNS) + ") FROM STDIN WITH (FORMAT csv)");
+        try {
+            StringBuilder chunk = new StringBuilder(COPY_CHUNK_BYTES + 1024);
+            for (Row row : rows) {
+                appendCsv(chunk, row);
+                if (chunk.length() >= COPY_CHUNK_BYTES) {
+                    writeChunk(copyIn, chunk);
+                }
+            }
+            writeChunk(copyIn, chunk);
+            copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private static void writeChunk(CopyIn copyIn, StringBuilder chunk) throws SQLException {
+        byte[] bytes = chunk.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        chunk.setLength(0);
+    }
+
+    // COPY csv: unquoted empty field is NULL, quoted fields double their quotes
+    static void appendCsv(StringBuilder out, Row row) {
+        out.append(row.userId());
+        for (String value : new String[]{row.image(), row.description(), row.reaction(), row.aiComment()}) {
+            out.append(',');
+            if (value != null) {
+                out.append('"').append(value.replace("\"", "\"\"")).append('"');
+            }
+        }
+        out.append('\n');
+    }
+
+    private void bulkCopy(Connection connection, String table, List<Row> rows) throws SQLException {
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setBatchSize(batchSize);
+        // Without this the bulk load skips fk_user and SQL Server marks the constraint as not trusted
+        options.setCheckConstraints(true);
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(table);
+            for (int i = 0; i < COLUMNS.length; i++) {
+                bulkCopy.addColumnMapping(i + 1, COLUMNS[i]);
+            }
+            bulkCopy.writeToServer(new RowsBulkData(rows));
+        }
+    }
+
+    private void batch(Connection connection, String table, List<Row> rows) throws SQLException {
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", COLUMNS) + ") VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Row row : rows) {
+                statement.setLong(1, row.userId());
+                statement.setString(2, row.image());
+                statement.setString(3, row.description());
+                statement.setString(4, row.reaction());
+                statement.setString(5, row.aiComment());
+                statement.addBatch();
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Streams the rows to SQLServerBulkCopy without materialising a ResultSet.
+     */
+    static final class RowsBulkData implements ISQLServerBulkData {
+        private final transient List<Row> rows;
+        private int index = -1;
+
+        RowsBulkData(List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            return Set.of(1, 2, 3, 4, 5);
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return column == 1 ? Types.BIGINT : Types.NVARCHAR;
+        }
+
+        // 0 for strings: the driver then takes the precision of the destination column (NVARCHAR(MAX) included)
+        @Override
+        public int getPrecision(int column) {
+            return column == 1 ? 19 : 0;
+        }
+
+        @Override
+        public int getScale(int column) {
+            return 0;
+        }
+
+        @Override
+        public Object[] getRowData() {
+            Row row = rows.get(index);
+            return new Object[]{row.userId(), row.image(), row.description(), row.reaction(), row.aiComment()};
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < rows.size();
+        }
+    }
+}
@@ -3,5 +3,9 @@ package com.eyxpoliba.emotion_recognition.repository;
 import com.eyxpoliba.emotion_recognition.model.ReactionsEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+/**
+ * JPA access to the {@code user_reactions} rows of shard 0 (the primary database); queries over all shards are
+ * in {@link ShardedReactionsRepository}.
+ */
 public interface ReactionsRepository extends JpaRepository<ReactionsEntity, Long> {
 }
@@ -0,0 +1,95 @@
+package com.eyxpoliba.emotion_recognition.repository;
+
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import com.eyxpoliba.emotion_recognition.sharding.ShardLayout;
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Queries on {@code user_reactions} that work wherever the rows live: per-user reads go to the user's shard,
+ * aggregates are scattered to all shards in parallel and merged here.
+ * <p>
+ * In-memory aggregates that are rebuilt by a full scan and kept current from {@code ReactionsRegisteredEvent}s
+ * need to know which events the scan already covers. {@link #forEachReaction} therefore returns the ids it read
+ * on each shard, to be checked against the shard and last row id every event carries.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ShardedReactionsRepository {
+    private final ReactionShards reactionShards;
+
+    public record Reaction(long id, long userId, String image, String description, String reaction, String aiComment) {
+    }
+
+    /**
+     * The rows a full scan read, by shard id.
+     */
+    public static final class Scanned {
+        private final Map<Integer, Roaring64Bitmap> ids = new HashMap<>();
+
+        public boolean contains(int shard, long id) {
+            Roaring64Bitmap read = ids.get(shard);
+            return read != null && read.contains(id);
+        }
+    }
+
+    public List<Reaction> findByUserId(long userId) {
+        ReactionShards.Shard shard = reactionShards.readerFor(userId);
+        return shard.jdbc().query(
+                "SELECT id, user_id, image, image_description, image_reaction, ai_comment FROM user_reactions WHERE user_id = ? ORDER BY id",
+                (resultSet, rowNum) -> new Reaction(resultSet.getLong("id"), resultSet.getLong("user_id"),
+                        resultSet.getString("image"), resultSet.getString("image_description"),
+                        resultSet.getString("image_reaction"), resultSet.getString("ai_comment")),
+                userId);
+    }
+
+    public Map<String, Long> countByReaction() {
+        List<Map<String, Long>> perShard = reactionShards.scatter((shard, owned) -> {
+            Map<String, Long> counts = new HashMap<>();
+            shard.jdbc().query("SELECT image_reaction, COUNT(*) AS total FROM user_reactions WHERE " + owned
+                    + " GROUP BY image_reaction", resultSet -> {
+                counts.put(resultSet.getString("image_reaction"), resultSet.getLong("total"));
+            });
+            return counts;
+        });
+        Map<String, Long> total = new LinkedHashMap<>();
+        perShard.forEach(counts -> counts.forEach((reaction, count) -> total.merge(reaction, count, Long::sum)));
+        return total;
+    }
+
+    public List<Long> countPerShard() {
+        return reactionShards.scatter((shard, owned) ->
+                shard.jdbc().queryForObject("SELECT COUNT(*) FROM user_reactions WHERE " + owned, Long.class));
+    }
+
+    /**
+     * Streams {@code id, user_id, image, image_reaction} of every reaction, one shard after the other, and returns
+     * the ids read.
+     *
+     * @throws IllegalStateException when a range changed state during the scan: its rows may have been read on
+     *                               both shards, or under ids the events no longer match
+     */
+    public Scanned forEachReaction(RowCallbackHandler handler) {
+        ShardLayout snapshot = reactionShards.getLayout();
+        Scanned scanned = new Scanned();
+        for (ReactionShards.Shard shard : reactionShards.getShards()) {
+            Roaring64Bitmap ids = scanned.ids.computeIfAbsent(shard.id(), id -> new Roaring64Bitmap());
+            shard.jdbc().query("SELECT id, user_id, image, image_reaction FROM user_reactions WHERE "
+                    + snapshot.ownedPredicate(shard.id()) + " ORDER BY id", resultSet -> {
+                ids.addLong(resultSet.getLong("id"));
+                handler.processRow(resultSet);
+            });
+        }
+        if (!reactionShards.getLayout().ranges().equals(snapshot.ranges())) {
+            throw new IllegalStateException("The shard layout changed during the scan");
+        }
+        return scanned;
+    }
+}
@@ -2,7 +2,49 @@ package com.eyxpoliba.emotion_recognition.repository;
 
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<UserEntity, Long> {
 
+    Optional<UserEntity> findByEmail(String email);
+
+    @Query("select u.id from UserEntity u where u.email = :email")
+    Optional<Long> findIdByEmail(@Param("email") String email);
+
+    /**
+     * Inserts the user keyed by email in a single statement; if a concurrent login inserted the same
+     * email first, the existing row is updated instead of failing on the UNIQUE constraint.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = """
+            MERGE INTO users AS target
+            USING (SELECT CAST(:email AS NATIONAL CHARACTER VARYING(255)) AS email) AS source
+            ON target.email = source.email
+            WHEN MATCHED THEN
+                UPDATE SET nickname = :nickname, age = :age, gender = :gender, nationality = :nationality
+            WHEN NOT MATCHED THEN
+                INSERT (nickname, email, age, gender, nationality)
+                VALUES (:nickname, :email, :age, :gender, :nationality);
+            """)
+    int upsertByEmail(@Param("email") String email,
+                      @Param("nickname") String nickname,
+                      @Param("age") int age,
+                      @Param("gender") String gender,
+                      @Param("nationality") String nationality);
+
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.nickname = :nickname, u.age = :age, u.gender = :gender, " +
+            "u.nationality = :nationality where u.id = :id")
+    int updateProfile(@Param("id") Long id,
+                      @Param("nickname") String nickname,
+                      @Param("age") int age,
+                      @Param("gender") String gender,
+                      @Param("nationality") String nationality);
 }
@@ -0,0 +1,119 @@
+package com.eyxpoliba.emotion_recognition.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Caps the calls in flight to one dependency so that, when it slows down, only the callers of that dependency
+ * wait. Up to {@code maxConcurrent} calls run; up to {@code maxQueue} more wait at most {@code maxWaitMs} for a
+ * permit, and anything beyond that is rejected with {@link FullException} instead of holding a request thread.
+ */
+public class Bulkhead {
+
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Server is busy, retry shortly")
+    public static class FullException extends RuntimeException {
+        public FullException(String name) {
+            super("Bulkhead '" + name + "' is full");
+        }
+    }
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter rejected;
+    private final Timer waitTimer;
+
+    public Bulkhead(String name, int maxConcurrent, int maxQueue, long maxWaitMs, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        this.permits = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("bulkhead.active", this, Bulkhead::getActive)
+                .description("Calls in flight")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.utilization", this, bulkhead -> (double) bulkhead.getActive() / bulkhead.maxConcurrent)
+                .description("Share of the concurrency limit in use")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("bulkhead.queued", queued, AtomicInteger::get)
+                .description("Calls waiting for a permit")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("bulkhead.rejected")
+                .description("Calls turned away because the bulkhead was full")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("bulkhead.wait")
+                .description("Time spent waiting for a permit by calls that had to queue")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Takes a permit, waiting if the queue has room. Every successful call must be paired with {@link #release()}.
+     *
+     * @throws FullException if the queue is full or no permit frees up in time
+     */
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            throw reject();
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                throw reject();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject();
+        } finally {
+            queued.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public <T> T call(Supplier<T> work) {
+        acquire();
+        try {
+            return work.get();
+        } finally {
+            release();
+        }
+    }
+
+    private FullException reject() {
+        rejected.increment();
+        return new FullException(name);
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
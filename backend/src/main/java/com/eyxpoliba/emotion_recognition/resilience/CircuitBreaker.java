@@ -0,0 +1,71 @@
+package com.eyxpoliba.emotion_recognition.resilience;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Consecutive-failure circuit breaker for calls to a remote dependency. After {@code failureThreshold}
+ * failures in a row the circuit opens and calls are rejected without touching the network; once
+ * {@code openDurationMs} has passed a single probe is let through, and its outcome closes or re-opens it.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public static class OpenException extends RuntimeException {
+        public OpenException(String name) {
+            super("Circuit '" + name + "' is open");
+        }
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openDurationMs;
+    private final LongSupplier clock;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+
+    public CircuitBreaker(String name, int failureThreshold, long openDurationMs, LongSupplier clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the call may proceed; the caller must then report {@link #onSuccess()} or {@link #onFailure()}
+     */
+    public boolean tryAcquire() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            // Only the caller that wins the transition gets to probe
+            case OPEN -> clock.getAsLong() - openedAt.get() >= openDurationMs
+                    && state.compareAndSet(State.OPEN, State.HALF_OPEN);
+            case HALF_OPEN -> false;
+        };
+    }
+
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        state.set(State.CLOSED);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt.set(clock.getAsLong());
+            state.set(State.OPEN);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -1,7 +1,19 @@
 package com.eyxpoliba.emotion_recognition.responses;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 
-public record LoginResponse(Long userId, List<String> imagesName) {
+/**
+ * @param imageUrls Signed, short-lived URLs for {@code imagesName} in the same order; only present when images are
+ *                  delivered directly from storage, otherwise the client downloads them via {@code /api/download-image}.
+ */
+public record LoginResponse(Long userId,
+                            List<String> imagesName,
+                            @JsonInclude(JsonInclude.Include.NON_NULL) List<String> imageUrls) {
+
+    public LoginResponse(Long userId, List<String> imagesName) {
+        this(userId, imagesName, null);
+    }
 }
@@ -0,0 +1,480 @@
+package com.eyxpoliba.emotion_recognition.search;
+
+import com.eyxpoliba.emotion_recognition.outbox.BadChangeRequestException;
+import com.eyxpoliba.emotion_recognition.outbox.ChangeBatch;
+import com.eyxpoliba.emotion_recognition.outbox.CursorExpiredException;
+import com.eyxpoliba.emotion_recognition.outbox.ReactionChange;
+import com.eyxpoliba.emotion_recognition.outbox.ReactionChangeFeed;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.it.ItalianAnalyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Full-text search over the free-text answers ({@code image_description}) and AI comments of all reactions, with
+ * an embedded Lucene index in {@code app.search.index-dir}.
+ * <p>
+ * The index follows the reaction change feed as a registered consumer, so writes handled by every instance reach
+ * it, and stores its feed cursor with each commit: a restart continues where the last commit stopped. Without a
+ * usable index (first start, or a cursor that expired while the instance was down) it is rebuilt from
+ * {@code user_reactions}: every shard is scanned in id chunks on {@code rebuild-threads} threads into a new index
+ * directory, which replaces the old one when complete, so searches keep working meanwhile.
+ * <p>
+ * Documents are keyed by a digest of the reaction's content. Rows that the rebuild scan and the feed both deliver
+ * are therefore indexed once, and identical answers by the same user to the same image count as one hit.
+ */
+@Slf4j
+@Component
+public class ReactionSearchIndex {
+    private static final String CURSOR = "changeCursor";
+    private static final String KEY = "key";
+    private static final String USER_ID = "userId";
+    private static final String IMAGE = "image";
+    private static final String REACTION = "reaction";
+    private static final String DESCRIPTION = "description";
+    private static final String AI_COMMENT = "aiComment";
+    private static final int FEED_BATCH = 1000;
+
+    /**
+     * One index directory with its writer and searchers; replaced as a whole by a rebuild.
+     */
+    private record Generation(Path path, FSDirectory directory, IndexWriter writer, SearcherManager searchers) {
+        void close() throws IOException {
+            searchers.close();
+            writer.close();
+            directory.close();
+        }
+    }
+
+    private final ReactionShards reactionShards;
+    private final ReactionChangeFeed changeFeed;
+    private final boolean enabled;
+    private final Path indexDir;
+    private final Analyzer analyzer;
+    private final int rebuildThreads;
+    private final int rebuildChunkRows;
+    private final long feedWaitMs;
+    private final long commitMs;
+    private final String consumer;
+
+    private final Timer queryTimer;
+    private final Timer rebuildTimer;
+    private final Counter indexedCounter;
+
+    private volatile Generation generation;
+    private volatile boolean running;
+    private Thread indexer;
+    private String cursor;
+    private boolean rebuildNeeded;
+
+    public ReactionSearchIndex(ReactionShards reactionShards,
+                               ReactionChangeFeed changeFeed,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.search.enabled:true}") boolean enabled,
+                               @Value("${app.search.index-dir:${java.io.tmpdir}/emotion-search}") Path indexDir,
+                               @Value("${app.search.analyzer:standard}") String analyzerName,
+                               @Value("${app.search.rebuild-threads:0}") int rebuildThreads,
+                               @Value("${app.search.rebuild-chunk-rows:50000}") int rebuildChunkRows,
+                               @Value("${app.search.feed-wait-ms:2000}") long feedWaitMs,
+                               @Value("${app.search.commit-ms:30000}") long commitMs,
+                               @Value("${app.search.feed-consumer:search-index}") String consumer) {
+        this.reactionShards = reactionShards;
+        this.changeFeed = changeFeed;
+        this.enabled = enabled;
+        this.indexDir = indexDir;
+        this.analyzer = switch (analyzerName) {
+            case "english" -> new EnglishAnalyzer();
+            case "italian" -> new ItalianAnalyzer();
+            default -> new StandardAnalyzer();
+        };
+        this.rebuildThreads = rebuildThreads > 0 ? rebuildThreads : Runtime.getRuntime().availableProcessors();
+        this.rebuildChunkRows = rebuildChunkRows;
+        this.feedWaitMs = feedWaitMs;
+        this.commitMs = commitMs;
+        this.consumer = consumer;
+
+        this.queryTimer = Timer.builder("search.queries")
+                .description("Full-text searches over reaction texts")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("search.index.rebuild")
+                .description("Full rebuilds of the search index from user_reactions")
+                .register(meterRegistry);
+        this.indexedCounter = Counter.builder("search.index.updates")
+                .description("Reactions added to the search index from the change feed")
+                .register(meterRegistry);
+        Gauge.builder("search.index.documents", this, index -> {
+                    Generation current = index.generation;
+                    return current == null ? 0 : current.writer().getDocStats().numDocs;
+                })
+                .description("Reactions in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens the last committed index and starts following the change feed (rebuilding first if needed).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        indexer = Thread.ofVirtual().name("search-indexer").start(this::run);
+    }
+
+    /**
+     * Commits and closes the index. The indexer notices within {@code feed-wait-ms}; it is not interrupted, since
+     * an interrupt during file I/O would close the index files under the writer.
+     */
+    @PreDestroy
+    public synchronized void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        indexer.join(Duration.ofMillis(feedWaitMs + 10_000));
+    }
+
+    /**
+     * @return null while the first index is being built
+     */
+    public SearchResults search(String text, List<String> images, List<String> reactions, int limit) {
+        Generation current = generation;
+        if (current == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            IndexSearcher searcher = current.searchers().acquire();
+            try {
+                TopDocs top = searcher.search(query(text, images, reactions), Math.clamp(limit, 1, 1000));
+                StoredFields storedFields = searcher.storedFields();
+                List<SearchHit> hits = new ArrayList<>(top.scoreDocs.length);
+                for (ScoreDoc scoreDoc : top.scoreDocs) {
+                    Document document = storedFields.document(scoreDoc.doc);
+                    hits.add(new SearchHit(scoreDoc.score, document.getField(USER_ID).numericValue().longValue(),
+                            document.get(IMAGE), document.get(REACTION), document.get(DESCRIPTION), document.get(AI_COMMENT)));
+                }
+                return new SearchResults(top.totalHits.value, top.totalHits.relation == TotalHits.Relation.EQUAL_TO, hits);
+            } finally {
+                current.searchers().release(searcher);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Query query(String text, List<String> images, List<String> reactions) {
+        BooleanQuery.Builder query = new BooleanQuery.Builder();
+        if (text == null || text.isBlank()) {
+            query.add(new MatchAllDocsQuery(), BooleanClause.Occur.MUST);
+        } else {
+            // Every word has to appear in one of the two texts; matches in the participant's own words weigh more
+            SimpleQueryParser parser = new SimpleQueryParser(analyzer, Map.of(DESCRIPTION, 1.0f, AI_COMMENT, 0.5f));
+            parser.setDefaultOperator(BooleanClause.Occur.MUST);
+            Query parsed = parser.parse(text);
+            query.add(parsed == null ? new MatchAllDocsQuery() : parsed, BooleanClause.Occur.MUST);
+        }
+        addFilter(query, IMAGE, images);
+        addFilter(query, REACTION, reactions);
+        return query.build();
+    }
+
+    private static void addFilter(BooleanQuery.Builder query, String field, List<String> values) {
+        if (values != null && !values.isEmpty()) {
+            query.add(new TermInSetQuery(field, values.stream().map(BytesRef::new).toList()), BooleanClause.Occur.FILTER);
+        }
+    }
+
+    private void run() {
+        try {
+            open();
+            long committedAt = System.nanoTime();
+            String committedCursor = cursor;
+            while (running) {
+                try {
+                    if (rebuildNeeded) {
+                        rebuild();
+                        committedCursor = cursor;
+                        committedAt = System.nanoTime();
+                        continue;
+                    }
+                    // Only committed cursors are acknowledged, so the feed keeps anything a crash would lose
+                    ChangeBatch batch = changeFeed.read(cursor, FEED_BATCH, feedWaitMs,
+                            cursor.equals(committedCursor) ? consumer : null).get();
+                    if (!batch.changes().isEmpty()) {
+                        for (ReactionChange change : batch.changes()) {
+                            generation.writer().updateDocument(keyOf(change.userId(), change.image(), change.description(),
+                                    change.reaction(), change.aiComment()), document(change.userId(), change.image(),
+                                    change.description(), change.reaction(), change.aiComment()));
+                        }
+                        indexedCounter.increment(batch.changes().size());
+                        cursor = batch.cursor();
+                        generation.searchers().maybeRefresh();
+                    }
+                    if (System.nanoTime() - committedAt >= TimeUnit.MILLISECONDS.toNanos(commitMs)) {
+                        commit(generation, cursor);
+                        committedCursor = cursor;
+                        committedAt = System.nanoTime();
+                    }
+                } catch (CursorExpiredException | BadChangeRequestException e) {
+                    // Fell behind the feed retention, or the index was committed against another database
+                    log.warn("Search index cannot continue from its cursor ({}), rebuilding it", e.getMessage());
+                    rebuildNeeded = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof CursorExpiredException) {
+                        rebuildNeeded = true;
+                    } else {
+                        pause("Search index update failed", e.getCause());
+                    }
+                } catch (RuntimeException | IOException e) {
+                    pause("Search index update failed", e);
+                }
+            }
+            Generation current = generation;
+            if (current != null) {
+                commit(current, cursor);
+                generation = null;
+                current.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Search index stopped", e);
+        }
+    }
+
+    private void pause(String message, Throwable cause) throws InterruptedException {
+        log.warn("{}: {}", message, cause.getMessage());
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Opens the newest complete index directory, or marks the index for a rebuild.
+     */
+    private void open() throws IOException {
+        Files.createDirectories(indexDir);
+        List<Path> generations;
+        try (Stream<Path> paths = Files.list(indexDir)) {
+            generations = paths.filter(path -> path.getFileName().toString().startsWith("gen-"))
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList();
+        }
+        for (Path path : generations) {
+            if (generation == null) {
+                try (FSDirectory directory = FSDirectory.open(path)) {
+                    if (!DirectoryReader.indexExists(directory)) {
+                        deleteRecursively(path);
+                        continue;
+                    }
+                }
+                Generation opened = openGeneration(path, IndexWriterConfig.OpenMode.APPEND);
+                String committedCursor = commitData(opened.writer()).get(CURSOR);
+                if (committedCursor == null) {
+                    opened.close();
+                    deleteRecursively(path);
+                    continue;
+                }
+                generation = opened;
+                cursor = committedCursor;
+                log.info("Search index opened from {} ({} reactions)", path, opened.writer().getDocStats().numDocs);
+            } else {
+                deleteRecursively(path);
+            }
+        }
+        rebuildNeeded = generation == null;
+    }
+
+    private static Map<String, String> commitData(IndexWriter writer) {
+        Map<String, String> data = new HashMap<>();
+        if (writer.getLiveCommitData() != null) {
+            writer.getLiveCommitData().forEach(entry -> data.put(entry.getKey(), entry.getValue()));
+        }
+        return data;
+    }
+
+    private Generation openGeneration(Path path, IndexWriterConfig.OpenMode mode) throws IOException {
+        FSDirectory directory = FSDirectory.open(path);
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(mode);
+        config.setRAMBufferSizeMB(64);
+        IndexWriter writer = new IndexWriter(directory, config);
+        return new Generation(path, directory, writer, new SearcherManager(writer, null));
+    }
+
+    /**
+     * Builds a new generation from {@code user_reactions} and switches searches to it. Anything written during the
+     * scan is picked up from the change feed afterwards, starting at its oldest retained record.
+     */
+    private void rebuild() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        String feedStart = changeFeed.startCursor(consumer);
+        Generation fresh = openGeneration(indexDir.resolve("gen-" + System.currentTimeMillis()), IndexWriterConfig.OpenMode.CREATE);
+        AtomicLong rows = new AtomicLong();
+        try (ExecutorService workers = Executors.newFixedThreadPool(rebuildThreads,
+                Thread.ofPlatform().daemon().name("search-rebuild-", 0).factory())) {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (ReactionShards.Shard shard : reactionShards.getShards()) {
+                String owned = reactionShards.getLayout().ownedPredicate(shard.id());
+                Map<String, Object> bounds = shard.jdbc().queryForMap("SELECT MIN(id) AS low, MAX(id) AS high FROM user_reactions");
+                if (bounds.get("low") == null) {
+                    continue;
+                }
+                long low = ((Number) bounds.get("low")).longValue();
+                long high = ((Number) bounds.get("high")).longValue();
+                for (long from = low; from <= high; from += rebuildChunkRows) {
+                    long to = Math.min(high, from + rebuildChunkRows - 1);
+                    long first = from;
+                    chunks.add(workers.submit(() -> indexChunk(fresh.writer(), shard, owned, first, to, rows)));
+                }
+            }
+            for (Future<?> chunk : chunks) {
+                chunk.get();
+            }
+        } catch (ExecutionException e) {
+            fresh.close();
+            deleteRecursively(fresh.path());
+            throw new IllegalStateException("Search index rebuild failed", e.getCause());
+        }
+        commit(fresh, feedStart);
+        fresh.searchers().maybeRefresh();
+
+        Generation previous = generation;
+        generation = fresh;
+        cursor = feedStart;
+        rebuildNeeded = false;
+        if (previous != null) {
+            previous.close();
+            deleteRecursively(previous.path());
+        }
+        rebuildTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Search index rebuilt: {} reactions in {} ms", rows.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void indexChunk(IndexWriter writer, ReactionShards.Shard shard, String owned, long from, long to, AtomicLong rows) {
+        shard.readOnly().executeWithoutResult(status -> shard.jdbc().query(
+                "SELECT user_id, image, image_description, image_reaction, ai_comment FROM user_reactions "
+                        + "WHERE id BETWEEN ? AND ? AND " + owned,
+                resultSet -> {
+                    long userId = resultSet.getLong("user_id");
+                    String image = resultSet.getString("image");
+                    String description = resultSet.getString("image_description");
+                    String reaction = resultSet.getString("image_reaction");
+                    String aiComment = resultSet.getString("ai_comment");
+                    try {
+                        writer.updateDocument(keyOf(userId, image, description, reaction, aiComment),
+                                document(userId, image, description, reaction, aiComment));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    rows.incrementAndGet();
+                }, from, to));
+    }
+
+    private static void commit(Generation target, String cursor) throws IOException {
+        target.writer().setLiveCommitData(Map.of(CURSOR, cursor).entrySet());
+        target.writer().commit();
+    }
+
+    static Term keyOf(long userId, String image, String description, String reaction, String aiComment) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[]{Long.toString(userId), image, description, reaction, aiComment}) {
+                // Length prefix keeps ("ab", "c") and ("a", "bc") apart; -1 marks null
+                digest.update(Integer.toString(part == null ? -1 : part.length()).getBytes(StandardCharsets.US_ASCII));
+                digest.update((byte) ':');
+                if (part != null) {
+                    digest.update(part.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return new Term(KEY, HexFormat.of().formatHex(digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Document document(long userId, String image, String description, String reaction, String aiComment) {
+        Document document = new Document();
+        document.add(new StringField(KEY, keyOf(userId, image, description, reaction, aiComment).text(), Field.Store.NO));
+        document.add(new StoredField(USER_ID, userId));
+        if (image != null) {
+            document.add(new StringField(IMAGE, image, Field.Store.YES));
+        }
+        if (reaction != null) {
+            document.add(new StringField(REACTION, reaction, Field.Store.YES));
+        }
+        if (description != null) {
+            document.add(new TextField(DESCRIPTION, description, Field.Store.YES));
+        }
+        if (aiComment != null) {
+            document.add(new TextField(AI_COMMENT, aiComment, Field.Store.YES));
+        }
+        return document;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.eyxpoliba.emotion_recognition.search;
+
+/**
+ * One reaction matching a search, with its BM25 relevance score.
+ */
+public record SearchHit(float score, long userId, String image, String reaction, String description, String aiComment) {
+}
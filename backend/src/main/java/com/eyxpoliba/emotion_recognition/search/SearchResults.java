@@ -0,0 +1,10 @@
+package com.eyxpoliba.emotion_recognition.search;
+
+import java.util.List;
+
+/**
+ * @param total        matching reactions; a lower bound when {@code totalIsExact} is false (counting stops at 1000)
+ * @param hits         the best matches first
+ */
+public record SearchResults(long total, boolean totalIsExact, List<SearchHit> hits) {
+}
@@ -0,0 +1,78 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global in-flight limit that follows observed latency (gradient algorithm): while request latency stays
+ * close to the best latency seen in the current window the limit grows, and when requests start queueing
+ * behind a slow dependency the limit shrinks proportionally. All state is held in atomics.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final int WINDOW_SAMPLES = 500;
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong limitBits;
+    private final AtomicLong minRttNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicInteger samplesInWindow = new AtomicInteger();
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(long rttNanos) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        if (rttNanos <= 0) {
+            return;
+        }
+
+        // The reference latency is the best one seen in the window; the window restarts so it can drift upwards
+        if (samplesInWindow.incrementAndGet() >= WINDOW_SAMPLES) {
+            samplesInWindow.set(0);
+            minRttNanos.set(rttNanos);
+        } else {
+            minRttNanos.accumulateAndGet(rttNanos, Math::min);
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * minRttNanos.get() / rttNanos));
+        while (true) {
+            long currentBits = limitBits.get();
+            double limit = Double.longBitsToDouble(currentBits);
+            // Only grow when the limit is actually being used, otherwise idle periods inflate it
+            double queueAllowance = inFlightAtCompletion >= limit / 2 ? Math.sqrt(limit) : 0;
+            double target = limit * gradient + queueAllowance;
+            double next = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + target * SMOOTHING));
+            if (limitBits.compareAndSet(currentBits, Double.doubleToLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
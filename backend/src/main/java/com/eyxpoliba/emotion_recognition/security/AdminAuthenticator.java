@@ -0,0 +1,67 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import com.eyxpoliba.emotion_recognition.payload.AdminLoginPayload;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
+
+/**
+ * Login for the dashboard and admin endpoints, separate from the participant login: the ADMIN role goes only to
+ * whoever presents {@code security.admin.username} and the password matching {@code security.admin.password-hash}
+ * (BCrypt). Participant logins never carry it. Without a configured hash admin login is refused, which keeps
+ * {@code /api/dashboard/**} and {@code /api/admin/**} closed.
+ */
+@Slf4j
+@Component
+public class AdminAuthenticator {
+    private final JwtProvider jwtProvider;
+    private final String username;
+    private final String passwordHash;
+    private final PasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+
+    public AdminAuthenticator(JwtProvider jwtProvider,
+                              @Value("${security.admin.username:admin}") String username,
+                              @Value("${security.admin.password-hash:}") String passwordHash) {
+        this.jwtProvider = jwtProvider;
+        this.username = username;
+        this.passwordHash = passwordHash;
+    }
+
+    public boolean isEnabled() {
+        return !passwordHash.isBlank();
+    }
+
+    /**
+     * Sets an admin access token cookie if the credentials match.
+     *
+     * @throws AdminLoginFailedException otherwise
+     */
+    public void login(AdminLoginPayload credentials, HttpServletResponse response) {
+        if (!isEnabled() || credentials == null || credentials.username() == null || credentials.password() == null) {
+            throw new AdminLoginFailedException();
+        }
+        // The password is checked even for a wrong username, so the two failures cannot be told apart by timing
+        boolean passwordMatches = passwordEncoder.matches(credentials.password(), passwordHash);
+        boolean usernameMatches = MessageDigest.isEqual(username.getBytes(StandardCharsets.UTF_8),
+                credentials.username().getBytes(StandardCharsets.UTF_8));
+        if (!passwordMatches || !usernameMatches) {
+            log.warn("Rejected admin login for '{}'", credentials.username());
+            throw new AdminLoginFailedException();
+        }
+
+        Cookie jwtCookie = new Cookie(ACCESS_TOKEN, jwtProvider.generateAdminToken(username));
+        jwtCookie.setHttpOnly(true);
+        jwtCookie.setPath("/");
+        jwtCookie.setMaxAge(60 * 60); // 1 hour, matching the token expiration
+        response.addCookie(jwtCookie);
+    }
+}
@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Wrong admin username or password, or admin login not configured.
+ */
+@ResponseStatus(value = HttpStatus.UNAUTHORIZED, reason = "Invalid admin credentials")
+public class AdminLoginFailedException extends RuntimeException {
+    public AdminLoginFailedException() {
+        super("Invalid admin credentials");
+    }
+}
@@ -0,0 +1,187 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.web.util.matcher.IpAddressMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON_VALUE;
+
+/**
+ * Admission control for the endpoints hit in bursts when a study link is shared: a token bucket per client
+ * and a global latency-adaptive concurrency limit. Overload is answered immediately with 429/503 and a Retry-After
+ * header instead of queueing.
+ * <p>
+ * Logins are limited per IP address. Downloads are limited per the {@code userId} claim of the access token,
+ * read without checking the signature so that shedding stays cheaper than the work it sheds; the
+ * {@link JwtAuthFilter} further down verifies it, so a made-up claim only buys a fresh bucket for requests that are
+ * then refused. Downloads without a readable claim fall back to the IP address. The IP is the peer address, unless
+ * the peer is one of {@code app.admission.trusted-proxies}: then it is the right-most X-Forwarded-For hop that is
+ * not a trusted proxy, the left-most hops being whatever the client chose to send.
+ */
+@Slf4j
+@Component
+public class AdmissionControlFilter extends OncePerRequestFilter {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    static final String LOGIN_PATH = "/api/login";
+    static final String ADMIN_LOGIN_PATH = "/api/login/admin";
+    static final String DOWNLOAD_PATH = "/api/download-image";
+
+    private final TokenBucketRateLimiter loginLimiter;
+    private final TokenBucketRateLimiter downloadLimiter;
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    private final List<IpAddressMatcher> trustedProxies;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionControlFilter(
+            @Value("${app.admission.login.permits-per-second:2}") double loginRate,
+            @Value("${app.admission.login.burst:20}") int loginBurst,
+            @Value("${app.admission.download.permits-per-second:10}") double downloadRate,
+            @Value("${app.admission.download.burst:30}") int downloadBurst,
+            @Value("${app.admission.max-tracked-clients:100000}") int maxClients,
+            @Value("${app.admission.concurrency.initial:50}") int initialLimit,
+            @Value("${app.admission.concurrency.min:10}") int minLimit,
+            @Value("${app.admission.concurrency.max:500}") int maxLimit,
+            @Value("${app.admission.concurrency.tolerance:2.0}") double tolerance,
+            @Value("${app.admission.trusted-proxies:}") String[] trustedProxies,
+            MeterRegistry meterRegistry) {
+        this.loginLimiter = new TokenBucketRateLimiter(loginRate, loginBurst, maxClients, System::nanoTime);
+        this.downloadLimiter = new TokenBucketRateLimiter(downloadRate, downloadBurst, maxClients, System::nanoTime);
+        this.concurrencyLimiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance);
+        this.trustedProxies = Arrays.stream(trustedProxies)
+                .map(String::trim)
+                .filter(proxy -> !proxy.isEmpty())
+                .map(IpAddressMatcher::new)
+                .toList();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("admission.concurrency.limit", concurrencyLimiter, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("admission.concurrency.inflight", concurrencyLimiter, AdaptiveConcurrencyLimiter::getInFlight).register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !LOGIN_PATH.equals(path) && !ADMIN_LOGIN_PATH.equals(path) && !DOWNLOAD_PATH.equals(path);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        boolean download = DOWNLOAD_PATH.equals(path);
+        TokenBucketRateLimiter limiter = download ? downloadLimiter : loginLimiter;
+
+        long waitNanos = limiter.tryAcquire(download ? clientKey(request) : "ip:" + clientAddress(request));
+        if (waitNanos > 0) {
+            reject(response, TOO_MANY_REQUESTS.value(), retryAfterSeconds(waitNanos), "Too many requests", path, "rate_limited");
+            return;
+        }
+        if (!concurrencyLimiter.tryAcquire()) {
+            reject(response, SERVICE_UNAVAILABLE.value(), 1, "Server is busy, retry shortly", path, "overloaded");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (ACCESS_TOKEN.equals(cookie.getName()) && !cookie.getValue().isEmpty()) {
+                    String userId = unverifiedUserId(cookie.getValue());
+                    if (userId != null) {
+                        return "u:" + userId;
+                    }
+                }
+            }
+        }
+        return "ip:" + clientAddress(request);
+    }
+
+    // The payload segment decoded as is: no signature or expiry check
+    private static String unverifiedUserId(String token) {
+        String[] segments = token.split("\\.");
+        if (segments.length != 3) {
+            return null;
+        }
+        try {
+            JsonNode userId = OBJECT_MAPPER.readTree(Base64.getUrlDecoder().decode(segments[1])).get("userId");
+            return userId != null && userId.canConvertToLong() ? Long.toString(userId.asLong()) : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String clientAddress(HttpServletRequest request) {
+        String address = request.getRemoteAddr();
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded == null || !isTrustedProxy(address)) {
+            return address;
+        }
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            address = hop;
+            if (!isTrustedProxy(hop)) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    private boolean isTrustedProxy(String address) {
+        for (IpAddressMatcher proxy : trustedProxies) {
+            try {
+                if (proxy.matches(address)) {
+                    return true;
+                }
+            } catch (IllegalArgumentException e) {
+                // Not an IP address
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void reject(HttpServletResponse response, int status, long retryAfterSeconds, String message,
+                        String path, String reason) throws IOException {
+        meterRegistry.counter("admission.rejected", "path", path, "reason", reason).increment();
+        response.setStatus(status);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(APPLICATION_JSON_VALUE);
+        OBJECT_MAPPER.writeValue(response.getOutputStream(), Map.of("message", message));
+    }
+}
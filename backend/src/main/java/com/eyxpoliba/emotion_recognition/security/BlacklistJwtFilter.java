@@ -1,30 +1,41 @@
 package com.eyxpoliba.emotion_recognition.security;
 
+import com.eyxpoliba.emotion_recognition.metrics.RequestTiming;
 import com.eyxpoliba.emotion_recognition.repository.BlacklistTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
 
 @Slf4j
-@RequiredArgsConstructor
 @Component
 public class BlacklistJwtFilter extends OncePerRequestFilter {
     private final BlacklistTokenRepository blacklistTokenRepository;
+    private final Timer blacklistLookupTimer;
+
+    public BlacklistJwtFilter(BlacklistTokenRepository blacklistTokenRepository, MeterRegistry meterRegistry) {
+        this.blacklistTokenRepository = blacklistTokenRepository;
+        this.blacklistLookupTimer = Timer.builder("security.blacklist.lookup")
+                .description("Database lookup of the access token in the blacklist")
+                .register(meterRegistry);
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         String path = request.getRequestURI();
-        if ("/api/login".equals(path)) {
+        if ("/api/login".equals(path) || "/api/login/admin".equals(path) || path.startsWith("/actuator/")) {
             filterChain.doFilter(request, response);
             return;
         }
@@ -37,13 +48,24 @@ public class BlacklistJwtFilter extends OncePerRequestFilter {
                 }
             }
         }
-        if (jwt != null && blacklistTokenRepository.existsById(jwt)) {
+        if (jwt != null && isBlacklisted(jwt)) {
             response.setStatus(HttpStatus.UNAUTHORIZED.value());
             response.getWriter().write("Token is blacklisted");
             return;
         }
         filterChain.doFilter(request, response);
     }
+
+    private boolean isBlacklisted(String jwt) {
+        long start = System.nanoTime();
+        try {
+            return blacklistTokenRepository.existsById(jwt);
+        } finally {
+            long nanos = System.nanoTime() - start;
+            blacklistLookupTimer.record(nanos, TimeUnit.NANOSECONDS);
+            RequestTiming.add(RequestTiming.Phase.BLACKLIST, nanos);
+        }
+    }
 }
 
 
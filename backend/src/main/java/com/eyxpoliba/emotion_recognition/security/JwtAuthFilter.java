@@ -1,20 +1,29 @@
 package com.eyxpoliba.emotion_recognition.security;
 
+import com.eyxpoliba.emotion_recognition.metrics.RequestTiming;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.UNAUTHORIZED;
@@ -22,10 +31,20 @@ import static org.springframework.util.MimeTypeUtils.APPLICATION_JSON_VALUE;
 import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
 
 @Slf4j
-@RequiredArgsConstructor
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
+    // ObjectMapper is thread-safe once configured: share one instead of building it on every 401
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final JwtProvider jwtProvider;
+    private final Timer jwtParseTimer;
+
+    public JwtAuthFilter(JwtProvider jwtProvider, MeterRegistry meterRegistry) {
+        this.jwtProvider = jwtProvider;
+        this.jwtParseTimer = Timer.builder("security.jwt.parse")
+                .description("Validation and claim extraction of the access token")
+                .register(meterRegistry);
+    }
 
     static public void build401Error(HttpServletResponse response, String message) throws IOException {
         response.setContentType(APPLICATION_JSON_VALUE);
@@ -34,14 +53,31 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         Map<String, Object> errorPayload = new HashMap<>();
         errorPayload.put("message", message);
 
-        new ObjectMapper().writeValue(response.getOutputStream(), errorPayload);
+        OBJECT_MAPPER.writeValue(response.getOutputStream(), errorPayload);
+    }
+
+    private void recordParse(long nanos) {
+        jwtParseTimer.record(nanos, TimeUnit.NANOSECONDS);
+        RequestTiming.add(RequestTiming.Phase.AUTH, nanos);
+    }
+
+    // "USER,ADMIN" -> ROLE_USER, ROLE_ADMIN, as expected by hasRole(...)
+    static List<GrantedAuthority> authorities(String roles) {
+        if (roles == null || roles.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(roles.split(","))
+                .map(String::trim)
+                .filter(role -> !role.isEmpty())
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .toList();
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         String path = request.getRequestURI();
 
-        if (request.getRequestURI().contains("public") || path.equals("/api/login")) {
+        if (request.getRequestURI().contains("public") || path.equals("/api/login") || path.equals("/api/login/admin") || path.startsWith("/actuator/")) {
             filterChain.doFilter(request, response);
             return;
         }
@@ -63,18 +99,23 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
 
         try {
+            long parseStart = System.nanoTime();
             if (!jwtProvider.validateToken(token)) {
+                recordParse(System.nanoTime() - parseStart);
                 build401Error(response, "Invalid JWT token");
                 return;
             }
 
-            // Extract claims and set Authentication object
-            String username = jwtProvider.getUsernameFromToken(token);
-            Long userId = Long.valueOf(jwtProvider.getClaimFromToken(token, claims -> claims.get("userId").toString()));
+            // Extract claims and set Authentication object (one parse for subject, userId and roles)
+            Claims claims = jwtProvider.getClaimFromToken(token, Function.identity());
+            String username = claims.getSubject();
+            Long userId = Long.valueOf(claims.get("userId").toString());
+            List<GrantedAuthority> authorities = authorities(claims.get("roles", String.class));
+            recordParse(System.nanoTime() - parseStart);
 
             // Create authentication token with userId as credentials
             UsernamePasswordAuthenticationToken authenticationToken =
-                    new UsernamePasswordAuthenticationToken(username, userId, null);
+                    new UsernamePasswordAuthenticationToken(username, userId, authorities);
 
             SecurityContextHolder.getContext().setAuthentication(authenticationToken);
             filterChain.doFilter(request, response);
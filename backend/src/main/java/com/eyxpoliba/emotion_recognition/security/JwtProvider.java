@@ -69,6 +69,15 @@ public class JwtProvider implements Serializable {
     }
 
 
+    //generate access token for the admin authenticated by AdminAuthenticator; it is not a participant (userId 0)
+    public String generateAdminToken(String username) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("roles", "ADMIN");
+        claims.put("userId", 0L);
+        return doGenerateToken(claims, username, true);
+    }
+
+
     //while creating the token -
     //1. Define  claims of the token, like Issuer, Expiration, Subject, and the ID
     //2. Sign the JWT using the HS512 algorithm and secret key.
@@ -1,6 +1,7 @@
 package com.eyxpoliba.emotion_recognition.security;
 
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
@@ -33,6 +34,7 @@ import static org.springframework.security.config.http.SessionCreationPolicy.STA
 public class SecurityConfigurer {
     private final JwtAuthFilter jwtAuthFilter;
     private final BlacklistJwtFilter blacklistJwtFilter;
+    private final AdmissionControlFilter admissionControlFilter;
 
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -41,14 +43,19 @@ public class SecurityConfigurer {
         http.cors(cors -> cors.configurationSource(corsConfigurationSource()));
         http.csrf(AbstractHttpConfigurer::disable).authorizeHttpRequests(requests -> {
             requests.requestMatchers("/api/*/public/*").permitAll();
-            requests.requestMatchers("/api/login").permitAll();
-            requests.requestMatchers("/api/dashboard/").hasRole("ADMIN");
+            requests.requestMatchers("/api/login", "/api/login/admin").permitAll();
+            // The token is checked on the request dispatch; async (SSE) completions re-dispatch without it
+            requests.dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll();
+            // Only AdminAuthenticator issues this role; participant tokens never carry it
+            requests.requestMatchers("/api/dashboard/**", "/api/admin/**").hasRole("ADMIN");
             //requests.requestMatchers("/**/private/**").denyAll();
             requests.anyRequest().permitAll();
         });
 
         http.addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
         http.addFilterBefore(blacklistJwtFilter, JwtAuthFilter.class);
+        // Shed load before any token parsing or blacklist lookup is paid for
+        http.addFilterBefore(admissionControlFilter, BlacklistJwtFilter.class);
 
         return http.build();
     }
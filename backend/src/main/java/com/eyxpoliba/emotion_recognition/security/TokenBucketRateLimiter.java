@@ -0,0 +1,92 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-client token bucket implemented as a generic cell rate algorithm: each client holds a single
+ * "theoretical arrival time" updated with one CAS, so there is no lock on the request path.
+ * Buckets that have refilled completely carry no information and are swept once the map reaches
+ * {@code maxClients}. The map never holds more than {@code maxClients} buckets: while it is full of buckets still
+ * refilling, new clients share one overflow bucket, so churning through client keys cannot grow memory.
+ */
+public class TokenBucketRateLimiter {
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxClients;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentHashMap<String, AtomicLong> theoreticalArrivals = new ConcurrentHashMap<>();
+    // Buckets in the map plus those being inserted, so the cap holds under concurrent inserts
+    private final AtomicInteger tracked = new AtomicInteger();
+    private final AtomicLong overflow = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst, int maxClients, LongSupplier nanoClock) {
+        this.emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+        this.burstToleranceNanos = emissionIntervalNanos * Math.max(0, burst - 1);
+        this.maxClients = maxClients;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return 0 if a permit was taken, otherwise the nanoseconds to wait before the next permit is available.
+     */
+    public long tryAcquire(String client) {
+        long now = nanoClock.getAsLong();
+        AtomicLong tat = theoreticalArrivals.get(client);
+        if (tat == null) {
+            tat = track(client, now);
+        }
+        while (true) {
+            long current = tat.get();
+            long base = current == Long.MIN_VALUE ? now : Math.max(current, now);
+            long waitNanos = base - now - burstToleranceNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (tat.compareAndSet(current, base + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public int trackedClients() {
+        return theoreticalArrivals.size();
+    }
+
+    private AtomicLong track(String client, long now) {
+        if (tracked.get() >= maxClients) {
+            sweep(now);
+        }
+        if (tracked.incrementAndGet() > maxClients) {
+            tracked.decrementAndGet();
+            return overflow;
+        }
+        AtomicLong created = new AtomicLong(Long.MIN_VALUE);
+        AtomicLong existing = theoreticalArrivals.putIfAbsent(client, created);
+        if (existing != null) {
+            tracked.decrementAndGet();
+            return existing;
+        }
+        return created;
+    }
+
+    private void sweep(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            theoreticalArrivals.forEach((client, tat) -> {
+                if (tat.get() <= now && theoreticalArrivals.remove(client, tat)) {
+                    tracked.decrementAndGet();
+                }
+            });
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
@@ -1,45 +1,111 @@
 package com.eyxpoliba.emotion_recognition.service;
 
-
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobContainerClient;
-import com.azure.storage.blob.BlobServiceClient;
-import com.azure.storage.blob.BlobServiceClientBuilder;
-import com.azure.storage.blob.models.BlobItem;
-import jakarta.annotation.PostConstruct;
+import com.eyxpoliba.emotion_recognition.metrics.RequestTiming;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.storage.BlobStore;
+import com.eyxpoliba.emotion_recognition.storage.ResilientBlobReader;
+import com.eyxpoliba.emotion_recognition.storage.StorageUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Service
 public class AzureStorageService {
+    private record SignedUrl(String url, Instant expiresAt) {
+    }
 
-    @Value("${azure.storage.connection-string}")
-    private String connectionString;
+    private final Timer listTimer;
+    private final Timer existsTimer;
+    private final Timer downloadTimer;
+    private final DistributionSummary downloadBytes;
+    private final Counter urlsSigned;
+    private final Counter urlsCached;
 
-    @Value("${azure.storage.container-name}")
-    private String containerName;
+    private final BlobStore blobStore;
+    private final ResilientBlobReader blobReader;
+    private final Bulkhead storageBulkhead;
+    private final boolean signedUrlDelivery;
+    private final Duration signedUrlTtl;
+    private final Duration signedUrlMinValidity;
+    private final Clock clock;
 
-    @Value("${azure.storage.sas-token}")
-    private String sasToken;
+    // Un URL per blob, condiviso tra i partecipanti finché gli resta almeno signedUrlMinValidity di validità
+    private final Map<String, SignedUrl> signedUrls = new ConcurrentHashMap<>();
 
-    private BlobContainerClient blobContainerClient;
+    // Ultimo elenco ottenuto con successo, usato quando lo storage è lento o non raggiungibile
+    private volatile List<String> lastKnownBlobNames = Collections.emptyList();
 
-    @PostConstruct
-    public void init() {
-        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
-                .endpoint(connectionString)
-                .sasToken(sasToken)
-                .buildClient();
-        this.blobContainerClient = blobServiceClient.getBlobContainerClient(containerName);
-        if (!blobContainerClient.exists()) {
-            blobContainerClient.create(); // Crea il container se non esiste
-        }
+    @Autowired
+    public AzureStorageService(BlobStore blobStore,
+                               ResilientBlobReader blobReader,
+                               @Qualifier("storageBulkhead") Bulkhead storageBulkhead,
+                               MeterRegistry meterRegistry,
+                               @Value("${azure.storage.delivery:proxy}") String delivery,
+                               @Value("${azure.storage.sas.ttl-ms:1800000}") long signedUrlTtlMs,
+                               @Value("${azure.storage.sas.min-validity-ms:900000}") long signedUrlMinValidityMs) {
+        this(blobStore, blobReader, storageBulkhead, meterRegistry, "sas".equalsIgnoreCase(delivery), Duration.ofMillis(signedUrlTtlMs),
+                Duration.ofMillis(signedUrlMinValidityMs), Clock.systemUTC());
+    }
+
+    AzureStorageService(BlobStore blobStore, ResilientBlobReader blobReader, Bulkhead storageBulkhead,
+                        MeterRegistry meterRegistry, boolean signedUrlDelivery, Duration signedUrlTtl, Duration signedUrlMinValidity, Clock clock) {
+        this.blobStore = blobStore;
+        this.blobReader = blobReader;
+        this.storageBulkhead = storageBulkhead;
+        this.signedUrlDelivery = signedUrlDelivery;
+        this.signedUrlTtl = signedUrlTtl;
+        this.signedUrlMinValidity = signedUrlMinValidity;
+        this.clock = clock;
+        this.listTimer = storageTimer(meterRegistry, "list");
+        this.existsTimer = storageTimer(meterRegistry, "exists");
+        this.downloadTimer = storageTimer(meterRegistry, "download");
+        this.downloadBytes = DistributionSummary.builder("storage.download.bytes")
+                .baseUnit("bytes")
+                .description("Dimensione dei blob scaricati")
+                .register(meterRegistry);
+        this.urlsSigned = Counter.builder("storage.signed_urls")
+                .tag("source", "signed")
+                .description("URL firmati consegnati al browser")
+                .register(meterRegistry);
+        this.urlsCached = Counter.builder("storage.signed_urls")
+                .tag("source", "cache")
+                .description("URL firmati consegnati al browser")
+                .register(meterRegistry);
+    }
+
+    private static Timer storageTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("storage.operation")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static void record(Timer timer, RequestTiming.Phase phase, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+        RequestTiming.add(phase, nanos);
     }
 
     /**
@@ -48,7 +114,11 @@ public class AzureStorageService {
      * @return Una lista di stringhe con i nomi dei blob.
      */
     private List<String> listAllBlobs() {
-        return blobContainerClient.listBlobs().stream().map(BlobItem::getName).collect(Collectors.toList());
+        long start = System.nanoTime();
+        List<String> blobNames = storageBulkhead.call(blobStore::listBlobNames);
+        record(listTimer, RequestTiming.Phase.STORAGE_LIST, start);
+        lastKnownBlobNames = List.copyOf(blobNames);
+        return blobNames;
     }
 
     /**
@@ -58,7 +128,35 @@ public class AzureStorageService {
      * @return Una lista di stringhe con i nomi dei blob casuali.
      */
     public List<String> getRandomBlobNames(int count) {
-        List<String> allBlobNames = listAllBlobs();
+        return sample(listAllBlobs(), count);
+    }
+
+    /**
+     * Come {@link #getRandomBlobNames(int)}, ma campiona dall'ultimo elenco noto senza contattare lo storage.
+     *
+     * @param count Il numero di immagini casuali da recuperare.
+     * @return Una lista di nomi casuali, vuota se il container non è mai stato elencato.
+     */
+    public List<String> getFallbackBlobNames(int count) {
+        return sample(new ArrayList<>(lastKnownBlobNames), count);
+    }
+
+    /**
+     * Un'immagine appena caricata dall'API di ingestione entra subito nell'ultimo elenco noto, senza attendere
+     * il prossimo elenco del container.
+     */
+    @EventListener
+    public void onImageIngested(ImageIngestedEvent event) {
+        synchronized (this) {
+            if (!lastKnownBlobNames.contains(event.blobName())) {
+                List<String> updated = new ArrayList<>(lastKnownBlobNames);
+                updated.add(event.blobName());
+                lastKnownBlobNames = List.copyOf(updated);
+            }
+        }
+    }
+
+    private List<String> sample(List<String> allBlobNames, int count) {
         if (allBlobNames.isEmpty()) {
             return Collections.emptyList();
         }
@@ -75,18 +173,84 @@ public class AzureStorageService {
     }
 
     /**
-     * Scarica il contenuto di un blob.
+     * Scarica il contenuto di un blob, con scadenza, hedging e circuit breaker (vedi {@link ResilientBlobReader}).
      * @param imageName Il nome del blob da scaricare.
      * @return Un array di byte contenente l'immagine.
-     * @throws IOException Se si verifica un errore durante lo scaricamento.
+     * @throws FileNotFoundException Se il blob non esiste.
+     * @throws com.eyxpoliba.emotion_recognition.storage.StorageUnavailableException Se lo storage non è disponibile
+     * e l'immagine non è nella cache locale.
      */
     public byte[] downloadImage(String imageName) throws IOException {
-        BlobClient blobClient = blobContainerClient.getBlobClient(imageName);
-        if (!blobClient.exists()) {
-            throw new IOException("Blob non trovato: " + imageName);
+        long start = System.nanoTime();
+        try {
+            storageBulkhead.acquire();
+        } catch (Bulkhead.FullException e) {
+            throw new StorageUnavailableException("Troppe letture in corso", e);
+        }
+        try {
+            return blobReader.read(imageName, () -> fetch(imageName));
+        } finally {
+            storageBulkhead.release();
+            RequestTiming.add(RequestTiming.Phase.STORAGE_DOWNLOAD, System.nanoTime() - start);
+        }
+    }
+
+    // Un singolo tentativo; può girare in parallelo a un tentativo hedged per lo stesso blob
+    private byte[] fetch(String imageName) throws IOException {
+        long start = System.nanoTime();
+        boolean exists = blobStore.exists(imageName);
+        existsTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (!exists) {
+            throw new FileNotFoundException("Blob non trovato: " + imageName);
         }
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        blobClient.downloadStream(outputStream);
+        start = System.nanoTime();
+        blobStore.download(imageName, outputStream);
+        downloadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        downloadBytes.record(outputStream.size());
         return outputStream.toByteArray();
     }
-}
\ No newline at end of file
+
+    /**
+     * Con {@code azure.storage.delivery=sas} restituisce, per ogni blob, un URL di sola lettura a breve scadenza
+     * con cui il browser scarica l'immagine direttamente dallo storage. Gli URL sono firmati localmente e
+     * riutilizzati finché non si avvicinano alla scadenza.
+     *
+     * @param imageNames I nomi dei blob, nell'ordine restituito al partecipante.
+     * @return Gli URL nello stesso ordine, oppure null se la consegna diretta non è attiva o non è disponibile:
+     * il client usa allora {@code /api/download-image}.
+     */
+    public List<String> getImageUrls(List<String> imageNames) {
+        if (!signedUrlDelivery) {
+            return null;
+        }
+        Instant now = clock.instant();
+        List<String> urls = new ArrayList<>(imageNames.size());
+        try {
+            for (String imageName : imageNames) {
+                SignedUrl signed = signedUrls.get(imageName);
+                if (signed == null || signed.expiresAt().isBefore(now.plus(signedUrlMinValidity))) {
+                    Instant expiresAt = now.plus(signedUrlTtl);
+                    String url = blobStore.signedUrl(imageName, expiresAt.atOffset(ZoneOffset.UTC));
+                    if (url == null) {
+                        return null; // il contenitore non sa firmare (es. storage in memoria)
+                    }
+                    if (signed == null) {
+                        // Nuovo blob in cache: elimina gli URL scaduti dei blob non più richiesti
+                        signedUrls.values().removeIf(old -> old.expiresAt().isBefore(now));
+                    }
+                    signed = new SignedUrl(url, expiresAt);
+                    signedUrls.put(imageName, signed);
+                    urlsSigned.increment();
+                } else {
+                    urlsCached.increment();
+                }
+                urls.add(signed.url());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Firma degli URL non riuscita, le immagini passano dal proxy: {}", e.getMessage());
+            return null;
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,7 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+/**
+ * Published once an ingested image is committed to storage and registered in the catalog.
+ */
+public record ImageIngestedEvent(String blobName, String sha256, String contentType, int width, int height, long sizeBytes) {
+}
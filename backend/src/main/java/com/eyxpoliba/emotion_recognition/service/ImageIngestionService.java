@@ -0,0 +1,292 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.model.ImageEntity;
+import com.eyxpoliba.emotion_recognition.repository.ImageRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.storage.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileAlreadyExistsException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admin ingestion of study images. The request body is read in blocks of {@code block-size-bytes}; each block is
+ * hashed and then staged to storage on its own virtual thread, with at most {@code parallel-blocks} in flight per
+ * upload (which also bounds the memory held per upload). Content type and dimensions are read from the first
+ * block's image header. Once the body is consumed the SHA-256 decides: a known hash abandons the staged blocks,
+ * otherwise the blob is committed, registered in the {@code images} catalog and announced with an
+ * {@link ImageIngestedEvent}.
+ */
+@Slf4j
+@Service
+public class ImageIngestionService {
+    private static final int MAX_NAME_LENGTH = 255;
+
+    record ImageInfo(String contentType, int width, int height) {
+    }
+
+    private final BlobStore blobStore;
+    private final ImageRepository imageRepository;
+    private final Bulkhead storageBulkhead;
+    private final ApplicationEventPublisher eventPublisher;
+    private final int blockSize;
+    private final int parallelBlocks;
+    private final long maxBytes;
+
+    private final ExecutorService blockExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ingest-block-", 0).factory());
+    private final Map<String, Counter> outcomes = new LinkedHashMap<>();
+    private final DistributionSummary ingestedBytes;
+    private final Timer ingestTimer;
+
+    public ImageIngestionService(BlobStore blobStore,
+                                 ImageRepository imageRepository,
+                                 @Qualifier("storageBulkhead") Bulkhead storageBulkhead,
+                                 ApplicationEventPublisher eventPublisher,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.ingest.block-size-bytes:1048576}") int blockSize,
+                                 @Value("${app.ingest.parallel-blocks:4}") int parallelBlocks,
+                                 @Value("${app.ingest.max-bytes:20971520}") long maxBytes) {
+        this.blobStore = blobStore;
+        this.imageRepository = imageRepository;
+        this.storageBulkhead = storageBulkhead;
+        this.eventPublisher = eventPublisher;
+        this.blockSize = blockSize;
+        this.parallelBlocks = parallelBlocks;
+        this.maxBytes = maxBytes;
+
+        for (String outcome : List.of("created", "duplicate", "rejected", "failed")) {
+            outcomes.put(outcome, Counter.builder("ingest.images")
+                    .description("Images received by the ingestion API")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+        this.ingestedBytes = DistributionSummary.builder("ingest.bytes")
+                .description("Size of committed images")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.ingestTimer = Timer.builder("ingest.duration")
+                .description("From first byte read to catalog registration, committed images only")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        blockExecutor.shutdownNow();
+    }
+
+    public ResponseEntity<Object> ingest(String blobName, InputStream content) throws IOException {
+        if (!isValidName(blobName)) {
+            return reject(400, "Invalid image name");
+        }
+        if (imageRepository.existsById(blobName)) {
+            return reject(409, "An image with this name already exists");
+        }
+        try {
+            storageBulkhead.acquire();
+        } catch (Bulkhead.FullException e) {
+            outcomes.get("failed").increment();
+            return ResponseEntity.status(503).body(Map.of("message", "Storage is busy, retry shortly"));
+        }
+        try {
+            return ingestAcquired(blobName, content);
+        } finally {
+            storageBulkhead.release();
+        }
+    }
+
+    private ResponseEntity<Object> ingestAcquired(String blobName, InputStream content) throws IOException {
+        long start = System.nanoTime();
+        MessageDigest digest = sha256();
+        BlobStore.BlockUpload upload = blobStore.beginUpload(blobName);
+        Semaphore inFlight = new Semaphore(parallelBlocks);
+        List<Future<?>> staged = new ArrayList<>();
+        boolean committed = false;
+        try {
+            ImageInfo info = null;
+            long size = 0;
+            int blockCount = 0;
+            byte[] block;
+            while ((block = content.readNBytes(blockSize)).length > 0) {
+                size += block.length;
+                if (size > maxBytes) {
+                    return reject(413, "Image exceeds " + maxBytes + " bytes");
+                }
+                digest.update(block);
+                if (blockCount == 0) {
+                    info = probe(block);
+                    if (info == null) {
+                        return reject(415, "Unsupported or unreadable image format");
+                    }
+                }
+                staged.add(stage(upload, blockCount++, block, inFlight));
+            }
+            if (blockCount == 0) {
+                return reject(400, "Empty body");
+            }
+            awaitAll(staged);
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Optional<ImageEntity> existing = imageRepository.findBySha256(sha256);
+            if (existing.isPresent()) {
+                return duplicate(existing.get());
+            }
+            try {
+                upload.commit(blockCount, info.contentType());
+            } catch (FileAlreadyExistsException e) {
+                return reject(409, "An image with this name already exists");
+            }
+            committed = true;
+            try {
+                imageRepository.insert(blobName, sha256, info.contentType(), info.width(), info.height(), size,
+                        LocalDateTime.now(ZoneOffset.UTC));
+            } catch (DataIntegrityViolationException e) {
+                // Same content or name registered concurrently: keep the first one
+                blobStore.delete(blobName);
+                committed = false;
+                Optional<ImageEntity> winner = imageRepository.findBySha256(sha256);
+                return winner.isPresent() ? duplicate(winner.get()) : reject(409, "An image with this name already exists");
+            }
+
+            ingestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            ingestedBytes.record(size);
+            outcomes.get("created").increment();
+            eventPublisher.publishEvent(new ImageIngestedEvent(blobName, sha256, info.contentType(), info.width(), info.height(), size));
+            return ResponseEntity.created(URI.create("/api/download-image?imageName=" + blobName)).body(Map.of(
+                    "blobName", blobName,
+                    "sha256", sha256,
+                    "contentType", info.contentType(),
+                    "width", info.width(),
+                    "height", info.height(),
+                    "sizeBytes", size));
+        } catch (IOException | RuntimeException e) {
+            outcomes.get("failed").increment();
+            log.warn("Ingest of {} failed: {}", blobName, e.toString());
+            throw e;
+        } finally {
+            if (!committed) {
+                staged.forEach(future -> future.cancel(true));
+                upload.abort();
+            }
+        }
+    }
+
+    private Future<?> stage(BlobStore.BlockUpload upload, int index, byte[] block, Semaphore inFlight) throws IOException {
+        try {
+            // Backpressure: reading waits while parallel-blocks stages are still uploading
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while staging " + index, e);
+        }
+        return blockExecutor.submit(() -> {
+            try {
+                upload.stageBlock(index, block, block.length);
+            } finally {
+                inFlight.release();
+            }
+            return null;
+        });
+    }
+
+    private static void awaitAll(List<Future<?>> staged) throws IOException {
+        for (Future<?> future : staged) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while staging blocks", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException io) {
+                    throw io;
+                }
+                throw new IOException("Staging a block failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Reads format and dimensions from the image header, which always fits in the first block for the formats
+     * ImageIO can decode; no pixels are decoded.
+     *
+     * @return null if the format is not recognised
+     */
+    static ImageInfo probe(byte[] header) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                String[] mimeTypes = reader.getOriginatingProvider().getMIMETypes();
+                String contentType = mimeTypes == null || mimeTypes.length == 0 ? "application/octet-stream" : mimeTypes[0];
+                return new ImageInfo(contentType, reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isValidName(String blobName) {
+        return blobName != null && !blobName.isBlank() && blobName.length() <= MAX_NAME_LENGTH
+                && !blobName.startsWith("/") && !blobName.contains("..") && !blobName.contains("\\");
+    }
+
+    private ResponseEntity<Object> duplicate(ImageEntity existing) {
+        outcomes.get("duplicate").increment();
+        return ResponseEntity.status(409).body(Map.of(
+                "message", "Image already ingested",
+                "duplicateOf", existing.getBlobName()));
+    }
+
+    private ResponseEntity<Object> reject(int status, String message) {
+        outcomes.get("rejected").increment();
+        return ResponseEntity.status(status).body(Map.of("message", message));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A login stage did not finish within its {@code app.login.*-stage-timeout-ms} deadline.
+ */
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE, reason = "Server is busy, retry shortly")
+public class LoginStageTimeoutException extends RuntimeException {
+    public LoginStageTimeoutException(Throwable cause) {
+        super("Login stage timed out", cause);
+    }
+}
@@ -0,0 +1,30 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Published after a result submission has been stored. Listeners (dashboard stream, cohort index) keep their
+ * in-memory aggregates current from it without querying the table.
+ * <p>
+ * {@code shard} and {@code lastRowId} tell where the submission's rows were committed (all of them in one
+ * transaction, so a scan reads all or none): a rebuild that read row {@code lastRowId} on that shard already
+ * counts the submission. {@code lastRowId} is 0 for a submission without reactions.
+ */
+public record ReactionsRegisteredEvent(long userId, List<Reaction> reactions, int shard, long lastRowId) {
+
+    public record Reaction(String image, String reaction) {
+    }
+
+    /**
+     * How many rows were added per reaction label (rows without a label are not counted).
+     */
+    public Map<String, Long> countsByReaction() {
+        return reactions.stream()
+                .map(Reaction::reaction)
+                .filter(Objects::nonNull)
+                .collect(Collectors.groupingBy(reaction -> reaction, Collectors.counting()));
+    }
+}
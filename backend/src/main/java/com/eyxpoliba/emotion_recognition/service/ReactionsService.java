@@ -1,40 +1,141 @@
 package com.eyxpoliba.emotion_recognition.service;
 
+import com.eyxpoliba.emotion_recognition.inference.Classification;
+import com.eyxpoliba.emotion_recognition.inference.InferenceGateway;
+import com.eyxpoliba.emotion_recognition.metrics.RequestTiming;
 import com.eyxpoliba.emotion_recognition.model.ReactionsEntity;
 import com.eyxpoliba.emotion_recognition.payload.ImageDescriptionAndReactionPayload;
 import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
 import com.eyxpoliba.emotion_recognition.repository.ReactionsRepository;
 import com.eyxpoliba.emotion_recognition.repository.UserRepository;
-import lombok.AllArgsConstructor;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
-@AllArgsConstructor
+@RequiredArgsConstructor
 public class ReactionsService {
     private final ReactionsRepository reactionsRepository;
     private final UserRepository userRepository;
+    private final ReactionsBulkWriter reactionsBulkWriter;
+    private final ReactionShards reactionShards;
+    private final TransactionTemplate transactionTemplate;
+    private final InferenceGateway inferenceGateway;
+    private final ApplicationEventPublisher eventPublisher;
+    @Qualifier("databaseBulkhead")
+    private final Bulkhead databaseBulkhead;
+
+    // Submissions with at least this many reactions go through the native bulk API (0 disables it)
+    @Value("${app.reactions.bulk-threshold:100}")
+    private int bulkThreshold;
 
     public ResponseEntity<Object> registerResult(ResultPayload payload) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         Long userId = (Long) authentication.getCredentials();
 
-        for (ImageDescriptionAndReactionPayload imageDescrAndReac: payload.imagesDescriptionsAndReactions()) {
-            ReactionsEntity newResult = ReactionsEntity.builder()
-                    .userId(userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found")))
-                    .image(imageDescrAndReac.image())
-                    .imageDescription(imageDescrAndReac.description())
-                    .imageReaction(imageDescrAndReac.reaction())
-                    .aiComment(imageDescrAndReac.aiComment())
-                    .build();
+        List<ImageDescriptionAndReactionPayload> items = withAiComments(payload.imagesDescriptionsAndReactions());
 
-            reactionsRepository.save(newResult);
-        }
+        ReactionsBulkWriter.Stored stored = store(userId, items);
+        // Where the rows landed lets index rebuilds tell whether their scan already covers this submission
+        eventPublisher.publishEvent(new ReactionsRegisteredEvent(userId, items.stream()
+                .map(item -> new ReactionsRegisteredEvent.Reaction(item.image(), item.reaction()))
+                .toList(), stored.shard(), stored.lastId()));
 
             return ResponseEntity.created(URI.create("/api/register-result")).body("{\"message\": \"Result registered successfully\"}");
     }
+
+    private ReactionsBulkWriter.Stored store(Long userId, List<ImageDescriptionAndReactionPayload> items) {
+        long dbStart = RequestTiming.begin();
+        ReactionsBulkWriter.Stored stored;
+        databaseBulkhead.acquire();
+        try {
+            boolean bulk = bulkThreshold > 0 && items.size() >= bulkThreshold;
+            List<ReactionsBulkWriter.Row> rows = items.stream()
+                    .map(item -> new ReactionsBulkWriter.Row(userId, item.image(), item.description(), item.reaction(), item.aiComment()))
+                    .toList();
+            // JPA only reaches shard 0; users placed on another shard are written with JDBC batches there
+            if (bulk || !reactionShards.shardFor(userId).isPrimary()) {
+                if (!userRepository.existsById(userId)) {
+                    throw new RuntimeException("User not found");
+                }
+                stored = reactionsBulkWriter.writeForUser(userId, rows, bulk ? null : ReactionsBulkWriter.Method.BATCH);
+            } else {
+                // One transaction for the rows and their outbox records (the bulk writer does the same on its own)
+                stored = transactionTemplate.execute(status -> {
+                    if (!reactionShards.lockBuckets(reactionShards.getShard(0), List.of(userId))) {
+                        return null;
+                    }
+                    long savedId = 0;
+                    for (ImageDescriptionAndReactionPayload imageDescrAndReac: items) {
+                        ReactionsEntity newResult = ReactionsEntity.builder()
+                                .userId(userRepository.findById(userId).orElseThrow(() -> new RuntimeException("User not found")))
+                                .image(imageDescrAndReac.image())
+                                .imageDescription(imageDescrAndReac.description())
+                                .imageReaction(imageDescrAndReac.reaction())
+                                .aiComment(imageDescrAndReac.aiComment())
+                                .build();
+
+                        savedId = reactionsRepository.save(newResult).getId();
+                    }
+                    reactionsBulkWriter.appendToOutbox(rows);
+                    return new ReactionsBulkWriter.Stored(0, savedId);
+                });
+                // The user's range has left shard 0 since it was routed; the bulk writer routes the rows again
+                if (stored == null) {
+                    reactionShards.refresh();
+                    stored = reactionsBulkWriter.writeForUser(userId, rows, ReactionsBulkWriter.Method.BATCH);
+                }
+            }
+        } finally {
+            databaseBulkhead.release();
+            RequestTiming.end(RequestTiming.Phase.DB, dbStart);
+        }
+        return stored;
+    }
+
+    // Items submitted without an aiComment get the classifier's label for their description, joined here instead
+    // of a second browser round trip. All texts are queued first so they share gateway batches; on timeout or
+    // an open circuit the comment is left empty rather than failing the submission.
+    private List<ImageDescriptionAndReactionPayload> withAiComments(List<ImageDescriptionAndReactionPayload> items) {
+        if (!inferenceGateway.isEnabled()) {
+            return items;
+        }
+        long inferenceStart = RequestTiming.begin();
+        List<CompletableFuture<Classification>> labels = items.stream()
+                .map(item -> needsAiComment(item) ? inferenceGateway.classify(item.description()) : null)
+                .toList();
+
+        List<ImageDescriptionAndReactionPayload> joined = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            ImageDescriptionAndReactionPayload item = items.get(i);
+            CompletableFuture<Classification> label = labels.get(i);
+            if (label == null) {
+                joined.add(item);
+                continue;
+            }
+            String aiComment = label.handle((classification, error) -> classification == null ? null : classification.label()).join();
+            joined.add(new ImageDescriptionAndReactionPayload(item.image(), item.description(), item.reaction(), aiComment));
+        }
+        RequestTiming.end(RequestTiming.Phase.INFERENCE, inferenceStart);
+        return joined;
+    }
+
+    private static boolean needsAiComment(ImageDescriptionAndReactionPayload item) {
+        return (item.aiComment() == null || item.aiComment().isBlank())
+                && item.description() != null && !item.description().isBlank();
+    }
 }
@@ -0,0 +1,29 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import com.eyxpoliba.emotion_recognition.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+/**
+ * Aggregate queries for statistics and dashboards. Read-only transactions, so they run on the read replica
+ * when one is configured (see ReadWriteDataSourceConfig); reaction counts are gathered from every shard.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class StatisticsService {
+    private final ShardedReactionsRepository shardedReactionsRepository;
+    private final UserRepository userRepository;
+
+    public Map<String, Long> reactionDistribution() {
+        return shardedReactionsRepository.countByReaction();
+    }
+
+    public long userCount() {
+        return userRepository.count();
+    }
+}
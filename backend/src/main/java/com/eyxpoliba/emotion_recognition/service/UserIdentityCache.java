@@ -0,0 +1,71 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.model.UserEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded LRU cache email -> (user id, last persisted profile) used by the login path,
+ * so that a returning participant does not hit the database at all.
+ * <p>
+ * Entries expire {@code identity-cache-ttl-ms} after they were stored: a profile changed through another
+ * instance, or a user row that is gone, is noticed by the next login after that.
+ */
+@Component
+public class UserIdentityCache {
+
+    public record Profile(String nickname, int age, String gender, String nationality) {
+        public static Profile of(UserEntity user) {
+            return new Profile(user.getNickname(), user.getAge(), user.getGender(), user.getNationality());
+        }
+    }
+
+    public record CachedUser(Long id, Profile profile) {
+    }
+
+    private record Entry(CachedUser user, long storedAt) {
+    }
+
+    private final Map<String, Entry> entries;
+    private final long ttlNanos;
+
+    public UserIdentityCache(@Value("${app.users.identity-cache-size:10000}") int capacity,
+                             @Value("${app.users.identity-cache-ttl-ms:60000}") long ttlMs) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public synchronized CachedUser get(String email) {
+        Entry entry = entries.get(email);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.storedAt() >= ttlNanos) {
+            entries.remove(email);
+            return null;
+        }
+        return entry.user();
+    }
+
+    public synchronized void put(String email, Long id, Profile profile) {
+        entries.put(email, new Entry(new CachedUser(Objects.requireNonNull(id), profile), System.nanoTime()));
+    }
+
+    public synchronized void evict(String email) {
+        entries.remove(email);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,7 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+/**
+ * Published after a login has resolved the participant, with the demographics sent at login.
+ */
+public record UserProfileEvent(long userId, int age, String gender, String nationality) {
+}
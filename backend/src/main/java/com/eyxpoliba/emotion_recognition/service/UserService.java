@@ -1,25 +1,43 @@
 package com.eyxpoliba.emotion_recognition.service;
 
+import com.eyxpoliba.emotion_recognition.metrics.RequestTiming;
+import com.eyxpoliba.emotion_recognition.metrics.StatementCountInspector;
 import com.eyxpoliba.emotion_recognition.model.BlacklistTokenEntity;
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
 import com.eyxpoliba.emotion_recognition.repository.BlacklistTokenRepository;
 import com.eyxpoliba.emotion_recognition.repository.UserRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
 import com.eyxpoliba.emotion_recognition.responses.LoginResponse;
 import com.eyxpoliba.emotion_recognition.security.JwtProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import static com.eyxpoliba.emotion_recognition.security.SecurityConstants.ACCESS_TOKEN;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class UserService {
@@ -27,27 +45,118 @@ public class UserService {
     private final BlacklistTokenRepository blacklistTokenRepository;
     private final AzureStorageService azureStorageService;
     private final JwtProvider jwtProvider;
+    private final UserIdentityCache userIdentityCache;
+
+    private final ExecutorService loginExecutor;
+    private final MeterRegistry meterRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    @Qualifier("databaseBulkhead")
+    private final Bulkhead databaseBulkhead;
+    @Qualifier("cryptoBulkhead")
+    private final Bulkhead cryptoBulkhead;
+
+    @Value("${app.login.user-stage-timeout-ms:5000}")
+    private long userStageTimeoutMs;
+    @Value("${app.login.token-stage-timeout-ms:2000}")
+    private long tokenStageTimeoutMs;
+    @Value("${app.login.images-stage-timeout-ms:1500}")
+    private long imagesStageTimeoutMs;
 
     public ResponseEntity<LoginResponse> login(UserEntity user, HttpServletResponse response) {
-        UserEntity newUser = userRepository.save(user);
-
-        HashMap<String, String> tokens = packJwts(newUser.getNickname(), newUser.getId());
-        List<String> imagesName = azureStorageService.getRandomBlobNames(10);
+        // Image sampling does not depend on the user: start it first, it is usually the slowest stage
+        // Every stage started for this login, so a failed login can cancel the ones still queued or running
+        Queue<CompletableFuture<?>> stages = new ConcurrentLinkedQueue<>();
+        CompletableFuture<List<String>> imagesStage = stage(stages, "images", imagesStageTimeoutMs,
+                () -> azureStorageService.getRandomBlobNames(10))
+                .exceptionally(ex -> {
+                    log.warn("Image listing unavailable, serving last known images: {}", ex.toString());
+                    meterRegistry.counter("login.images.fallback").increment();
+                    return azureStorageService.getFallbackBlobNames(10);
+                });
+
+        CompletableFuture<Long> userStage = stage(stages, "user", userStageTimeoutMs, () -> {
+            long dbStart = RequestTiming.begin();
+            try {
+                return databaseBulkhead.call(() -> resolveUserId(user));
+            } finally {
+                RequestTiming.end(RequestTiming.Phase.DB, dbStart);
+            }
+        });
+        CompletableFuture<String> accessTokenStage = userStage.thenCompose(userId ->
+                stage(stages, "access_token", tokenStageTimeoutMs,
+                        () -> cryptoBulkhead.call(() -> jwtProvider.generateToken(user.getNickname(), userId, true))));
+        CompletableFuture<String> refreshTokenStage = userStage.thenCompose(userId ->
+                stage(stages, "refresh_token", tokenStageTimeoutMs,
+                        () -> cryptoBulkhead.call(() -> jwtProvider.generateToken(user.getNickname(), userId, false))));
+        stages.addAll(List.of(accessTokenStage, refreshTokenStage, imagesStage));
+
+        Long userId = await(userStage, stages);
+        eventPublisher.publishEvent(new UserProfileEvent(userId, user.getAge(), user.getGender(), user.getNationality()));
+        String accessToken = await(accessTokenStage, stages);
+        String refreshToken = await(refreshTokenStage, stages);
+        List<String> imagesName = await(imagesStage, stages);
+        // Signed locally, no storage round trip; null keeps the client on the download proxy
+        List<String> imageUrls = azureStorageService.getImageUrls(imagesName);
 
         // Set JWT token as a cookie
-        Cookie jwtCookie = new Cookie(ACCESS_TOKEN, tokens.get("access_token"));
+        Cookie jwtCookie = new Cookie(ACCESS_TOKEN, accessToken);
         //jwtCookie.setHttpOnly(true);
         jwtCookie.setPath("/");
         jwtCookie.setMaxAge(60 * 60); // 1 hour, matching the token expiration
         response.addCookie(jwtCookie);
 
-        Cookie jwtRefreshCookie = new Cookie("refreshToken", tokens.get("refresh_token"));
+        Cookie jwtRefreshCookie = new Cookie("refreshToken", refreshToken);
         //jwtCookie.setHttpOnly(true);
         jwtRefreshCookie.setPath("/");
         jwtRefreshCookie.setMaxAge(120 * 120); // 1 hour, matching the token expiration
         response.addCookie(jwtRefreshCookie);
 
-        return ResponseEntity.created(URI.create("/api/login")).body(new LoginResponse(newUser.getId(), imagesName));
+        return ResponseEntity.created(URI.create("/api/login")).body(new LoginResponse(userId, imagesName, imageUrls));
+    }
+
+    /**
+     * Resolves the participant by email: cache probe first, then indexed lookup, then atomic upsert.
+     * Profile fields are only written when they differ from what was last persisted (as far as the cache entry,
+     * at most {@code identity-cache-ttl-ms} old, or the row just read tells).
+     */
+    private Long resolveUserId(UserEntity user) {
+        String email = user.getEmail();
+        if (email == null || email.isBlank()) {
+            // Anonymous participant: nothing to deduplicate on
+            return userRepository.save(user).getId();
+        }
+
+        UserIdentityCache.Profile profile = UserIdentityCache.Profile.of(user);
+        UserIdentityCache.CachedUser cached = userIdentityCache.get(email);
+        if (cached != null) {
+            if (cached.profile().equals(profile)) {
+                return cached.id();
+            }
+            // No row updated: the user is gone, resolve the email again
+            if (updateProfile(cached.id(), profile) > 0) {
+                userIdentityCache.put(email, cached.id(), profile);
+                return cached.id();
+            }
+            userIdentityCache.evict(email);
+        }
+
+        Long userId;
+        Optional<UserEntity> existing = userRepository.findByEmail(email);
+        if (existing.isPresent()) {
+            userId = existing.get().getId();
+            if (!UserIdentityCache.Profile.of(existing.get()).equals(profile)) {
+                updateProfile(userId, profile);
+            }
+        } else {
+            userRepository.upsertByEmail(email, profile.nickname(), profile.age(), profile.gender(), profile.nationality());
+            userId = userRepository.findIdByEmail(email).orElseThrow(() -> new RuntimeException("User not found"));
+        }
+        userIdentityCache.put(email, userId, profile);
+        return userId;
+    }
+
+    private int updateProfile(Long userId, UserIdentityCache.Profile profile) {
+        return userRepository.updateProfile(userId, profile.nickname(), profile.age(), profile.gender(), profile.nationality());
     }
 
     public ResponseEntity<Object> logout(HttpServletRequest request, HttpServletResponse response) {
@@ -71,23 +180,66 @@ public class UserService {
         if (token == null || token.isEmpty()) {
             return ResponseEntity.badRequest().body("JWT token is required");
         }
-        if (blacklistTokenRepository.existsById(token)) {
-            return ResponseEntity.badRequest().body("Already logged out");
-        }
+        long dbStart = RequestTiming.begin();
+        databaseBulkhead.acquire();
+        try {
+            if (blacklistTokenRepository.existsById(token)) {
+                return ResponseEntity.badRequest().body("Already logged out");
+            }
 
-        blacklistTokenRepository.save(new BlacklistTokenEntity(token, LocalDate.now()));
+            blacklistTokenRepository.save(new BlacklistTokenEntity(token, LocalDate.now()));
+        } finally {
+            databaseBulkhead.release();
+            RequestTiming.end(RequestTiming.Phase.DB, dbStart);
+        }
 
         return ResponseEntity.ok("logout successful");
     }
 
 
-    private HashMap<String, String> packJwts(String username, long userId) {
-        String accessToken = jwtProvider.generateToken(username, userId, true);
-        String refreshToken = jwtProvider.generateToken(username, userId, false);
-        HashMap<String, String> payload = new HashMap<>();
-        payload.put("access_token", accessToken);
-        payload.put("refresh_token", refreshToken);
+    /**
+     * Runs one login stage on the login executor with its own deadline, recording its latency
+     * under {@code login.stage} so the stage dominating the tail can be identified.
+     */
+    private <T> CompletableFuture<T> stage(Queue<CompletableFuture<?>> stages, String name, long timeoutMs,
+                                           Supplier<T> work) {
+        Supplier<T> attributed = RequestTiming.propagate(StatementCountInspector.propagate(work));
+        CompletableFuture<T> stage = CompletableFuture.supplyAsync(() -> {
+                    Timer.Sample sample = Timer.start(meterRegistry);
+                    String outcome = "error";
+                    try {
+                        T result = attributed.get();
+                        outcome = "success";
+                        return result;
+                    } finally {
+                        sample.stop(Timer.builder("login.stage")
+                                .tag("stage", name)
+                                .tag("outcome", outcome)
+                                .publishPercentileHistogram()
+                                .register(meterRegistry));
+                    }
+                }, loginExecutor)
+                .orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        stages.add(stage);
+        return stage;
+    }
 
-        return payload;
+    /**
+     * Waits for one stage. If it failed, the other stages are cancelled: those not started yet never run, and the
+     * token stages are not started at all once the user stage has failed. A stage past its deadline becomes a 503.
+     */
+    private static <T> T await(CompletableFuture<T> stage, Queue<CompletableFuture<?>> stages) {
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            stages.forEach(pending -> pending.cancel(false));
+            if (e.getCause() instanceof TimeoutException) {
+                throw new LoginStageTimeoutException(e.getCause());
+            }
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 }
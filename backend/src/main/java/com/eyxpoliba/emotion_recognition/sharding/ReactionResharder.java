@@ -0,0 +1,265 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves bucket ranges of {@code user_reactions} between shards while the application keeps writing.
+ * For each range:
+ * <ol>
+ *     <li>COPYING: rows are copied to the target in id order while writes still go to the source;</li>
+ *     <li>FROZEN: writers of the range wait; after {@code grace-ms} (every instance has seen the state) the
+ *     buckets are fenced on the source. That waits for the write transactions still holding them there and turns
+ *     away later ones, from instances with an out-of-date layout too (see {@link ReactionShards#lockBuckets}).
+ *     The range is then scanned again and every row not copied yet is copied; ids are not a watermark here, as a
+ *     write that started before the copy can commit a lower id after it. Last, the target lifts its fence;</li>
+ *     <li>CLEANUP: the target owns the range; after another {@code grace-ms} (readers have moved) the source rows
+ *     are deleted;</li>
+ *     <li>ACTIVE again, on the target.</li>
+ * </ol>
+ * Timing only spares writers a refused attempt; no write can land on the source once it is fenced.
+ * Cross-shard queries only count the rows a shard owns while it holds copies (see
+ * {@link ShardLayout#ownedPredicate(int)}), so totals stay exact throughout. Re-running a move that was
+ * interrupted resumes it; a failure while copying puts the range back on its source.
+ */
+@Slf4j
+public class ReactionResharder {
+    private static final String COLUMNS = "user_id, image, image_description, image_reaction, ai_comment";
+
+    private final ReactionShards shards;
+    private final long graceMs;
+    private final int copyBatchSize;
+    private final Counter copiedRows;
+
+    public ReactionResharder(ReactionShards shards, MeterRegistry meterRegistry, long graceMs, int copyBatchSize) {
+        this.shards = shards;
+        this.graceMs = graceMs;
+        this.copyBatchSize = copyBatchSize;
+        this.copiedRows = Counter.builder("reactions.shards.copied.rows")
+                .description("Rows copied between shards by range moves")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Spreads the buckets evenly: shard i gets the i-th of N equal ranges.
+     */
+    public void rebalance() {
+        int count = shards.getShards().size();
+        for (int shard = 0; shard < count; shard++) {
+            move(shard * ReactionShards.BUCKETS / count, (shard + 1) * ReactionShards.BUCKETS / count - 1, shard);
+        }
+    }
+
+    /**
+     * Moves buckets {@code firstBucket..lastBucket} (inclusive) to {@code targetShard}, one existing range at a
+     * time. Blocks until done; takes at least twice {@code grace-ms} per range that actually moves.
+     */
+    public synchronized void move(int firstBucket, int lastBucket, int targetShard) {
+        if (firstBucket < 0 || lastBucket >= ReactionShards.BUCKETS || firstBucket > lastBucket) {
+            throw new IllegalArgumentException("Bucket range must be within 0-" + (ReactionShards.BUCKETS - 1));
+        }
+        ReactionShards.Shard target = shards.getShard(targetShard);
+        split(firstBucket);
+        split(lastBucket + 1);
+        shards.refresh();
+        for (ShardLayout.Range range : shards.getLayout().ranges()) {
+            if (range.firstBucket() >= firstBucket && range.lastBucket() <= lastBucket) {
+                moveRange(range, target);
+            }
+        }
+        mergeAdjacent();
+        shards.refresh();
+    }
+
+    private void moveRange(ShardLayout.Range range, ReactionShards.Shard target) {
+        int first = range.firstBucket();
+        int last = range.lastBucket();
+        ShardLayout.State state = range.state();
+        if (state == ShardLayout.State.ACTIVE && range.shard() == target.id()) {
+            return;
+        }
+        if ((state == ShardLayout.State.COPYING || state == ShardLayout.State.FROZEN) && range.peer() != target.id()
+                || state == ShardLayout.State.CLEANUP && range.shard() != target.id()) {
+            throw new IllegalStateException("Buckets " + first + "-" + last + " are already moving elsewhere");
+        }
+
+        if (state != ShardLayout.State.CLEANUP) {
+            ReactionShards.Shard source = shards.getShard(range.shard());
+            log.info("Moving buckets {}-{} from shard {} to shard {}", first, last, source.id(), target.id());
+            if (state == ShardLayout.State.ACTIVE) {
+                transition(first, ShardLayout.State.ACTIVE, ShardLayout.State.COPYING, source.id(), target.id());
+                state = ShardLayout.State.COPYING;
+            }
+            try {
+                // Leftovers of an interrupted attempt; the target does not serve these buckets yet
+                deleteRange(target, first, last);
+                Roaring64Bitmap copied = new Roaring64Bitmap();
+                copy(source, target, first, last, copied);
+                if (state == ShardLayout.State.COPYING) {
+                    transition(first, ShardLayout.State.COPYING, ShardLayout.State.FROZEN, source.id(), target.id());
+                    pause();
+                }
+                fence(source, first, last, true);
+                copy(source, target, first, last, copied);
+                fence(target, first, last, false);
+                transition(first, ShardLayout.State.FROZEN, ShardLayout.State.CLEANUP, target.id(), source.id());
+                log.info("Buckets {}-{} now served by shard {} ({} rows copied)", first, last, target.id(),
+                        copied.getLongCardinality());
+            } catch (RuntimeException e) {
+                log.warn("Move of buckets {}-{} failed, leaving them on shard {}: {}", first, last, source.id(), e.getMessage());
+                abort(first, last, source, target);
+                throw e;
+            }
+            pause();
+        }
+        ReactionShards.Shard previous = shards.getShard(state == ShardLayout.State.CLEANUP ? range.peer() : range.shard());
+        deleteRange(previous, first, last);
+        transition(first, ShardLayout.State.CLEANUP, ShardLayout.State.ACTIVE, target.id(), null);
+    }
+
+    /**
+     * Copies the range's rows whose source id is not in {@code copied}, in id order and in batches, and adds
+     * their ids to it. Scans the whole range every time.
+     */
+    private void copy(ReactionShards.Shard source, ReactionShards.Shard target, int first, int last, Roaring64Bitmap copied) {
+        JdbcTemplate pager = new JdbcTemplate(source.jdbc().getDataSource());
+        pager.setMaxRows(copyBatchSize);
+        String select = "SELECT id, " + COLUMNS + " FROM user_reactions WHERE "
+                + ReactionShards.bucketRangePredicate(first, last) + " AND id > ? ORDER BY id";
+        String insert = "INSERT INTO user_reactions (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?)";
+        long lastId = 0;
+        while (true) {
+            List<Object[]> rows = new ArrayList<>(copyBatchSize);
+            Roaring64Bitmap ids = new Roaring64Bitmap();
+            long[] maxId = {lastId};
+            int[] seen = {0};
+            pager.query(select, resultSet -> {
+                long id = resultSet.getLong("id");
+                maxId[0] = id;
+                seen[0]++;
+                if (!copied.contains(id)) {
+                    ids.addLong(id);
+                    rows.add(new Object[]{resultSet.getLong("user_id"), resultSet.getString("image"),
+                            resultSet.getString("image_description"), resultSet.getString("image_reaction"),
+                            resultSet.getString("ai_comment")});
+                }
+            }, lastId);
+            if (!rows.isEmpty()) {
+                target.transactions().executeWithoutResult(status -> target.jdbc().batchUpdate(insert, rows));
+                copied.or(ids);
+                copiedRows.increment(rows.size());
+            }
+            lastId = maxId[0];
+            if (seen[0] < copyBatchSize) {
+                return;
+            }
+        }
+    }
+
+    private static void deleteRange(ReactionShards.Shard shard, int first, int last) {
+        shard.transactions().executeWithoutResult(status -> shard.jdbc().update(
+                "DELETE FROM user_reactions WHERE " + ReactionShards.bucketRangePredicate(first, last)));
+    }
+
+    // Blocks until the write transactions holding these buckets on the shard have ended
+    private static void fence(ReactionShards.Shard shard, int first, int last, boolean fenced) {
+        shard.transactions().executeWithoutResult(status -> shard.jdbc().update(
+                "UPDATE reaction_bucket_fences SET fenced = ? WHERE bucket BETWEEN ? AND ?", fenced ? 1 : 0, first, last));
+    }
+
+    private void abort(int first, int last, ReactionShards.Shard source, ReactionShards.Shard target) {
+        try {
+            fence(target, first, last, true);
+            layoutJdbc().update("UPDATE reaction_shard_ranges SET state = 'ACTIVE', shard_id = ?, peer_shard = NULL "
+                    + "WHERE first_bucket = ? AND state IN ('COPYING', 'FROZEN')", source.id(), first);
+            shards.refresh();
+            fence(source, first, last, false);
+            deleteRange(target, first, last);
+        } catch (RuntimeException e) {
+            log.warn("Could not roll back the move of buckets {}-{}: {}", first, last, e.getMessage());
+        }
+    }
+
+    /**
+     * Compare-and-set on a range's state, so two movers cannot both act on it.
+     */
+    private void transition(int firstBucket, ShardLayout.State from, ShardLayout.State to, int shard, Integer peer) {
+        int updated = layoutJdbc().update("UPDATE reaction_shard_ranges SET state = ?, shard_id = ?, peer_shard = ? "
+                + "WHERE first_bucket = ? AND state = ?", to.name(), shard, peer, firstBucket, from.name());
+        if (updated != 1) {
+            throw new IllegalStateException("Range at bucket " + firstBucket + " is no longer " + from);
+        }
+        shards.refresh();
+    }
+
+    // Makes bucket the first of its own range, so a move never drags neighbouring buckets along
+    private void split(int bucket) {
+        if (bucket <= 0 || bucket >= ReactionShards.BUCKETS) {
+            return;
+        }
+        ReactionShards.Shard primary = shards.getShard(0);
+        primary.transactions().executeWithoutResult(status -> {
+            ShardLayout.Range range = primary.jdbc().queryForObject(
+                    "SELECT first_bucket, last_bucket, shard_id, state FROM reaction_shard_ranges "
+                            + "WHERE first_bucket <= ? AND last_bucket >= ?",
+                    (resultSet, rowNum) -> new ShardLayout.Range(resultSet.getInt("first_bucket"),
+                            resultSet.getInt("last_bucket"), resultSet.getInt("shard_id"),
+                            ShardLayout.State.valueOf(resultSet.getString("state")), null),
+                    bucket, bucket);
+            if (range.firstBucket() == bucket) {
+                return;
+            }
+            if (range.state() != ShardLayout.State.ACTIVE) {
+                throw new IllegalStateException("Buckets " + range.firstBucket() + "-" + range.lastBucket() + " are moving");
+            }
+            primary.jdbc().update("UPDATE reaction_shard_ranges SET last_bucket = ? WHERE first_bucket = ? AND state = 'ACTIVE'",
+                    bucket - 1, range.firstBucket());
+            primary.jdbc().update("INSERT INTO reaction_shard_ranges (first_bucket, last_bucket, shard_id, state) VALUES (?, ?, ?, 'ACTIVE')",
+                    bucket, range.lastBucket(), range.shard());
+        });
+    }
+
+    private void mergeAdjacent() {
+        ReactionShards.Shard primary = shards.getShard(0);
+        primary.transactions().executeWithoutResult(status -> {
+            List<ShardLayout.Range> ranges = primary.jdbc().query(
+                    "SELECT first_bucket, last_bucket, shard_id, state FROM reaction_shard_ranges ORDER BY first_bucket",
+                    (resultSet, rowNum) -> new ShardLayout.Range(resultSet.getInt("first_bucket"),
+                            resultSet.getInt("last_bucket"), resultSet.getInt("shard_id"),
+                            ShardLayout.State.valueOf(resultSet.getString("state")), null));
+            ShardLayout.Range previous = null;
+            for (ShardLayout.Range range : ranges) {
+                if (previous != null && previous.state() == ShardLayout.State.ACTIVE
+                        && range.state() == ShardLayout.State.ACTIVE && previous.shard() == range.shard()) {
+                    primary.jdbc().update("DELETE FROM reaction_shard_ranges WHERE first_bucket = ?", range.firstBucket());
+                    primary.jdbc().update("UPDATE reaction_shard_ranges SET last_bucket = ? WHERE first_bucket = ?",
+                            range.lastBucket(), previous.firstBucket());
+                    previous = new ShardLayout.Range(previous.firstBucket(), range.lastBucket(), previous.shard(),
+                            previous.state(), null);
+                } else {
+                    previous = range;
+                }
+            }
+        });
+    }
+
+    private JdbcTemplate layoutJdbc() {
+        return shards.getShard(0).jdbc();
+    }
+
+    // Package-private so tests can act during the grace period
+    void pause() {
+        try {
+            Thread.sleep(graceMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during a range move", e);
+        }
+    }
+}
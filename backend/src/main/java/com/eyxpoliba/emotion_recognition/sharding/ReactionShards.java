@@ -0,0 +1,274 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/**
+ * The databases holding {@code user_reactions} and the bucket layout that maps each user to one of them.
+ * A user's bucket is {@code user_id % BUCKETS}; identity ids are sequential, so buckets fill evenly. Shard 0 is
+ * the primary database (where the users and the layout table live), the others come from
+ * {@code app.reactions.shards.urls}. A new shard serves nothing until a range is moved to it with
+ * {@link ReactionResharder}.
+ * <p>
+ * Every instance reloads the layout every {@code layout-refresh-ms}; a writer whose range is frozen for the final
+ * step of a move polls it more often and waits up to {@code freeze-wait-ms}. The layout only routes: what keeps a
+ * write from landing on a shard a range has left is the shard's {@code reaction_bucket_fences}, see
+ * {@link #lockBuckets}.
+ */
+@Slf4j
+public class ReactionShards {
+    public static final int BUCKETS = 1024;
+    private static final long FROZEN_POLL_MS = 50;
+
+    /**
+     * @param transactions local transactions on this shard; not for shard 0 inside a JPA transaction, which
+     *                     already owns that connection
+     * @param readOnly     read-only transactions, which on shard 0 are routed to the replica when there is one
+     */
+    public record Shard(int id, JdbcTemplate jdbc, TransactionTemplate transactions, TransactionTemplate readOnly) {
+        public boolean isPrimary() {
+            return id == 0;
+        }
+    }
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<DataSource> dataSources;
+    private final long refreshMs;
+    private final long freezeWaitMs;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("shard-layout").factory());
+    private final ExecutorService scatterExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("shard-scatter-", 0).factory());
+    private final Timer scatterTimer;
+    private final Counter frozenWaits;
+
+    private volatile ShardLayout layout = ShardLayout.ALL_ON_PRIMARY;
+    private volatile long refreshedAt;
+
+    /**
+     * @param dataSources shard 0 (the primary) first
+     */
+    public ReactionShards(List<DataSource> dataSources, MeterRegistry meterRegistry, long refreshMs, long freezeWaitMs) {
+        this.dataSources = List.copyOf(dataSources);
+        this.refreshMs = refreshMs;
+        this.freezeWaitMs = freezeWaitMs;
+        for (int id = 0; id < dataSources.size(); id++) {
+            DataSource dataSource = dataSources.get(id);
+            DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            shards.add(new Shard(id, new JdbcTemplate(dataSource), new TransactionTemplate(transactionManager), readOnly));
+        }
+        this.scatterTimer = Timer.builder("reactions.shards.scatter")
+                .description("Cross-shard query, from fan-out to the last shard answering")
+                .register(meterRegistry);
+        this.frozenWaits = Counter.builder("reactions.shards.frozen.waits")
+                .description("Writes that had to wait for a range move to finish")
+                .register(meterRegistry);
+        for (ShardLayout.State state : ShardLayout.State.values()) {
+            Gauge.builder("reactions.shards.ranges", this, shards -> shards.layout.ranges().stream()
+                            .filter(range -> range.state() == state).count())
+                    .tag("state", state.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    public static int bucketOf(long userId) {
+        return (int) Math.floorMod(userId, (long) BUCKETS);
+    }
+
+    static String bucketRangePredicate(int firstBucket, int lastBucket) {
+        return "user_id % " + BUCKETS + " BETWEEN " + firstBucket + " AND " + lastBucket;
+    }
+
+    /**
+     * Loads the layout and keeps it current. Called once the primary has been migrated; until then all buckets
+     * are on shard 0.
+     */
+    public void start() {
+        try {
+            refresh();
+        } catch (BadSqlGrammarException e) {
+            // Migrations not applied by this instance yet (app.db.migrate-on-start=false)
+            log.warn("No shard layout table, all buckets stay on shard 0 until it appears");
+        }
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+        scatterExecutor.shutdownNow();
+        // Shard 0 is the application's primary pool, closed by the context
+        for (DataSource dataSource : dataSources.subList(1, dataSources.size())) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Closing shard pool failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    public List<Shard> getShards() {
+        return List.copyOf(shards);
+    }
+
+    public Shard getShard(int id) {
+        if (id < 0 || id >= shards.size()) {
+            throw new IllegalArgumentException("No shard " + id + " (" + shards.size() + " configured)");
+        }
+        return shards.get(id);
+    }
+
+    public ShardLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Where the user's reactions are written. Waits while the user's range is frozen.
+     *
+     * @throws ShardUnavailableException if the range is still frozen after {@code freeze-wait-ms}
+     */
+    public Shard shardFor(long userId) {
+        int bucket = bucketOf(userId);
+        ShardLayout.Range range = layout.rangeOf(bucket);
+        if (range.state() != ShardLayout.State.FROZEN) {
+            return shards.get(range.shard());
+        }
+        frozenWaits.increment();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(freezeWaitMs);
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(FROZEN_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            refreshIfOlderThan(FROZEN_POLL_MS);
+            range = layout.rangeOf(bucket);
+            if (range.state() != ShardLayout.State.FROZEN) {
+                return shards.get(range.shard());
+            }
+        }
+        throw new ShardUnavailableException("Bucket " + bucket + " is moving to shard " + range.peer());
+    }
+
+    /**
+     * Locks the users' buckets on {@code shard} until the current transaction ends, provided the shard still takes
+     * their writes. Call it in the write transaction before inserting: a range move fences the buckets on the shard it
+     * leaves, which waits for that transaction and turns away the writes that lock after it.
+     *
+     * @return false when one of the buckets is fenced there: this instance routed with an out-of-date layout and
+     * must not write; the caller refreshes it and routes again
+     */
+    public boolean lockBuckets(Shard shard, Collection<Long> userIds) {
+        Set<Integer> buckets = new TreeSet<>();
+        userIds.forEach(userId -> buckets.add(bucketOf(userId)));
+        String in = buckets.stream().map(String::valueOf).collect(Collectors.joining(", "));
+        int open = shard.jdbc().update("UPDATE reaction_bucket_fences SET fenced = 0 WHERE fenced = 0 AND bucket IN (" + in + ")");
+        return open == buckets.size();
+    }
+
+    /**
+     * Where the user's reactions are read from: the current owner, which holds all of them at every step of a move.
+     */
+    public Shard readerFor(long userId) {
+        return shards.get(layout.rangeOf(bucketOf(userId)).shard());
+    }
+
+    /**
+     * Runs {@code query} on every shard in parallel, each in a read-only transaction, and returns the results in
+     * shard order. The query receives the condition selecting the rows its shard serves (see
+     * {@link ShardLayout#ownedPredicate(int)}), taken from one layout snapshot for all shards.
+     */
+    public <T> List<T> scatter(BiFunction<Shard, String, T> query) {
+        long start = System.nanoTime();
+        ShardLayout snapshot = layout;
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            String owned = snapshot.ownedPredicate(shard.id());
+            futures.add(scatterExecutor.submit(() -> shard.readOnly().execute(status -> query.apply(shard, owned))));
+        }
+        try {
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            scatterTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Synchronized so a periodic refresh that read the table before a transition cannot publish after it
+    public synchronized void refresh() {
+        List<ShardLayout.Range> ranges = shards.getFirst().jdbc().query(
+                "SELECT first_bucket, last_bucket, shard_id, state, peer_shard FROM reaction_shard_ranges",
+                (resultSet, rowNum) -> new ShardLayout.Range(
+                        resultSet.getInt("first_bucket"),
+                        resultSet.getInt("last_bucket"),
+                        resultSet.getInt("shard_id"),
+                        ShardLayout.State.valueOf(resultSet.getString("state")),
+                        resultSet.getObject("peer_shard") == null ? null : resultSet.getInt("peer_shard")));
+        for (ShardLayout.Range range : ranges) {
+            if (range.shard() >= shards.size() || (range.peer() != null && range.peer() >= shards.size())) {
+                throw new IllegalStateException("Buckets " + range.firstBucket() + "-" + range.lastBucket()
+                        + " refer to a shard that is not configured (" + shards.size() + " shards)");
+            }
+        }
+        ShardLayout loaded = new ShardLayout(ranges);
+        if (!loaded.ranges().equals(layout.ranges())) {
+            log.info("Shard layout: {}", loaded.ranges());
+        }
+        layout = loaded;
+        refreshedAt = System.nanoTime();
+    }
+
+    synchronized void refreshIfOlderThan(long ms) {
+        if (System.nanoTime() - refreshedAt >= TimeUnit.MILLISECONDS.toNanos(ms)) {
+            refreshSafely();
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (DataAccessException | IllegalStateException e) {
+            log.warn("Keeping the previous shard layout: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code GET /actuator/reactionshards} shows the bucket layout, rows per shard and the last move.
+ * {@code POST /actuator/reactionshards {"firstBucket": 0, "lastBucket": 255, "shard": 1}} moves a range and
+ * {@code POST /actuator/reactionshards {"rebalance": true}} spreads all buckets evenly; both run in the background,
+ * one at a time.
+ */
+@Slf4j
+@Component
+@Endpoint(id = "reactionshards")
+public class ReactionShardsEndpoint {
+    private final ReactionShards reactionShards;
+    private final ReactionResharder resharder;
+    private final ShardedReactionsRepository shardedReactionsRepository;
+    private final ExecutorService mover = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("shard-mover").factory());
+
+    private volatile String lastMove = "none";
+
+    public ReactionShardsEndpoint(ReactionShards reactionShards,
+                                  ReactionResharder resharder,
+                                  ShardedReactionsRepository shardedReactionsRepository) {
+        this.reactionShards = reactionShards;
+        this.resharder = resharder;
+        this.shardedReactionsRepository = shardedReactionsRepository;
+    }
+
+    @PreDestroy
+    public void stop() {
+        mover.shutdownNow();
+    }
+
+    @ReadOperation
+    public Map<String, Object> layout() {
+        Map<String, Object> layout = new LinkedHashMap<>();
+        layout.put("buckets", ReactionShards.BUCKETS);
+        layout.put("ranges", reactionShards.getLayout().ranges());
+        layout.put("rowsPerShard", shardedReactionsRepository.countPerShard());
+        layout.put("lastMove", lastMove);
+        return layout;
+    }
+
+    @WriteOperation
+    public Map<String, Object> move(@Nullable Integer firstBucket, @Nullable Integer lastBucket,
+                                    @Nullable Integer shard, @Nullable Boolean rebalance) {
+        String description;
+        Runnable move;
+        if (Boolean.TRUE.equals(rebalance)) {
+            description = "rebalance";
+            move = resharder::rebalance;
+        } else if (firstBucket != null && lastBucket != null && shard != null) {
+            if (shard < 0 || shard >= reactionShards.getShards().size()) {
+                throw new InvalidEndpointRequestException("No shard " + shard, "Unknown shard");
+            }
+            if (firstBucket < 0 || lastBucket >= ReactionShards.BUCKETS || firstBucket > lastBucket) {
+                throw new InvalidEndpointRequestException("Bucket range must be within 0-" + (ReactionShards.BUCKETS - 1),
+                        "Invalid bucket range");
+            }
+            description = "buckets " + firstBucket + "-" + lastBucket + " to shard " + shard;
+            move = () -> resharder.move(firstBucket, lastBucket, shard);
+        } else {
+            throw new InvalidEndpointRequestException("Give firstBucket, lastBucket and shard, or rebalance=true",
+                    "Missing range");
+        }
+        lastMove = description + ": queued";
+        mover.execute(() -> {
+            lastMove = description + ": running";
+            try {
+                move.run();
+                lastMove = description + ": done";
+            } catch (RuntimeException e) {
+                log.warn("Shard move ({}) failed", description, e);
+                lastMove = description + ": failed (" + e.getMessage() + ")";
+            }
+        });
+        return layout();
+    }
+}
@@ -0,0 +1,78 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable snapshot of {@code reaction_shard_ranges}: which shard owns each bucket, and which ranges are in the
+ * middle of a move. Ranges are contiguous and cover every bucket exactly once.
+ */
+public final class ShardLayout {
+
+    public enum State {
+        // Owned by shard, nothing in flight
+        ACTIVE,
+        // Rows are being copied to peer; writes still go to shard
+        COPYING,
+        // Writes wait while the last rows are copied to peer
+        FROZEN,
+        // shard (the new owner) serves the range; the copies left on peer are being deleted
+        CLEANUP
+    }
+
+    public record Range(int firstBucket, int lastBucket, int shard, State state, Integer peer) {
+        boolean contains(int bucket) {
+            return bucket >= firstBucket && bucket <= lastBucket;
+        }
+    }
+
+    static final ShardLayout ALL_ON_PRIMARY = new ShardLayout(List.of(
+            new Range(0, ReactionShards.BUCKETS - 1, 0, State.ACTIVE, null)));
+
+    private final NavigableMap<Integer, Range> byFirstBucket = new TreeMap<>();
+
+    ShardLayout(List<Range> ranges) {
+        for (Range range : ranges) {
+            byFirstBucket.put(range.firstBucket(), range);
+        }
+        int expected = 0;
+        for (Range range : byFirstBucket.values()) {
+            if (range.firstBucket() != expected || range.lastBucket() < range.firstBucket()) {
+                throw new IllegalStateException("Shard ranges leave a gap or overlap at bucket " + expected);
+            }
+            expected = range.lastBucket() + 1;
+        }
+        if (expected != ReactionShards.BUCKETS) {
+            throw new IllegalStateException("Shard ranges end at bucket " + (expected - 1));
+        }
+    }
+
+    public Range rangeOf(int bucket) {
+        return byFirstBucket.floorEntry(bucket).getValue();
+    }
+
+    public List<Range> ranges() {
+        return List.copyOf(byFirstBucket.values());
+    }
+
+    /**
+     * SQL condition selecting the rows a shard serves. It is only needed on shards that also hold rows of a range
+     * in flight (copies being made or being deleted); elsewhere every row belongs to the shard.
+     */
+    public String ownedPredicate(int shard) {
+        boolean holdsForeignRows = byFirstBucket.values().stream()
+                .anyMatch(range -> range.state() != State.ACTIVE && range.peer() != null && range.peer() == shard);
+        if (!holdsForeignRows) {
+            return "1 = 1";
+        }
+        List<String> owned = new ArrayList<>();
+        for (Range range : byFirstBucket.values()) {
+            if (range.shard() == shard) {
+                owned.add(ReactionShards.bucketRangePredicate(range.firstBucket(), range.lastBucket()));
+            }
+        }
+        return owned.isEmpty() ? "1 = 0" : "(" + String.join(" OR ", owned) + ")";
+    }
+}
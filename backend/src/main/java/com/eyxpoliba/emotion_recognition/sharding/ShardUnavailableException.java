@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A write waited longer than {@code app.reactions.shards.freeze-wait-ms} for its range to finish moving.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ShardUnavailableException extends RuntimeException {
+    public ShardUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,329 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Images that evoke similar reactions: the k images whose reaction profiles ({@link ReactionProfiles}) are
+ * closest to a given image's. Built from {@code user_reactions} once the application is ready, kept current from
+ * register-result events and rebuilt every {@code rebuild-ms}, like {@code CohortIndex}: the events that arrive
+ * once a rebuild has started are replayed on the new profiles unless the scan already read their last row.
+ * <p>
+ * Queries use the LSH index and compare only its candidates. An exact query, or one for which the candidates do
+ * not yield k images, compares every image instead, split over {@code parallelism} threads.
+ */
+@Slf4j
+@Component
+public class ImageSimilarityIndex {
+    // Below this many rows per thread, handing the scan to other threads costs more than it saves
+    private static final int MIN_ROWS_PER_TASK = 16_384;
+    private static final long HYPERPLANE_SEED = 0x5eed;
+    // Candidates to collect per requested neighbour before ranking them
+    private static final int CANDIDATES_PER_RESULT = 32;
+
+    private final ShardedReactionsRepository shardedReactionsRepository;
+    private final boolean enabled;
+    private final long rebuildMs;
+    private final int dimensions;
+    private final int lshTables;
+    private final int lshBits;
+    private final int parallelism;
+    private final Timer approximateTimer;
+    private final Timer exactTimer;
+    private final Timer rebuildTimer;
+    private final Counter fallbackCounter;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("similarity-rebuild").factory());
+    private final ExecutorService scanExecutor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private ReactionProfiles profiles;
+    private List<ReactionsRegisteredEvent> eventsDuringRebuild;
+    private volatile int imageCount;
+
+    public ImageSimilarityIndex(ShardedReactionsRepository shardedReactionsRepository,
+                                MeterRegistry meterRegistry,
+                                @Value("${app.similarity.enabled:true}") boolean enabled,
+                                @Value("${app.similarity.rebuild-ms:600000}") long rebuildMs,
+                                @Value("${app.similarity.dimensions:16}") int dimensions,
+                                @Value("${app.similarity.lsh-tables:8}") int lshTables,
+                                @Value("${app.similarity.lsh-bits:20}") int lshBits,
+                                @Value("${app.similarity.parallelism:0}") int parallelism) {
+        this.shardedReactionsRepository = shardedReactionsRepository;
+        this.enabled = enabled;
+        this.rebuildMs = rebuildMs;
+        this.dimensions = dimensions;
+        this.lshTables = lshTables;
+        this.lshBits = lshBits;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.scanExecutor = Executors.newFixedThreadPool(this.parallelism,
+                Thread.ofPlatform().daemon().name("similarity-scan-", 0).factory());
+        this.approximateTimer = Timer.builder("similarity.queries")
+                .tag("mode", "approximate")
+                .description("Nearest-image queries answered from the LSH candidates")
+                .register(meterRegistry);
+        this.exactTimer = Timer.builder("similarity.queries")
+                .tag("mode", "exact")
+                .description("Nearest-image queries answered by comparing every image")
+                .register(meterRegistry);
+        this.rebuildTimer = Timer.builder("similarity.rebuild")
+                .description("Full rebuild of the image reaction profiles from the database")
+                .register(meterRegistry);
+        this.fallbackCounter = Counter.builder("similarity.fallbacks")
+                .description("Approximate queries whose candidates were too few, answered exactly instead")
+                .register(meterRegistry);
+        Gauge.builder("similarity.images", this, index -> index.imageCount)
+                .description("Images with a reaction profile")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler.scheduleWithFixedDelay(this::rebuildSafely, 0, rebuildMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        scanExecutor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        lock.readLock().lock();
+        try {
+            return profiles != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param minReactions images with fewer labelled reactions are left out, their profiles being mostly noise
+     * @return the nearest images, or null while the index has not been built yet
+     * @throws UnknownImageException if the image has no labelled reactions
+     */
+    public SimilarImages similarTo(String image, int k, ProfileDistance metric, boolean exact, int minReactions) {
+        long start = System.nanoTime();
+        boolean approximate = false;
+        lock.readLock().lock();
+        try {
+            if (profiles == null) {
+                return null;
+            }
+            int row = profiles.row(image);
+            if (row < 0) {
+                throw new UnknownImageException(image);
+            }
+            int limit = Math.clamp(k, 1, 1000);
+            Nearest nearest = null;
+            boolean complete = true;
+            if (!exact && profiles.isIndexed()) {
+                RoaringBitmap candidates = profiles.candidates(row, limit * CANDIDATES_PER_RESULT);
+                nearest = new Nearest(limit);
+                IntIterator iterator = candidates.getIntIterator();
+                while (iterator.hasNext()) {
+                    consider(nearest, row, iterator.next(), metric, minReactions);
+                }
+                approximate = true;
+                complete = candidates.getCardinality() >= profiles.size();
+                if (nearest.size < limit && !complete) {
+                    fallbackCounter.increment();
+                    nearest = null;
+                }
+            }
+            if (nearest == null) {
+                approximate = false;
+                nearest = scan(row, limit, metric, minReactions);
+            }
+            List<SimilarImage> neighbours = new ArrayList<>(nearest.size);
+            for (int i = 0; i < nearest.size; i++) {
+                neighbours.add(similarImage(nearest.rows[i], nearest.distances[i]));
+            }
+            return new SimilarImages(similarImage(row, 0), metric, !approximate || complete, neighbours);
+        } finally {
+            lock.readLock().unlock();
+            (approximate ? approximateTimer : exactTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private SimilarImage similarImage(int row, double distance) {
+        return new SimilarImage(profiles.image(row), distance, (long) profiles.total(row), profiles.byReaction(row));
+    }
+
+    private void consider(Nearest nearest, int query, int row, ProfileDistance metric, int minReactions) {
+        if (row != query && profiles.total(row) >= minReactions) {
+            nearest.offer(row, profiles.distance(metric, query, row));
+        }
+    }
+
+    // Caller holds the read lock, which keeps the profiles unchanged until every part of the scan has returned
+    private Nearest scan(int query, int limit, ProfileDistance metric, int minReactions) {
+        int size = profiles.size();
+        int tasks = Math.clamp(size / MIN_ROWS_PER_TASK, 1, parallelism);
+        int chunk = (size + tasks - 1) / tasks;
+        List<Future<Nearest>> parts = new ArrayList<>(tasks - 1);
+        for (int task = 1; task < tasks; task++) {
+            int from = task * chunk;
+            int to = Math.min(size, from + chunk);
+            parts.add(scanExecutor.submit(() -> scanRange(query, limit, metric, minReactions, from, to)));
+        }
+        Nearest nearest = scanRange(query, limit, metric, minReactions, 0, Math.min(size, chunk));
+        try {
+            for (Future<Nearest> part : parts) {
+                Nearest other = part.get();
+                for (int i = 0; i < other.size; i++) {
+                    nearest.offer(other.rows[i], other.distances[i]);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while comparing images", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Image comparison failed", e.getCause());
+        }
+        return nearest;
+    }
+
+    private Nearest scanRange(int query, int limit, ProfileDistance metric, int minReactions, int from, int to) {
+        Nearest nearest = new Nearest(limit);
+        for (int row = from; row < to; row++) {
+            consider(nearest, query, row, metric, minReactions);
+        }
+        return nearest;
+    }
+
+    @EventListener
+    public void onReactionsRegistered(ReactionsRegisteredEvent event) {
+        lock.writeLock().lock();
+        try {
+            if (eventsDuringRebuild != null) {
+                eventsDuringRebuild.add(event);
+            }
+            if (profiles != null) {
+                apply(profiles, event);
+                imageCount = profiles.size();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void apply(ReactionProfiles target, ReactionsRegisteredEvent event) {
+        for (ReactionsRegisteredEvent.Reaction reaction : event.reactions()) {
+            target.add(reaction.image(), reaction.reaction(), 1);
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Image similarity index rebuild failed: {}", e.getMessage());
+            lock.writeLock().lock();
+            try {
+                eventsDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    void rebuild() {
+        lock.writeLock().lock();
+        try {
+            eventsDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        long start = System.nanoTime();
+        ReactionProfiles fresh = new ReactionProfiles(dimensions, lshTables, lshBits, HYPERPLANE_SEED);
+        ShardedReactionsRepository.Scanned scanned = shardedReactionsRepository.forEachReaction(resultSet ->
+                fresh.add(resultSet.getString("image"), resultSet.getString("image_reaction"), 1));
+        fresh.buildIndex();
+        install(fresh, scanned);
+
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Image similarity index built: {} images in {} ms", fresh.size(), TimeUnit.NANOSECONDS.toMillis(elapsed));
+    }
+
+    /**
+     * Switches queries to freshly loaded profiles, after applying the events received since the rebuild started
+     * for rows the scan did not read ({@code scanned} is null when nothing was scanned).
+     */
+    void install(ReactionProfiles fresh, ShardedReactionsRepository.Scanned scanned) {
+        lock.writeLock().lock();
+        try {
+            if (eventsDuringRebuild != null) {
+                for (ReactionsRegisteredEvent event : eventsDuringRebuild) {
+                    if (scanned == null || !scanned.contains(event.shard(), event.lastRowId())) {
+                        apply(fresh, event);
+                    }
+                }
+                eventsDuringRebuild = null;
+            }
+            profiles = fresh;
+            imageCount = fresh.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code limit} smallest distances offered so far, kept sorted in primitive arrays.
+     */
+    private static final class Nearest {
+        private final int[] rows;
+        private final double[] distances;
+        private int size;
+
+        Nearest(int limit) {
+            rows = new int[limit];
+            distances = new double[limit];
+        }
+
+        void offer(int row, double distance) {
+            if (size == rows.length && distance >= distances[size - 1]) {
+                return;
+            }
+            int at = Arrays.binarySearch(distances, 0, size, distance);
+            at = at < 0 ? -at - 1 : at + 1;
+            int moved = Math.min(size, rows.length - 1) - at;
+            if (moved > 0) {
+                System.arraycopy(rows, at, rows, at + 1, moved);
+                System.arraycopy(distances, at, distances, at + 1, moved);
+            }
+            rows[at] = row;
+            distances[at] = distance;
+            size = Math.min(size + 1, rows.length);
+        }
+    }
+}
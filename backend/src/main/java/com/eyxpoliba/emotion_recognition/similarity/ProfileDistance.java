@@ -0,0 +1,15 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+/**
+ * How two reaction profiles are compared. Both distances lie in [0, 1].
+ */
+public enum ProfileDistance {
+    /**
+     * {@code 1 - cosine similarity} of the reaction counts.
+     */
+    COSINE,
+    /**
+     * Square root of the Jensen–Shannon divergence (base 2) of the reaction distributions; a metric.
+     */
+    JENSEN_SHANNON
+}
@@ -0,0 +1,308 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Reaction profile of every image: how many of its stored reactions carry each reaction label, as one row of a
+ * flat {@code float[]} (row-major, {@code dimensions} floats per image). Images get row numbers in arrival order
+ * and labels get dimensions the same way; once {@code dimensions - 1} labels are taken, further ones share the
+ * last dimension.
+ * <p>
+ * The approximate index is random-hyperplane LSH over the Hellinger embedding {@code sqrt(p)} of each profile
+ * {@code p}, centred on the mean embedding (profiles all lie in the positive orthant, so hyperplanes through the
+ * origin would barely split them). Close profiles under both cosine and Jensen–Shannon distance are close there.
+ * Each of {@code tables} tables hashes a row to {@code bits} hyperplane signs; a query collects the rows in its
+ * own buckets (and, if those are few, in the buckets one bit away) and ranks them with the exact distance.
+ * <p>
+ * Not thread-safe; {@link ImageSimilarityIndex} guards it with a read/write lock.
+ */
+class ReactionProfiles {
+    private final int dimensions;
+    private final int tables;
+    private final int bits;
+    // (tables * bits) hyperplanes of dimensions floats each
+    private final float[] hyperplanes;
+
+    private final Map<String, Integer> labelDimensions = new LinkedHashMap<>();
+    private final Map<String, Integer> rowsByImage = new HashMap<>();
+    private String[] images = new String[1024];
+    private float[] counts;
+    private float[] totals = new float[1024];
+    private float[] norms = new float[1024];
+    // Sum of p * ln(p) over the profile, so a Jensen–Shannon distance needs one logarithm per dimension
+    private double[] entropyTerms = new double[1024];
+    private int size;
+
+    // Null until buildIndex(); afterwards every change re-hashes its row
+    private float[] center;
+    // -1 for rows added since and not hashed yet (signatures use at most 30 bits)
+    private int[] signatures;
+    private List<Map<Integer, RoaringBitmap>> buckets;
+
+    ReactionProfiles(int dimensions, int tables, int bits, long seed) {
+        if (dimensions < 2 || tables < 1 || bits < 1 || bits > 30) {
+            throw new IllegalArgumentException("Invalid profile index shape");
+        }
+        this.dimensions = dimensions;
+        this.tables = tables;
+        this.bits = bits;
+        this.counts = new float[images.length * dimensions];
+        this.hyperplanes = new float[tables * bits * dimensions];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < hyperplanes.length; i++) {
+            hyperplanes[i] = (float) gaussian(random);
+        }
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    int size() {
+        return size;
+    }
+
+    int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * @return the row of the image, or -1 if it has no reactions with a label
+     */
+    int row(String image) {
+        return rowsByImage.getOrDefault(image, -1);
+    }
+
+    String image(int row) {
+        return images[row];
+    }
+
+    float total(int row) {
+        return totals[row];
+    }
+
+    /**
+     * Reaction counts of one row by label (labels sharing the overflow dimension are reported together under the
+     * first of them).
+     */
+    Map<String, Long> byReaction(int row) {
+        Map<String, Long> byReaction = new LinkedHashMap<>();
+        labelDimensions.forEach((label, dimension) -> {
+            float count = counts[row * dimensions + dimension];
+            if (count > 0) {
+                byReaction.putIfAbsent(label, (long) count);
+            }
+        });
+        return byReaction;
+    }
+
+    /**
+     * Counts {@code weight} more reactions with {@code label} for {@code image}; reactions without a label do not
+     * contribute to a profile.
+     */
+    void add(String image, String label, int weight) {
+        if (image == null || label == null || weight <= 0) {
+            return;
+        }
+        Integer dimension = labelDimensions.get(label);
+        if (dimension == null) {
+            dimension = Math.min(labelDimensions.size(), dimensions - 1);
+            labelDimensions.put(label, dimension);
+        }
+        Integer row = rowsByImage.get(image);
+        if (row == null) {
+            row = size++;
+            if (row == images.length) {
+                grow();
+            }
+            images[row] = image;
+            rowsByImage.put(image, row);
+        }
+        int offset = row * dimensions;
+        counts[offset + dimension] += weight;
+        totals[row] += weight;
+        double squares = 0;
+        for (int d = 0; d < dimensions; d++) {
+            squares += counts[offset + d] * counts[offset + d];
+        }
+        norms[row] = (float) Math.sqrt(squares);
+        double entropyTerm = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double p = counts[offset + d] / totals[row];
+            if (p > 0) {
+                entropyTerm += p * Math.log(p);
+            }
+        }
+        entropyTerms[row] = entropyTerm;
+        if (center != null) {
+            rehash(row);
+        }
+    }
+
+    private void grow() {
+        int capacity = images.length * 2;
+        images = Arrays.copyOf(images, capacity);
+        counts = Arrays.copyOf(counts, capacity * dimensions);
+        totals = Arrays.copyOf(totals, capacity);
+        norms = Arrays.copyOf(norms, capacity);
+        entropyTerms = Arrays.copyOf(entropyTerms, capacity);
+        if (signatures != null) {
+            int hashed = signatures.length;
+            signatures = Arrays.copyOf(signatures, capacity * tables);
+            Arrays.fill(signatures, hashed, signatures.length, -1);
+        }
+    }
+
+    /**
+     * Hashes every row. Called once after a bulk load, so the centre reflects the loaded profiles.
+     */
+    void buildIndex() {
+        center = new float[dimensions];
+        float[] embedding = new float[dimensions];
+        for (int row = 0; row < size; row++) {
+            embed(row, embedding);
+            for (int d = 0; d < dimensions; d++) {
+                center[d] += embedding[d] / size;
+            }
+        }
+        signatures = new int[images.length * tables];
+        Arrays.fill(signatures, -1);
+        buckets = new ArrayList<>(tables);
+        for (int table = 0; table < tables; table++) {
+            buckets.add(new HashMap<>());
+        }
+        for (int row = 0; row < size; row++) {
+            int[] rowSignatures = hash(row);
+            for (int table = 0; table < tables; table++) {
+                signatures[row * tables + table] = rowSignatures[table];
+                buckets.get(table).computeIfAbsent(rowSignatures[table], key -> new RoaringBitmap()).add(row);
+            }
+        }
+        for (Map<Integer, RoaringBitmap> table : buckets) {
+            table.values().forEach(RoaringBitmap::runOptimize);
+        }
+    }
+
+    boolean isIndexed() {
+        return center != null;
+    }
+
+    private void rehash(int row) {
+        int[] rowSignatures = hash(row);
+        for (int table = 0; table < tables; table++) {
+            int previous = signatures[row * tables + table];
+            int current = rowSignatures[table];
+            if (previous == current) {
+                continue;
+            }
+            Map<Integer, RoaringBitmap> tableBuckets = buckets.get(table);
+            if (previous >= 0) {
+                RoaringBitmap bucket = tableBuckets.get(previous);
+                bucket.remove(row);
+                if (bucket.isEmpty()) {
+                    tableBuckets.remove(previous);
+                }
+            }
+            tableBuckets.computeIfAbsent(current, key -> new RoaringBitmap()).add(row);
+            signatures[row * tables + table] = current;
+        }
+    }
+
+    private int[] hash(int row) {
+        float[] embedding = new float[dimensions];
+        embed(row, embedding);
+        for (int d = 0; d < dimensions; d++) {
+            embedding[d] -= center[d];
+        }
+        int[] rowSignatures = new int[tables];
+        for (int table = 0; table < tables; table++) {
+            int signature = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                int plane = (table * bits + bit) * dimensions;
+                float dot = 0;
+                for (int d = 0; d < dimensions; d++) {
+                    dot += embedding[d] * hyperplanes[plane + d];
+                }
+                if (dot >= 0) {
+                    signature |= 1 << bit;
+                }
+            }
+            rowSignatures[table] = signature;
+        }
+        return rowSignatures;
+    }
+
+    private void embed(int row, float[] embedding) {
+        int offset = row * dimensions;
+        for (int d = 0; d < dimensions; d++) {
+            embedding[d] = (float) Math.sqrt(counts[offset + d] / totals[row]);
+        }
+    }
+
+    /**
+     * Rows sharing a bucket with {@code row} in any table, including {@code row}. When those are fewer than
+     * {@code wanted}, rows in the buckets one bit away are added too: dense regions fill the own buckets, sparse
+     * ones need the neighbouring buckets for recall.
+     */
+    RoaringBitmap candidates(int row, int wanted) {
+        List<RoaringBitmap> probed = new ArrayList<>(tables * (bits + 1));
+        for (int table = 0; table < tables; table++) {
+            RoaringBitmap bucket = buckets.get(table).get(signatures[row * tables + table]);
+            if (bucket != null) {
+                probed.add(bucket);
+            }
+        }
+        RoaringBitmap candidates = FastAggregation.or(probed.iterator());
+        if (candidates.getCardinality() >= wanted) {
+            return candidates;
+        }
+        for (int table = 0; table < tables; table++) {
+            Map<Integer, RoaringBitmap> tableBuckets = buckets.get(table);
+            int signature = signatures[row * tables + table];
+            for (int flip = 0; flip < bits; flip++) {
+                RoaringBitmap bucket = tableBuckets.get(signature ^ (1 << flip));
+                if (bucket != null) {
+                    probed.add(bucket);
+                }
+            }
+        }
+        return FastAggregation.or(probed.iterator());
+    }
+
+    /**
+     * Distance between two rows: {@code 1 - cosine similarity} of the count vectors, or the square root of the
+     * Jensen–Shannon divergence (base 2) of the normalised profiles. Both lie in [0, 1].
+     */
+    double distance(ProfileDistance kind, int a, int b) {
+        int offsetA = a * dimensions;
+        int offsetB = b * dimensions;
+        if (kind == ProfileDistance.COSINE) {
+            float dot = 0;
+            for (int d = 0; d < dimensions; d++) {
+                dot += counts[offsetA + d] * counts[offsetB + d];
+            }
+            return Math.max(0, 1 - dot / (norms[a] * norms[b]));
+        }
+        // JSD = (sum p ln p + sum q ln q) / 2 - sum m ln m, with m = (p + q) / 2
+        float totalA = totals[a];
+        float totalB = totals[b];
+        double mixture = 0;
+        for (int d = 0; d < dimensions; d++) {
+            double m = (counts[offsetA + d] / totalA + counts[offsetB + d] / totalB) / 2;
+            if (m > 0) {
+                mixture += m * Math.log(m);
+            }
+        }
+        double divergence = (entropyTerms[a] + entropyTerms[b]) / 2 - mixture;
+        return Math.sqrt(Math.max(0, divergence / Math.log(2)));
+    }
+}
@@ -0,0 +1,12 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import java.util.Map;
+
+/**
+ * @param image      blob name
+ * @param distance   distance of its reaction profile from the queried image's
+ * @param reactions  stored reactions with a label
+ * @param byReaction those reactions by label
+ */
+public record SimilarImage(String image, double distance, long reactions, Map<String, Long> byReaction) {
+}
@@ -0,0 +1,12 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import java.util.List;
+
+/**
+ * @param image      the queried image, at distance 0
+ * @param metric     how the profiles were compared
+ * @param exact      whether every image was compared (otherwise only the approximate index's candidates were)
+ * @param neighbours the nearest images, closest first
+ */
+public record SimilarImages(SimilarImage image, ProfileDistance metric, boolean exact, List<SimilarImage> neighbours) {
+}
@@ -0,0 +1,14 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The image has no stored reactions with a label, so it has no reaction profile to compare.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class UnknownImageException extends RuntimeException {
+    public UnknownImageException(String image) {
+        super("No reactions recorded for image " + image);
+    }
+}
@@ -0,0 +1,157 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.BlobUrlParts;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.options.BlockBlobCommitBlockListOptions;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+import com.azure.storage.common.StorageSharedKeyCredential;
+import com.azure.storage.common.sas.SasProtocol;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Component
+@ConditionalOnProperty(name = "azure.storage.mode", havingValue = "azure", matchIfMissing = true)
+public class AzureBlobStore implements BlobStore {
+
+    @Value("${azure.storage.connection-string}")
+    private String connectionString;
+
+    @Value("${azure.storage.container-name}")
+    private String containerName;
+
+    @Value("${azure.storage.sas-token}")
+    private String sasToken;
+
+    // Chiave dell'account, necessaria solo per la consegna diretta delle immagini (azure.storage.delivery=sas)
+    @Value("${azure.storage.account-key:}")
+    private String accountKey;
+
+    @Value("${azure.storage.account-name:}")
+    private String accountName;
+
+    private BlobContainerClient blobContainerClient;
+    // Client autenticato con la chiave condivisa, usato solo per firmare gli URL: la firma è un HMAC locale
+    private BlobContainerClient signingContainerClient;
+    private SasProtocol sasProtocol;
+
+    @PostConstruct
+    public void init() {
+        BlobServiceClient blobServiceClient = new BlobServiceClientBuilder()
+                .endpoint(connectionString)
+                .sasToken(sasToken)
+                .buildClient();
+        // Nessuna chiamata di rete qui: la verifica del container è in prepare(), fuori dal percorso di avvio
+        this.blobContainerClient = blobServiceClient.getBlobContainerClient(containerName);
+
+        if (accountKey != null && !accountKey.isBlank()) {
+            String name = accountName == null || accountName.isBlank()
+                    ? BlobUrlParts.parse(connectionString).getAccountName()
+                    : accountName;
+            this.signingContainerClient = new BlobServiceClientBuilder()
+                    .endpoint(connectionString)
+                    .credential(new StorageSharedKeyCredential(name, accountKey))
+                    .buildClient()
+                    .getBlobContainerClient(containerName);
+            // Solo HTTPS, tranne con un endpoint locale in chiaro (Azurite)
+            this.sasProtocol = connectionString.startsWith("https") ? SasProtocol.HTTPS_ONLY : SasProtocol.HTTPS_HTTP;
+        }
+    }
+
+    @Override
+    public void prepare() {
+        if (!blobContainerClient.exists()) {
+            blobContainerClient.create(); // Crea il container se non esiste
+        }
+    }
+
+    @Override
+    public List<String> listBlobNames() {
+        return blobContainerClient.listBlobs().stream().map(BlobItem::getName).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean exists(String blobName) {
+        return blobContainerClient.getBlobClient(blobName).exists();
+    }
+
+    @Override
+    public void download(String blobName, OutputStream outputStream) {
+        blobContainerClient.getBlobClient(blobName).downloadStream(outputStream);
+    }
+
+    @Override
+    public String signedUrl(String blobName, OffsetDateTime expiresAt) {
+        if (signingContainerClient == null) {
+            return null;
+        }
+        BlobClient blobClient = signingContainerClient.getBlobClient(blobName);
+        BlobServiceSasSignatureValues values = new BlobServiceSasSignatureValues(expiresAt, new BlobSasPermission().setReadPermission(true))
+                .setStartTime(OffsetDateTime.now().minusMinutes(5)) // tolleranza per orologi non allineati
+                .setProtocol(sasProtocol);
+        return blobClient.getBlobUrl() + "?" + blobClient.generateSas(values);
+    }
+
+    @Override
+    public BlockUpload beginUpload(String blobName) {
+        BlockBlobClient blockBlobClient = blobContainerClient.getBlobClient(blobName).getBlockBlobClient();
+        return new BlockUpload() {
+            @Override
+            public void stageBlock(int index, byte[] data, int length) {
+                blockBlobClient.stageBlock(blockId(index), new ByteArrayInputStream(data, 0, length), length);
+            }
+
+            @Override
+            public void commit(int blockCount, String contentType) throws FileAlreadyExistsException {
+                List<String> blockIds = IntStream.range(0, blockCount).mapToObj(AzureBlobStore::blockId).toList();
+                BlockBlobCommitBlockListOptions options = new BlockBlobCommitBlockListOptions(blockIds)
+                        .setHeaders(new BlobHttpHeaders().setContentType(contentType))
+                        // Mai sovrascrivere un'immagine esistente
+                        .setRequestConditions(new BlobRequestConditions().setIfNoneMatch("*"));
+                try {
+                    blockBlobClient.commitBlockListWithResponse(options, null, null);
+                } catch (BlobStorageException e) {
+                    if (e.getStatusCode() == 409 || e.getStatusCode() == 412) {
+                        throw new FileAlreadyExistsException(blobName);
+                    }
+                    throw e;
+                }
+            }
+
+            @Override
+            public void abort() {
+                // I blocchi non confermati vengono eliminati dallo storage dopo una settimana
+            }
+        };
+    }
+
+    @Override
+    public void delete(String blobName) {
+        blobContainerClient.getBlobClient(blobName).deleteIfExists();
+    }
+
+    // Tutti gli id di un blob devono avere la stessa lunghezza
+    private static String blockId(int index) {
+        return Base64.getEncoder().encodeToString(String.format("%08d", index).getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,86 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Accesso grezzo al contenitore delle immagini. {@link com.eyxpoliba.emotion_recognition.service.AzureStorageService}
+ * aggiunge metriche e campionamento sopra a questa interfaccia.
+ */
+public interface BlobStore {
+
+    /**
+     * Verifica che il contenitore esista e, se serve, lo crea. Eseguito in background dopo l'avvio
+     * da {@link BlobStoreHealthIndicator}, che tiene l'istanza non pronta finché non riesce.
+     */
+    default void prepare() {
+    }
+
+    /**
+     * @return I nomi di tutti i blob nel contenitore.
+     */
+    List<String> listBlobNames();
+
+    boolean exists(String blobName);
+
+    /**
+     * Scrive il contenuto del blob nello stream indicato.
+     *
+     * @throws IOException Se il blob non esiste o lo scaricamento fallisce.
+     */
+    void download(String blobName, OutputStream outputStream) throws IOException;
+
+    /**
+     * Genera un URL di sola lettura per il blob, firmato localmente (nessuna chiamata allo storage),
+     * che il browser può usare per scaricare l'immagine senza passare dal backend.
+     *
+     * @param expiresAt Istante dopo il quale l'URL non è più valido.
+     * @return L'URL firmato, oppure null se questo contenitore non è in grado di firmare.
+     */
+    default String signedUrl(String blobName, OffsetDateTime expiresAt) {
+        return null;
+    }
+
+    /**
+     * Inizia il caricamento a blocchi di un nuovo blob; i blocchi possono essere inviati in parallelo.
+     *
+     * @throws UnsupportedOperationException Se il contenitore è in sola lettura.
+     */
+    default BlockUpload beginUpload(String blobName) {
+        throw new UnsupportedOperationException("Il contenitore non supporta il caricamento");
+    }
+
+    /**
+     * Elimina il blob, se esiste.
+     */
+    default void delete(String blobName) throws IOException {
+        throw new UnsupportedOperationException("Il contenitore non supporta l'eliminazione");
+    }
+
+    /**
+     * Un caricamento in corso. Il blob diventa visibile solo con {@link #commit(int, String)}; fino ad allora
+     * i blocchi non sono elencati né scaricabili.
+     */
+    interface BlockUpload {
+
+        /**
+         * Carica il blocco {@code index} (a partire da 0). Thread-safe: blocchi diversi possono essere inviati
+         * in parallelo e in qualsiasi ordine.
+         */
+        void stageBlock(int index, byte[] data, int length) throws IOException;
+
+        /**
+         * Compone il blob dai blocchi 0..{@code blockCount}-1.
+         *
+         * @throws java.nio.file.FileAlreadyExistsException Se nel frattempo è stato creato un blob con lo stesso nome.
+         */
+        void commit(int blockCount, String contentType) throws IOException;
+
+        /**
+         * Abbandona i blocchi caricati senza creare il blob.
+         */
+        void abort();
+    }
+}
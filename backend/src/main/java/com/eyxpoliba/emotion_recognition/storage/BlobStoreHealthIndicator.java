@@ -0,0 +1,78 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Esegue {@link BlobStore#prepare()} su un thread virtuale, con backoff esponenziale fino al successo,
+ * mentre il resto del contesto si avvia. Fa parte del gruppo di readiness: finché il contenitore non è
+ * verificato l'istanza risulta OUT_OF_SERVICE e non riceve traffico.
+ */
+@Slf4j
+@Component
+public class BlobStoreHealthIndicator implements HealthIndicator {
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final BlobStore blobStore;
+    private final long initialBackoffMs;
+
+    private volatile boolean ready;
+    private volatile String lastError;
+    private volatile boolean stopped;
+    private Thread worker;
+
+    public BlobStoreHealthIndicator(BlobStore blobStore,
+                                    @Value("${azure.storage.prepare.initial-backoff-ms:1000}") long initialBackoffMs) {
+        this.blobStore = blobStore;
+        this.initialBackoffMs = initialBackoffMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = Thread.ofVirtual().name("blob-store-prepare").start(this::prepareUntilReady);
+    }
+
+    @PreDestroy
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void prepareUntilReady() {
+        long backoffMs = initialBackoffMs;
+        while (!stopped) {
+            try {
+                blobStore.prepare();
+                ready = true;
+                lastError = null;
+                return;
+            } catch (RuntimeException e) {
+                if (stopped) {
+                    return; // interrotto dallo spegnimento
+                }
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+                log.warn("Storage non ancora pronto, nuovo tentativo tra {} ms: {}", backoffMs, lastError);
+            }
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+        }
+    }
+
+    @Override
+    public Health health() {
+        if (ready) {
+            return Health.up().build();
+        }
+        Health.Builder builder = Health.outOfService();
+        return lastError == null ? builder.withDetail("state", "pending").build() : builder.withDetail("error", lastError).build();
+    }
+}
@@ -0,0 +1,114 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Contenitore in memoria per sviluppo e load test offline ({@code azure.storage.mode=memory}),
+ * popolato all'avvio con immagini PNG sintetiche.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "azure.storage.mode", havingValue = "memory")
+public class InMemoryBlobStore implements BlobStore {
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    public InMemoryBlobStore(@Value("${azure.storage.memory.seed-images:100}") int seedImages,
+                             @Value("${azure.storage.memory.seed-image-size:256}") int seedImageSize) {
+        for (int i = 0; i < seedImages; i++) {
+            blobs.put(String.format("synthetic-%05d.png", i), syntheticPng(i, seedImageSize));
+        }
+        log.info("In-memory blob store seeded with {} synthetic images", seedImages);
+    }
+
+    public void put(String blobName, byte[] content) {
+        blobs.put(blobName, content);
+    }
+
+    @Override
+    public List<String> listBlobNames() {
+        return new ArrayList<>(blobs.keySet());
+    }
+
+    @Override
+    public boolean exists(String blobName) {
+        return blobs.containsKey(blobName);
+    }
+
+    @Override
+    public void download(String blobName, OutputStream outputStream) throws IOException {
+        byte[] content = blobs.get(blobName);
+        if (content == null) {
+            throw new IOException("Blob non trovato: " + blobName);
+        }
+        outputStream.write(content);
+    }
+
+    @Override
+    public BlockUpload beginUpload(String blobName) {
+        Map<Integer, byte[]> blocks = new ConcurrentHashMap<>();
+        return new BlockUpload() {
+            @Override
+            public void stageBlock(int index, byte[] data, int length) {
+                blocks.put(index, Arrays.copyOf(data, length));
+            }
+
+            @Override
+            public void commit(int blockCount, String contentType) throws IOException {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                for (int i = 0; i < blockCount; i++) {
+                    byte[] block = blocks.get(i);
+                    if (block == null) {
+                        throw new IOException("Blocco " + i + " mancante per " + blobName);
+                    }
+                    content.write(block);
+                }
+                if (blobs.putIfAbsent(blobName, content.toByteArray()) != null) {
+                    throw new FileAlreadyExistsException(blobName);
+                }
+                blocks.clear();
+            }
+
+            @Override
+            public void abort() {
+                blocks.clear();
+            }
+        };
+    }
+
+    @Override
+    public void delete(String blobName) {
+        blobs.remove(blobName);
+    }
+
+    // Gradiente diverso per ogni immagine, così le dimensioni compresse non sono tutte identiche
+    private static byte[] syntheticPng(int seed, int size) {
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, ((x * seed) & 0xFF) << 16 | ((y + seed) & 0xFF) << 8 | ((x ^ y) & 0xFF));
+            }
+        }
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
+            ImageIO.write(image, "png", outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import com.eyxpoliba.emotion_recognition.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Letture dallo storage con scadenza, richieste "hedged" e circuit breaker.
+ * <p>
+ * Ogni lettura parte su un thread virtuale; se non risponde entro il p95 osservato delle letture recenti ne parte
+ * una seconda identica e vince la prima risposta (l'altra viene interrotta). Le richieste hedged sono limitate a
+ * {@code hedge-budget} per lettura, così uno storage lento in generale non raddoppia il carico. Oltre
+ * {@code timeout-ms} la lettura fallisce. Dopo {@code failure-threshold} fallimenti consecutivi il circuito si apre
+ * e le letture non contattano più lo storage: il blob viene servito dalla cache locale degli ultimi blob letti,
+ * se presente, altrimenti si fallisce subito con {@link StorageUnavailableException}.
+ * <p>
+ * Un blob inesistente ({@link FileNotFoundException}) è una risposta valida: non conta come guasto.
+ */
+@Slf4j
+@Component
+public class ResilientBlobReader {
+    // Sotto questo numero di letture il p95 non è significativo e si usa hedge-delay-ms
+    private static final long MIN_SAMPLES = 20;
+    private static final long HEDGE_DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    private final long timeoutNanos;
+    private final long initialHedgeDelayNanos;
+    private final long minHedgeDelayNanos;
+    private final double hedgeBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final LastReadCache cache;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("blob-read-", 0).factory());
+
+    private final Timer attemptTimer;
+    private final Counter hedgesIssued;
+    private final Map<String, Counter> outcomes = new LinkedHashMap<>();
+
+    private final Object hedgeLock = new Object();
+    // Guarded by hedgeLock
+    private double hedgeTokens;
+    private volatile long hedgeDelayNanos;
+    private volatile long hedgeDelayComputedAt;
+
+    public ResilientBlobReader(MeterRegistry meterRegistry,
+                               @Value("${azure.storage.read.timeout-ms:2000}") long timeoutMs,
+                               @Value("${azure.storage.read.hedge-delay-ms:200}") long hedgeDelayMs,
+                               @Value("${azure.storage.read.min-hedge-delay-ms:20}") long minHedgeDelayMs,
+                               @Value("${azure.storage.read.hedge-budget:0.1}") double hedgeBudget,
+                               @Value("${azure.storage.read.breaker.failure-threshold:5}") int failureThreshold,
+                               @Value("${azure.storage.read.breaker.open-ms:10000}") long openMs,
+                               @Value("${azure.storage.read.cache-bytes:67108864}") long cacheBytes) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.initialHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeDelayMs);
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMs);
+        this.hedgeBudget = hedgeBudget;
+        // Con budget 0 l'hedging è disattivato; altrimenti si parte con una piccola riserva
+        this.hedgeTokens = hedgeBudget > 0 ? MAX_HEDGE_TOKENS : 0;
+        this.hedgeDelayNanos = initialHedgeDelayNanos;
+        this.circuitBreaker = new CircuitBreaker("storage", failureThreshold, openMs, System::currentTimeMillis);
+        this.cache = new LastReadCache(cacheBytes);
+
+        this.attemptTimer = Timer.builder("storage.read.attempt")
+                .description("Durata dei tentativi di lettura riusciti; il p95 decide quando partire con l'hedge")
+                .publishPercentiles(0.95)
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        this.hedgesIssued = Counter.builder("storage.read.hedges")
+                .description("Seconde letture avviate perché la prima superava il p95")
+                .register(meterRegistry);
+        for (String outcome : List.of("primary", "hedge", "not_found", "cache", "failed", "rejected")) {
+            outcomes.put(outcome, Counter.builder("storage.read")
+                    .description("Letture dallo storage per esito")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+        Gauge.builder("storage.breaker.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 mentre il circuito dello storage è aperto o in prova")
+                .register(meterRegistry);
+        Gauge.builder("storage.read.cache.bytes", cache, LastReadCache::sizeInBytes)
+                .description("Byte nella cache locale usata quando lo storage non è disponibile")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Legge un blob tramite {@code fetch}, che può essere eseguito più volte in parallelo.
+     *
+     * @throws FileNotFoundException       Se il blob non esiste.
+     * @throws StorageUnavailableException Se lo storage non risponde in tempo o è in errore e il blob non è in cache.
+     */
+    public byte[] read(String blobName, Callable<byte[]> fetch) throws IOException {
+        if (!circuitBreaker.tryAcquire()) {
+            return fallback(blobName, "rejected", new CircuitBreaker.OpenException(circuitBreaker.getName()));
+        }
+        earnHedgeToken();
+
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        List<Future<?>> attempts = new ArrayList<>(2);
+        long deadline = System.nanoTime() + timeoutNanos;
+        attempts.add(submit(fetch, result, running, outcomes.get("primary")));
+        try {
+            byte[] content;
+            try {
+                content = result.get(Math.min(hedgeDelayNanos(), timeoutNanos), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException slow) {
+                if (!result.isDone() && spendHedgeToken()) {
+                    running.incrementAndGet();
+                    hedgesIssued.increment();
+                    attempts.add(submit(fetch, result, running, outcomes.get("hedge")));
+                }
+                content = result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            circuitBreaker.onSuccess();
+            cache.put(blobName, content);
+            return content;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileNotFoundException notFound) {
+                circuitBreaker.onSuccess();
+                outcomes.get("not_found").increment();
+                throw notFound;
+            }
+            circuitBreaker.onFailure();
+            return fallback(blobName, "failed", e.getCause());
+        } catch (TimeoutException e) {
+            circuitBreaker.onFailure();
+            return fallback(blobName, "failed", new TimeoutException("Nessuna risposta dallo storage entro la scadenza"));
+        } catch (InterruptedException e) {
+            // La prova in HALF_OPEN va comunque chiusa, altrimenti il circuito resterebbe bloccato
+            circuitBreaker.onFailure();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lettura interrotta: " + blobName);
+        } finally {
+            attempts.forEach(attempt -> attempt.cancel(true));
+        }
+    }
+
+    private Future<?> submit(Callable<byte[]> fetch, CompletableFuture<byte[]> result, AtomicInteger running, Counter won) {
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                byte[] content = fetch.call();
+                attemptTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (result.complete(content)) {
+                    won.increment();
+                }
+            } catch (Exception e) {
+                // Un blob inesistente è definitivo; un errore lo è solo se non ci sono altri tentativi in corso
+                if (e instanceof FileNotFoundException || running.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private byte[] fallback(String blobName, String outcome, Throwable cause) throws StorageUnavailableException {
+        byte[] cached = cache.get(blobName);
+        if (cached != null) {
+            outcomes.get("cache").increment();
+            return cached;
+        }
+        outcomes.get(outcome).increment();
+        log.debug("Lettura di {} non riuscita: {}", blobName, cause.toString());
+        throw new StorageUnavailableException("Storage non disponibile: " + cause.getMessage(), cause);
+    }
+
+    private long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - hedgeDelayComputedAt >= HEDGE_DELAY_REFRESH_NANOS) {
+            hedgeDelayComputedAt = now;
+            hedgeDelayNanos = observedP95();
+        }
+        return hedgeDelayNanos;
+    }
+
+    private long observedP95() {
+        if (attemptTimer.count() < MIN_SAMPLES) {
+            return initialHedgeDelayNanos;
+        }
+        for (ValueAtPercentile percentile : attemptTimer.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == 0.95 && percentile.value() > 0) {
+                return Math.max(minHedgeDelayNanos, (long) percentile.value(TimeUnit.NANOSECONDS));
+            }
+        }
+        return initialHedgeDelayNanos;
+    }
+
+    private void earnHedgeToken() {
+        synchronized (hedgeLock) {
+            hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + hedgeBudget);
+        }
+    }
+
+    private boolean spendHedgeToken() {
+        synchronized (hedgeLock) {
+            if (hedgeTokens < 1) {
+                return false;
+            }
+            hedgeTokens--;
+            return true;
+        }
+    }
+
+    CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Ultimi blob letti con successo, fino a {@code capacityBytes} byte in ordine LRU. Le immagini non cambiano
+     * dopo il caricamento, quindi una copia vecchia è ancora valida.
+     */
+    private static final class LastReadCache {
+        private final long capacityBytes;
+        private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeInBytes;
+
+        LastReadCache(long capacityBytes) {
+            this.capacityBytes = capacityBytes;
+        }
+
+        synchronized byte[] get(String blobName) {
+            return entries.get(blobName);
+        }
+
+        synchronized void put(String blobName, byte[] content) {
+            if (content.length > capacityBytes) {
+                return;
+            }
+            byte[] previous = entries.put(blobName, content);
+            sizeInBytes += content.length - (previous == null ? 0 : previous.length);
+            var eldest = entries.entrySet().iterator();
+            while (sizeInBytes > capacityBytes && eldest.hasNext()) {
+                sizeInBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+
+        synchronized double sizeInBytes() {
+            return sizeInBytes;
+        }
+    }
+}
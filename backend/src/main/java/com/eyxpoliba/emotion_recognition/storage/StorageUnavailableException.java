@@ -0,0 +1,13 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import java.io.IOException;
+
+/**
+ * Lo storage non ha risposto entro la scadenza, è in errore o il circuito è aperto, e il blob non è
+ * disponibile nella cache locale. Il client può riprovare più tardi.
+ */
+public class StorageUnavailableException extends IOException {
+    public StorageUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
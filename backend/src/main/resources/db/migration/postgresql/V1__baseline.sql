@@ -0,0 +1,36 @@
+-- Database schema for Emotion Recognition application (PostgreSQL)
+
+-- Users table
+CREATE TABLE users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    nickname VARCHAR(255),
+    email VARCHAR(255) UNIQUE,
+    age INT,
+    gender VARCHAR(50),
+    nationality VARCHAR(100)
+);
+
+-- User reactions table
+CREATE TABLE user_reactions (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT,
+    image VARCHAR(255),
+    image_description TEXT,
+    image_reaction VARCHAR(100),
+    ai_comment TEXT
+);
+
+-- Blacklisted JWT tokens table
+CREATE TABLE blacklist_tokens (
+    jwt VARCHAR(500) PRIMARY KEY,
+    expiration_date DATE
+);
+
+-- Create indices for performance
+CREATE INDEX idx_user_email ON users(email);
+CREATE INDEX idx_user_reactions_user_id ON user_reactions(user_id);
+CREATE INDEX idx_blacklist_tokens_expiration ON blacklist_tokens(expiration_date);
+
+-- Add foreign key constraints after table creation
+ALTER TABLE user_reactions
+ADD CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES users(id);
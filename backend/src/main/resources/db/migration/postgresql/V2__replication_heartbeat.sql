@@ -0,0 +1,7 @@
+-- Single-row heartbeat written on the primary and read back from the read replica to measure replication lag
+CREATE TABLE replication_heartbeat (
+    id INT PRIMARY KEY,
+    beat_at BIGINT NOT NULL
+);
+
+INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, 0);
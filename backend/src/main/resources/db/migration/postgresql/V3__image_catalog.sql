@@ -0,0 +1,12 @@
+-- Images ingested through the admin API: one row per blob, keyed by name and deduplicated by content hash
+CREATE TABLE images (
+    blob_name VARCHAR(255) PRIMARY KEY,
+    sha256 CHAR(64) NOT NULL,
+    content_type VARCHAR(100) NOT NULL,
+    width INT NOT NULL,
+    height INT NOT NULL,
+    size_bytes BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL
+);
+
+CREATE UNIQUE INDEX ux_images_sha256 ON images(sha256);
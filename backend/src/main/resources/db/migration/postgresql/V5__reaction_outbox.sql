@@ -0,0 +1,26 @@
+-- Change feed of user_reactions: every insert also appends here, in the same transaction. Each shard keeps its own
+-- outbox (see db/shard); ids order the records of one shard, created_at orders them across shards
+CREATE TABLE reaction_outbox (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    image VARCHAR(255),
+    image_description TEXT,
+    image_reaction VARCHAR(100),
+    ai_comment TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_reaction_outbox_created_at ON reaction_outbox(created_at);
+
+-- Consumers that asked the feed to keep their records, with the last cursor each one sent back
+CREATE TABLE reaction_outbox_consumers (
+    consumer_name VARCHAR(100) PRIMARY KEY,
+    last_cursor VARCHAR(1000) NOT NULL,
+    seen_at TIMESTAMP NOT NULL
+);
+
+-- Per shard, the highest outbox id compaction may have deleted; cursors below it have expired
+CREATE TABLE reaction_outbox_watermarks (
+    shard_id INT PRIMARY KEY,
+    purged_through BIGINT NOT NULL
+);
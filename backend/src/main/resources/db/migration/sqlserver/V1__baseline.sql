@@ -1,9 +1,4 @@
--- Database schema for Emotion Recognition application
-
--- Drop tables if they exist (in reverse dependency order)
-DROP TABLE IF EXISTS user_reactions;
-DROP TABLE IF EXISTS blacklist_tokens;
-DROP TABLE IF EXISTS users;
+-- Database schema for Emotion Recognition application (SQL Server, also used by H2 in MSSQLServer mode)
 
 -- Users table
 CREATE TABLE users (
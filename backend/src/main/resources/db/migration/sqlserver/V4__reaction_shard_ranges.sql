@@ -0,0 +1,25 @@
+-- Placement of user_reactions by bucket (user_id % 1024): each row owns an inclusive bucket range. Shard 0 is this
+-- database; a range moving to another shard goes COPYING -> FROZEN -> CLEANUP -> ACTIVE, with peer_shard holding
+-- the other side of the move until it is done
+CREATE TABLE reaction_shard_ranges (
+    first_bucket INT PRIMARY KEY,
+    last_bucket INT NOT NULL,
+    shard_id INT NOT NULL,
+    state NVARCHAR(16) NOT NULL,
+    peer_shard INT
+);
+
+INSERT INTO reaction_shard_ranges (first_bucket, last_bucket, shard_id, state) VALUES (0, 1023, 0, 'ACTIVE');
+
+-- Write fence per bucket. A writer locks its buckets' rows in its own transaction and only proceeds while they are
+-- not fenced; a range move fences the buckets on the shard it leaves, which waits for those writers and turns
+-- away later ones, including instances whose layout is out of date. Shard 0 starts with every bucket open
+CREATE TABLE reaction_bucket_fences (
+    bucket INT PRIMARY KEY,
+    fenced SMALLINT NOT NULL
+);
+
+INSERT INTO reaction_bucket_fences (bucket, fenced)
+SELECT high.n * 32 + low.n, 0
+FROM (VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15), (16), (17), (18), (19), (20), (21), (22), (23), (24), (25), (26), (27), (28), (29), (30), (31)) AS high(n)
+CROSS JOIN (VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15), (16), (17), (18), (19), (20), (21), (22), (23), (24), (25), (26), (27), (28), (29), (30), (31)) AS low(n);
@@ -0,0 +1,12 @@
+-- This shard's part of the reaction change feed, written in the same transaction as its user_reactions rows
+CREATE TABLE reaction_outbox (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    image VARCHAR(255),
+    image_description TEXT,
+    image_reaction VARCHAR(100),
+    ai_comment TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_reaction_outbox_created_at ON reaction_outbox(created_at);
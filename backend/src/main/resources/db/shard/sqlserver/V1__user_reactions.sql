@@ -0,0 +1,24 @@
+-- Schema of an additional user_reactions shard (SQL Server, also used by H2 in MSSQLServer mode). Users stay on the
+-- primary database, so there is no foreign key: the user is checked there before writing
+CREATE TABLE user_reactions (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    user_id BIGINT,
+    image NVARCHAR(255),
+    image_description NVARCHAR(MAX),
+    image_reaction NVARCHAR(100),
+    ai_comment NVARCHAR(MAX)
+);
+
+CREATE INDEX idx_user_reactions_user_id ON user_reactions(user_id);
+
+-- Write fence per bucket, see reaction_bucket_fences on the primary. A new shard takes no writes until a range
+-- is moved to it
+CREATE TABLE reaction_bucket_fences (
+    bucket INT PRIMARY KEY,
+    fenced SMALLINT NOT NULL
+);
+
+INSERT INTO reaction_bucket_fences (bucket, fenced)
+SELECT high.n * 32 + low.n, 1
+FROM (VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15), (16), (17), (18), (19), (20), (21), (22), (23), (24), (25), (26), (27), (28), (29), (30), (31)) AS high(n)
+CROSS JOIN (VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9), (10), (11), (12), (13), (14), (15), (16), (17), (18), (19), (20), (21), (22), (23), (24), (25), (26), (27), (28), (29), (30), (31)) AS low(n);
@@ -0,0 +1,12 @@
+-- This shard's part of the reaction change feed, written in the same transaction as its user_reactions rows
+CREATE TABLE reaction_outbox (
+    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    image NVARCHAR(255),
+    image_description NVARCHAR(MAX),
+    image_reaction NVARCHAR(100),
+    ai_comment NVARCHAR(MAX),
+    created_at DATETIME2 NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_reaction_outbox_created_at ON reaction_outbox(created_at);
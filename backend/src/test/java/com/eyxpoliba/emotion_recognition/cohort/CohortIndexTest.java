@@ -0,0 +1,142 @@
+package com.eyxpoliba.emotion_recognition.cohort;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import com.eyxpoliba.emotion_recognition.service.UserProfileEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CohortIndexTest {
+    private static final String[] GENDERS = {"M", "F", "X"};
+    private static final String[] NATIONALITIES = {"IT", "FR", "DE", "ES"};
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "STUPORE"};
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReactionShards shards;
+    private JdbcTemplate jdbc;
+    private CohortIndex index;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:cohort-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        dataSource.setUser("sa");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/sqlserver").load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+        shards = new ReactionShards(List.of(dataSource), meterRegistry, 60_000, 1000);
+        ShardedReactionsRepository reactions = new ShardedReactionsRepository(shards);
+        index = new CohortIndex(jdbc, reactions, meterRegistry, true, 600_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+    }
+
+    @Test
+    void testCountsMatchSqlJoin() {
+        Random random = new Random(42);
+        for (int user = 1; user <= 200; user++) {
+            jdbc.update("INSERT INTO users (email, age, gender, nationality) VALUES (?, ?, ?, ?)", "u" + user + "@example.com",
+                    15 + random.nextInt(60), GENDERS[random.nextInt(GENDERS.length)], NATIONALITIES[random.nextInt(NATIONALITIES.length)]);
+        }
+        List<Object[]> reactions = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            reactions.add(new Object[]{1 + random.nextInt(200), "img" + random.nextInt(20) + ".png", REACTIONS[random.nextInt(REACTIONS.length)]});
+        }
+        jdbc.batchUpdate("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, ?, ?)", reactions);
+
+        assertFalse(index.isReady());
+        index.rebuild();
+        assertTrue(index.isReady());
+
+        CohortCounts all = index.count(new CohortQuery(null, null, null, null, null));
+        assertEquals(200, all.users());
+        assertEquals(3000, all.reactions());
+
+        CohortCounts slice = index.count(new CohortQuery(List.of("25-34", "35-44"), List.of("F"), List.of("IT", "FR"), null, List.of("img3.png")));
+        String where = " WHERE u.age BETWEEN 25 AND 44 AND u.gender = 'F' AND u.nationality IN ('IT', 'FR')";
+        assertEquals(jdbc.queryForObject("SELECT COUNT(*) FROM users u" + where, Long.class), slice.users());
+        assertEquals(jdbc.queryForObject("SELECT COUNT(*) FROM user_reactions r JOIN users u ON u.id = r.user_id" + where
+                + " AND r.image = 'img3.png'", Long.class), slice.reactions());
+        for (String reaction : REACTIONS) {
+            long expected = jdbc.queryForObject("SELECT COUNT(*) FROM user_reactions r JOIN users u ON u.id = r.user_id" + where
+                    + " AND r.image = 'img3.png' AND r.image_reaction = ?", Long.class, reaction);
+            assertEquals(expected, slice.byReaction().getOrDefault(reaction, 0L), reaction);
+        }
+    }
+
+    @Test
+    void testEventsUpdateIndexIncrementally() {
+        jdbc.update("INSERT INTO users (email, age, gender, nationality) VALUES ('a@example.com', 30, 'F', 'IT')");
+        long userId = jdbc.queryForObject("SELECT id FROM users", Long.class);
+        jdbc.update("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, 'a.png', 'GIOIA')", userId);
+        index.rebuild();
+
+        index.onReactionsRegistered(new ReactionsRegisteredEvent(userId, List.of(
+                new ReactionsRegisteredEvent.Reaction("b.png", "PAURA"),
+                new ReactionsRegisteredEvent.Reaction("c.png", "GIOIA")), 0, 0));
+        CohortQuery italianWomen = new CohortQuery(null, List.of("F"), List.of("IT"), null, null);
+        assertEquals(new CohortCounts(1, 3, Map.of("GIOIA", 2L, "PAURA", 1L)), index.count(italianWomen));
+
+        // A later login with a different profile moves the participant and all of their reactions
+        index.onUserProfile(new UserProfileEvent(userId, 30, "F", "FR"));
+        assertEquals(new CohortCounts(0, 0, Map.of()), index.count(italianWomen));
+        assertEquals(3, index.count(new CohortQuery(List.of("25-34"), null, List.of("FR"), null, null)).reactions());
+
+        // A participant first seen through a reaction (login served by another instance) has no demographics yet
+        index.onReactionsRegistered(new ReactionsRegisteredEvent(999L, List.of(new ReactionsRegisteredEvent.Reaction("a.png", "STUPORE")), 0, 0));
+        assertEquals(1, index.count(new CohortQuery(null, null, null, List.of("STUPORE"), null)).reactions());
+        assertEquals(0, index.count(new CohortQuery(null, List.of("F"), null, List.of("STUPORE"), null)).reactions());
+        index.onUserProfile(new UserProfileEvent(999L, 70, "F", "DE"));
+        assertEquals(1, index.count(new CohortQuery(List.of("65+"), List.of("F"), null, List.of("STUPORE"), null)).reactions());
+    }
+
+    @Test
+    void testSubmissionsCommittedDuringTheRebuildAreCountedOnce() {
+        jdbc.update("INSERT INTO users (email, age, gender, nationality) VALUES ('a@example.com', 30, 'F', 'IT')");
+        long userId = jdbc.queryForObject("SELECT id FROM users", Long.class);
+        jdbc.update("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, 'a.png', 'GIOIA')", userId);
+        CohortIndex[] rebuilding = new CohortIndex[1];
+        // Two submissions published after the rebuild has started, one before the scan reads the table, one after
+        ShardedReactionsRepository racing = new ShardedReactionsRepository(shards) {
+            @Override
+            public Scanned forEachReaction(RowCallbackHandler handler) {
+                store("b.png", "PAURA");
+                Scanned scanned = super.forEachReaction(handler);
+                store("c.png", "STUPORE");
+                return scanned;
+            }
+
+            private void store(String image, String reaction) {
+                jdbc.update("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, ?, ?)", userId, image, reaction);
+                long id = jdbc.queryForObject("SELECT MAX(id) FROM user_reactions", Long.class);
+                rebuilding[0].onReactionsRegistered(new ReactionsRegisteredEvent(userId,
+                        List.of(new ReactionsRegisteredEvent.Reaction(image, reaction)), 0, id));
+            }
+        };
+        rebuilding[0] = new CohortIndex(jdbc, racing, meterRegistry, true, 600_000);
+        try {
+            rebuilding[0].rebuild();
+
+            assertEquals(new CohortCounts(1, 3, Map.of("GIOIA", 1L, "PAURA", 1L, "STUPORE", 1L)),
+                    rebuilding[0].count(new CohortQuery(null, null, null, null, null)));
+        } finally {
+            rebuilding[0].stop();
+        }
+    }
+}
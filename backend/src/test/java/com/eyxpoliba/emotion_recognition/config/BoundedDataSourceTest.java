@@ -0,0 +1,71 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BoundedDataSourceTest {
+    @Mock
+    private DataSource target;
+    @Mock
+    private Connection connection;
+
+    private BoundedDataSource boundedDataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        MockitoAnnotations.openMocks(this);
+        when(target.getConnection()).thenReturn(connection);
+        boundedDataSource = new BoundedDataSource(target, 2, 50);
+    }
+
+    @Test
+    void testPermitIsHeldUntilConnectionIsClosed() throws SQLException {
+        Connection first = boundedDataSource.getConnection();
+        Connection second = boundedDataSource.getConnection();
+        assertEquals(0, boundedDataSource.availablePermits());
+
+        assertThrows(SQLTransientConnectionException.class, () -> boundedDataSource.getConnection());
+
+        first.close();
+        first.close(); // a double close must not release twice
+        assertEquals(1, boundedDataSource.availablePermits());
+        verify(connection, times(2)).close();
+
+        second.close();
+        assertEquals(2, boundedDataSource.availablePermits());
+    }
+
+    @Test
+    void testPermitIsReleasedWhenPoolFails() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("pool exhausted"));
+        assertThrows(SQLException.class, () -> boundedDataSource.getConnection());
+        assertEquals(2, boundedDataSource.availablePermits());
+    }
+
+    @Test
+    void testFailedCloseThrowsTheDriverExceptionAndReleases() throws SQLException {
+        doThrow(new SQLException("connection reset")).when(connection).close();
+        Connection handedOut = boundedDataSource.getConnection();
+
+        SQLException thrown = assertThrows(SQLException.class, handedOut::close);
+        assertEquals("connection reset", thrown.getMessage());
+        assertEquals(2, boundedDataSource.availablePermits());
+    }
+
+    @Test
+    void testConnectionKeepsIdentitySemantics() throws SQLException {
+        Connection handedOut = boundedDataSource.getConnection();
+        assertEquals(handedOut, handedOut);
+        assertSame(connection, handedOut.unwrap(Connection.class));
+    }
+}
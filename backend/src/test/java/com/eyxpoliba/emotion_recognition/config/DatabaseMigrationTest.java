@@ -0,0 +1,67 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DatabaseMigrationTest {
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:migration-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        dataSource.setUser("sa");
+    }
+
+    private Flyway flyway() {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/sqlserver")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load();
+    }
+
+    @Test
+    void testSecondRunIsNoOp() throws SQLException {
+        MigrateResult first = flyway().migrate();
+        assertTrue(first.migrationsExecuted > 0);
+        assertEquals(0, countRows("users"));
+
+        MigrateResult second = flyway().migrate();
+        assertEquals(0, second.migrationsExecuted);
+        assertEquals(0, flyway().info().pending().length);
+    }
+
+    @Test
+    void testExistingSchemaIsBaselined() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE users (id BIGINT IDENTITY(1,1) PRIMARY KEY, email NVARCHAR(255))");
+            statement.execute("INSERT INTO users (email) VALUES ('kept@example.com')");
+        }
+
+        MigrateResult result = flyway().migrate();
+
+        // V1 is recorded as the baseline, only the later versions run
+        assertTrue(result.migrations.stream().noneMatch(migration -> "1".equals(migration.version)));
+        assertEquals(1, countRows("users"));
+    }
+
+    private int countRows(String table) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GzipRequestFilterTest {
+
+    @Test
+    void testGzipBodyIsInflated() throws Exception {
+        GzipRequestFilter filter = new GzipRequestFilter(1024);
+        MockHttpServletRequest request = gzipRequest("gzip", "{\"imagesDescriptionsAndReactions\":[]}");
+        assertFalse(filter.shouldNotFilter(request));
+        AtomicReference<String> body = new AtomicReference<>();
+        FilterChain chain = (req, res) -> {
+            HttpServletRequest inflated = (HttpServletRequest) req;
+            assertNull(inflated.getHeader("Content-Encoding"));
+            assertEquals(-1, inflated.getContentLength());
+            body.set(new String(inflated.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        };
+
+        filter.doFilterInternal(request, new MockHttpServletResponse(), chain);
+
+        assertEquals("{\"imagesDescriptionsAndReactions\":[]}", body.get());
+    }
+
+    @Test
+    void testInflatedSizeIsCapped() throws Exception {
+        GzipRequestFilter filter = new GzipRequestFilter(1000);
+        // Compresses to a few dozen bytes
+        MockHttpServletRequest request = gzipRequest("gzip", "a".repeat(100_000));
+        FilterChain chain = (req, res) -> req.getInputStream().readAllBytes();
+
+        assertThrows(GzipRequestFilter.InflatedBodyTooLargeException.class,
+                () -> filter.doFilterInternal(request, new MockHttpServletResponse(), chain));
+    }
+
+    @Test
+    void testOtherEncodingsAreRejected() throws Exception {
+        GzipRequestFilter filter = new GzipRequestFilter(1024);
+        assertTrue(filter.shouldNotFilter(new MockHttpServletRequest("POST", "/api/login")));
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilterInternal(gzipRequest("br", "{}"), response, (req, res) -> fail("chain must not run"));
+
+        assertEquals(415, response.getStatus());
+        assertEquals("gzip", response.getHeader("Accept-Encoding"));
+    }
+
+    private static MockHttpServletRequest gzipRequest(String encoding, String body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/register-result");
+        request.addHeader("Content-Encoding", encoding);
+        request.setContentType("application/json");
+        request.setContent(compressed.toByteArray());
+        return request;
+    }
+}
@@ -0,0 +1,129 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two embedded databases stand in for primary and replica; they hold a different number of users,
+ * so the count tells which one served the query.
+ */
+class ReadWriteRoutingTest {
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AtomicBoolean replicaDown = new AtomicBoolean();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private ReplicaLagMonitor monitor;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+    private JdbcTemplate routedJdbc;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = migratedDatabase("primary");
+        DataSource replicaDatabase = migratedDatabase("replica");
+        DataSource replica = new DelegatingDataSource(replicaDatabase) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (replicaDown.get()) {
+                    throw new SQLException("replica unreachable");
+                }
+                return super.getConnection();
+            }
+        };
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replicaDatabase);
+        primaryJdbc.update("INSERT INTO users (email) VALUES ('a@example.com')");
+        replicaJdbc.update("INSERT INTO users (email) VALUES ('a@example.com'), ('b@example.com')");
+
+        monitor = new ReplicaLagMonitor(primary, replica, 5000, 60_000, clock::get);
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(primary);
+        routing.setReadOnlyDataSource(new ReplicaFallbackDataSource(primary, replica, monitor, meterRegistry));
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+        routedJdbc = new JdbcTemplate(routing);
+    }
+
+    @AfterEach
+    void tearDown() {
+        monitor.close();
+    }
+
+    private static DataSource migratedDatabase(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        dataSource.setUser("sa");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/sqlserver").load().migrate();
+        return dataSource;
+    }
+
+    private int countUsers(TransactionTemplate template) {
+        return template.execute(status -> routedJdbc.queryForObject("SELECT COUNT(*) FROM users", Integer.class));
+    }
+
+    private void replicateHeartbeat(long ageMillis) {
+        replicaJdbc.update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1", clock.get() - ageMillis);
+        monitor.beat();
+    }
+
+    @Test
+    void testPrimaryUntilFirstHeartbeat() {
+        assertFalse(monitor.isReplicaUsable());
+        assertEquals(1, countUsers(readOnly));
+    }
+
+    @Test
+    void testReadOnlyTransactionsUseFreshReplica() {
+        replicateHeartbeat(1000);
+
+        assertTrue(monitor.isReplicaUsable());
+        assertEquals(1000, monitor.getLagMillis());
+        assertEquals(2, countUsers(readOnly));
+        assertEquals(1, countUsers(readWrite));
+        assertEquals(clock.get(), primaryJdbc.queryForObject("SELECT beat_at FROM replication_heartbeat", Long.class));
+    }
+
+    @Test
+    void testStaleReplicaFallsBackToPrimary() {
+        replicateHeartbeat(1000);
+        replicateHeartbeat(10_000);
+
+        assertFalse(monitor.isReplicaUsable());
+        assertEquals(1, countUsers(readOnly));
+        assertEquals(1, meterRegistry.get("datasource.readonly.route").tag("target", "primary").counter().count());
+    }
+
+    @Test
+    void testUnreachableReplicaFallsBackToPrimary() {
+        replicateHeartbeat(1000);
+        replicaDown.set(true);
+
+        assertEquals(1, countUsers(readOnly));
+        assertFalse(monitor.isReplicaUsable());
+
+        replicaDown.set(false);
+        replicateHeartbeat(1000);
+        assertEquals(2, countUsers(readOnly));
+    }
+}
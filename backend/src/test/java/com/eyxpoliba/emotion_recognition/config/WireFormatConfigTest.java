@@ -0,0 +1,37 @@
+package com.eyxpoliba.emotion_recognition.config;
+
+import com.eyxpoliba.emotion_recognition.payload.ImageDescriptionAndReactionPayload;
+import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireFormatConfigTest {
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "STUPORE"};
+
+    @Test
+    void testBinaryFormatsRoundTripAndAreSmaller() throws Exception {
+        List<ImageDescriptionAndReactionPayload> items = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            items.add(new ImageDescriptionAndReactionPayload("img" + (i % 10) + ".png",
+                    "Una persona sorride guardando il mare, numero " + i, REACTIONS[i % REACTIONS.length],
+                    i % 2 == 0 ? null : "Commento " + i));
+        }
+        ResultPayload payload = new ResultPayload(items);
+        byte[] json = new Jackson2ObjectMapperBuilder().build().writeValueAsBytes(payload);
+
+        for (ObjectMapper mapper : List.of(WireFormatConfig.smileMapper(new Jackson2ObjectMapperBuilder()),
+                WireFormatConfig.cborMapper(new Jackson2ObjectMapperBuilder()))) {
+            byte[] encoded = mapper.writeValueAsBytes(payload);
+            assertEquals(payload, mapper.readValue(encoded, ResultPayload.class), mapper.getFactory().getFormatName());
+            // Field names, image names and labels repeat in every item and are only written once
+            assertTrue(encoded.length < json.length * 0.8,
+                    mapper.getFactory().getFormatName() + " " + encoded.length + " vs JSON " + json.length);
+        }
+    }
+}
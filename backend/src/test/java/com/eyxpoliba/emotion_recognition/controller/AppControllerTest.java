@@ -1,6 +1,7 @@
 package com.eyxpoliba.emotion_recognition.controller;
 
 import static org.junit.jupiter.api.Assertions.*;
+import com.eyxpoliba.emotion_recognition.dashboard.DashboardStream;
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
 import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
 import com.eyxpoliba.emotion_recognition.responses.LoginResponse;
@@ -13,6 +14,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -25,6 +27,8 @@ class AppControllerTest {
     private AzureStorageService azureStorageService;
     @Mock
     private ReactionsService reactionsService;
+    @Mock
+    private DashboardStream dashboardStream;
 
     @InjectMocks
     private AppController appController;
@@ -68,5 +72,11 @@ class AppControllerTest {
         ResponseEntity<Object> response = appController.registerResult(payload);
         assertEquals(200, response.getStatusCodeValue());
     }
-}
 
+    @Test
+    void testDashboardStream() {
+        SseEmitter emitter = new SseEmitter();
+        when(dashboardStream.subscribe()).thenReturn(emitter);
+        assertSame(emitter, appController.dashboardStream());
+    }
+}
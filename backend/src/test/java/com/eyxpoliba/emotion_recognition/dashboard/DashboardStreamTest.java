@@ -0,0 +1,175 @@
+package com.eyxpoliba.emotion_recognition.dashboard;
+
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.service.StatisticsService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class DashboardStreamTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Mock
+    private StatisticsService statisticsService;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DashboardStream stream;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(statisticsService.reactionDistribution()).thenReturn(Map.of("GIOIA", 10L, "STUPORE", 5L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.stop();
+    }
+
+    private DashboardStream newStream(long resyncMs, int bufferSize) {
+        // Ticks are driven by the test; start() is not called
+        stream = new DashboardStream(statisticsService, OBJECT_MAPPER, meterRegistry, 1000, resyncMs, 60_000, bufferSize, 0);
+        return stream;
+    }
+
+    private static ReactionsRegisteredEvent event(Map<String, Long> counts) {
+        List<ReactionsRegisteredEvent.Reaction> reactions = new ArrayList<>();
+        counts.forEach((reaction, count) -> {
+            for (int i = 0; i < count; i++) {
+                reactions.add(new ReactionsRegisteredEvent.Reaction("img.png", reaction));
+            }
+        });
+        return new ReactionsRegisteredEvent(1L, reactions, 0, 0);
+    }
+
+    /**
+     * Records what a viewer receives; optionally blocks every write until released, like a stalled client.
+     */
+    private static class RecordingSink implements DashboardStream.EventSink {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final CountDownLatch release;
+        volatile boolean closed;
+
+        RecordingSink(boolean stalled) {
+            this.release = new CountDownLatch(stalled ? 1 : 0);
+        }
+
+        @Override
+        public void send(String name, long id, String data) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            events.add(name + "#" + id + " " + data);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            release.countDown();
+        }
+
+        JsonNode next(String expectedName) throws Exception {
+            String event = events.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, "no event received");
+            assertTrue(event.startsWith(expectedName + "#"), event);
+            return OBJECT_MAPPER.readTree(event.substring(event.indexOf(' ') + 1));
+        }
+    }
+
+    @Test
+    void testDeltasAreCoalescedPerTickAndSharedByViewers() throws Exception {
+        newStream(60_000, 8);
+        RecordingSink first = new RecordingSink(false);
+        RecordingSink second = new RecordingSink(false);
+        stream.subscribe(first);
+        stream.subscribe(second);
+
+        JsonNode snapshot = first.next("snapshot");
+        assertEquals(15, snapshot.path("total").asLong());
+        assertEquals(10, snapshot.path("totals").path("GIOIA").asLong());
+        second.next("snapshot");
+
+        stream.onReactionsRegistered(event(Map.of("GIOIA", 2L)));
+        stream.onReactionsRegistered(event(Map.of("GIOIA", 1L, "PAURA", 4L)));
+        stream.tick();
+
+        for (RecordingSink sink : new RecordingSink[]{first, second}) {
+            JsonNode delta = sink.next("delta");
+            assertEquals(1, delta.path("seq").asLong());
+            assertEquals(3, delta.path("reactions").path("GIOIA").asLong());
+            assertEquals(4, delta.path("reactions").path("PAURA").asLong());
+            assertEquals(22, delta.path("total").asLong());
+        }
+        // One aggregate query for both viewers and both submissions
+        verify(statisticsService, times(1)).reactionDistribution();
+    }
+
+    @Test
+    void testSlowViewerIsDroppedWithoutBlockingOthers() throws Exception {
+        newStream(60_000, 2);
+        RecordingSink stalled = new RecordingSink(true);
+        RecordingSink healthy = new RecordingSink(false);
+        stream.subscribe(stalled);
+        stream.subscribe(healthy);
+        healthy.next("snapshot");
+
+        for (int i = 1; i <= 4; i++) {
+            stream.onReactionsRegistered(event(Map.of("GIOIA", 1L)));
+            stream.tick();
+            assertEquals(i, healthy.next("delta").path("seq").asLong());
+        }
+
+        assertTrue(stalled.closed);
+        assertEquals(1, stream.subscriberCount());
+        assertEquals(1, meterRegistry.counter("dashboard.subscribers.dropped").count());
+    }
+
+    @Test
+    void testResyncPublishesWritesFromOtherInstances() throws Exception {
+        newStream(0, 8);
+        RecordingSink sink = new RecordingSink(false);
+        stream.subscribe(sink);
+        sink.next("snapshot");
+
+        when(statisticsService.reactionDistribution()).thenReturn(Map.of("GIOIA", 12L, "STUPORE", 5L));
+        stream.tick();
+
+        JsonNode delta = sink.next("delta");
+        assertEquals(2, delta.path("reactions").path("GIOIA").asLong());
+        assertFalse(delta.path("reactions").has("STUPORE"));
+        assertEquals(17, delta.path("total").asLong());
+    }
+
+    @Test
+    void testTotalsAreReloadedAfterLastViewerLeaves() throws Exception {
+        newStream(60_000, 8);
+        RecordingSink sink = new RecordingSink(false);
+        DashboardStream.Subscriber subscriber = stream.subscribe(sink);
+        subscriber.close();
+        stream.tick();
+
+        stream.onReactionsRegistered(event(Map.of("GIOIA", 1L)));
+        stream.subscribe(new RecordingSink(false));
+
+        verify(statisticsService, times(2)).reactionDistribution();
+    }
+}
@@ -0,0 +1,152 @@
+package com.eyxpoliba.emotion_recognition.inference;
+
+import com.eyxpoliba.emotion_recognition.resilience.CircuitBreaker;
+import com.eyxpoliba.emotion_recognition.security.JwtProvider;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InferenceGatewayTest {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final JwtProvider jwtProvider = new JwtProvider();
+    private volatile int status = 200;
+    private volatile long delayMs;
+
+    private HttpServer server;
+    private HttpClassifierTransport transport;
+    private InferenceGateway gateway;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(jwtProvider, "secretKey", "c2VjcmV0LWtleS1mb3ItdGhlLWluZmVyZW5jZS1nYXRld2F5LXRlc3Q=");
+        ReflectionTestUtils.setField(jwtProvider, "issuer", "test");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/classify/batch", this::handleBatch);
+        server.start();
+        transport = new HttpClassifierTransport(jwtProvider, OBJECT_MAPPER,
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/", 1000, 5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (gateway != null) {
+            gateway.stop();
+        }
+        transport.close();
+        server.stop(0);
+    }
+
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        try {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            assertEquals(HttpClassifierTransport.SERVICE_SUBJECT, jwtProvider.getUsernameFromToken(authorization.substring("Bearer ".length())));
+            if (delayMs > 0) {
+                Thread.sleep(delayMs);
+            }
+            byte[] body;
+            if (status == 200) {
+                List<Object> results = new ArrayList<>();
+                for (JsonNode text : OBJECT_MAPPER.readTree(exchange.getRequestBody()).path("texts")) {
+                    results.add(Map.of("label", "label-" + text.asText(), "score", 0.75));
+                }
+                body = OBJECT_MAPPER.writeValueAsBytes(Map.of("results", results));
+            } else {
+                body = "{\"message\":\"model not loaded\"}".getBytes();
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private InferenceGateway startGateway(long windowMs, long timeoutMs) {
+        gateway = new InferenceGateway(transport, new SimpleMeterRegistry(), true, windowMs, 32, timeoutMs, 2, 60_000);
+        gateway.start();
+        return gateway;
+    }
+
+    @Test
+    void testConcurrentTextsShareOneRequest() throws Exception {
+        startGateway(200, 5000);
+
+        List<CompletableFuture<Classification>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(gateway.classify("text-" + i));
+        }
+
+        for (int i = 0; i < 20; i++) {
+            assertEquals(new Classification("label-text-" + i, 0.75), futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requests.get());
+
+        // A later batch goes over the same keep-alive connection
+        assertEquals("label-again", gateway.classify("again").get(5, TimeUnit.SECONDS).label());
+        assertEquals(2, requests.get());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    void testBreakerOpensAfterFailingBatches() throws Exception {
+        status = 500;
+        startGateway(1, 5000);
+
+        for (int i = 0; i < 2; i++) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> gateway.classify("x").get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, failure.getCause());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, gateway.getCircuitState());
+
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> gateway.classify("x").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(CircuitBreaker.OpenException.class, rejected.getCause());
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testSlowClassifierTimesOut() {
+        delayMs = 1000;
+        startGateway(1, 100);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> gateway.classify("slow").get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, failure.getCause());
+    }
+
+    @Test
+    void testDisabledGatewayRejectsImmediately() {
+        gateway = new InferenceGateway(transport, new SimpleMeterRegistry(), false, 10, 32, 1000, 2, 60_000);
+        gateway.start();
+
+        assertFalse(gateway.isEnabled());
+        assertTrue(gateway.classify("x").isCompletedExceptionally());
+        assertEquals(0, requests.get());
+    }
+}
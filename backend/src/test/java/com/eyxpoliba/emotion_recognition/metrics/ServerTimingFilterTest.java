@@ -0,0 +1,51 @@
+package com.eyxpoliba.emotion_recognition.metrics;
+
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingFilterTest {
+
+    @Test
+    void testDisabledFilterIsSkipped() {
+        ServerTimingFilter filter = new ServerTimingFilter(new ServerTimingSettings(false, 1000));
+        assertTrue(filter.shouldNotFilter(new MockHttpServletRequest("GET", "/api/download-image")));
+        assertEquals(0, RequestTiming.begin());
+    }
+
+    @Test
+    void testPhasesAreReportedInHeader() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(new ServerTimingSettings(true, 0));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> {
+            RequestTiming.add(RequestTiming.Phase.AUTH, TimeUnit.MICROSECONDS.toNanos(1500));
+            RequestTiming.add(RequestTiming.Phase.STORAGE_DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(12));
+            res.getWriter().write("ok");
+        };
+
+        filter.doFilterInternal(new MockHttpServletRequest("GET", "/api/download-image"), response, chain);
+
+        String header = response.getHeader(ServerTimingFilter.SERVER_TIMING);
+        assertNotNull(header);
+        assertTrue(header.startsWith("auth;dur=1.50, storage-download;dur=12.00, total;dur="), header);
+        assertFalse(header.contains("db;"));
+        assertEquals(0, RequestTiming.begin(), "recorder must be unbound after the request");
+    }
+
+    @Test
+    void testHeaderIsAddedBeforeCommit() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(new ServerTimingSettings(true, 0));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, res) -> res.flushBuffer();
+
+        filter.doFilterInternal(new MockHttpServletRequest("POST", "/api/login"), response, chain);
+
+        assertTrue(response.isCommitted());
+        assertNotNull(response.getHeader(ServerTimingFilter.SERVER_TIMING));
+    }
+}
@@ -0,0 +1,226 @@
+package com.eyxpoliba.emotion_recognition.outbox;
+
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionResharder;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactionChangeFeedTest {
+    // Users 1 and 600 end up on different shards once the buckets are rebalanced
+    private static final long USER_ON_0 = 1;
+    private static final long USER_ON_1 = 600;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private ReactionShards shards;
+    private ReactionsBulkWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 2; i++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:feed" + i + "-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+            dataSource.setUser("sa");
+            Flyway.configure().dataSource(dataSource)
+                    .locations(i == 0 ? "classpath:db/migration/sqlserver" : "classpath:db/shard/sqlserver")
+                    .load().migrate();
+            dataSources.add(dataSource);
+        }
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USER_ON_1; i++) {
+            users.add(new Object[]{"u" + i + "@example.com"});
+        }
+        new JdbcTemplate(dataSources.getFirst()).batchUpdate("INSERT INTO users (email) VALUES (?)", users);
+
+        shards = new ReactionShards(dataSources, meterRegistry, 60_000, 1000);
+        shards.start();
+        new ReactionResharder(shards, meterRegistry, 0, 100).rebalance();
+        writer = new ReactionsBulkWriter(shards, 100, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.stop();
+    }
+
+    private ReactionChangeFeed feed(long settleMs) {
+        return new ReactionChangeFeed(shards, meterRegistry, 100, 5000, 50, settleMs, 168, 60_000);
+    }
+
+    @Test
+    void testBatchesFollowTheCursorAcrossShards() {
+        ReactionChangeFeed feed = feed(5000);
+        write(USER_ON_0, "a", "b", "c");
+        write(USER_ON_1, "d", "e");
+        write(USER_ON_0, "f");
+
+        List<ReactionChange> received = new ArrayList<>();
+        String cursor = null;
+        ChangeBatch batch;
+        do {
+            batch = feed.read(cursor, 4, 0, null).join();
+            received.addAll(batch.changes());
+            cursor = batch.cursor();
+        } while (batch.hasMore());
+
+        assertEquals(List.of("a", "b", "c", "d", "e", "f"), received.stream().map(ReactionChange::image).sorted().toList());
+        assertEquals(List.of("a", "b", "c", "f"), received.stream().filter(change -> change.shard() == 0).map(ReactionChange::image).toList());
+        assertEquals(List.of("d", "e"), received.stream().filter(change -> change.shard() == 1).map(ReactionChange::image).toList());
+        assertTrue(received.stream().filter(change -> change.shard() == 1).allMatch(change -> change.userId() == USER_ON_1));
+
+        write(USER_ON_1, "g");
+        ChangeBatch next = feed.read(cursor, 4, 0, null).join();
+        assertEquals(List.of("g"), next.changes().stream().map(ReactionChange::image).toList());
+        assertFalse(next.hasMore());
+        assertEquals(List.of(), feed.read(next.cursor(), 4, 0, null).join().changes());
+    }
+
+    @Test
+    void testUncommittedIdsAreWaitedFor() throws Exception {
+        ReactionChangeFeed feed = feed(60_000);
+        try (Connection connection = dataSources.getFirst().getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("UPDATE reaction_bucket_fences SET fenced = 0 WHERE bucket = 2");
+            statement.executeUpdate("INSERT INTO reaction_outbox (user_id, image) VALUES (2, 'slow')");
+            write(USER_ON_0, "fast");
+
+            assertEquals(List.of(), feed.read(null, 10, 0, null).join().changes());
+
+            connection.commit();
+        }
+        assertEquals(List.of("slow", "fast"), feed.read(null, 10, 0, null).join().changes().stream()
+                .map(ReactionChange::image).toList());
+    }
+
+    @Test
+    void testSettledGapWaitsForTheWriterStillHoldingIt() throws Exception {
+        ReactionChangeFeed feed = feed(0);
+        CompletableFuture<ChangeBatch> read;
+        try (Connection connection = dataSources.getFirst().getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("UPDATE reaction_bucket_fences SET fenced = 0 WHERE bucket = 2");
+            statement.executeUpdate("INSERT INTO reaction_outbox (user_id, image) VALUES (2, 'slow')");
+            write(USER_ON_0, "fast");
+            Thread.sleep(5);
+
+            read = CompletableFuture.supplyAsync(() -> feed.read(null, 10, 0, null).join());
+            Thread.sleep(200);
+            assertFalse(read.isDone());
+
+            connection.commit();
+        }
+        assertEquals(List.of("slow", "fast"), read.get(5, TimeUnit.SECONDS).changes().stream()
+                .map(ReactionChange::image).toList());
+    }
+
+    @Test
+    void testRolledBackIdsAreSkippedOnceSettled() throws Exception {
+        ReactionChangeFeed feed = feed(0);
+        try (Connection connection = dataSources.getFirst().getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            statement.executeUpdate("INSERT INTO reaction_outbox (user_id, image) VALUES (1, 'lost')");
+            connection.rollback();
+        }
+        Thread.sleep(5);
+        write(USER_ON_0, "kept");
+
+        assertEquals(List.of("kept"), feed.read(null, 10, 0, null).join().changes().stream()
+                .map(ReactionChange::image).toList());
+    }
+
+    @Test
+    void testLongPollReturnsAsSoonAsReactionsAreStored() throws Exception {
+        ReactionChangeFeed feed = feed(5000);
+        ChangeBatch empty = feed.read(null, 10, 0, null).join();
+
+        CompletableFuture<ChangeBatch> waiting = feed.read(empty.cursor(), 10, 5000, null);
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        write(USER_ON_1, "new");
+        feed.onReactionsRegistered(new ReactionsRegisteredEvent(USER_ON_1, List.of(), 1, 0));
+
+        ChangeBatch batch = waiting.get(1, TimeUnit.SECONDS);
+        assertEquals(List.of("new"), batch.changes().stream().map(ReactionChange::image).toList());
+        feed.stop();
+    }
+
+    @Test
+    void testLongPollGivesUpWithTheSameCursor() {
+        ReactionChangeFeed feed = feed(5000);
+        ChangeBatch empty = feed.read(null, 10, 0, null).join();
+
+        ChangeBatch batch = feed.read(empty.cursor(), 10, 200, null).join();
+
+        assertEquals(List.of(), batch.changes());
+        assertEquals(empty.cursor(), batch.cursor());
+        feed.stop();
+    }
+
+    @Test
+    void testCompactionKeepsRecordsRegisteredConsumersStillNeed() {
+        ReactionChangeFeed feed = feed(5000);
+        ChangeBatch start = feed.read(null, 10, 0, "lake").join();
+        write(USER_ON_0, "a", "b");
+        write(USER_ON_1, "c");
+
+        ChangeBatch batch = feed.read(start.cursor(), 10, 0, "lake").join();
+        assertEquals(3, batch.changes().size());
+        feed.compact();
+        assertEquals(3, outboxSize());
+
+        // Asking for the next batch acknowledges this one
+        feed.read(batch.cursor(), 10, 0, "lake").join();
+        feed.compact();
+        assertEquals(0, outboxSize());
+        assertEquals(3, meterRegistry.get("reactions.outbox.compacted").counter().count());
+
+        assertThrows(CursorExpiredException.class, () -> feed.read(start.cursor(), 10, 0, null));
+        assertEquals(List.of(), feed.read(null, 10, 0, null).join().changes());
+        write(USER_ON_0, "d");
+        assertEquals(List.of("d"), feed.read(null, 10, 0, null).join().changes().stream()
+                .map(ReactionChange::image).toList());
+    }
+
+    @Test
+    void testRejectsForeignCursors() {
+        ReactionChangeFeed feed = feed(5000);
+
+        assertThrows(BadChangeRequestException.class, () -> feed.read("not a cursor", 10, 0, null));
+        assertThrows(BadChangeRequestException.class, () -> feed.read(new ChangeCursor(List.of(1L, 2L, 3L)).encode(), 10, 0, null));
+        assertThrows(BadChangeRequestException.class, () -> feed.read(null, 10, 0, " "));
+    }
+
+    private void write(long user, String... images) {
+        List<ReactionsBulkWriter.Row> rows = new ArrayList<>();
+        for (String image : images) {
+            rows.add(new ReactionsBulkWriter.Row(user, image, "description", "GIOIA", null));
+        }
+        writer.write(rows, ReactionsBulkWriter.Method.BATCH);
+    }
+
+    private long outboxSize() {
+        long size = 0;
+        for (DataSource dataSource : dataSources) {
+            size += new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM reaction_outbox", Long.class);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,111 @@
+package com.eyxpoliba.emotion_recognition.repository;
+
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactionsBulkWriterTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private JdbcTemplate jdbcTemplate;
+    private ReactionsBulkWriter bulkWriter;
+    private long userId;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulk-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        dataSource.setUser("sa");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/sqlserver").load().migrate();
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO users (nickname, email, age, gender, nationality) VALUES ('bulk', 'bulk@example.com', 30, 'F', 'IT')");
+        userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = 'bulk@example.com'", Long.class);
+        bulkWriter = new ReactionsBulkWriter(new ReactionShards(List.of(dataSource), meterRegistry, 60_000, 1000), 1000, meterRegistry);
+    }
+
+    @Test
+    void testFallsBackToBatchedInserts() {
+        List<ReactionsBulkWriter.Row> rows = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            rows.add(new ReactionsBulkWriter.Row(userId, "img" + i + ".png", "description " + i, "STUPORE", i % 2 == 0 ? null : "ai"));
+        }
+
+        assertEquals(2500, bulkWriter.write(rows));
+
+        assertEquals(2500, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_reactions WHERE user_id = ?", Integer.class, userId));
+        assertEquals(1250, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_reactions WHERE ai_comment IS NULL", Integer.class));
+        assertEquals(2500, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM reaction_outbox WHERE user_id = ?", Integer.class, userId));
+        assertEquals(2500, meterRegistry.get("reactions.bulk.rows").tag("method", "batch").counter().count());
+    }
+
+    @Test
+    void testEmptyInputDoesNotTouchTheDatabase() {
+        assertEquals(0, bulkWriter.write(List.of()));
+        assertEquals(0, meterRegistry.get("reactions.bulk.write").tag("method", "batch").timer().count());
+    }
+
+    @Test
+    void testWriteForUserTellsWhereTheLastRowIs() {
+        bulkWriter.write(List.of(new ReactionsBulkWriter.Row(userId, "a.png", null, "GIOIA", null)));
+
+        ReactionsBulkWriter.Stored stored = bulkWriter.writeForUser(userId, List.of(
+                new ReactionsBulkWriter.Row(userId, "b.png", null, "PAURA", null),
+                new ReactionsBulkWriter.Row(userId, "c.png", null, "PAURA", null)), null);
+
+        assertEquals(0, stored.shard());
+        assertEquals("c.png", jdbcTemplate.queryForObject("SELECT image FROM user_reactions WHERE id = ?", String.class, stored.lastId()));
+    }
+
+    @Test
+    void testMethodForProduct() {
+        assertEquals(ReactionsBulkWriter.Method.COPY, ReactionsBulkWriter.Method.forProduct("PostgreSQL"));
+        assertEquals(ReactionsBulkWriter.Method.BULK_COPY, ReactionsBulkWriter.Method.forProduct("Microsoft SQL Server"));
+        assertEquals(ReactionsBulkWriter.Method.BATCH, ReactionsBulkWriter.Method.forProduct("H2"));
+    }
+
+    @Test
+    void testCsvQuotesValuesAndLeavesNullsEmpty() {
+        StringBuilder csv = new StringBuilder();
+        ReactionsBulkWriter.appendCsv(csv, new ReactionsBulkWriter.Row(7, "a,b.png", "say \"wow\"\nnow", "STUPORE", null));
+
+        assertEquals("7,\"a,b.png\",\"say \"\"wow\"\"\nnow\",\"STUPORE\",\n", csv.toString());
+    }
+
+    @Test
+    void testCsvTellsEmptyStringsFromNulls() {
+        StringBuilder csv = new StringBuilder();
+        ReactionsBulkWriter.appendCsv(csv, new ReactionsBulkWriter.Row(8, "", null, "", null));
+
+        assertEquals("8,\"\",,\"\",\n", csv.toString());
+    }
+
+    @Test
+    void testBulkDataMapsRowsToTheTableColumns() throws SQLException {
+        ReactionsBulkWriter.RowsBulkData data = new ReactionsBulkWriter.RowsBulkData(List.of(
+                new ReactionsBulkWriter.Row(7, "a.png", "say \"wow\"", "GIOIA", null),
+                new ReactionsBulkWriter.Row(8, "b.png", null, null, "ai")));
+
+        assertEquals(Set.of(1, 2, 3, 4, 5), data.getColumnOrdinals());
+        assertEquals(List.of("user_id", "image", "image_description", "image_reaction", "ai_comment"),
+                data.getColumnOrdinals().stream().sorted().map(data::getColumnName).toList());
+        assertEquals(Types.BIGINT, data.getColumnType(1));
+        assertEquals(Types.NVARCHAR, data.getColumnType(3));
+        assertTrue(data.next());
+        assertArrayEquals(new Object[]{7L, "a.png", "say \"wow\"", "GIOIA", null}, data.getRowData());
+        assertTrue(data.next());
+        assertArrayEquals(new Object[]{8L, "b.png", null, null, "ai"}, data.getRowData());
+        assertFalse(data.next());
+    }
+}
@@ -0,0 +1,51 @@
+package com.eyxpoliba.emotion_recognition.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkheadTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testQueuedCallRunsWhenPermitIsReleased() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("storage", 1, 1, 5000, meterRegistry);
+        bulkhead.acquire();
+        assertEquals(1.0, meterRegistry.get("bulkhead.utilization").tag("name", "storage").gauge().value());
+
+        CountDownLatch ran = new CountDownLatch(1);
+        Thread waiter = Thread.ofVirtual().start(() -> bulkhead.call(() -> {
+            ran.countDown();
+            return null;
+        }));
+        while (meterRegistry.get("bulkhead.queued").gauge().value() < 1) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, ran.getCount());
+
+        bulkhead.release();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(0, bulkhead.getActive());
+    }
+
+    @Test
+    void testRejectsWhenQueueIsFullOrWaitExpires() {
+        Bulkhead noQueue = new Bulkhead("database", 1, 0, 5000, meterRegistry);
+        noQueue.acquire();
+        long start = System.nanoTime();
+        assertThrows(Bulkhead.FullException.class, noQueue::acquire);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000, "should not wait without queue room");
+
+        Bulkhead shortWait = new Bulkhead("crypto", 1, 10, 50, meterRegistry);
+        shortWait.acquire();
+        assertThrows(Bulkhead.FullException.class, shortWait::acquire);
+
+        assertEquals(1, meterRegistry.counter("bulkhead.rejected", "name", "database").count());
+        assertEquals(1, meterRegistry.counter("bulkhead.rejected", "name", "crypto").count());
+    }
+}
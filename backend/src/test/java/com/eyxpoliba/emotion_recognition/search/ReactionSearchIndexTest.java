@@ -0,0 +1,149 @@
+package com.eyxpoliba.emotion_recognition.search;
+
+import com.eyxpoliba.emotion_recognition.outbox.ReactionChangeFeed;
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionResharder;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactionSearchIndexTest {
+    // Users 1 and 600 end up on different shards once the buckets are rebalanced
+    private static final long USER_ON_0 = 1;
+    private static final long USER_ON_1 = 600;
+
+    @TempDir
+    Path indexDir;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ReactionSearchIndex> indexes = new ArrayList<>();
+    private ReactionShards shards;
+    private ReactionsBulkWriter writer;
+    private ReactionChangeFeed feed;
+
+    @BeforeEach
+    void setUp() {
+        List<DataSource> dataSources = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:search" + i + "-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+            dataSource.setUser("sa");
+            Flyway.configure().dataSource(dataSource)
+                    .locations(i == 0 ? "classpath:db/migration/sqlserver" : "classpath:db/shard/sqlserver")
+                    .load().migrate();
+            dataSources.add(dataSource);
+        }
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= USER_ON_1; i++) {
+            users.add(new Object[]{"u" + i + "@example.com"});
+        }
+        new JdbcTemplate(dataSources.getFirst()).batchUpdate("INSERT INTO users (email) VALUES (?)", users);
+
+        shards = new ReactionShards(dataSources, meterRegistry, 60_000, 1000);
+        shards.start();
+        new ReactionResharder(shards, meterRegistry, 0, 100).rebalance();
+        writer = new ReactionsBulkWriter(shards, 100, meterRegistry);
+        feed = new ReactionChangeFeed(shards, meterRegistry, 100, 5000, 50, 5000, 168, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (ReactionSearchIndex index : indexes) {
+            index.stop();
+        }
+        feed.stop();
+        shards.stop();
+    }
+
+    private ReactionSearchIndex startIndex() {
+        // Chunks of 2 rows so the rebuild scans each shard in several pieces
+        ReactionSearchIndex index = new ReactionSearchIndex(shards, feed, meterRegistry, true, indexDir, "english",
+                2, 2, 200, 100, "search-test");
+        indexes.add(index);
+        index.start();
+        return index;
+    }
+
+    @Test
+    void testRebuildRanksDescriptionMatchesAndAppliesFilters() throws InterruptedException {
+        write(USER_ON_0, "beach.png", "GIOIA", "a calm sunny beach at sunset", "the user describes a holiday");
+        write(USER_ON_0, "storm.png", "PAURA", "dark clouds over a stormy sea", "mentions the beach from childhood");
+        write(USER_ON_1, "beach.png", "TRISTEZZA", "an empty beach in winter", null);
+        write(USER_ON_1, "city.png", "STUPORE", "crowded streets and lights", "no nature at all");
+
+        ReactionSearchIndex index = startIndex();
+        SearchResults all = await(() -> index.search(null, null, null, 10));
+
+        assertEquals(4, all.total());
+        assertTrue(all.totalIsExact());
+        SearchResults beach = index.search("beaches", null, null, 10);
+        assertEquals(3, beach.total());
+        // Matches in the participant's own words rank above matches in the AI comment
+        assertEquals("storm.png", beach.hits().getLast().image());
+        assertEquals(List.of("GIOIA", "TRISTEZZA"), beach.hits().subList(0, 2).stream().map(SearchHit::reaction).sorted().toList());
+
+        SearchResults filtered = index.search("beach", List.of("beach.png"), List.of("TRISTEZZA", "PAURA"), 10);
+        assertEquals(1, filtered.hits().size());
+        assertEquals(USER_ON_1, filtered.hits().getFirst().userId());
+        assertEquals("an empty beach in winter", filtered.hits().getFirst().description());
+
+        assertEquals(0, index.search("beach -sunset -winter -childhood", null, null, 10).total());
+        assertEquals(1, meterRegistry.get("search.index.rebuild").timer().count());
+    }
+
+    @Test
+    void testNewReactionsBecomeSearchableAndRestartsResumeFromTheCommit() throws InterruptedException {
+        write(USER_ON_0, "forest.png", "GIOIA", "tall trees and birds", null);
+        ReactionSearchIndex index = startIndex();
+        await(() -> index.search(null, null, null, 10));
+
+        write(USER_ON_1, "forest.png", "PAURA", "lost among the trees at night", null);
+        // Written twice, e.g. a retried submission: indexed once
+        write(USER_ON_1, "forest.png", "PAURA", "lost among the trees at night", null);
+        await(() -> nonEmpty(index.search("night", null, null, 10)));
+        assertEquals(2, index.search("trees", null, null, 10).total());
+
+        index.stop();
+        write(USER_ON_0, "lake.png", "STUPORE", "a frozen lake under the moon", null);
+
+        ReactionSearchIndex restarted = startIndex();
+        SearchResults lake = await(() -> nonEmpty(restarted.search("moon", null, null, 10)));
+        assertEquals("lake.png", lake.hits().getFirst().image());
+        assertEquals(3, restarted.search(null, null, null, 10).total());
+        // Only the first start had to scan user_reactions
+        assertEquals(1, meterRegistry.get("search.index.rebuild").timer().count());
+    }
+
+    private static SearchResults nonEmpty(SearchResults results) {
+        return results == null || results.hits().isEmpty() ? null : results;
+    }
+
+    private static <T> T await(Supplier<T> condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        T value;
+        while ((value = condition.get()) == null) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+        return value;
+    }
+
+    private void write(long user, String image, String reaction, String description, String aiComment) {
+        writer.write(List.of(new ReactionsBulkWriter.Row(user, image, description, reaction, aiComment)),
+                ReactionsBulkWriter.Method.BATCH);
+    }
+}
@@ -0,0 +1,56 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import com.eyxpoliba.emotion_recognition.payload.AdminLoginPayload;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdminAuthenticatorTest {
+    private static final String PASSWORD_HASH = new BCryptPasswordEncoder(4).encode("s3cret");
+
+    private final JwtProvider jwtProvider = new JwtProvider();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtProvider, "secretKey", "testSecretKey12345678901234567890123456789012");
+        ReflectionTestUtils.setField(jwtProvider, "issuer", "testIssuer");
+    }
+
+    @Test
+    void testMatchingCredentialsGetAnAdminToken() {
+        AdminAuthenticator authenticator = new AdminAuthenticator(jwtProvider, "boss", PASSWORD_HASH);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        authenticator.login(new AdminLoginPayload("boss", "s3cret"), response);
+
+        Cookie cookie = response.getCookie(SecurityConstants.ACCESS_TOKEN);
+        assertNotNull(cookie);
+        assertTrue(cookie.isHttpOnly());
+        assertEquals("ADMIN", jwtProvider.getClaimFromToken(cookie.getValue(), claims -> claims.get("roles", String.class)));
+    }
+
+    @Test
+    void testWrongCredentialsAreRejected() {
+        AdminAuthenticator authenticator = new AdminAuthenticator(jwtProvider, "boss", PASSWORD_HASH);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThrows(AdminLoginFailedException.class, () -> authenticator.login(new AdminLoginPayload("boss", "guess"), response));
+        assertThrows(AdminLoginFailedException.class, () -> authenticator.login(new AdminLoginPayload("other", "s3cret"), response));
+        assertThrows(AdminLoginFailedException.class, () -> authenticator.login(new AdminLoginPayload("boss", null), response));
+        assertEquals(0, response.getCookies().length);
+    }
+
+    @Test
+    void testAdminLoginIsClosedWithoutAPasswordHash() {
+        AdminAuthenticator authenticator = new AdminAuthenticator(jwtProvider, "admin", "");
+
+        assertFalse(authenticator.isEnabled());
+        assertThrows(AdminLoginFailedException.class,
+                () -> authenticator.login(new AdminLoginPayload("admin", ""), new MockHttpServletResponse()));
+    }
+}
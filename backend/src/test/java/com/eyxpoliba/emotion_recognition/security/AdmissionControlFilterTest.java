@@ -0,0 +1,169 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AdmissionControlFilterTest {
+    private final JwtProvider jwtProvider = new JwtProvider();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtProvider, "secretKey", "testSecretKey12345678901234567890123456789012");
+        ReflectionTestUtils.setField(jwtProvider, "issuer", "testIssuer");
+    }
+
+    private AdmissionControlFilter filter(int burst, int concurrencyLimit, String... trustedProxies) {
+        return new AdmissionControlFilter(0.001, burst, 0.001, burst, 1000,
+                concurrencyLimit, concurrencyLimit, concurrencyLimit, 2.0, trustedProxies, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void testOtherPathsAreNotFiltered() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/register-result");
+        assertTrue(filter(1, 1).shouldNotFilter(request));
+    }
+
+    @Test
+    void testRateLimitedClientGets429WithRetryAfter() throws ServletException, IOException {
+        AdmissionControlFilter filter = filter(1, 10);
+        FilterChain chain = mock(FilterChain.class);
+
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        filter.doFilterInternal(login("10.0.0.1"), first, chain);
+        MockHttpServletResponse second = new MockHttpServletResponse();
+        filter.doFilterInternal(login("10.0.0.1"), second, chain);
+        MockHttpServletResponse otherClient = new MockHttpServletResponse();
+        filter.doFilterInternal(login("10.0.0.2"), otherClient, chain);
+
+        assertEquals(200, first.getStatus());
+        assertEquals(429, second.getStatus());
+        assertNotNull(second.getHeader("Retry-After"));
+        assertEquals(200, otherClient.getStatus());
+        verify(chain, times(2)).doFilter(any(), any());
+    }
+
+    @Test
+    void testForwardedForIsOnlyReadFromTrustedProxies() throws ServletException, IOException {
+        AdmissionControlFilter filter = filter(1, 10, "10.1.0.0/16");
+        FilterChain chain = mock(FilterChain.class);
+
+        // The left-most hop is client-chosen: varying it must not yield a fresh bucket
+        assertEquals(200, status(filter, forwarded("10.1.2.3", "1.1.1.1, 203.0.113.7, 10.1.9.9"), chain));
+        assertEquals(429, status(filter, forwarded("10.1.2.3", "2.2.2.2, 203.0.113.7, 10.1.9.9"), chain));
+        // An untrusted peer cannot claim to forward for someone else
+        assertEquals(200, status(filter, forwarded("198.51.100.1", "203.0.113.8"), chain));
+        assertEquals(429, status(filter, forwarded("198.51.100.1", "203.0.113.9"), chain));
+    }
+
+    @Test
+    void testDownloadsAreLimitedPerUser() throws ServletException, IOException {
+        AdmissionControlFilter filter = filter(1, 10);
+        FilterChain chain = mock(FilterChain.class);
+        String firstToken = jwtProvider.generateToken("alice", 7L, true);
+        String secondToken = jwtProvider.generateToken("alice", 7L, false);
+
+        assertEquals(200, status(filter, withToken(download("10.0.0.1"), firstToken), chain));
+        // Another token of the same user shares the bucket, even from another address
+        assertEquals(429, status(filter, withToken(download("10.0.0.2"), secondToken), chain));
+        assertEquals(200, status(filter, withToken(download("10.0.0.2"), jwtProvider.generateToken("bob", 8L, true)), chain));
+
+        // Cookies that are not tokens fall back to the client address
+        assertEquals(200, status(filter, withToken(download("10.0.0.3"), "garbage-1"), chain));
+        assertEquals(429, status(filter, withToken(download("10.0.0.3"), "garbage-2"), chain));
+    }
+
+    @Test
+    void testLoginsAreLimitedPerAddressWhateverTokenTheyCarry() throws ServletException, IOException {
+        AdmissionControlFilter filter = filter(1, 10);
+        FilterChain chain = mock(FilterChain.class);
+
+        // The claim is not verified here, so it must not buy a login a fresh bucket
+        assertEquals(200, status(filter, withToken(login("10.0.0.1"), unsignedToken(1)), chain));
+        assertEquals(429, status(filter, withToken(login("10.0.0.1"), unsignedToken(2)), chain));
+        assertEquals(429, status(filter, withToken(login("10.0.0.1"), jwtProvider.generateToken("alice", 7L, true)), chain));
+    }
+
+    @Test
+    void testSaturatedServerGets503() throws Exception {
+        AdmissionControlFilter filter = filter(100, 1);
+        CountDownLatch inside = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain blockingChain = (req, res) -> {
+            inside.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        Thread holder = Thread.ofVirtual().start(() -> {
+            try {
+                filter.doFilterInternal(login("10.0.0.1"), new MockHttpServletResponse(), blockingChain);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(inside.await(5, TimeUnit.SECONDS));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilterInternal(login("10.0.0.2"), rejected, mock(FilterChain.class));
+        release.countDown();
+        holder.join();
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+    }
+
+    private static int status(AdmissionControlFilter filter, MockHttpServletRequest request, FilterChain chain)
+            throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilterInternal(request, response, chain);
+        return response.getStatus();
+    }
+
+    private static MockHttpServletRequest forwarded(String peer, String forwardedFor) {
+        MockHttpServletRequest request = login(peer);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        return request;
+    }
+
+    private static MockHttpServletRequest withToken(MockHttpServletRequest request, String token) {
+        request.setCookies(new Cookie(SecurityConstants.ACCESS_TOKEN, token));
+        return request;
+    }
+
+    private static String unsignedToken(long userId) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"userId\":" + userId + "}").getBytes(StandardCharsets.UTF_8)) + ".x";
+    }
+
+    private static MockHttpServletRequest download(String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", AdmissionControlFilter.DOWNLOAD_PATH);
+        request.setRemoteAddr(ip);
+        return request;
+    }
+
+    private static MockHttpServletRequest login(String ip) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", AdmissionControlFilter.LOGIN_PATH);
+        request.setRemoteAddr(ip);
+        return request;
+    }
+}
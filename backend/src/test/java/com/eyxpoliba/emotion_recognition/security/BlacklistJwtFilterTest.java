@@ -3,6 +3,8 @@ package com.eyxpoliba.emotion_recognition.security;
 import static org.junit.jupiter.api.Assertions.*;
 
 import com.eyxpoliba.emotion_recognition.repository.BlacklistTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
@@ -13,6 +15,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import java.io.IOException;
 import java.io.PrintWriter;
 import static org.mockito.Mockito.*;
@@ -29,6 +32,9 @@ class BlacklistJwtFilterTest {
     @Mock
     private PrintWriter printWriter;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private BlacklistJwtFilter blacklistJwtFilter;
 
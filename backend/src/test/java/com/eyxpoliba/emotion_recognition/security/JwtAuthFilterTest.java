@@ -1,6 +1,8 @@
 package com.eyxpoliba.emotion_recognition.security;
 
 import static org.junit.jupiter.api.Assertions.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletOutputStream;
@@ -13,9 +15,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import static org.mockito.Mockito.*;
 
 class JwtAuthFilterTest {
@@ -28,6 +33,9 @@ class JwtAuthFilterTest {
     @Mock
     private HttpServletResponse response;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private JwtAuthFilter jwtAuthFilter;
 
@@ -85,5 +93,11 @@ class JwtAuthFilterTest {
         verify(response).setContentType(anyString());
         verify(response).setStatus(eq(401));
     }
-}
 
+    @Test
+    void testRolesClaimMapsToAuthorities() {
+        assertEquals(List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN")),
+                JwtAuthFilter.authorities("USER, ADMIN"));
+        assertEquals(List.of(), JwtAuthFilter.authorities(null));
+    }
+}
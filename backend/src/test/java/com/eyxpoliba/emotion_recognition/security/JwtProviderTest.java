@@ -33,6 +33,16 @@ class JwtProviderTest {
         assertEquals(issuer, Jwts.parser().setSigningKey(secretKey).parseClaimsJws(token).getBody().getIssuer());
     }
 
+    @Test
+    void testOnlyAdminTokensCarryAdminRole() {
+        String participantToken = jwtProvider.generateToken("admin", 1L, true);
+        String adminToken = jwtProvider.generateAdminToken("admin");
+
+        assertEquals("USER", jwtProvider.getClaimFromToken(participantToken, claims -> claims.get("roles", String.class)));
+        assertEquals("ADMIN", jwtProvider.getClaimFromToken(adminToken, claims -> claims.get("roles", String.class)));
+        assertEquals(0L, (Long) jwtProvider.getClaimFromToken(adminToken, claims -> claims.get("userId", Long.class)));
+    }
+
     @Test
     void testTokenExpiration() throws InterruptedException {
         String username = "testuser";
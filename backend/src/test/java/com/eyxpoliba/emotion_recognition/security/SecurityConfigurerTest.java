@@ -16,6 +16,8 @@ class SecurityConfigurerTest {
     private JwtAuthFilter jwtAuthFilter;
     @Mock
     private BlacklistJwtFilter blacklistJwtFilter;
+    @Mock
+    private AdmissionControlFilter admissionControlFilter;
 
     @InjectMocks
     private SecurityConfigurer securityConfigurer;
@@ -40,5 +42,6 @@ class SecurityConfigurerTest {
         // Verify filters are added
         verify(httpSecurity, times(1)).addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
         verify(httpSecurity, times(1)).addFilterBefore(blacklistJwtFilter, JwtAuthFilter.class);
+        verify(httpSecurity, times(1)).addFilterBefore(admissionControlFilter, BlacklistJwtFilter.class);
     }
 }
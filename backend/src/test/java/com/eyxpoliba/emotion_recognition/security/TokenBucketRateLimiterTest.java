@@ -0,0 +1,58 @@
+package com.eyxpoliba.emotion_recognition.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketRateLimiterTest {
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+
+    @Test
+    void testBurstThenRefill() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(2, 3, 100, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertEquals(0, limiter.tryAcquire("client"));
+        long wait = limiter.tryAcquire("client");
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), wait);
+
+        clock.addAndGet(wait);
+        assertEquals(0, limiter.tryAcquire("client"));
+    }
+
+    @Test
+    void testClientsAreIndependent() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, 100, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("a"));
+        assertTrue(limiter.tryAcquire("a") > 0);
+        assertEquals(0, limiter.tryAcquire("b"));
+    }
+
+    @Test
+    void testRefilledBucketsAreSweptWhenFull() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 1, 2, clock::get);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        limiter.tryAcquire("c");
+        assertEquals(1, limiter.trackedClients());
+    }
+
+    @Test
+    void testNewClientsShareOneBucketWhileTheMapIsFull() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 1, 2, clock::get);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+
+        // Nothing has refilled yet: c and d get no bucket of their own
+        assertEquals(0, limiter.tryAcquire("c"));
+        assertTrue(limiter.tryAcquire("d") > 0);
+        assertEquals(2, limiter.trackedClients());
+    }
+}
@@ -0,0 +1,80 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.storage.BlobStore;
+import com.eyxpoliba.emotion_recognition.storage.ResilientBlobReader;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AzureStorageServiceTest {
+    private static final Instant START = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final AtomicReference<Instant> now = new AtomicReference<>(START);
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now.get();
+        }
+    };
+
+    private AzureStorageService service(boolean signedUrlDelivery) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        return new AzureStorageService(blobStore, mock(ResilientBlobReader.class), new Bulkhead("storage", 10, 10, 100, meterRegistry),
+                meterRegistry, signedUrlDelivery, Duration.ofMinutes(30), Duration.ofMinutes(15), clock);
+    }
+
+    @Test
+    void testSignedUrlsAreReusedUntilCloseToExpiry() {
+        when(blobStore.signedUrl(any(), any())).thenAnswer(invocation ->
+                "https://storage/" + invocation.getArgument(0) + "?se=" + invocation.<OffsetDateTime>getArgument(1).toInstant());
+        AzureStorageService service = service(true);
+
+        List<String> first = service.getImageUrls(List.of("a.png", "b.png"));
+        assertEquals(List.of("https://storage/a.png?se=2026-01-01T10:30:00Z", "https://storage/b.png?se=2026-01-01T10:30:00Z"), first);
+
+        now.set(START.plus(Duration.ofMinutes(10)));
+        assertEquals(first, service.getImageUrls(List.of("a.png", "b.png")));
+        verify(blobStore, times(2)).signedUrl(any(), any());
+
+        // Less than 15 minutes of validity left: signed again
+        now.set(START.plus(Duration.ofMinutes(16)));
+        assertEquals(List.of("https://storage/a.png?se=2026-01-01T10:46:00Z"), service.getImageUrls(List.of("a.png")));
+        verify(blobStore).signedUrl(eq("a.png"), eq(OffsetDateTime.of(2026, 1, 1, 10, 46, 0, 0, ZoneOffset.UTC)));
+    }
+
+    @Test
+    void testFallsBackToProxyWhenSigningIsUnavailable() {
+        assertNull(service(false).getImageUrls(List.of("a.png")));
+        verifyNoInteractions(blobStore);
+
+        // A store without an account key cannot sign
+        assertNull(service(true).getImageUrls(List.of("a.png")));
+
+        when(blobStore.signedUrl(any(), any())).thenThrow(new IllegalStateException("bad key"));
+        assertNull(service(true).getImageUrls(List.of("a.png")));
+    }
+}
@@ -0,0 +1,116 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import com.eyxpoliba.emotion_recognition.model.ImageEntity;
+import com.eyxpoliba.emotion_recognition.repository.ImageRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.storage.InMemoryBlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.ResponseEntity;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ImageIngestionServiceTest {
+    @Mock
+    private ImageRepository imageRepository;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InMemoryBlobStore blobStore = new InMemoryBlobStore(0, 16);
+    private ImageIngestionService service;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(imageRepository.findBySha256(anyString())).thenReturn(Optional.empty());
+        // Small blocks so a test image spans several parallel stages
+        service = new ImageIngestionService(blobStore, imageRepository, new Bulkhead("storage", 4, 4, 1000, meterRegistry),
+                eventPublisher, meterRegistry, 4096, 3, 1_000_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(7);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    void testImageIsStagedInBlocksCommittedAndCatalogued() throws Exception {
+        byte[] content = png(120, 80);
+        assertTrue(content.length > 4 * 4096, "test image should span several blocks");
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+
+        ResponseEntity<Object> response = service.ingest("new.png", new ByteArrayInputStream(content));
+
+        assertEquals(201, response.getStatusCode().value());
+        assertEquals(Map.of("blobName", "new.png", "sha256", sha256, "contentType", "image/png",
+                "width", 120, "height", 80, "sizeBytes", (long) content.length), response.getBody());
+        ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        blobStore.download("new.png", stored);
+        assertArrayEquals(content, stored.toByteArray());
+        verify(imageRepository).insert(eq("new.png"), eq(sha256), eq("image/png"), eq(120), eq(80), eq((long) content.length), any());
+        verify(eventPublisher).publishEvent(new ImageIngestedEvent("new.png", sha256, "image/png", 120, 80, content.length));
+    }
+
+    @Test
+    void testDuplicateContentIsNotCommitted() throws Exception {
+        ImageEntity existing = ImageEntity.builder().blobName("first.png").build();
+        when(imageRepository.findBySha256(anyString())).thenReturn(Optional.of(existing));
+
+        ResponseEntity<Object> response = service.ingest("second.png", new ByteArrayInputStream(png(64, 64)));
+
+        assertEquals(409, response.getStatusCode().value());
+        assertEquals("first.png", ((Map<?, ?>) response.getBody()).get("duplicateOf"));
+        assertFalse(blobStore.exists("second.png"));
+        verify(imageRepository, never()).insert(any(), any(), any(), anyInt(), anyInt(), anyLong(), any());
+        assertEquals(1, meterRegistry.counter("ingest.images", "outcome", "duplicate").count());
+    }
+
+    @Test
+    void testRejectsUnreadableOversizedAndBadNames() throws Exception {
+        assertEquals(415, service.ingest("noise.png", new ByteArrayInputStream(new byte[5000])).getStatusCode().value());
+        assertEquals(413, service.ingest("big.png", new ByteArrayInputStream(png(800, 800))).getStatusCode().value());
+        assertEquals(400, service.ingest("../escape.png", new ByteArrayInputStream(png(8, 8))).getStatusCode().value());
+
+        when(imageRepository.existsById("taken.png")).thenReturn(true);
+        assertEquals(409, service.ingest("taken.png", new ByteArrayInputStream(png(8, 8))).getStatusCode().value());
+
+        assertEquals(0, blobStore.listBlobNames().size());
+        assertEquals(4, meterRegistry.counter("ingest.images", "outcome", "rejected").count());
+    }
+}
@@ -2,24 +2,36 @@ package com.eyxpoliba.emotion_recognition.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.eyxpoliba.emotion_recognition.inference.Classification;
+import com.eyxpoliba.emotion_recognition.inference.InferenceGateway;
 import com.eyxpoliba.emotion_recognition.model.ReactionsEntity;
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
 import com.eyxpoliba.emotion_recognition.payload.ImageDescriptionAndReactionPayload;
 import com.eyxpoliba.emotion_recognition.payload.ResultPayload;
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
 import com.eyxpoliba.emotion_recognition.repository.ReactionsRepository;
 import com.eyxpoliba.emotion_recognition.repository.UserRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.net.URI;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -29,7 +41,19 @@ class ReactionsServiceTest {
     @Mock
     private UserRepository userRepository;
     @Mock
+    private ReactionsBulkWriter reactionsBulkWriter;
+    @Mock
+    private ReactionShards reactionShards;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private InferenceGateway inferenceGateway;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
     private Authentication authentication;
+    @Spy
+    private Bulkhead databaseBulkhead = new Bulkhead("database", 10, 10, 1000, new SimpleMeterRegistry());
     @InjectMocks
     private ReactionsService reactionsService;
 
@@ -37,6 +61,16 @@ class ReactionsServiceTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         SecurityContextHolder.clearContext();
+        when(reactionShards.shardFor(anyLong())).thenReturn(new ReactionShards.Shard(0, null, null, null));
+        when(reactionShards.lockBuckets(any(), any())).thenReturn(true);
+        when(reactionsRepository.save(any())).thenAnswer(invocation -> {
+            ReactionsEntity saved = invocation.getArgument(0);
+            saved.setId(41L);
+            return saved;
+        });
+        when(reactionsBulkWriter.writeForUser(anyLong(), any(), any())).thenReturn(new ReactionsBulkWriter.Stored(2, 17));
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
     }
 
     @Test
@@ -64,6 +98,9 @@ class ReactionsServiceTest {
         assertEquals(URI.create("/api/register-result"), response.getHeaders().getLocation());
         assertTrue(response.getBody().toString().contains("Result registered successfully"));
         verify(reactionsRepository, times(1)).save(any(ReactionsEntity.class));
+        verify(reactionsBulkWriter).appendToOutbox(List.of(new ReactionsBulkWriter.Row(userId, "img.png", "desc", "happy", "ai comment")));
+        verify(eventPublisher).publishEvent(new ReactionsRegisteredEvent(userId,
+                List.of(new ReactionsRegisteredEvent.Reaction("img.png", "happy")), 0, 41));
     }
 
     @Test
@@ -77,6 +114,90 @@ class ReactionsServiceTest {
         RuntimeException ex = assertThrows(RuntimeException.class, () -> reactionsService.registerResult(resultPayload));
         assertEquals("User not found", ex.getMessage());
         verify(reactionsRepository, never()).save(any());
+        verify(reactionsBulkWriter, never()).appendToOutbox(any());
     }
-}
 
+    @Test
+    void testRegisterResult_LargeSubmissionUsesBulkWriter() {
+        Long userId = 3L;
+        ReflectionTestUtils.setField(reactionsService, "bulkThreshold", 2);
+        ResultPayload resultPayload = new ResultPayload(List.of(
+                new ImageDescriptionAndReactionPayload("a.png", "desc a", "STUPORE", "ai a"),
+                new ImageDescriptionAndReactionPayload("b.png", "desc b", "STUPORE", "ai b")));
+        when(authentication.getCredentials()).thenReturn(userId);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userRepository.existsById(userId)).thenReturn(true);
+
+        ResponseEntity<Object> response = reactionsService.registerResult(resultPayload);
+
+        assertEquals(201, response.getStatusCode().value());
+        ArgumentCaptor<List<ReactionsBulkWriter.Row>> rows = ArgumentCaptor.forClass(List.class);
+        verify(reactionsBulkWriter).writeForUser(eq(3L), rows.capture(), isNull());
+        assertEquals(List.of(new ReactionsBulkWriter.Row(3L, "a.png", "desc a", "STUPORE", "ai a"),
+                new ReactionsBulkWriter.Row(3L, "b.png", "desc b", "STUPORE", "ai b")), rows.getValue());
+        verify(reactionsRepository, never()).save(any());
+        verify(userRepository, never()).findById(any());
+        verify(eventPublisher).publishEvent(new ReactionsRegisteredEvent(3L, List.of(
+                new ReactionsRegisteredEvent.Reaction("a.png", "STUPORE"),
+                new ReactionsRegisteredEvent.Reaction("b.png", "STUPORE")), 2, 17));
+    }
+
+    @Test
+    void testRegisterResult_UserOnAnotherShardUsesJdbcBatches() {
+        Long userId = 5L;
+        when(reactionShards.shardFor(userId)).thenReturn(new ReactionShards.Shard(2, null, null, null));
+        ResultPayload resultPayload = new ResultPayload(List.of(
+                new ImageDescriptionAndReactionPayload("a.png", "desc a", "PAURA", "ai a")));
+        when(authentication.getCredentials()).thenReturn(userId);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userRepository.existsById(userId)).thenReturn(true);
+
+        reactionsService.registerResult(resultPayload);
+
+        verify(reactionsBulkWriter).writeForUser(5L, List.of(new ReactionsBulkWriter.Row(5L, "a.png", "desc a", "PAURA", "ai a")),
+                ReactionsBulkWriter.Method.BATCH);
+        verify(reactionsRepository, never()).save(any());
+    }
+
+    @Test
+    void testRegisterResult_RangeMovedOffShardZeroIsRoutedAgain() {
+        Long userId = 6L;
+        when(reactionShards.lockBuckets(any(), any())).thenReturn(false);
+        ResultPayload resultPayload = new ResultPayload(List.of(
+                new ImageDescriptionAndReactionPayload("a.png", "desc a", "GIOIA", "ai a")));
+        when(authentication.getCredentials()).thenReturn(userId);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        reactionsService.registerResult(resultPayload);
+
+        verify(reactionsRepository, never()).save(any());
+        verify(reactionShards).refresh();
+        verify(reactionsBulkWriter).writeForUser(6L, List.of(new ReactionsBulkWriter.Row(6L, "a.png", "desc a", "GIOIA", "ai a")),
+                ReactionsBulkWriter.Method.BATCH);
+    }
+
+    @Test
+    void testRegisterResult_MissingAiCommentsAreClassified() {
+        Long userId = 4L;
+        ReflectionTestUtils.setField(reactionsService, "bulkThreshold", 2);
+        ResultPayload resultPayload = new ResultPayload(List.of(
+                new ImageDescriptionAndReactionPayload("a.png", "I love it", "GIOIA", null),
+                new ImageDescriptionAndReactionPayload("b.png", "desc b", "STUPORE", "kept"),
+                new ImageDescriptionAndReactionPayload("c.png", "so sad", "TRISTEZZA", "")));
+        when(authentication.getCredentials()).thenReturn(userId);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        when(userRepository.existsById(userId)).thenReturn(true);
+        when(inferenceGateway.isEnabled()).thenReturn(true);
+        when(inferenceGateway.classify("I love it")).thenReturn(CompletableFuture.completedFuture(new Classification("joy", 0.9)));
+        when(inferenceGateway.classify("so sad")).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("circuit open")));
+
+        reactionsService.registerResult(resultPayload);
+
+        ArgumentCaptor<List<ReactionsBulkWriter.Row>> rows = ArgumentCaptor.forClass(List.class);
+        verify(reactionsBulkWriter).writeForUser(eq(4L), rows.capture(), isNull());
+        assertEquals(List.of(new ReactionsBulkWriter.Row(4L, "a.png", "I love it", "GIOIA", "joy"),
+                new ReactionsBulkWriter.Row(4L, "b.png", "desc b", "STUPORE", "kept"),
+                new ReactionsBulkWriter.Row(4L, "c.png", "so sad", "TRISTEZZA", null)), rows.getValue());
+        verify(inferenceGateway, never()).classify("desc b");
+    }
+}
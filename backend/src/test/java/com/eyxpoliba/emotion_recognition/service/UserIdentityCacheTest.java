@@ -0,0 +1,38 @@
+package com.eyxpoliba.emotion_recognition.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserIdentityCacheTest {
+    private static final UserIdentityCache.Profile PROFILE = new UserIdentityCache.Profile("nick", 30, "F", "IT");
+
+    @Test
+    void testEntriesAreServedUntilTheyExpire() {
+        UserIdentityCache cache = new UserIdentityCache(100, 60_000);
+        cache.put("a@example.com", 1L, PROFILE);
+
+        assertEquals(new UserIdentityCache.CachedUser(1L, PROFILE), cache.get("a@example.com"));
+    }
+
+    @Test
+    void testExpiredEntriesAreDropped() {
+        UserIdentityCache cache = new UserIdentityCache(100, 0);
+        cache.put("a@example.com", 1L, PROFILE);
+
+        assertNull(cache.get("a@example.com"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        UserIdentityCache cache = new UserIdentityCache(2, 60_000);
+        cache.put("a@example.com", 1L, PROFILE);
+        cache.put("b@example.com", 2L, PROFILE);
+        cache.get("a@example.com");
+        cache.put("c@example.com", 3L, PROFILE);
+
+        assertNotNull(cache.get("a@example.com"));
+        assertNull(cache.get("b@example.com"));
+    }
+}
@@ -4,21 +4,29 @@ import com.eyxpoliba.emotion_recognition.model.BlacklistTokenEntity;
 import com.eyxpoliba.emotion_recognition.model.UserEntity;
 import com.eyxpoliba.emotion_recognition.repository.BlacklistTokenRepository;
 import com.eyxpoliba.emotion_recognition.repository.UserRepository;
+import com.eyxpoliba.emotion_recognition.resilience.Bulkhead;
 import com.eyxpoliba.emotion_recognition.responses.LoginResponse;
 import com.eyxpoliba.emotion_recognition.security.JwtProvider;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
 import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
@@ -35,12 +43,27 @@ class UserServiceTest {
     private HttpServletRequest request;
     @Mock
     private HttpServletResponse response;
-    @InjectMocks
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    private final UserIdentityCache userIdentityCache = new UserIdentityCache(100, 60_000);
+    private final ExecutorService loginExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     private UserService userService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        userService = new UserService(userRepository, blacklistTokenRepository, azureStorageService, jwtProvider,
+                userIdentityCache, loginExecutor, meterRegistry, eventPublisher,
+                new Bulkhead("database", 10, 10, 1000, meterRegistry), new Bulkhead("crypto", 2, 10, 1000, meterRegistry));
+        ReflectionTestUtils.setField(userService, "userStageTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(userService, "tokenStageTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(userService, "imagesStageTimeoutMs", 100L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loginExecutor.close();
     }
 
     @Test
@@ -53,6 +76,8 @@ class UserServiceTest {
         when(jwtProvider.generateToken("testuser", 1L, true)).thenReturn("access-token");
         when(jwtProvider.generateToken("testuser", 1L, false)).thenReturn("refresh-token");
         when(azureStorageService.getRandomBlobNames(10)).thenReturn(Arrays.asList("img1.png", "img2.png"));
+        when(azureStorageService.getImageUrls(Arrays.asList("img1.png", "img2.png")))
+                .thenReturn(List.of("https://storage/img1.png?sig=1", "https://storage/img2.png?sig=2"));
 
         // Act
         ResponseEntity<LoginResponse> result = userService.login(user, response);
@@ -64,6 +89,8 @@ class UserServiceTest {
         assertNotNull(body);
         assertEquals(1L, body.userId());
         assertEquals(Arrays.asList("img1.png", "img2.png"), body.imagesName());
+        assertEquals(List.of("https://storage/img1.png?sig=1", "https://storage/img2.png?sig=2"), body.imageUrls());
+        verify(eventPublisher).publishEvent(new UserProfileEvent(1L, 0, null, null));
 
         // Verify cookies
         ArgumentCaptor<Cookie> cookieCaptor = ArgumentCaptor.forClass(Cookie.class);
@@ -77,6 +104,142 @@ class UserServiceTest {
 
 
 
+    @Test
+    void testLogin_NewUserIsUpsertedByEmail() {
+        // Arrange
+        UserEntity user = participant("new@example.com", "newbie", 30);
+        when(userRepository.findByEmail("new@example.com")).thenReturn(Optional.empty());
+        when(userRepository.findIdByEmail("new@example.com")).thenReturn(Optional.of(7L));
+        when(azureStorageService.getRandomBlobNames(10)).thenReturn(List.of());
+
+        // Act
+        ResponseEntity<LoginResponse> result = userService.login(user, response);
+
+        // Assert
+        assertEquals(7L, result.getBody().userId());
+        verify(userRepository).upsertByEmail("new@example.com", "newbie", 30, "F", "IT");
+        verify(userRepository, never()).save(any());
+        verify(jwtProvider).generateToken("newbie", 7L, true);
+    }
+
+    @Test
+    void testLogin_ReturningUserIsServedFromCache() {
+        // Arrange
+        UserEntity existing = participant("back@example.com", "returning", 25);
+        existing.setId(3L);
+        when(userRepository.findByEmail("back@example.com")).thenReturn(Optional.of(existing));
+        when(azureStorageService.getRandomBlobNames(10)).thenReturn(List.of());
+
+        // Act
+        userService.login(participant("back@example.com", "returning", 25), response);
+        ResponseEntity<LoginResponse> result = userService.login(participant("back@example.com", "returning", 25), response);
+
+        // Assert
+        assertEquals(3L, result.getBody().userId());
+        verify(userRepository, times(1)).findByEmail("back@example.com");
+        verify(userRepository, never()).updateProfile(any(), any(), anyInt(), any(), any());
+        verify(userRepository, never()).upsertByEmail(any(), any(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testLogin_ChangedProfileIsUpdated() {
+        // Arrange
+        userIdentityCache.put("back@example.com", 3L, UserIdentityCache.Profile.of(participant("back@example.com", "returning", 25)));
+        when(userRepository.updateProfile(3L, "renamed", 26, "F", "IT")).thenReturn(1);
+        when(azureStorageService.getRandomBlobNames(10)).thenReturn(List.of());
+
+        // Act
+        userService.login(participant("back@example.com", "renamed", 26), response);
+
+        // Assert
+        verify(userRepository).updateProfile(3L, "renamed", 26, "F", "IT");
+        verify(userRepository, never()).findByEmail(any());
+        assertEquals("renamed", userIdentityCache.get("back@example.com").profile().nickname());
+    }
+
+    @Test
+    void testLogin_CachedUserThatIsGoneIsResolvedAgain() {
+        // Arrange: the cached row has been deleted, the email now belongs to another one
+        userIdentityCache.put("back@example.com", 3L, UserIdentityCache.Profile.of(participant("back@example.com", "returning", 25)));
+        when(userRepository.findByEmail("back@example.com")).thenReturn(Optional.empty());
+        when(userRepository.findIdByEmail("back@example.com")).thenReturn(Optional.of(8L));
+        when(azureStorageService.getRandomBlobNames(10)).thenReturn(List.of());
+
+        // Act
+        ResponseEntity<LoginResponse> result = userService.login(participant("back@example.com", "renamed", 26), response);
+
+        // Assert
+        assertEquals(8L, result.getBody().userId());
+        verify(userRepository).upsertByEmail("back@example.com", "renamed", 26, "F", "IT");
+        assertEquals(8L, userIdentityCache.get("back@example.com").id());
+    }
+
+    @Test
+    void testLogin_SlowStorageFallsBackToLastKnownImages() {
+        // Arrange
+        UserEntity user = new UserEntity();
+        user.setNickname("testuser");
+        user.setId(1L);
+        when(userRepository.save(user)).thenReturn(user);
+        when(azureStorageService.getRandomBlobNames(10)).thenAnswer(invocation -> {
+            Thread.sleep(2000);
+            return List.of("late.png");
+        });
+        when(azureStorageService.getFallbackBlobNames(10)).thenReturn(List.of("cached.png"));
+
+        // Act
+        long start = System.nanoTime();
+        ResponseEntity<LoginResponse> result = userService.login(user, response);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Assert
+        assertEquals(List.of("cached.png"), result.getBody().imagesName());
+        assertTrue(elapsedMs < 1500, "login waited for the slow storage call: " + elapsedMs + "ms");
+        assertEquals(1.0, meterRegistry.counter("login.images.fallback").count());
+        assertNotNull(meterRegistry.find("login.stage").tag("stage", "user").timer());
+    }
+
+    @Test
+    void testLogin_StageTimeoutIsServiceUnavailableAndCancelsQueuedStages() throws Exception {
+        // Arrange: one login thread, kept busy so every stage waits in the queue
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        singleThread.execute(() -> {
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        UserService queued = new UserService(userRepository, blacklistTokenRepository, azureStorageService, jwtProvider,
+                userIdentityCache, singleThread, meterRegistry, eventPublisher,
+                new Bulkhead("database", 10, 10, 1000, meterRegistry), new Bulkhead("crypto", 2, 10, 1000, meterRegistry));
+        ReflectionTestUtils.setField(queued, "userStageTimeoutMs", 100L);
+        ReflectionTestUtils.setField(queued, "tokenStageTimeoutMs", 100L);
+        ReflectionTestUtils.setField(queued, "imagesStageTimeoutMs", 1000L);
+
+        // Act
+        assertThrows(LoginStageTimeoutException.class,
+                () -> queued.login(participant("queued@example.com", "queued", 40), response));
+        singleThread.shutdown();
+        assertTrue(singleThread.awaitTermination(5, TimeUnit.SECONDS));
+
+        // Assert: the image stage, still within its deadline, was cancelled before it got the thread
+        verify(azureStorageService, never()).getRandomBlobNames(anyInt());
+        verify(userRepository, never()).findByEmail(any());
+        verify(jwtProvider, never()).generateToken(any(), anyLong(), anyBoolean());
+        verify(response, never()).addCookie(any());
+    }
+
+    private static UserEntity participant(String email, String nickname, int age) {
+        UserEntity user = new UserEntity();
+        user.setEmail(email);
+        user.setNickname(nickname);
+        user.setAge(age);
+        user.setGender("F");
+        user.setNationality("IT");
+        return user;
+    }
+
     @Test
     void testLogout_NoToken() {
         // Arrange
@@ -0,0 +1,239 @@
+package com.eyxpoliba.emotion_recognition.sharding;
+
+import com.eyxpoliba.emotion_recognition.repository.ReactionsBulkWriter;
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReactionShardsTest {
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "STUPORE"};
+    // One user every ~100 buckets, so every half of the bucket space has some
+    private static final long[] USERS = {1, 100, 200, 300, 400, 500, 600, 700, 800, 900, 1000};
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<JdbcTemplate> databases = new ArrayList<>();
+    private final List<DataSource> dataSources = new ArrayList<>();
+    private ReactionShards shards;
+    private ReactionsBulkWriter writer;
+    private ShardedReactionsRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 3; i++) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:shard" + i + "-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+            dataSource.setUser("sa");
+            Flyway.configure().dataSource(dataSource)
+                    .locations(i == 0 ? "classpath:db/migration/sqlserver" : "classpath:db/shard/sqlserver")
+                    .load().migrate();
+            dataSources.add(dataSource);
+            databases.add(new JdbcTemplate(dataSource));
+        }
+        List<Object[]> users = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            users.add(new Object[]{"u" + i + "@example.com"});
+        }
+        databases.getFirst().batchUpdate("INSERT INTO users (email) VALUES (?)", users);
+
+        shards = new ReactionShards(dataSources, meterRegistry, 50, 5000);
+        shards.start();
+        writer = new ReactionsBulkWriter(shards, 100, meterRegistry);
+        repository = new ShardedReactionsRepository(shards);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.stop();
+    }
+
+    @Test
+    void testRebalanceSpreadsWritesAndQueriesGatherThem() {
+        new ReactionResharder(shards, meterRegistry, 0, 100).rebalance();
+        assertEquals(List.of(
+                new ShardLayout.Range(0, 340, 0, ShardLayout.State.ACTIVE, null),
+                new ShardLayout.Range(341, 681, 1, ShardLayout.State.ACTIVE, null),
+                new ShardLayout.Range(682, 1023, 2, ShardLayout.State.ACTIVE, null)), shards.getLayout().ranges());
+
+        for (long user : USERS) {
+            writer.write(List.of(row(user, 0), row(user, 1), row(user, 2)), ReactionsBulkWriter.Method.BATCH);
+        }
+
+        assertEquals(List.of(12L, 9L, 12L), repository.countPerShard());
+        assertEquals(Map.of("GIOIA", 11L, "TRISTEZZA", 11L, "PAURA", 11L), repository.countByReaction());
+        assertEquals(1, shards.readerFor(500).id());
+        assertEquals(List.of("img-500-0.png", "img-500-1.png", "img-500-2.png"),
+                repository.findByUserId(500).stream().map(ShardedReactionsRepository.Reaction::image).toList());
+        assertEquals(3, databases.get(1).queryForObject("SELECT COUNT(*) FROM user_reactions WHERE user_id = 500", Integer.class));
+        assertEquals(0, databases.get(0).queryForObject("SELECT COUNT(*) FROM user_reactions WHERE user_id = 500", Integer.class));
+    }
+
+    @Test
+    void testRangesMoveWhileWritesContinue() throws Exception {
+        Map<Long, AtomicLong> written = new ConcurrentHashMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int w = 0; w < 3; w++) {
+            int offset = w;
+            writers.add(Thread.ofVirtual().start(() -> {
+                int i = 0;
+                while (running.get()) {
+                    long user = USERS[(i++ * 3 + offset) % USERS.length];
+                    try {
+                        writer.write(List.of(row(user, i), row(user, i + 1)), ReactionsBulkWriter.Method.BATCH);
+                        written.computeIfAbsent(user, key -> new AtomicLong()).addAndGet(2);
+                    } catch (RuntimeException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            }));
+        }
+
+        ReactionResharder resharder = new ReactionResharder(shards, meterRegistry, 200, 7);
+        resharder.move(0, 511, 1);
+        resharder.move(512, 1023, 2);
+        resharder.move(256, 511, 0);
+        running.set(false);
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+        assertTrue(shards.getLayout().ranges().stream().allMatch(range -> range.state() == ShardLayout.State.ACTIVE));
+        assertEquals(List.of(
+                new ShardLayout.Range(0, 255, 1, ShardLayout.State.ACTIVE, null),
+                new ShardLayout.Range(256, 511, 0, ShardLayout.State.ACTIVE, null),
+                new ShardLayout.Range(512, 1023, 2, ShardLayout.State.ACTIVE, null)), shards.getLayout().ranges());
+        long total = 0;
+        for (long user : USERS) {
+            long expected = written.getOrDefault(user, new AtomicLong()).get();
+            total += expected;
+            assertEquals(expected, repository.findByUserId(user).size(), "user " + user);
+        }
+        // Nothing lost, nothing left behind or copied twice
+        long stored = 0;
+        for (JdbcTemplate database : databases) {
+            stored += database.queryForObject("SELECT COUNT(*) FROM user_reactions", Long.class);
+        }
+        assertEquals(total, stored);
+        assertEquals(total, repository.countPerShard().stream().mapToLong(Long::longValue).sum());
+        assertTrue(meterRegistry.get("reactions.shards.copied.rows").counter().count() > 0);
+        assertTrue(meterRegistry.get("reactions.shards.frozen.waits").counter().count() > 0);
+    }
+
+    @Test
+    void testWriteCommittedOutOfOrderDuringTheFreezeIsMoved() throws Exception {
+        writer.write(List.of(row(1, 0)), ReactionsBulkWriter.Method.BATCH);
+        try (Connection late = dataSources.getFirst().getConnection()) {
+            // An in-flight write: it takes its id now but commits only once the first copy pass is done
+            late.setAutoCommit(false);
+            try (PreparedStatement insert = late.prepareStatement(
+                    "INSERT INTO user_reactions (user_id, image, image_description, image_reaction) VALUES (1, 'img-1-1.png', 'description 1', 'TRISTEZZA')")) {
+                insert.executeUpdate();
+            }
+            writer.write(List.of(row(1, 2)), ReactionsBulkWriter.Method.BATCH);
+
+            AtomicBoolean committed = new AtomicBoolean();
+            ReactionResharder resharder = new ReactionResharder(shards, meterRegistry, 0, 100) {
+                @Override
+                void pause() {
+                    if (committed.compareAndSet(false, true)) {
+                        assertEquals(ShardLayout.State.FROZEN, shards.getLayout().ranges().getFirst().state());
+                        try {
+                            late.commit();
+                        } catch (SQLException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                    super.pause();
+                }
+            };
+            resharder.move(0, 1023, 1);
+        }
+
+        assertEquals(List.of("img-1-0.png", "img-1-1.png", "img-1-2.png"),
+                repository.findByUserId(1).stream().map(ShardedReactionsRepository.Reaction::image).sorted().toList());
+        assertEquals(3, databases.get(1).queryForObject("SELECT COUNT(*) FROM user_reactions", Integer.class));
+        assertEquals(0, databases.get(0).queryForObject("SELECT COUNT(*) FROM user_reactions", Integer.class));
+        assertEquals(3, meterRegistry.get("reactions.shards.copied.rows").counter().count());
+    }
+
+    @Test
+    void testWriteRoutedBeforeTheFreezeIsWaitedFor() throws Exception {
+        writer.write(List.of(row(1, 0)), ReactionsBulkWriter.Method.BATCH);
+        ReactionShards.Shard primary = shards.getShard(0);
+        try (Connection late = dataSources.getFirst().getConnection()) {
+            // A write routed while the range was still copying, whose transaction outlives the grace period
+            late.setAutoCommit(false);
+            try (PreparedStatement lock = late.prepareStatement(
+                    "UPDATE reaction_bucket_fences SET fenced = 0 WHERE fenced = 0 AND bucket = 1");
+                 PreparedStatement insert = late.prepareStatement(
+                         "INSERT INTO user_reactions (user_id, image, image_description, image_reaction) VALUES (1, 'img-1-1.png', 'description 1', 'TRISTEZZA')")) {
+                assertEquals(1, lock.executeUpdate());
+                insert.executeUpdate();
+            }
+            Thread mover = Thread.ofPlatform().start(() -> new ReactionResharder(shards, meterRegistry, 0, 100).move(0, 1023, 1));
+            // The move cannot fence bucket 1 while the write holds it
+            while (blockedSessions(primary) == 0 && mover.isAlive()) {
+                Thread.sleep(10);
+            }
+            assertTrue(mover.isAlive());
+            late.commit();
+            mover.join();
+        }
+
+        assertEquals(List.of("img-1-0.png", "img-1-1.png"),
+                repository.findByUserId(1).stream().map(ShardedReactionsRepository.Reaction::image).sorted().toList());
+        assertEquals(0, databases.get(0).queryForObject("SELECT COUNT(*) FROM user_reactions", Integer.class));
+    }
+
+    @Test
+    void testInstanceWithAnOutOfDateLayoutCannotWriteToTheShardARangeLeft() {
+        ReactionShards stale = new ReactionShards(dataSources, meterRegistry, 60_000, 5000);
+        stale.start();
+        new ReactionResharder(shards, meterRegistry, 0, 100).move(0, 1023, 1);
+        assertEquals(0, stale.shardFor(1).id());
+
+        // Its refresh failed, say: it still routes user 1 to shard 0, which turns the write away
+        ReactionShards.Shard primary = stale.getShard(0);
+        assertEquals(Boolean.FALSE, primary.transactions().execute(status -> stale.lockBuckets(primary, List.of(1L))));
+        // The bulk writer then reloads the layout and writes where the range is now
+        new ReactionsBulkWriter(stale, 100, meterRegistry).write(List.of(row(1, 0)), ReactionsBulkWriter.Method.BATCH);
+
+        assertEquals(1, stale.shardFor(1).id());
+        assertEquals(0, databases.get(0).queryForObject("SELECT COUNT(*) FROM user_reactions", Integer.class));
+        assertEquals(1, databases.get(1).queryForObject("SELECT COUNT(*) FROM user_reactions WHERE user_id = 1", Integer.class));
+        assertEquals(List.of(0L, 1L, 0L), repository.countPerShard());
+        stale.stop();
+    }
+
+    private static int blockedSessions(ReactionShards.Shard shard) {
+        return shard.jdbc().queryForObject(
+                "SELECT COUNT(*) FROM information_schema.sessions WHERE blocker_id IS NOT NULL", Integer.class);
+    }
+
+    private static ReactionsBulkWriter.Row row(long user, int i) {
+        return new ReactionsBulkWriter.Row(user, "img-" + user + "-" + i + ".png", "description " + i,
+                REACTIONS[i % 3], null);
+    }
+}
@@ -0,0 +1,193 @@
+package com.eyxpoliba.emotion_recognition.similarity;
+
+import com.eyxpoliba.emotion_recognition.repository.ShardedReactionsRepository;
+import com.eyxpoliba.emotion_recognition.service.ReactionsRegisteredEvent;
+import com.eyxpoliba.emotion_recognition.sharding.ReactionShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageSimilarityIndexTest {
+    private static final String[] REACTIONS = {"GIOIA", "TRISTEZZA", "PAURA", "RABBIA", "STUPORE", "DISGUSTO"};
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ReactionShards shards;
+    private JdbcTemplate jdbc;
+    private ImageSimilarityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:similarity-" + System.nanoTime() + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1;DATABASE_TO_LOWER=TRUE");
+        dataSource.setUser("sa");
+        Flyway.configure().dataSource(dataSource).locations("classpath:db/migration/sqlserver").load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO users (email) VALUES ('a@example.com')");
+        shards = new ReactionShards(List.of(dataSource), meterRegistry, 60_000, 1000);
+        ShardedReactionsRepository reactions = new ShardedReactionsRepository(shards);
+        index = new ImageSimilarityIndex(reactions, meterRegistry, true, 600_000, 8, 8, 10, 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        index.stop();
+    }
+
+    @Test
+    void testNearestImagesShareTheReactionProfile() {
+        long userId = jdbc.queryForObject("SELECT id FROM users", Long.class);
+        List<Object[]> rows = new ArrayList<>();
+        addReactions(rows, userId, "joy1.png", Map.of("GIOIA", 8, "STUPORE", 2));
+        addReactions(rows, userId, "joy2.png", Map.of("GIOIA", 16, "STUPORE", 4));
+        addReactions(rows, userId, "joy3.png", Map.of("GIOIA", 6, "STUPORE", 3, "PAURA", 1));
+        addReactions(rows, userId, "fear1.png", Map.of("PAURA", 9, "TRISTEZZA", 1));
+        addReactions(rows, userId, "fear2.png", Map.of("PAURA", 5, "TRISTEZZA", 5));
+        addReactions(rows, userId, "anger.png", Map.of("RABBIA", 2));
+        rows.add(new Object[]{userId, "unlabelled.png", null});
+        jdbc.batchUpdate("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, ?, ?)", rows);
+
+        assertNull(index.similarTo("joy1.png", 3, ProfileDistance.COSINE, false, 1));
+        index.rebuild();
+
+        for (ProfileDistance metric : ProfileDistance.values()) {
+            SimilarImages similar = index.similarTo("joy1.png", 2, metric, true, 1);
+            assertEquals(List.of("joy2.png", "joy3.png"), similar.neighbours().stream().map(SimilarImage::image).toList(), metric.name());
+            // Same proportions at twice the volume
+            assertEquals(0, similar.neighbours().getFirst().distance(), 1e-6);
+            assertTrue(similar.exact());
+        }
+        SimilarImages fear = index.similarTo("fear1.png", 5, ProfileDistance.JENSEN_SHANNON, true, 1);
+        assertEquals(new SimilarImage("fear1.png", 0, 10, Map.of("TRISTEZZA", 1L, "PAURA", 9L)), fear.image());
+        assertEquals("fear2.png", fear.neighbours().getFirst().image());
+        // No reaction in common: as far apart as the distances go
+        SimilarImage anger = fear.neighbours().stream().filter(image -> image.image().equals("anger.png")).findFirst().orElseThrow();
+        assertEquals(1, anger.distance(), 1e-6);
+
+        // anger.png has too few reactions to be compared
+        assertEquals(List.of("fear1.png", "joy1.png", "joy2.png", "joy3.png"), index.similarTo("fear2.png", 5, ProfileDistance.COSINE, true, 10)
+                .neighbours().stream().map(SimilarImage::image).sorted().toList());
+        assertThrows(UnknownImageException.class, () -> index.similarTo("unlabelled.png", 3, ProfileDistance.COSINE, false, 1));
+    }
+
+    @Test
+    void testEventsUpdateProfilesIncrementally() {
+        index.rebuild();
+        assertThrows(UnknownImageException.class, () -> index.similarTo("a.png", 3, ProfileDistance.COSINE, false, 1));
+
+        index.onReactionsRegistered(event("a.png", "GIOIA", "b.png", "PAURA", "c.png", "GIOIA", "c.png", "PAURA"));
+        SimilarImages similar = index.similarTo("a.png", 2, ProfileDistance.COSINE, false, 1);
+        assertEquals(List.of("c.png", "b.png"), similar.neighbours().stream().map(SimilarImage::image).toList());
+
+        // b.png now leans towards joy, closer to a.png than c.png is
+        index.onReactionsRegistered(event("b.png", "GIOIA", "b.png", "GIOIA", "b.png", "GIOIA", "b.png", "GIOIA"));
+        similar = index.similarTo("a.png", 2, ProfileDistance.COSINE, false, 1);
+        assertEquals(List.of("b.png", "c.png"), similar.neighbours().stream().map(SimilarImage::image).toList());
+        assertEquals(Map.of("GIOIA", 4L, "PAURA", 1L), similar.neighbours().getFirst().byReaction());
+        assertEquals(3.0, meterRegistry.get("similarity.images").gauge().value());
+    }
+
+    @Test
+    void testSubmissionsCommittedDuringTheRebuildAreCountedOnce() {
+        long userId = jdbc.queryForObject("SELECT id FROM users", Long.class);
+        jdbc.update("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, 'a.png', 'GIOIA')", userId);
+        ImageSimilarityIndex[] rebuilding = new ImageSimilarityIndex[1];
+        // Two submissions published after the rebuild has started, one before the scan reads the table, one after
+        ShardedReactionsRepository racing = new ShardedReactionsRepository(shards) {
+            @Override
+            public Scanned forEachReaction(RowCallbackHandler handler) {
+                store("PAURA");
+                Scanned scanned = super.forEachReaction(handler);
+                store("STUPORE");
+                return scanned;
+            }
+
+            private void store(String reaction) {
+                jdbc.update("INSERT INTO user_reactions (user_id, image, image_reaction) VALUES (?, 'a.png', ?)", userId, reaction);
+                long id = jdbc.queryForObject("SELECT MAX(id) FROM user_reactions", Long.class);
+                rebuilding[0].onReactionsRegistered(new ReactionsRegisteredEvent(userId,
+                        List.of(new ReactionsRegisteredEvent.Reaction("a.png", reaction)), 0, id));
+            }
+        };
+        rebuilding[0] = new ImageSimilarityIndex(racing, meterRegistry, true, 600_000, 8, 8, 10, 1);
+        try {
+            rebuilding[0].rebuild();
+            rebuilding[0].onReactionsRegistered(event("b.png", "GIOIA"));
+
+            SimilarImage image = rebuilding[0].similarTo("b.png", 1, ProfileDistance.COSINE, true, 1).neighbours().getFirst();
+            assertEquals(new SimilarImage("a.png", image.distance(), 3, Map.of("GIOIA", 1L, "PAURA", 1L, "STUPORE", 1L)), image);
+        } finally {
+            rebuilding[0].stop();
+        }
+    }
+
+    @Test
+    void testApproximateNeighboursMostlyMatchTheParallelScan() {
+        // Images drawn around 40 reaction profiles, enough of them for the exact scan to run on two threads
+        Random random = new Random(42);
+        double[][] centres = new double[40][REACTIONS.length];
+        for (double[] centre : centres) {
+            for (int d = 0; d < centre.length; d++) {
+                centre[d] = Math.pow(random.nextDouble(), 3);
+            }
+        }
+        ReactionProfiles profiles = new ReactionProfiles(8, 8, 10, 7);
+        for (int image = 0; image < 40_000; image++) {
+            double[] centre = centres[image % centres.length];
+            for (int d = 0; d < REACTIONS.length; d++) {
+                profiles.add("img" + image + ".png", REACTIONS[d], (int) Math.round(centre[d] * 40 + random.nextInt(4)));
+            }
+        }
+        profiles.buildIndex();
+        index.install(profiles, null);
+
+        int found = 0;
+        for (int query = 0; query < 100; query++) {
+            String image = "img" + random.nextInt(40_000) + ".png";
+            SimilarImages exact = index.similarTo(image, 10, ProfileDistance.JENSEN_SHANNON, true, 1);
+            SimilarImages approximate = index.similarTo(image, 10, ProfileDistance.JENSEN_SHANNON, false, 1);
+            assertFalse(approximate.exact());
+
+            int row = profiles.row(image);
+            List<Double> expected = IntStream.range(0, profiles.size()).filter(other -> other != row)
+                    .mapToObj(other -> profiles.distance(ProfileDistance.JENSEN_SHANNON, row, other))
+                    .sorted(Comparator.naturalOrder()).limit(10).toList();
+            assertEquals(expected, exact.neighbours().stream().map(SimilarImage::distance).toList());
+
+            // Many images share a profile, so neighbours count as found by distance rather than by name
+            double kth = exact.neighbours().getLast().distance();
+            found += (int) approximate.neighbours().stream().filter(neighbour -> neighbour.distance() <= kth).count();
+        }
+        double recall = found / 1000.0;
+        assertTrue(recall >= 0.9, "recall@10 " + recall);
+    }
+
+    private static void addReactions(List<Object[]> rows, long userId, String image, Map<String, Integer> counts) {
+        counts.forEach((reaction, count) -> {
+            for (int i = 0; i < count; i++) {
+                rows.add(new Object[]{userId, image, reaction});
+            }
+        });
+    }
+
+    private static ReactionsRegisteredEvent event(String... imagesAndReactions) {
+        List<ReactionsRegisteredEvent.Reaction> reactions = new ArrayList<>();
+        for (int i = 0; i < imagesAndReactions.length; i += 2) {
+            reactions.add(new ReactionsRegisteredEvent.Reaction(imagesAndReactions[i], imagesAndReactions[i + 1]));
+        }
+        return new ReactionsRegisteredEvent(1, reactions, 0, 0);
+    }
+}
@@ -0,0 +1,48 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AzureBlobStoreTest {
+
+    private static AzureBlobStore store(String accountKey) {
+        AzureBlobStore store = new AzureBlobStore();
+        // Unresolvable endpoint: signing must not touch the network
+        ReflectionTestUtils.setField(store, "connectionString", "https://acct.blob.core.invalid");
+        ReflectionTestUtils.setField(store, "containerName", "images");
+        ReflectionTestUtils.setField(store, "sasToken", "sv=2024-01-01&sig=x");
+        ReflectionTestUtils.setField(store, "accountKey", accountKey);
+        ReflectionTestUtils.setField(store, "accountName", "");
+        store.init();
+        return store;
+    }
+
+    @Test
+    void testSignedUrlIsReadOnlyAndGeneratedLocally() {
+        String key = Base64.getEncoder().encodeToString("not-a-real-account-key-0123456789".getBytes());
+        OffsetDateTime expiresAt = OffsetDateTime.of(2030, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+        URI url = URI.create(store(key).signedUrl("folder/a b.png", expiresAt));
+
+        assertEquals("acct.blob.core.invalid", url.getHost());
+        assertEquals("/images/folder/a b.png", url.getPath());
+        String query = url.getQuery();
+        assertTrue(query.contains("sp=r&"), query);
+        assertTrue(query.contains("sr=b&"), query);
+        assertTrue(query.contains("spr=https&"), query);
+        assertTrue(query.contains("se=2030-01-01T12:00:00Z"), query);
+        assertTrue(query.contains("sig="), query);
+    }
+
+    @Test
+    void testNoSignedUrlWithoutAccountKey() {
+        assertNull(store("").signedUrl("a.png", OffsetDateTime.now().plusMinutes(30)));
+    }
+}
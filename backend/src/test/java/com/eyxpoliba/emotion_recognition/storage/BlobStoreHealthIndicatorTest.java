@@ -0,0 +1,68 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.health.Status;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BlobStoreHealthIndicatorTest {
+    @Mock
+    private BlobStore blobStore;
+
+    private BlobStoreHealthIndicator healthIndicator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        healthIndicator = new BlobStoreHealthIndicator(blobStore, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        healthIndicator.stop();
+    }
+
+    @Test
+    void testOutOfServiceUntilPrepareSucceeds() throws InterruptedException {
+        CountDownLatch attempts = new CountDownLatch(3);
+        doAnswer(invocation -> {
+            attempts.countDown();
+            if (attempts.getCount() > 0) {
+                throw new IllegalStateException("container unreachable");
+            }
+            return null;
+        }).when(blobStore).prepare();
+
+        assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().getStatus());
+        healthIndicator.start();
+
+        assertTrue(attempts.await(5, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (healthIndicator.health().getStatus() != Status.UP && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        verify(blobStore, times(3)).prepare();
+    }
+
+    @Test
+    void testReportsLastErrorWhilePending() throws InterruptedException {
+        doThrow(new IllegalStateException("container unreachable")).when(blobStore).prepare();
+        healthIndicator.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!healthIndicator.health().getDetails().containsKey("error") && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().getStatus());
+        assertEquals("IllegalStateException: container unreachable", healthIndicator.health().getDetails().get("error"));
+    }
+}
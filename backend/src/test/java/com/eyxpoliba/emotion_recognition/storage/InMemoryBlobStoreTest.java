@@ -0,0 +1,39 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryBlobStoreTest {
+
+    @Test
+    void testSeededImagesAreValidPngs() throws IOException {
+        InMemoryBlobStore store = new InMemoryBlobStore(3, 16);
+
+        assertEquals(3, store.listBlobNames().size());
+        assertTrue(store.exists("synthetic-00002.png"));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        store.download("synthetic-00002.png", outputStream);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals(16, image.getWidth());
+    }
+
+    @Test
+    void testPutAndMissingBlob() throws IOException {
+        InMemoryBlobStore store = new InMemoryBlobStore(0, 16);
+        store.put("a.png", new byte[]{1, 2, 3});
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        store.download("a.png", outputStream);
+        assertArrayEquals(new byte[]{1, 2, 3}, outputStream.toByteArray());
+        assertFalse(store.exists("b.png"));
+        assertThrows(IOException.class, () -> store.download("b.png", new ByteArrayOutputStream()));
+    }
+}
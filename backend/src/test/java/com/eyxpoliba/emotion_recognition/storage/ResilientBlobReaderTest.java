@@ -0,0 +1,104 @@
+package com.eyxpoliba.emotion_recognition.storage;
+
+import com.eyxpoliba.emotion_recognition.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResilientBlobReaderTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ResilientBlobReader reader;
+
+    @AfterEach
+    void tearDown() {
+        reader.stop();
+    }
+
+    private ResilientBlobReader newReader(long timeoutMs, double hedgeBudget, int failureThreshold) {
+        reader = new ResilientBlobReader(meterRegistry, timeoutMs, 50, 10, hedgeBudget, failureThreshold, 60_000, 1024);
+        return reader;
+    }
+
+    private double outcome(String outcome) {
+        return meterRegistry.counter("storage.read", "outcome", outcome).count();
+    }
+
+    @Test
+    void testSlowPrimaryIsHedgedAndCancelled() throws Exception {
+        newReader(5000, 0.1, 5);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch primaryInterrupted = new CountDownLatch(1);
+        Callable<byte[]> fetch = () -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000); // slow partition
+                } catch (InterruptedException e) {
+                    primaryInterrupted.countDown();
+                    throw e;
+                }
+            }
+            return new byte[]{42};
+        };
+
+        long start = System.nanoTime();
+        assertArrayEquals(new byte[]{42}, reader.read("a.png", fetch));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(2, calls.get());
+        assertTrue(primaryInterrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.counter("storage.read.hedges").count());
+        assertEquals(1, outcome("hedge"));
+    }
+
+    @Test
+    void testDeadlineWithoutHedgeBudget() {
+        newReader(200, 0, 5);
+        long start = System.nanoTime();
+        assertThrows(StorageUnavailableException.class, () -> reader.read("a.png", () -> {
+            Thread.sleep(10_000);
+            return new byte[0];
+        }));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(0, meterRegistry.counter("storage.read.hedges").count());
+        assertEquals(1, outcome("failed"));
+    }
+
+    @Test
+    void testOpenCircuitServesCacheOrFailsFast() throws Exception {
+        newReader(1000, 0.1, 2);
+        reader.read("cached.png", () -> new byte[]{1, 2, 3});
+
+        AtomicInteger calls = new AtomicInteger();
+        Callable<byte[]> failing = () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("503 from storage");
+        };
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.read("cached.png", failing));
+        assertThrows(StorageUnavailableException.class, () -> reader.read("other.png", failing));
+        assertEquals(CircuitBreaker.State.OPEN, reader.getCircuitState());
+
+        // Open: storage is not contacted any more
+        assertArrayEquals(new byte[]{1, 2, 3}, reader.read("cached.png", failing));
+        assertThrows(StorageUnavailableException.class, () -> reader.read("other.png", failing));
+        assertEquals(2, calls.get());
+        assertEquals(2, outcome("cache"));
+        assertEquals(1, outcome("rejected"));
+    }
+
+    @Test
+    void testMissingBlobDoesNotTripCircuit() {
+        newReader(1000, 0.1, 1);
+        assertThrows(FileNotFoundException.class, () -> reader.read("missing.png", () -> {
+            throw new FileNotFoundException("missing.png");
+        }));
+        assertEquals(CircuitBreaker.State.CLOSED, reader.getCircuitState());
+        assertEquals(1, outcome("not_found"));
+    }
+}
@@ -1,6 +1,6 @@
 from fastapi import FastAPI, UploadFile, File, Request, WebSocket, WebSocketDisconnect
 from fastapi.middleware.cors import CORSMiddleware
-from fastapi.responses import StreamingResponse
+from fastapi.responses import JSONResponse, StreamingResponse
 import sys
 import os
 import logging
@@ -135,6 +135,26 @@ async def predict_emotion(request: Request, file: UploadFile = File(...)):
         logger.error(f"Emotion prediction failed for user {username}: {str(e)}")
         raise e
     
+@app.post("/api/classify/batch")
+async def classify_batch(request: Request):
+    """Text emotion classification for a batch of texts, used by the backend inference gateway.
+
+    Body: `{"texts": ["...", ...]}`. Response: `{"results": [{"label": ..., "score": ...}, ...]}` in input order.
+    The whole batch goes through the pipeline in one call.
+    """
+    body = await request.json()
+    texts = body.get("texts") if isinstance(body, dict) else None
+    if not isinstance(texts, list) or not all(isinstance(text, str) for text in texts):
+        return JSONResponse(status_code=400, content={"message": "Expected {\"texts\": [string, ...]}"})
+    if not texts:
+        return {"results": []}
+
+    # The pipeline is synchronous; keep the event loop free for the WebSocket clients
+    response = await asyncio.to_thread(classifier, texts)
+    results = [{"label": item["label"], "score": float(item["score"])} for item in response]
+    logger.info(f"Batch classification of {len(texts)} texts")
+    return {"results": results}
+
 @app.websocket("/api/ws")
 async def websocket_endpoint(websocket: WebSocket):
     """WebSocket endpoint for real-time emotion classification with JWT authentication"""